@@ -0,0 +1,71 @@
+package com.github.expression.benchmark;
+
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.ParseResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a rule file of generated expressions at once, serially and with
+ * {@link com.github.expression.tree.ExpressionParser#parseAll} on pools of increasing size, to
+ * see how throughput scales with the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BulkParseBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"100000"})
+    public int count;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private List<String> expressions;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        expressions = new ExpressionCorpus(SEED, 8, ExpressionCorpus.Mix.MIXED, 10, 3).generate(count);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int serial() {
+        int size = 0;
+        for (String expression : expressions) {
+            size += ExpressionTree.parser().parse(expression).getSize();
+        }
+        return size;
+    }
+
+    @Benchmark
+    public List<ParseResult> parseAll() {
+        return ExpressionTree.parser().parseAll(expressions, pool);
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.expression.benchmark;
+
+import com.github.expression.tree.EavQueryGenerator;
+import com.github.expression.tree.EavStrategy;
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.ParameterizedQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the {@link EavStrategy strategies} of {@link EavQueryGenerator} against an in-memory H2
+ * tag table of about <tt>entries * 7</tt> rows, indexed on <tt>(name, value, entry_id)</tt> for every value column.
+ * <p>
+ * Run with {@code mvn -B install -DskipTests} in the library, then
+ * {@code mvn -B package && java -jar target/benchmarks.jar EavBenchmark} here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EavBenchmark {
+
+    private static final String[] STATES = {"open", "held", "closed", "archived"};
+
+    @Param({"400000"})
+    public int entries;
+
+    @Param({
+            "userId = 42 and state = 'open'",
+            "userId < 1000 and state in ('open', 'held') and amount > 900 and ref like 'r1%'",
+            "state = 'held' and not amount between 100 and 900",
+            "userId = 7 or ref = 'r123' or created >= '2024-12-01'",
+    })
+    public String expression;
+
+    @Param({"SET_OPERATIONS", "GROUP_BY", "EXISTS"})
+    public EavStrategy strategy;
+
+    private Connection connection;
+    private PreparedStatement statement;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        // H2 would otherwise return the cached result of a query over unchanged tables
+        connection = DriverManager.getConnection("jdbc:h2:mem:eav;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=0");
+        populate();
+        ExpressionTree tree = ExpressionTree.parser().parse(expression);
+        ParameterizedQuery query = new EavQueryGenerator().generateParameterized(tree, strategy);
+        statement = connection.prepareStatement(query.getSql());
+        query.bind(statement);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement drop = connection.createStatement()) {
+            drop.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public int query() throws SQLException {
+        int count = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void populate() throws SQLException {
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("create table entry_tags (entry_id bigint not null, name varchar(64) not null,"
+                    + " str_value varchar(256), num_value bigint, date_value date)");
+        }
+        Random random = new Random(42);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement("insert into entry_tags values (?, ?, ?, ?, ?)")) {
+            for (long id = 0; id < entries; id++) {
+                add(insert, id, "userId", null, (long) random.nextInt(entries / 10 + 1), null);
+                add(insert, id, "amount", null, (long) random.nextInt(1000), null);
+                add(insert, id, "state", STATES[random.nextInt(STATES.length)], null, null);
+                add(insert, id, "ref", "r" + random.nextInt(100_000), null, null);
+                add(insert, id, "created", null, null, Date.valueOf(start.plusDays(random.nextInt(366))));
+                add(insert, id, "source", "s" + random.nextInt(16), null, null);
+                add(insert, id, "priority", null, (long) random.nextInt(5), null);
+                // A sparse tag, so that absence is exercised
+                if (random.nextInt(4) == 0) {
+                    add(insert, id, "note", "n" + id, null, null);
+                }
+                if (id % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("create index entry_tags_str on entry_tags (name, str_value, entry_id)");
+            ddl.execute("create index entry_tags_num on entry_tags (name, num_value, entry_id)");
+            ddl.execute("create index entry_tags_date on entry_tags (name, date_value, entry_id)");
+            ddl.execute("create index entry_tags_entry on entry_tags (entry_id, name)");
+            ddl.execute("analyze");
+        }
+    }
+
+    private static void add(PreparedStatement insert, long id, String name, String string, Long number, Date date)
+            throws SQLException {
+        insert.setLong(1, id);
+        insert.setString(2, name);
+        insert.setString(3, string);
+        if (number != null) {
+            insert.setLong(4, number);
+        } else {
+            insert.setNull(4, Types.BIGINT);
+        }
+        insert.setDate(5, date);
+        insert.addBatch();
+    }
+}
@@ -0,0 +1,91 @@
+package com.github.expression.benchmark;
+
+import com.github.expression.eval.ExpressionCompiler;
+import com.github.expression.eval.MethodHandleCompiler;
+import com.github.expression.eval.Row;
+import com.github.expression.tree.ExpressionTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Compares the closure tree of {@link ExpressionCompiler} with the method handle chain of
+ * {@link MethodHandleCompiler} filtering the same records.
+ * <p>
+ * Run with {@code mvn -B install -DskipTests} in the library, then
+ * {@code mvn -B package && java -jar target/benchmarks.jar EvaluatorBenchmark} here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EvaluatorBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    @Param({
+            "num_value = 3",
+            "num_value between 10 and 20 and name like 'a%' or status in ('open', 'held')",
+            "(amount * 2 + 1 > 100 or amount < 5) and not status = 'closed' and name is not null",
+    })
+    public String expression;
+
+    private Predicate<Row> interpreted;
+    private Predicate<Row> methodHandle;
+    private Row[] records;
+
+    @Setup
+    public void setUp() {
+        ExpressionTree tree = ExpressionTree.parser().parse(expression);
+        interpreted = new ExpressionCompiler().compile(tree);
+        methodHandle = new MethodHandleCompiler().compile(tree);
+
+        String[] statuses = {"open", "held", "closed"};
+        Random random = new Random(42);
+        records = new Row[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            Map<String, Object> values = new HashMap<>();
+            values.put("num_value", (long) random.nextInt(30));
+            values.put("amount", random.nextInt(200) / 2.0);
+            values.put("name", random.nextBoolean() ? "alpha" + i : "beta" + i);
+            values.put("status", statuses[random.nextInt(statuses.length)]);
+            records[i] = Row.of(values);
+        }
+    }
+
+    @Benchmark
+    public int interpreted() {
+        return count(interpreted);
+    }
+
+    @Benchmark
+    public int methodHandle() {
+        return count(methodHandle);
+    }
+
+    private int count(Predicate<Row> predicate) {
+        int matched = 0;
+        for (Row record : records) {
+            if (predicate.test(record)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,176 @@
+package com.github.expression.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates filter expressions of a controlled shape from a seed, so that every run of a benchmark
+ * sees the same input:
+ * <ul>
+ * <li><tt>size</tt>: number of predicates of each expression;</li>
+ * <li><tt>mix</tt>: how often each kind of predicate appears;</li>
+ * <li><tt>inListLength</tt>: number of values of each IN list;</li>
+ * <li><tt>depth</tt>: levels of parenthesized groups, 0 for a flat chain of <tt>and</tt>/<tt>or</tt>.</li>
+ * </ul>
+ */
+public final class ExpressionCorpus {
+
+    /**
+     * Relative weights of comparisons, LIKE, IN, BETWEEN, IS NULL and CONTAINS predicates.
+     */
+    public enum Mix {
+        COMPARISONS(10, 0, 0, 0, 0, 0),
+        MIXED(4, 2, 1, 1, 1, 1),
+        IN_LISTS(1, 0, 4, 0, 0, 0);
+
+        private final int[] weights;
+        private final int total;
+
+        Mix(int... weights) {
+            this.weights = weights;
+            int total = 0;
+            for (int weight : weights) {
+                total += weight;
+            }
+            this.total = total;
+        }
+
+        int pick(Random random) {
+            int r = random.nextInt(total);
+            for (int i = 0; ; i++) {
+                r -= weights[i];
+                if (r < 0) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    private static final String[] COMPARISONS = {"=", "<>", "<", "<=", ">", ">="};
+    private static final String[] NAMES = {
+            "transactionId", "userId", "amount", "status", "name", "file", "date", "region", "transaction.id", "tags",
+    };
+    private static final int ATTRIBUTES = 50;
+
+    private final Random random;
+    private final int size;
+    private final Mix mix;
+    private final int inListLength;
+    private final int depth;
+
+    public ExpressionCorpus(long seed, int size, Mix mix, int inListLength, int depth) {
+        if (size < 1 || inListLength < 1 || depth < 0) {
+            throw new IllegalArgumentException("size and inListLength must be positive, depth not negative");
+        }
+        this.random = new Random(seed);
+        this.size = size;
+        this.mix = mix;
+        this.inListLength = inListLength;
+        this.depth = depth;
+    }
+
+    public List<String> generate(int count) {
+        List<String> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder expression = new StringBuilder();
+            group(expression, size, depth);
+            expressions.add(expression.toString());
+        }
+        return expressions;
+    }
+
+    private void group(StringBuilder out, int predicates, int levels) {
+        if (levels == 0 || predicates < 2) {
+            for (int i = 0; i < predicates; i++) {
+                if (i > 0) {
+                    out.append(random.nextInt(3) == 0 ? " or " : " and ");
+                }
+                predicate(out);
+            }
+            return;
+        }
+        int parts = Math.min(predicates, 2 + random.nextInt(3));
+        for (int i = 0; i < parts; i++) {
+            if (i > 0) {
+                out.append(random.nextBoolean() ? " or " : " and ");
+            }
+            if (random.nextInt(5) == 0) {
+                out.append("not ");
+            }
+            out.append('(');
+            // Spread the predicates evenly, the first parts take the remainder
+            group(out, predicates / parts + (i < predicates % parts ? 1 : 0), levels - 1);
+            out.append(')');
+        }
+    }
+
+    private void predicate(StringBuilder out) {
+        String name = name();
+        switch (mix.pick(random)) {
+            case 0:
+                out.append(name).append(' ').append(COMPARISONS[random.nextInt(COMPARISONS.length)]).append(' ');
+                value(out);
+                break;
+            case 1:
+                out.append(name).append(" like '").append(word()).append("%'");
+                break;
+            case 2:
+                out.append(name).append(" in (");
+                boolean strings = random.nextBoolean();
+                for (int i = 0; i < inListLength; i++) {
+                    if (i > 0) {
+                        out.append(", ");
+                    }
+                    if (strings) {
+                        out.append('\'').append(word()).append(i).append('\'');
+                    } else {
+                        out.append(random.nextInt(1_000_000));
+                    }
+                }
+                out.append(')');
+                break;
+            case 3:
+                int low = random.nextInt(1000);
+                out.append(name).append(" between ").append(low).append(" and ").append(low + random.nextInt(1000));
+                break;
+            case 4:
+                out.append(name).append(random.nextBoolean() ? " is null" : " is not null");
+                break;
+            default:
+                out.append(name).append(" contains '").append(word()).append('\'');
+                break;
+        }
+    }
+
+    private void value(StringBuilder out) {
+        switch (random.nextInt(4)) {
+            case 0:
+                out.append('\'').append(word()).append('\'');
+                break;
+            case 1:
+                out.append("'20").append(10 + random.nextInt(10)).append("-0").append(1 + random.nextInt(9))
+                        .append('-').append(10 + random.nextInt(18)).append('\'');
+                break;
+            case 2:
+                out.append(random.nextInt(100)).append('.').append(random.nextInt(100));
+                break;
+            default:
+                out.append(random.nextInt(1_000_000));
+                break;
+        }
+    }
+
+    private String name() {
+        int n = random.nextInt(ATTRIBUTES);
+        return n < NAMES.length ? NAMES[n] : "attr" + n;
+    }
+
+    private String word() {
+        char[] chars = new char[3 + random.nextInt(6)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
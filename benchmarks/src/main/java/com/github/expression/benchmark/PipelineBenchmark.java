@@ -0,0 +1,111 @@
+package com.github.expression.benchmark;
+
+import com.github.expression.formatter.ExpressionTreeXmlFormatter;
+import com.github.expression.token.TokenExtractor;
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.QueryGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the pipeline on its own and end to end, on a generated corpus of
+ * expressions: tokenizing, parsing, SQL generation and XML formatting. Each invocation handles the
+ * next expression of the corpus. Throughput and sampled latency percentiles are reported for
+ * every stage; add <tt>-prof gc</tt> for the allocation rate, as the <tt>run</tt> profile does.
+ * <p>
+ * Run with {@code mvn -B install -DskipTests} in the library, then {@code mvn -B verify -Prun}
+ * here, which builds the benchmark jar and runs this suite with the gc profiler. Once the
+ * dependencies are in the local repository, {@code mvn -o -B verify -Prun} runs offline;
+ * {@code -Dbenchmark=<regex>} selects other suites.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PipelineBenchmark {
+
+    private static final int CORPUS_SIZE = 512;
+    private static final long SEED = 42;
+
+    @Param({"1", "8", "64"})
+    public int size;
+
+    @Param({"COMPARISONS", "MIXED", "IN_LISTS"})
+    public ExpressionCorpus.Mix mix;
+
+    @Param({"10"})
+    public int inListLength;
+
+    @Param({"0", "3"})
+    public int depth;
+
+    private final TokenExtractor tokenExtractor = new TokenExtractor();
+    private final QueryGenerator queryGenerator = new QueryGenerator();
+    private final ExpressionTreeXmlFormatter formatter = new ExpressionTreeXmlFormatter();
+
+    private String[] expressions;
+    private ExpressionTree[] trees;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> corpus = new ExpressionCorpus(SEED, size, mix, inListLength, depth).generate(CORPUS_SIZE);
+        expressions = corpus.toArray(new String[0]);
+        trees = new ExpressionTree[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            trees[i] = ExpressionTree.parser().parse(expressions[i]);
+        }
+    }
+
+    @Benchmark
+    public List<String> tokenize() {
+        return tokenExtractor.getTokens(expressions[index()]);
+    }
+
+    @Benchmark
+    public ExpressionTree build() {
+        return ExpressionTree.builder().withExpression(expressions[index()]).build();
+    }
+
+    @Benchmark
+    public ExpressionTree parse() {
+        return ExpressionTree.parser().parse(expressions[index()]);
+    }
+
+    @Benchmark
+    public String generate() {
+        return queryGenerator.generate("select * from entries", trees[index()]);
+    }
+
+    @Benchmark
+    public String format() {
+        return formatter.format(trees[index()]);
+    }
+
+    @Benchmark
+    public int endToEnd() {
+        ExpressionTree tree = ExpressionTree.parser().parse(expressions[index()]);
+        return queryGenerator.generate("select * from entries", tree).length() + formatter.format(tree).length();
+    }
+
+    private int index() {
+        int index = next;
+        next = index + 1 == CORPUS_SIZE ? 0 : index + 1;
+        return index;
+    }
+}
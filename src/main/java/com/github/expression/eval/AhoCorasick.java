@@ -0,0 +1,191 @@
+package com.github.expression.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Finds which of a set of strings occur in a text in one pass over the text, whatever the number
+ * of strings. An immutable Aho-Corasick automaton over UTF-16 characters: the trie of the strings
+ * with, for each node, the node of its longest proper suffix in the trie and the nearest such
+ * suffix that ends a string. Children are sorted arrays searched by bisection, except at the root
+ * where ASCII characters index a table. Thread-safe.
+ */
+final class AhoCorasick {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final int[] NO_TARGETS = new int[0];
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    static final AhoCorasick EMPTY = build(new ArrayList<>());
+
+    private final String[] patterns;
+    private final Map<String, Integer> ids;
+    // Per node: the characters of its children, sorted, and the children
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] rootAscii;
+    private final int[] fail;
+    // The string ending at a node or NONE, and the nearest node along the suffix links ending one
+    private final int[] output;
+    private final int[] dictionary;
+
+    private AhoCorasick(String[] patterns, Map<String, Integer> ids, char[][] labels, int[][] targets,
+                        int[] fail, int[] output, int[] dictionary) {
+        this.patterns = patterns;
+        this.ids = ids;
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.output = output;
+        this.dictionary = dictionary;
+        this.rootAscii = new int[128];
+        Arrays.fill(rootAscii, NONE);
+        for (int i = 0; i < labels[ROOT].length && labels[ROOT][i] < 128; i++) {
+            rootAscii[labels[ROOT][i]] = targets[ROOT][i];
+        }
+    }
+
+    static AhoCorasick build(Collection<String> strings) {
+        String[] patterns = strings.stream().distinct().toArray(String[]::new);
+        Map<String, Integer> ids = new HashMap<>(patterns.length * 2);
+        // The trie, children kept in maps while it grows
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        children.add(new HashMap<>());
+        outputs.add(NONE);
+        for (int id = 0; id < patterns.length; id++) {
+            String pattern = patterns[id];
+            ids.put(pattern, id);
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = children.get(node).get(pattern.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<>());
+                    outputs.add(NONE);
+                    children.get(node).put(pattern.charAt(i), next);
+                }
+                node = next;
+            }
+            outputs.set(node, id);
+        }
+
+        int size = children.size();
+        char[][] labels = new char[size][];
+        int[][] targets = new int[size][];
+        int[] output = new int[size];
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> map = children.get(node);
+            char[] chars = NO_LABELS;
+            int[] nodes = NO_TARGETS;
+            if (!map.isEmpty()) {
+                chars = new char[map.size()];
+                int i = 0;
+                for (char ch : map.keySet()) {
+                    chars[i++] = ch;
+                }
+                Arrays.sort(chars);
+                nodes = new int[chars.length];
+                for (i = 0; i < chars.length; i++) {
+                    nodes[i] = map.get(chars[i]);
+                }
+            }
+            labels[node] = chars;
+            targets[node] = nodes;
+            output[node] = outputs.get(node);
+        }
+
+        // Suffix links breadth first, so that those of shorter prefixes are known
+        int[] fail = new int[size];
+        int[] dictionary = new int[size];
+        dictionary[ROOT] = NONE;
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            dictionary[child] = output[ROOT] != NONE ? ROOT : NONE;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = 0; i < labels[node].length; i++) {
+                char ch = labels[node][i];
+                int child = targets[node][i];
+                int state = fail[node];
+                int next = child(labels, targets, state, ch);
+                while (next == NONE && state != ROOT) {
+                    state = fail[state];
+                    next = child(labels, targets, state, ch);
+                }
+                fail[child] = next != NONE ? next : ROOT;
+                int suffix = fail[child];
+                dictionary[child] = output[suffix] != NONE ? suffix : dictionary[suffix];
+                queue[tail++] = child;
+            }
+        }
+        return new AhoCorasick(patterns, ids, labels, targets, fail, output, dictionary);
+    }
+
+    int size() {
+        return patterns.length;
+    }
+
+    boolean contains(String pattern) {
+        return ids.containsKey(pattern);
+    }
+
+    Collection<String> patterns() {
+        return Arrays.asList(patterns);
+    }
+
+    /**
+     * Passes each of the strings occurring in <tt>text</tt> to <tt>consumer</tt>, once.
+     */
+    void scan(CharSequence text, Consumer<String> consumer) {
+        if (patterns.length == 0) {
+            return;
+        }
+        BitSet found = new BitSet();
+        if (output[ROOT] != NONE) {
+            found.set(output[ROOT]);
+            consumer.accept(patterns[output[ROOT]]);
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            int next = next(state, ch);
+            while (next == NONE && state != ROOT) {
+                state = fail[state];
+                next = next(state, ch);
+            }
+            state = next != NONE ? next : ROOT;
+            for (int node = output[state] != NONE ? state : dictionary[state]; node > ROOT; node = dictionary[node]) {
+                int id = output[node];
+                if (!found.get(id)) {
+                    found.set(id);
+                    consumer.accept(patterns[id]);
+                }
+            }
+        }
+    }
+
+    private int next(int state, char ch) {
+        if (state == ROOT && ch < 128) {
+            return rootAscii[ch];
+        }
+        return child(labels, targets, state, ch);
+    }
+
+    private static int child(char[][] labels, int[][] targets, int node, char ch) {
+        int i = Arrays.binarySearch(labels[node], ch);
+        return i >= 0 ? targets[node][i] : NONE;
+    }
+}
@@ -0,0 +1,411 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ConstantHolder;
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.LiteralType;
+import com.github.expression.tree.ValueSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Compiles an {@link ExpressionTree} into a {@link BatchPredicate} evaluating each operator for
+ * all selected rows of a {@link ColumnBatch} in one loop.
+ * <p>
+ * AND passes the rows selected by each operand on to the next one, OR evaluates each operand on
+ * the rows not selected yet and merges the selections. Comparisons, BETWEEN, IN, LIKE and IS NULL
+ * between a column and literals run over the primitive column arrays; on dictionary columns they
+ * are evaluated once per dictionary entry. Other operators are evaluated row by row by
+ * {@link ExpressionCompiler}, with the same results.
+ */
+public class BatchCompiler {
+
+    private static final BatchPredicate ALL = (batch, rows, count, out) -> {
+        System.arraycopy(rows, 0, out, 0, count);
+        return count;
+    };
+    private static final BatchPredicate NONE = (batch, rows, count, out) -> 0;
+
+    private final ExpressionCompiler rowCompiler = new ExpressionCompiler();
+
+    public BatchPredicate compile(ExpressionTree tree) {
+        return predicate(tree);
+    }
+
+    private BatchPredicate predicate(ExpressionTree tree) {
+        switch (tree.getOperator()) {
+            case ConstantHolder.OP_VALUE:
+                return predicate(tree.getLeft());
+            case ConstantHolder.OP_TRUE:
+                return ALL;
+            case ConstantHolder.OP_FALSE:
+                return NONE;
+            case ConstantHolder.OP_AND:
+                return and(operands(tree, ConstantHolder.OP_AND));
+            case ConstantHolder.OP_OR:
+                return or(operands(tree, ConstantHolder.OP_OR));
+            case ConstantHolder.OP_NOT:
+                return not(predicate(tree.getLeft()));
+            case ConstantHolder.OP_IS:
+                if (isColumn(tree.getLeft())) {
+                    return isNull(tree.getLeft().getValue());
+                }
+                break;
+            case ConstantHolder.OP_EQ:
+                return comparison(tree, Column.EQ);
+            case ConstantHolder.OP_NE:
+                return comparison(tree, Column.NE);
+            case ConstantHolder.OP_LT:
+                return comparison(tree, Column.LT);
+            case ConstantHolder.OP_LE:
+                return comparison(tree, Column.LE);
+            case ConstantHolder.OP_GT:
+                return comparison(tree, Column.GT);
+            case ConstantHolder.OP_GE:
+                return comparison(tree, Column.GE);
+            case ConstantHolder.OP_BETWEEN: {
+                ExpressionTree bounds = tree.getRight();
+                Object low = literal(bounds.getLeft());
+                Object high = literal(bounds.getRight());
+                if (isColumn(tree.getLeft()) && low != null && high != null) {
+                    String name = tree.getLeft().getValue();
+                    return and(Arrays.asList(compare(name, Column.GE, low), compare(name, Column.LE, high)));
+                }
+                break;
+            }
+            case ConstantHolder.OP_IN:
+                if (isColumn(tree.getLeft())) {
+                    return in(tree);
+                }
+                break;
+            case ConstantHolder.OP_LIKE:
+                return like(tree, LikeMatcher::like);
+            case ConstantHolder.OP_LIKEFILE:
+                return like(tree, LikeMatcher::likeFile);
+            default:
+                break;
+        }
+        return rowByRow(tree);
+    }
+
+    private List<BatchPredicate> operands(ExpressionTree tree, String operator) {
+        List<BatchPredicate> operands = new ArrayList<>();
+        for (ExpressionTree operand : ExpressionCompiler.operands(tree, operator)) {
+            operands.add(predicate(operand));
+        }
+        return operands;
+    }
+
+    private static BatchPredicate and(List<BatchPredicate> operands) {
+        List<BatchPredicate> predicates = new ArrayList<>();
+        for (BatchPredicate predicate : operands) {
+            if (predicate == NONE) {
+                return NONE;
+            }
+            if (predicate != ALL) {
+                predicates.add(predicate);
+            }
+        }
+        if (predicates.isEmpty()) {
+            return ALL;
+        }
+        if (predicates.size() == 1) {
+            return predicates.get(0);
+        }
+        BatchPredicate[] all = predicates.toArray(new BatchPredicate[0]);
+        return (batch, rows, count, out) -> {
+            int n = all[0].select(batch, rows, count, out);
+            for (int i = 1; i < all.length && n > 0; i++) {
+                n = all[i].select(batch, out, n, out);
+            }
+            return n;
+        };
+    }
+
+    private static BatchPredicate or(List<BatchPredicate> operands) {
+        List<BatchPredicate> predicates = new ArrayList<>();
+        for (BatchPredicate predicate : operands) {
+            if (predicate == ALL) {
+                return ALL;
+            }
+            if (predicate != NONE) {
+                predicates.add(predicate);
+            }
+        }
+        if (predicates.isEmpty()) {
+            return NONE;
+        }
+        if (predicates.size() == 1) {
+            return predicates.get(0);
+        }
+        BatchPredicate[] all = predicates.toArray(new BatchPredicate[0]);
+        Scratch scratch = new Scratch(4);
+        return (batch, rows, count, out) -> {
+            int[][] buffers = scratch.get(count);
+            int[] remaining = buffers[0];
+            int[] matched = buffers[1];
+            int[] selected = buffers[2];
+            int[] merged = buffers[3];
+            System.arraycopy(rows, 0, remaining, 0, count);
+            int remainingCount = count;
+            int selectedCount = 0;
+            for (BatchPredicate predicate : all) {
+                int m = predicate.select(batch, remaining, remainingCount, matched);
+                if (m == 0) {
+                    continue;
+                }
+                selectedCount = merge(selected, selectedCount, matched, m, merged);
+                int[] swap = selected;
+                selected = merged;
+                merged = swap;
+                remainingCount = subtract(remaining, remainingCount, matched, m, remaining);
+                if (remainingCount == 0) {
+                    break;
+                }
+            }
+            System.arraycopy(selected, 0, out, 0, selectedCount);
+            return selectedCount;
+        };
+    }
+
+    private static BatchPredicate not(BatchPredicate predicate) {
+        if (predicate == ALL) {
+            return NONE;
+        }
+        if (predicate == NONE) {
+            return ALL;
+        }
+        Scratch scratch = new Scratch(2);
+        return (batch, rows, count, out) -> {
+            int[][] buffers = scratch.get(count);
+            int[] input = buffers[0];
+            int[] matched = buffers[1];
+            System.arraycopy(rows, 0, input, 0, count);
+            int m = predicate.select(batch, input, count, matched);
+            return subtract(input, count, matched, m, out);
+        };
+    }
+
+    private static BatchPredicate isNull(String name) {
+        return (batch, rows, count, out) -> {
+            Column column = batch.column(name);
+            if (column == null) {
+                return ALL.select(batch, rows, count, out);
+            }
+            return column.selectNull(rows, count, out);
+        };
+    }
+
+    private BatchPredicate comparison(ExpressionTree tree, int operator) {
+        ExpressionTree left = tree.getLeft();
+        ExpressionTree right = tree.getRight();
+        if (isColumn(left) && literal(right) != null) {
+            return compare(left.getValue(), operator, literal(right));
+        }
+        if (literal(left) != null && isColumn(right)) {
+            return compare(right.getValue(), Column.mirror(operator), literal(left));
+        }
+        return rowByRow(tree);
+    }
+
+    private static BatchPredicate compare(String name, int operator, Object value) {
+        Comparand literal = Comparand.of(value);
+        return (batch, rows, count, out) -> {
+            Column column = batch.column(name);
+            return column == null ? 0 : column.compare(operator, literal, rows, count, out);
+        };
+    }
+
+    private BatchPredicate in(ExpressionTree tree) {
+        InSet set;
+        long[] longs;
+        ValueSet valueSet = tree.getRight().getValueSet();
+        if (valueSet != null) {
+            set = new InSet(valueSet);
+            longs = valueSet.getType() == LiteralType.LONG ? valueSet.toLongArray() : null;
+        } else {
+            List<Object> values = new ArrayList<>();
+            for (ExpressionTree item : tree.getRight().getItems()) {
+                Object value = literal(item);
+                if (value == null) {
+                    return rowByRow(tree);
+                }
+                values.add(value);
+            }
+            set = new InSet(values);
+            longs = integralValues(values);
+        }
+        String name = tree.getLeft().getValue();
+        return (batch, rows, count, out) -> {
+            Column column = batch.column(name);
+            if (column == null) {
+                return 0;
+            }
+            if (longs != null && column instanceof Column.LongColumn) {
+                return ((Column.LongColumn) column).selectIn(longs, rows, count, out);
+            }
+            return column.select(set::contains, rows, count, out);
+        };
+    }
+
+    private BatchPredicate like(ExpressionTree tree, Function<String, LikeMatcher> compiler) {
+        Object pattern = literal(tree.getRight());
+        if (!isColumn(tree.getLeft()) || pattern == null) {
+            return rowByRow(tree);
+        }
+        String name = tree.getLeft().getValue();
+        LikeMatcher matcher = compiler.apply(pattern.toString());
+        return (batch, rows, count, out) -> {
+            Column column = batch.column(name);
+            if (column == null) {
+                return 0;
+            }
+            return column.select(matcher::test, rows, count, out);
+        };
+    }
+
+    private BatchPredicate rowByRow(ExpressionTree tree) {
+        Predicate<Row> predicate = rowCompiler.compile(tree);
+        if (predicate instanceof Constant) {
+            return predicate.test(null) ? ALL : NONE;
+        }
+        return (batch, rows, count, out) -> {
+            BatchRow record = new BatchRow(batch);
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                record.row = rows[i];
+                if (predicate.test(record)) {
+                    out[n++] = record.row;
+                }
+            }
+            return n;
+        };
+    }
+
+    private static boolean isColumn(ExpressionTree tree) {
+        return tree.getType() == LiteralType.IDENTIFIER;
+    }
+
+    /**
+     * The value of a non null literal, or null if the tree is anything else.
+     */
+    private static Object literal(ExpressionTree tree) {
+        if (tree.getValue() == null) {
+            return null;
+        }
+        ToValueFunction operand = ExpressionCompiler.operand(tree);
+        return operand instanceof Constant ? ((Constant) operand).value() : null;
+    }
+
+    /**
+     * The values as sorted longs if they all are integral numbers, null otherwise.
+     */
+    private static long[] integralValues(List<Object> values) {
+        long[] longs = new long[values.size()];
+        for (int i = 0; i < longs.length; i++) {
+            Object value = values.get(i);
+            Number number = value instanceof Number ? (Number) value : Values.parseNumber(value.toString());
+            if (!Values.isIntegral(number)) {
+                return null;
+            }
+            longs[i] = number.longValue();
+        }
+        Arrays.sort(longs);
+        return longs;
+    }
+
+    /**
+     * Merges two ascending selections into <tt>out</tt>.
+     */
+    private static int merge(int[] a, int aCount, int[] b, int bCount, int[] out) {
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < aCount && j < bCount) {
+            int x = a[i];
+            int y = b[j];
+            if (x < y) {
+                out[n++] = x;
+                i++;
+            } else if (y < x) {
+                out[n++] = y;
+                j++;
+            } else {
+                out[n++] = x;
+                i++;
+                j++;
+            }
+        }
+        while (i < aCount) {
+            out[n++] = a[i++];
+        }
+        while (j < bCount) {
+            out[n++] = b[j++];
+        }
+        return n;
+    }
+
+    /**
+     * Writes the rows of ascending <tt>a</tt> that are not in ascending <tt>b</tt> to <tt>out</tt>,
+     * which may be <tt>a</tt>.
+     */
+    private static int subtract(int[] a, int aCount, int[] b, int bCount, int[] out) {
+        int j = 0;
+        int n = 0;
+        for (int i = 0; i < aCount; i++) {
+            int x = a[i];
+            while (j < bCount && b[j] < x) {
+                j++;
+            }
+            if (j == bCount || b[j] != x) {
+                out[n++] = x;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * A view of one row of a batch, moved from row to row by the row-by-row fallback.
+     */
+    private static final class BatchRow implements Row {
+
+        private final ColumnBatch batch;
+        int row;
+
+        BatchRow(ColumnBatch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public Object get(String attribute) {
+            Column column = batch.column(attribute);
+            return column == null ? null : column.get(row);
+        }
+    }
+
+    /**
+     * The selection vectors an OR or NOT works in, kept per thread by each compiled node and grown
+     * to the largest batch seen, so that selecting rows allocates nothing once warmed up.
+     */
+    private static final class Scratch {
+
+        private final ThreadLocal<int[][]> buffers;
+
+        Scratch(int arrays) {
+            this.buffers = ThreadLocal.withInitial(() -> new int[arrays][0]);
+        }
+
+        int[][] get(int count) {
+            int[][] arrays = buffers.get();
+            if (arrays[0].length < count) {
+                for (int i = 0; i < arrays.length; i++) {
+                    arrays[i] = new int[count];
+                }
+            }
+            return arrays;
+        }
+    }
+}
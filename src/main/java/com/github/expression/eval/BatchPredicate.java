@@ -0,0 +1,31 @@
+package com.github.expression.eval;
+
+/**
+ * An expression compiled for a whole {@link ColumnBatch} at a time. Rows are passed between
+ * operators as selection vectors: ascending row numbers of the rows still in play.
+ */
+@FunctionalInterface
+public interface BatchPredicate {
+
+    /**
+     * Selects the rows in <tt>rows[0..count)</tt> that match, writing them to <tt>out</tt> in
+     * ascending order. <tt>rows</tt> and <tt>out</tt> may be the same array.
+     *
+     * @return the number of matching rows
+     */
+    int select(ColumnBatch batch, int[] rows, int count, int[] out);
+
+    /**
+     * Selects the matching rows of the whole batch.
+     *
+     * @param out receives the matching row numbers, must hold {@link ColumnBatch#size()} values
+     * @return the number of matching rows
+     */
+    default int select(ColumnBatch batch, int[] out) {
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            out[i] = i;
+        }
+        return select(batch, out, size, out);
+    }
+}
@@ -0,0 +1,368 @@
+package com.github.expression.eval;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * A column of a {@link ColumnBatch}. The select methods read the row numbers in
+ * <tt>rows[0..count)</tt>, write those that pass to <tt>out</tt> in the same order and return
+ * how many passed; <tt>rows</tt> and <tt>out</tt> may be the same array.
+ */
+abstract class Column {
+
+    static final int EQ = 0;
+    static final int NE = 1;
+    static final int LT = 2;
+    static final int LE = 3;
+    static final int GT = 4;
+    static final int GE = 5;
+
+    /**
+     * The boxed value of a row, as a {@link Row} would return it.
+     */
+    abstract Object get(int row);
+
+    abstract boolean isNull(int row);
+
+    /**
+     * Selects the rows whose value compares with <tt>literal</tt> as <tt>operator</tt> requires.
+     */
+    abstract int compare(int operator, Comparand literal, int[] rows, int count, int[] out);
+
+    /**
+     * Selects the non null rows whose value passes <tt>test</tt>.
+     */
+    int select(Predicate<Object> test, int[] rows, int count, int[] out) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            Object value = get(row);
+            if (value != null && test.test(value)) {
+                out[n++] = row;
+            }
+        }
+        return n;
+    }
+
+    int selectNull(int[] rows, int count, int[] out) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            out[n] = row;
+            n += isNull(row) ? 1 : 0;
+        }
+        return n;
+    }
+
+    static boolean accept(int operator, int c) {
+        switch (operator) {
+            case EQ:
+                return c == 0;
+            case NE:
+                return c != 0 && c != Values.INCOMPARABLE;
+            case LT:
+                return c < 0 && c != Values.INCOMPARABLE;
+            case LE:
+                return c <= 0 && c != Values.INCOMPARABLE;
+            case GT:
+                return c > 0;
+            default:
+                return c >= 0;
+        }
+    }
+
+    /**
+     * The operator that gives the same result with its operands swapped.
+     */
+    static int mirror(int operator) {
+        switch (operator) {
+            case LT:
+                return GT;
+            case LE:
+                return GE;
+            case GT:
+                return LT;
+            case GE:
+                return LE;
+            default:
+                return operator;
+        }
+    }
+
+    /**
+     * Removes the rows marked in <tt>nulls</tt> from <tt>out[0..count)</tt>.
+     */
+    static int removeNulls(boolean[] nulls, int[] out, int count) {
+        if (nulls == null) {
+            return count;
+        }
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int row = out[i];
+            out[n] = row;
+            n += nulls[row] ? 0 : 1;
+        }
+        return n;
+    }
+
+    static final class LongColumn extends Column {
+
+        final long[] values;
+        final boolean[] nulls;
+
+        LongColumn(long[] values, boolean[] nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        @Override
+        Object get(int row) {
+            return isNull(row) ? null : (Object) values[row];
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return nulls != null && nulls[row];
+        }
+
+        @Override
+        int compare(int operator, Comparand literal, int[] rows, int count, int[] out) {
+            Number number = literal.number();
+            if (number == null) {
+                return 0;
+            }
+            if (!Values.isIntegral(number)) {
+                return removeNulls(nulls, out, compareAsDouble(operator, number.doubleValue(), rows, count, out));
+            }
+            long[] values = this.values;
+            long v = number.longValue();
+            int n = 0;
+            switch (operator) {
+                case EQ:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += values[row] == v ? 1 : 0;
+                    }
+                    break;
+                case NE:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += values[row] != v ? 1 : 0;
+                    }
+                    break;
+                case LT:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += values[row] < v ? 1 : 0;
+                    }
+                    break;
+                case LE:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += values[row] <= v ? 1 : 0;
+                    }
+                    break;
+                case GT:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += values[row] > v ? 1 : 0;
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += values[row] >= v ? 1 : 0;
+                    }
+                    break;
+            }
+            return removeNulls(nulls, out, n);
+        }
+
+        private int compareAsDouble(int operator, double v, int[] rows, int count, int[] out) {
+            long[] values = this.values;
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                out[n] = row;
+                n += accept(operator, Double.compare(values[row], v)) ? 1 : 0;
+            }
+            return n;
+        }
+
+        /**
+         * Selects the non null rows whose value is in <tt>sorted</tt>.
+         */
+        int selectIn(long[] sorted, int[] rows, int count, int[] out) {
+            long[] values = this.values;
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                out[n] = row;
+                n += Arrays.binarySearch(sorted, values[row]) >= 0 ? 1 : 0;
+            }
+            return removeNulls(nulls, out, n);
+        }
+    }
+
+    static final class DoubleColumn extends Column {
+
+        final double[] values;
+        final boolean[] nulls;
+
+        DoubleColumn(double[] values, boolean[] nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        @Override
+        Object get(int row) {
+            return isNull(row) ? null : (Object) values[row];
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return nulls != null && nulls[row];
+        }
+
+        @Override
+        int compare(int operator, Comparand literal, int[] rows, int count, int[] out) {
+            Number number = literal.number();
+            if (number == null) {
+                return 0;
+            }
+            double[] values = this.values;
+            double v = number.doubleValue();
+            int n = 0;
+            switch (operator) {
+                case EQ:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += Double.compare(values[row], v) == 0 ? 1 : 0;
+                    }
+                    break;
+                case NE:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += Double.compare(values[row], v) != 0 ? 1 : 0;
+                    }
+                    break;
+                case LT:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += Double.compare(values[row], v) < 0 ? 1 : 0;
+                    }
+                    break;
+                case LE:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += Double.compare(values[row], v) <= 0 ? 1 : 0;
+                    }
+                    break;
+                case GT:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += Double.compare(values[row], v) > 0 ? 1 : 0;
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < count; i++) {
+                        int row = rows[i];
+                        out[n] = row;
+                        n += Double.compare(values[row], v) >= 0 ? 1 : 0;
+                    }
+                    break;
+            }
+            return removeNulls(nulls, out, n);
+        }
+    }
+
+    /**
+     * Dictionary encoded text: a predicate is evaluated once per dictionary entry, then the rows
+     * are selected by code. Negative codes are null.
+     */
+    static final class DictionaryColumn extends Column {
+
+        final int[] codes;
+        final String[] dictionary;
+
+        DictionaryColumn(int[] codes, String[] dictionary) {
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        Object get(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary[code];
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return codes[row] < 0;
+        }
+
+        @Override
+        int compare(int operator, Comparand literal, int[] rows, int count, int[] out) {
+            return select(value -> accept(operator, literal.compareFrom(value)), rows, count, out);
+        }
+
+        @Override
+        int select(Predicate<Object> test, int[] rows, int count, int[] out) {
+            boolean[] matches = new boolean[dictionary.length];
+            for (int code = 0; code < dictionary.length; code++) {
+                matches[code] = dictionary[code] != null && test.test(dictionary[code]);
+            }
+            int[] codes = this.codes;
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                int code = codes[row];
+                out[n] = row;
+                n += code >= 0 && matches[code] ? 1 : 0;
+            }
+            return n;
+        }
+    }
+
+    static final class StringColumn extends Column {
+
+        final String[] values;
+
+        StringColumn(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        int compare(int operator, Comparand literal, int[] rows, int count, int[] out) {
+            String[] values = this.values;
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                out[n] = row;
+                n += accept(operator, literal.compareFrom(values[row])) ? 1 : 0;
+            }
+            return n;
+        }
+    }
+}
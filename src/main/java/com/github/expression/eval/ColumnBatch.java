@@ -0,0 +1,95 @@
+package com.github.expression.eval;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A batch of rows held as primitive columns, for evaluation by a {@link BatchPredicate}.
+ * The arrays are used as given, not copied, and must hold at least {@link #size()} values.
+ */
+public final class ColumnBatch {
+
+    private final int size;
+    private final Map<String, Column> columns;
+
+    private ColumnBatch(int size, Map<String, Column> columns) {
+        this.size = size;
+        this.columns = columns;
+    }
+
+    public static Builder builder(int size) {
+        return new Builder(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The column named <tt>name</tt>, or null if the batch has none.
+     */
+    Column column(String name) {
+        return columns.get(name);
+    }
+
+    public static final class Builder {
+
+        private final int size;
+        private final Map<String, Column> columns = new HashMap<>();
+
+        private Builder(int size) {
+            this.size = size;
+        }
+
+        public Builder longs(String name, long[] values) {
+            return longs(name, values, null);
+        }
+
+        /**
+         * @param nulls marks the null rows, or null if the column has none
+         */
+        public Builder longs(String name, long[] values, boolean[] nulls) {
+            checkLength(values.length);
+            columns.put(name, new Column.LongColumn(values, nulls));
+            return this;
+        }
+
+        public Builder doubles(String name, double[] values) {
+            return doubles(name, values, null);
+        }
+
+        /**
+         * @param nulls marks the null rows, or null if the column has none
+         */
+        public Builder doubles(String name, double[] values, boolean[] nulls) {
+            checkLength(values.length);
+            columns.put(name, new Column.DoubleColumn(values, nulls));
+            return this;
+        }
+
+        /**
+         * @param codes index into <tt>dictionary</tt> of each row, negative for null
+         */
+        public Builder dictionary(String name, int[] codes, String[] dictionary) {
+            checkLength(codes.length);
+            columns.put(name, new Column.DictionaryColumn(codes, dictionary));
+            return this;
+        }
+
+        public Builder strings(String name, String[] values) {
+            checkLength(values.length);
+            columns.put(name, new Column.StringColumn(values));
+            return this;
+        }
+
+        public ColumnBatch build() {
+            return new ColumnBatch(size, new HashMap<>(columns));
+        }
+
+        private void checkLength(int length) {
+            if (length < size) {
+                throw new IllegalArgumentException("Column has " + length + " values, batch has " + size + " rows");
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.expression.eval;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A literal prepared once at compile time in every form a record value may be compared with:
+ * as a number, as a date and as text.
+ */
+final class Comparand {
+
+    private final Object value;
+    private final String text;
+    private final Number number;
+    private final LocalDate date;
+
+    private Comparand(Object value) {
+        this.value = value;
+        this.text = value instanceof CharSequence ? value.toString() : null;
+        this.number = value instanceof Number ? (Number) value
+                : text != null ? Values.parseNumber(text) : null;
+        this.date = value instanceof LocalDate ? (LocalDate) value : parseDate(text);
+    }
+
+    static Comparand of(Object value) {
+        return value == null ? null : new Comparand(value);
+    }
+
+    /**
+     * The literal as a number, or null if it is not numeric.
+     */
+    Number number() {
+        return number;
+    }
+
+    /**
+     * Compares a record value with this literal, or returns {@link Values#INCOMPARABLE}.
+     */
+    int compareFrom(Object other) {
+        if (other == null) {
+            return Values.INCOMPARABLE;
+        }
+        if (other instanceof Number) {
+            return number == null ? Values.INCOMPARABLE : Values.compareNumbers((Number) other, number);
+        }
+        if (other instanceof CharSequence) {
+            if (text != null) {
+                return other.toString().compareTo(text);
+            }
+            return Values.compare(other, value);
+        }
+        if (other instanceof LocalDate) {
+            return date == null ? Values.INCOMPARABLE : ((LocalDate) other).compareTo(date);
+        }
+        return Values.compare(other, value);
+    }
+
+    private static LocalDate parseDate(String text) {
+        if (text == null || text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return null;
+        }
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
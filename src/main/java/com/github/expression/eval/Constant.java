@@ -0,0 +1,46 @@
+package com.github.expression.eval;
+
+import java.util.function.Predicate;
+
+/**
+ * Compiled sub-expression whose value does not depend on the record. The compiler folds
+ * operators over constants into a single constant.
+ */
+final class Constant implements ToValueFunction, Predicate<Row> {
+
+    static final Constant NULL = new Constant(null);
+    static final Constant TRUE = new Constant(Boolean.TRUE);
+    static final Constant FALSE = new Constant(Boolean.FALSE);
+
+    private final Object value;
+    private final boolean truth;
+
+    private Constant(Object value) {
+        this.value = value;
+        this.truth = Values.isTrue(value);
+    }
+
+    static Constant of(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        }
+        return new Constant(value);
+    }
+
+    Object value() {
+        return value;
+    }
+
+    @Override
+    public Object apply(Row record) {
+        return value;
+    }
+
+    @Override
+    public boolean test(Row record) {
+        return truth;
+    }
+}
@@ -0,0 +1,430 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ConstantHolder;
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.ValueSet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Compiles an {@link ExpressionTree} into a reusable closure tree for filtering in-memory records.
+ * <p>
+ * Operator dispatch, literal parsing and LIKE pattern translation happen once here, and operators
+ * applied to constants only are folded into a constant. The compiled predicates are immutable and
+ * may be shared between threads.
+ * <p>
+ * Names evaluate to {@link Row#get(String) record attributes}, member and subscript access
+ * reads from nested records, maps, lists and arrays. Comparisons involving null are false.
+ */
+public class ExpressionCompiler {
+
+    public Predicate<Row> compile(ExpressionTree tree) {
+        return predicate(tree);
+    }
+
+    public ToValueFunction compileValue(ExpressionTree tree) {
+        return value(tree);
+    }
+
+    private Predicate<Row> predicate(ExpressionTree tree) {
+        switch (tree.getOperator()) {
+            case ConstantHolder.OP_VALUE:
+                return predicate(tree.getLeft());
+            case ConstantHolder.OP_TRUE:
+                return Constant.TRUE;
+            case ConstantHolder.OP_FALSE:
+                return Constant.FALSE;
+            case ConstantHolder.OP_AND:
+                return and(operands(tree, ConstantHolder.OP_AND));
+            case ConstantHolder.OP_OR:
+                return or(operands(tree, ConstantHolder.OP_OR));
+            case ConstantHolder.OP_NOT:
+                return not(predicate(tree.getLeft()));
+            case ConstantHolder.OP_IS:
+                return isNull(value(tree.getLeft()));
+            case ConstantHolder.OP_EQ:
+                return comparison(tree, c -> c == 0);
+            case ConstantHolder.OP_NE:
+                return comparison(tree, c -> c != 0);
+            case ConstantHolder.OP_LT:
+                return comparison(tree, c -> c < 0);
+            case ConstantHolder.OP_LE:
+                return comparison(tree, c -> c <= 0);
+            case ConstantHolder.OP_GT:
+                return comparison(tree, c -> c > 0);
+            case ConstantHolder.OP_GE:
+                return comparison(tree, c -> c >= 0);
+            case ConstantHolder.OP_BETWEEN:
+                return between(tree);
+            case ConstantHolder.OP_IN:
+                return in(tree);
+            case ConstantHolder.OP_LIKE:
+                return like(tree, LikeMatcher::like);
+            case ConstantHolder.OP_LIKEFILE:
+                return like(tree, LikeMatcher::likeFile);
+            case ConstantHolder.OP_CONTAINS:
+                return contains(tree);
+            default:
+                ToValueFunction value = value(tree);
+                if (value instanceof Constant) {
+                    return (Constant) value;
+                }
+                return record -> Values.isTrue(value.apply(record));
+        }
+    }
+
+    private ToValueFunction value(ExpressionTree tree) {
+        switch (tree.getOperator()) {
+            case ConstantHolder.OP_NOP:
+                return operand(tree);
+            case ConstantHolder.OP_VALUE:
+                return value(tree.getLeft());
+            case ConstantHolder.OP_ADD:
+                return arithmetic(tree, Values::add);
+            case ConstantHolder.OP_SUB:
+                return arithmetic(tree, Values::subtract);
+            case ConstantHolder.OP_MUL:
+                return arithmetic(tree, Values::multiply);
+            case ConstantHolder.OP_DIV:
+                return arithmetic(tree, Values::divide);
+            case ConstantHolder.OP_MOD:
+                return arithmetic(tree, Values::modulo);
+            case ConstantHolder.OP_EXPO:
+                return arithmetic(tree, Values::power);
+            case ConstantHolder.OP_CONCAT:
+                return arithmetic(tree, Values::concat);
+            case ConstantHolder.OP_NEG:
+                return unary(tree, Values::negate);
+            case ConstantHolder.OP_POS:
+                return unary(tree, Values::plus);
+            case ConstantHolder.OP_MEMBER: {
+                ToValueFunction target = value(tree.getLeft());
+                String name = tree.getRight().getValue();
+                return fold(record -> Values.member(target.apply(record), name), target);
+            }
+            case ConstantHolder.OP_SUBSCR: {
+                ToValueFunction target = value(tree.getLeft());
+                ToValueFunction index = value(tree.getRight());
+                return fold(record -> Values.subscript(target.apply(record), index.apply(record)), target, index);
+            }
+            default:
+                Predicate<Row> predicate = predicate(tree);
+                if (predicate instanceof Constant) {
+                    return (Constant) predicate;
+                }
+                return record -> predicate.test(record);
+        }
+    }
+
+    static ToValueFunction operand(ExpressionTree value) {
+        switch (value.getType()) {
+            case STRING:
+            case DATE:
+                return Constant.of(value.getStringValue());
+            case LONG:
+                return Constant.of(value.getLongValue());
+            case DECIMAL:
+                return Constant.of(value.getDecimalValue().doubleValue());
+            case NULL:
+                return Constant.NULL;
+            default:
+                String name = value.getValue();
+                return record -> record.get(name);
+        }
+    }
+
+    private ToValueFunction arithmetic(ExpressionTree tree, BinaryOperator<Object> operator) {
+        ToValueFunction left = value(tree.getLeft());
+        ToValueFunction right = value(tree.getRight());
+        return fold(record -> operator.apply(left.apply(record), right.apply(record)), left, right);
+    }
+
+    private ToValueFunction unary(ExpressionTree tree, UnaryOperator<Object> operator) {
+        ToValueFunction operand = value(tree.getLeft());
+        return fold(record -> operator.apply(operand.apply(record)), operand);
+    }
+
+    private Predicate<Row> and(List<ExpressionTree> operands) {
+        List<Predicate<Row>> predicates = new ArrayList<>(operands.size());
+        for (ExpressionTree operand : operands) {
+            Predicate<Row> predicate = predicate(operand);
+            if (predicate instanceof Constant) {
+                if (!predicate.test(null)) {
+                    return Constant.FALSE;
+                }
+            } else {
+                predicates.add(predicate);
+            }
+        }
+        if (predicates.isEmpty()) {
+            return Constant.TRUE;
+        }
+        if (predicates.size() == 1) {
+            return predicates.get(0);
+        }
+        if (predicates.size() == 2) {
+            Predicate<Row> first = predicates.get(0);
+            Predicate<Row> second = predicates.get(1);
+            return record -> first.test(record) && second.test(record);
+        }
+        Predicate<Row>[] all = toArray(predicates);
+        return record -> {
+            for (Predicate<Row> predicate : all) {
+                if (!predicate.test(record)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private Predicate<Row> or(List<ExpressionTree> operands) {
+        List<Predicate<Row>> predicates = new ArrayList<>(operands.size());
+        for (ExpressionTree operand : operands) {
+            Predicate<Row> predicate = predicate(operand);
+            if (predicate instanceof Constant) {
+                if (predicate.test(null)) {
+                    return Constant.TRUE;
+                }
+            } else {
+                predicates.add(predicate);
+            }
+        }
+        if (predicates.isEmpty()) {
+            return Constant.FALSE;
+        }
+        if (predicates.size() == 1) {
+            return predicates.get(0);
+        }
+        if (predicates.size() == 2) {
+            Predicate<Row> first = predicates.get(0);
+            Predicate<Row> second = predicates.get(1);
+            return record -> first.test(record) || second.test(record);
+        }
+        Predicate<Row>[] all = toArray(predicates);
+        return record -> {
+            for (Predicate<Row> predicate : all) {
+                if (predicate.test(record)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate<Row>[] toArray(List<Predicate<Row>> predicates) {
+        return predicates.toArray(new Predicate[0]);
+    }
+
+    private static Predicate<Row> not(Predicate<Row> predicate) {
+        if (predicate instanceof Constant) {
+            return predicate.test(null) ? Constant.FALSE : Constant.TRUE;
+        }
+        return record -> !predicate.test(record);
+    }
+
+    private static Predicate<Row> isNull(ToValueFunction value) {
+        return foldPredicate(record -> value.apply(record) == null, value);
+    }
+
+    private Predicate<Row> comparison(ExpressionTree tree, IntPredicate accept) {
+        ToValueFunction left = value(tree.getLeft());
+        ToValueFunction right = value(tree.getRight());
+        return compare(left, right, accept);
+    }
+
+    private static Predicate<Row> compare(ToValueFunction left, ToValueFunction right, IntPredicate accept) {
+        if (left instanceof Constant && right instanceof Constant) {
+            int c = Values.compare(((Constant) left).value(), ((Constant) right).value());
+            return Constant.of(c != Values.INCOMPARABLE && accept.test(c));
+        }
+        if (right instanceof Constant) {
+            Comparand comparand = Comparand.of(((Constant) right).value());
+            if (comparand == null) {
+                return Constant.FALSE;
+            }
+            return record -> {
+                int c = comparand.compareFrom(left.apply(record));
+                return c != Values.INCOMPARABLE && accept.test(c);
+            };
+        }
+        if (left instanceof Constant) {
+            Comparand comparand = Comparand.of(((Constant) left).value());
+            if (comparand == null) {
+                return Constant.FALSE;
+            }
+            return record -> {
+                int c = comparand.compareFrom(right.apply(record));
+                return c != Values.INCOMPARABLE && accept.test(-Integer.signum(c));
+            };
+        }
+        return record -> {
+            int c = Values.compare(left.apply(record), right.apply(record));
+            return c != Values.INCOMPARABLE && accept.test(c);
+        };
+    }
+
+    private Predicate<Row> between(ExpressionTree tree) {
+        ToValueFunction subject = value(tree.getLeft());
+        Predicate<Row> low = compare(subject, value(tree.getRight().getLeft()), c -> c >= 0);
+        Predicate<Row> high = compare(subject, value(tree.getRight().getRight()), c -> c <= 0);
+        if (low == Constant.FALSE || high == Constant.FALSE) {
+            return Constant.FALSE;
+        }
+        if (low instanceof Constant) {
+            return high;
+        }
+        if (high instanceof Constant) {
+            return low;
+        }
+        return record -> low.test(record) && high.test(record);
+    }
+
+    private Predicate<Row> in(ExpressionTree tree) {
+        ToValueFunction subject = value(tree.getLeft());
+        ValueSet valueSet = tree.getRight().getValueSet();
+        if (valueSet != null) {
+            InSet set = new InSet(valueSet);
+            return foldPredicate(record -> set.contains(subject.apply(record)), subject);
+        }
+        List<ToValueFunction> elements = new ArrayList<>();
+        for (ExpressionTree item : tree.getRight().getItems()) {
+            elements.add(value(item));
+        }
+
+        boolean constant = true;
+        for (ToValueFunction element : elements) {
+            constant &= element instanceof Constant;
+        }
+        if (constant) {
+            List<Object> values = new ArrayList<>(elements.size());
+            for (ToValueFunction element : elements) {
+                values.add(((Constant) element).value());
+            }
+            InSet set = new InSet(values);
+            return foldPredicate(record -> set.contains(subject.apply(record)), subject);
+        }
+
+        ToValueFunction[] all = elements.toArray(new ToValueFunction[0]);
+        return record -> {
+            Object value = subject.apply(record);
+            if (value == null) {
+                return false;
+            }
+            for (ToValueFunction element : all) {
+                if (Values.compare(value, element.apply(record)) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private Predicate<Row> like(ExpressionTree tree, Function<String, LikeMatcher> compiler) {
+        ToValueFunction subject = value(tree.getLeft());
+        ToValueFunction pattern = value(tree.getRight());
+        if (pattern instanceof Constant) {
+            Object text = ((Constant) pattern).value();
+            if (text == null) {
+                return Constant.FALSE;
+            }
+            LikeMatcher matcher = compiler.apply(text.toString());
+            return foldPredicate(record -> matcher.test(subject.apply(record)), subject);
+        }
+        return record -> {
+            Object value = subject.apply(record);
+            Object text = pattern.apply(record);
+            return value != null && text != null && compiler.apply(text.toString()).matches(value.toString());
+        };
+    }
+
+    private Predicate<Row> contains(ExpressionTree tree) {
+        ToValueFunction subject = value(tree.getLeft());
+        ToValueFunction part = value(tree.getRight());
+        if (part instanceof Constant && !(subject instanceof Constant)) {
+            Object element = ((Constant) part).value();
+            if (element == null) {
+                return Constant.FALSE;
+            }
+            String text = element.toString();
+            return record -> contains(subject.apply(record), element, text);
+        }
+        return foldPredicate(record -> {
+            Object element = part.apply(record);
+            return element != null && contains(subject.apply(record), element, element.toString());
+        }, subject, part);
+    }
+
+    /**
+     * Whether a collection has an item equal to <tt>element</tt>, or other text has <tt>text</tt>
+     * as a substring.
+     */
+    private static boolean contains(Object value, Object element, String text) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                if (Values.compare(item, element) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return value.toString().contains(text);
+    }
+
+    /**
+     * Collects the operands of a chain of the same associative operator, left to right, without
+     * recursing along the chain. The operands of n-ary nodes of the optimizer are expanded in place.
+     */
+    static List<ExpressionTree> operands(ExpressionTree tree, String operator) {
+        List<ExpressionTree> operands = new ArrayList<>();
+        Deque<ExpressionTree> pending = new ArrayDeque<>();
+        pending.push(tree);
+        while (!pending.isEmpty()) {
+            ExpressionTree node = pending.pop();
+            if (operator.equals(node.getOperator())) {
+                List<ExpressionTree> items = node.getItems();
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    pending.push(items.get(i));
+                }
+                if (items.isEmpty()) {
+                    pending.push(node.getRight());
+                    pending.push(node.getLeft());
+                }
+            } else {
+                operands.add(node);
+            }
+        }
+        return operands;
+    }
+
+    private static ToValueFunction fold(ToValueFunction function, ToValueFunction... inputs) {
+        for (ToValueFunction input : inputs) {
+            if (!(input instanceof Constant)) {
+                return function;
+            }
+        }
+        return Constant.of(function.apply(null));
+    }
+
+    private static Predicate<Row> foldPredicate(Predicate<Row> predicate, ToValueFunction... inputs) {
+        for (ToValueFunction input : inputs) {
+            if (!(input instanceof Constant)) {
+                return predicate;
+            }
+        }
+        return Constant.of(predicate.test(null));
+    }
+}
@@ -0,0 +1,225 @@
+package com.github.expression.eval;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Defines one small class per compiled expression that holds its method handle in a
+ * <tt>static final</tt> field. The JIT treats such a field as a constant, so the handle chain is
+ * inlined into the caller of <tt>test</tt> or <tt>apply</tt>, which it does not do for a handle
+ * read from an instance field.
+ * <p>
+ * The class initializer takes the handle from its own loader through {@link Supplier}, a public
+ * type, because a class of another loader cannot reach the package-private types here. Each class
+ * has its own loader, so it is unloaded together with the compiled expression.
+ */
+final class HandleClassLoader extends ClassLoader implements Supplier<Object> {
+
+    private static final AtomicLong counter = new AtomicLong();
+
+    private static final String ROW = Row.class.getName().replace('.', '/');
+    private static final String METHOD_HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String HANDLE_FIELD = "HANDLE";
+
+    private final MethodHandle handle;
+
+    private HandleClassLoader(MethodHandle handle) {
+        super(HandleClassLoader.class.getClassLoader());
+        this.handle = handle;
+    }
+
+    @Override
+    public Object get() {
+        return handle;
+    }
+
+    /**
+     * A predicate calling <tt>handle</tt>, which must be of type <tt>(Row)boolean</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    static Predicate<Row> predicate(MethodHandle handle) {
+        return (Predicate<Row>) instantiate(handle, "java/util/function/Predicate", "test",
+                "(Ljava/lang/Object;)Z", "(L" + ROW + ";)Z", true);
+    }
+
+    /**
+     * A function calling <tt>handle</tt>, which must be of type <tt>(Row)Object</tt>.
+     */
+    static ToValueFunction function(MethodHandle handle) {
+        String descriptor = "(L" + ROW + ";)Ljava/lang/Object;";
+        return (ToValueFunction) instantiate(handle, ToValueFunction.class.getName().replace('.', '/'), "apply",
+                descriptor, descriptor, false);
+    }
+
+    private static Object instantiate(MethodHandle handle, String type, String method, String descriptor,
+                                      String handleDescriptor, boolean cast) {
+        String name = HandleClassLoader.class.getPackage().getName() + ".CompiledExpression$" + counter.incrementAndGet();
+        byte[] bytes = classFile(name.replace('.', '/'), type, method, descriptor, handleDescriptor, cast);
+        HandleClassLoader loader = new HandleClassLoader(handle);
+        try {
+            return loader.defineClass(name, bytes, 0, bytes.length).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A class implementing <tt>method</tt> of the interface <tt>type</tt> by passing its argument,
+     * cast to Row if <tt>cast</tt>, to <tt>invokeExact</tt> of the handle in its static field.
+     */
+    private static byte[] classFile(String name, String type, String method, String descriptor,
+                                    String handleDescriptor, boolean cast) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.type(name);
+        int objectClass = pool.type("java/lang/Object");
+        int interfaceClass = pool.type(type);
+        int field = pool.member(9, name, HANDLE_FIELD, "L" + METHOD_HANDLE + ";");
+        int objectInit = pool.member(10, "java/lang/Object", "<init>", "()V");
+        int getClassLoader = pool.member(10, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;");
+        int supplierClass = pool.type("java/util/function/Supplier");
+        int supplierGet = pool.member(11, "java/util/function/Supplier", "get", "()Ljava/lang/Object;");
+        int handleClass = pool.type(METHOD_HANDLE);
+        int rowClass = pool.type(ROW);
+        int invokeExact = pool.member(10, METHOD_HANDLE, "invokeExact", handleDescriptor);
+        boolean bool = descriptor.endsWith("Z");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(objectClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+
+            out.writeShort(1);
+            out.writeShort(0x001A); // private static final
+            out.writeShort(pool.utf8(HANDLE_FIELD));
+            out.writeShort(pool.utf8("L" + METHOD_HANDLE + ";"));
+            out.writeShort(0);
+
+            out.writeShort(3);
+            // public <init>() { super(); }
+            writeMethod(out, pool, 0x0001, "<init>", "()V", 1, 1,
+                    0x2A, 0xB7, objectInit >> 8, objectInit & 0xFF, 0xB1);
+            // static { HANDLE = (MethodHandle) ((Supplier) <this>.class.getClassLoader()).get(); }
+            writeMethod(out, pool, 0x0008, "<clinit>", "()V", 1, 0,
+                    0x13, thisClass >> 8, thisClass & 0xFF,
+                    0xB6, getClassLoader >> 8, getClassLoader & 0xFF,
+                    0xC0, supplierClass >> 8, supplierClass & 0xFF,
+                    0xB9, supplierGet >> 8, supplierGet & 0xFF, 1, 0,
+                    0xC0, handleClass >> 8, handleClass & 0xFF,
+                    0xB3, field >> 8, field & 0xFF,
+                    0xB1);
+            // public method(argument) { return HANDLE.invokeExact(argument); }
+            int[] call = cast
+                    ? new int[]{0xB2, field >> 8, field & 0xFF, 0x2B, 0xC0, rowClass >> 8, rowClass & 0xFF,
+                    0xB6, invokeExact >> 8, invokeExact & 0xFF, bool ? 0xAC : 0xB0}
+                    : new int[]{0xB2, field >> 8, field & 0xFF, 0x2B,
+                    0xB6, invokeExact >> 8, invokeExact & 0xFF, bool ? 0xAC : 0xB0};
+            writeMethod(out, pool, 0x0001, method, descriptor, 2, 2, call);
+
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(52);
+            pool.write(out);
+            body.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return file.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, ConstantPool pool, int access, String name,
+                                    String descriptor, int maxStack, int maxLocals, int... code) throws IOException {
+        out.writeShort(access);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(pool.utf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        for (int b : code) {
+            out.writeByte(b);
+        }
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * The constants of a class file, each written once. UTF-8 entries are tagged 1, classes 7,
+     * fields 9, methods 10, interface methods 11 and name and type pairs 12.
+     */
+    private static final class ConstantPool {
+
+        private final Map<String, Integer> indexes = new LinkedHashMap<>();
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        int utf8(String value) {
+            Integer index = indexes.get("1:" + value);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add("1:" + value);
+        }
+
+        int type(String name) {
+            return entry(7, name, utf8(name), -1);
+        }
+
+        int member(int tag, String owner, String name, String descriptor) {
+            int nameAndType = entry(12, name + ':' + descriptor, utf8(name), utf8(descriptor));
+            return entry(tag, owner + '.' + name + ':' + descriptor, type(owner), nameAndType);
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(indexes.size() + 1);
+            bytes.writeTo(target);
+        }
+
+        private int entry(int tag, String key, int first, int second) {
+            Integer index = indexes.get(tag + ":" + key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add(tag + ":" + key);
+        }
+
+        private int add(String key) {
+            int index = indexes.size() + 1;
+            indexes.put(key, index);
+            return index;
+        }
+    }
+}
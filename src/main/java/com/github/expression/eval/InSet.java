@@ -0,0 +1,98 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.LiteralType;
+import com.github.expression.tree.ValueSet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lookup for an IN list of literals, matching a value exactly when <tt>=</tt> would match one of
+ * them, see {@link Values#compare}: numbers by value whatever their boxed type, numeric text against
+ * numbers by the number it spells, and text against text by its characters.
+ */
+final class InSet {
+
+    // Every listed number, numeric text included, for number values
+    private final Set<Object> numbers = new HashSet<>();
+    // The listed numbers only, for text values, which match listed text by its characters
+    private final Set<Object> numberLiterals = new HashSet<>();
+    private final Set<String> strings = new HashSet<>();
+    // Listed values of other types, matched by equality
+    private final Set<Object> others = new HashSet<>();
+    // Sorted values of a list of literals of one type, searched instead of the hash sets
+    private final ValueSet valueSet;
+    private volatile InSet hashed;
+
+    InSet(Iterable<?> values) {
+        this.valueSet = null;
+        for (Object value : values) {
+            if (value instanceof Number) {
+                Object number = Values.canonicalNumber((Number) value);
+                numbers.add(number);
+                numberLiterals.add(number);
+            } else if (value instanceof CharSequence) {
+                Number number = Values.parseNumber(value.toString());
+                if (number != null) {
+                    numbers.add(Values.canonicalNumber(number));
+                }
+                strings.add(value.toString());
+            } else if (value != null) {
+                others.add(value);
+            }
+        }
+    }
+
+    InSet(ValueSet valueSet) {
+        this.valueSet = valueSet;
+    }
+
+    boolean contains(Object value) {
+        if (valueSet != null) {
+            return containsValue(value);
+        }
+        if (value instanceof Number) {
+            return numbers.contains(Values.canonicalNumber((Number) value));
+        }
+        if (value instanceof CharSequence) {
+            String text = value.toString();
+            return strings.contains(text) || !numberLiterals.isEmpty() && numberLiterals.contains(numberOf(text));
+        }
+        return value != null && others.contains(value);
+    }
+
+    /**
+     * The canonical number spelled by <tt>text</tt>, or null.
+     */
+    private static Object numberOf(String text) {
+        Number number = Values.parseNumber(text);
+        return number != null ? Values.canonicalNumber(number) : null;
+    }
+
+    private boolean containsValue(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (valueSet.getType() == LiteralType.LONG) {
+            if (value instanceof Number) {
+                return containsLong(Values.canonicalNumber((Number) value));
+            }
+            // Text matches the listed number it spells
+            return value instanceof CharSequence && containsLong(numberOf(value.toString()));
+        }
+        if (value instanceof Number) {
+            // Numbers against numeric strings, rare enough to build the hash sets for
+            InSet hashed = this.hashed;
+            if (hashed == null) {
+                this.hashed = hashed = new InSet(Arrays.asList(valueSet.toStringArray()));
+            }
+            return hashed.contains(value);
+        }
+        return value instanceof CharSequence && valueSet.contains(value.toString());
+    }
+
+    private boolean containsLong(Object number) {
+        return number instanceof Long && valueSet.contains((long) (Long) number);
+    }
+}
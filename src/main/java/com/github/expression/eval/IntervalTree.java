@@ -0,0 +1,191 @@
+package com.github.expression.eval;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Intervals over double keys, each bound open, closed or infinite, answering which of them contain
+ * a point. A treap ordered by lower bound, each node holding the largest upper bound of its subtree,
+ * so that a stabbing query skips the subtrees that end before the point and, sorted by lower bound,
+ * those that start after it. Half-bounded intervals, the usual <tt>x &gt; 5</tt>, are found in
+ * O(log n + k); bounded ones in O(log n + k) on most inputs and O(k log n) at worst.
+ * <p>
+ * Not thread-safe, {@link RuleIndex} guards it with its lock.
+ */
+final class IntervalTree<V> {
+
+    private final Random random = new Random();
+    private Node<V> root;
+    private long sequence;
+    private int size;
+
+    /**
+     * Adds an interval, returning the handle to remove it with.
+     */
+    Node<V> insert(double low, boolean lowInclusive, double high, boolean highInclusive, V value) {
+        Node<V> node = new Node<>(low, lowInclusive, high, highInclusive, value, sequence++, random.nextInt());
+        root = insert(root, node);
+        size++;
+        return node;
+    }
+
+    void remove(Node<V> node) {
+        root = remove(root, node);
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Passes the value of every interval containing <tt>point</tt> to <tt>consumer</tt>.
+     */
+    void stab(double point, Consumer<? super V> consumer) {
+        if (root == null || Double.isNaN(point)) {
+            return;
+        }
+        Deque<Node<V>> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node<V> node = pending.pop();
+            if (node.max < point) {
+                continue;
+            }
+            if (node.left != null) {
+                pending.push(node.left);
+            }
+            // Lower bounds only grow to the right
+            if (node.low <= point) {
+                if (node.contains(point)) {
+                    consumer.accept(node.value);
+                }
+                if (node.right != null) {
+                    pending.push(node.right);
+                }
+            }
+        }
+    }
+
+    private Node<V> insert(Node<V> tree, Node<V> node) {
+        if (tree == null) {
+            return node;
+        }
+        if (node.compareTo(tree) < 0) {
+            tree.left = insert(tree.left, node);
+            if (tree.left.priority > tree.priority) {
+                tree = rotateRight(tree);
+            }
+        } else {
+            tree.right = insert(tree.right, node);
+            if (tree.right.priority > tree.priority) {
+                tree = rotateLeft(tree);
+            }
+        }
+        tree.update();
+        return tree;
+    }
+
+    private Node<V> remove(Node<V> tree, Node<V> node) {
+        if (tree == null) {
+            throw new IllegalStateException("Interval not found");
+        }
+        if (tree == node) {
+            return merge(tree.left, tree.right);
+        }
+        if (node.compareTo(tree) < 0) {
+            tree.left = remove(tree.left, node);
+        } else {
+            tree.right = remove(tree.right, node);
+        }
+        tree.update();
+        return tree;
+    }
+
+    /**
+     * Joins two treaps whose keys are all ordered, <tt>left</tt> first.
+     */
+    private Node<V> merge(Node<V> left, Node<V> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private Node<V> rotateRight(Node<V> node) {
+        Node<V> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        return left;
+    }
+
+    private Node<V> rotateLeft(Node<V> node) {
+        Node<V> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        return right;
+    }
+
+    static final class Node<V> {
+        final double low;
+        final boolean lowInclusive;
+        final double high;
+        final boolean highInclusive;
+        final V value;
+        private final long sequence;
+        private final int priority;
+        private Node<V> left;
+        private Node<V> right;
+        // Largest upper bound of the subtree
+        private double max;
+
+        Node(double low, boolean lowInclusive, double high, boolean highInclusive, V value, long sequence, int priority) {
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.value = value;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.max = high;
+        }
+
+        boolean contains(double point) {
+            return (lowInclusive ? point >= low : point > low) && (highInclusive ? point <= high : point < high);
+        }
+
+        private int compareTo(Node<V> other) {
+            // Ties ordered by upper bound, so that the intervals of x < c are searched as a sorted list
+            int c = Double.compare(low, other.low);
+            if (c == 0) {
+                c = Double.compare(high, other.high);
+            }
+            return c != 0 ? c : Long.compare(sequence, other.sequence);
+        }
+
+        private void update() {
+            double max = high;
+            if (left != null && left.max > max) {
+                max = left.max;
+            }
+            if (right != null && right.max > max) {
+                max = right.max;
+            }
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.github.expression.eval;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A LIKE or LIKEFILE pattern compiled once: a plain string comparison when the pattern is an exact
+ * value, a prefix, a suffix or a substring, otherwise a scan of its fixed segments. Each segment
+ * between two multi-character wildcards is searched once, leftmost first, so matching takes at most
+ * the length of the value times the length of the pattern and never backtracks. A single-character
+ * wildcard matches one code point. Compiled matchers are cached per pattern. Thread-safe.
+ */
+abstract class LikeMatcher {
+
+    private static final int CACHE_SIZE = 1_000;
+
+    private static final LoadingCache<String, LikeMatcher> LIKE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build(CacheLoader.from(pattern -> compile(pattern, '%', '_')));
+    private static final LoadingCache<String, LikeMatcher> LIKE_FILE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build(CacheLoader.from(pattern -> compile(pattern, '*', '?')));
+
+    /**
+     * SQL LIKE: {@code %} matches any sequence and {@code _} any single character.
+     */
+    static LikeMatcher like(String pattern) {
+        return LIKE.getUnchecked(pattern);
+    }
+
+    /**
+     * File name glob: {@code *} matches any sequence and {@code ?} any single character.
+     */
+    static LikeMatcher likeFile(String pattern) {
+        return LIKE_FILE.getUnchecked(pattern);
+    }
+
+    abstract boolean matches(String value);
+
+    /**
+     * Whether the text of <tt>value</tt> matches, false for null.
+     */
+    final boolean test(Object value) {
+        return value != null && matches(value.toString());
+    }
+
+    static LikeMatcher compile(String pattern, char any, char one) {
+        // Fixed segments between runs of the multi-character wildcard
+        List<String> segments = new ArrayList<>();
+        boolean wildcards = false;
+        int start = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if (ch == any) {
+                if (start < i || segments.isEmpty()) {
+                    segments.add(pattern.substring(start, i));
+                }
+                start = i + 1;
+            } else if (ch == one) {
+                wildcards = true;
+            }
+        }
+        segments.add(pattern.substring(start));
+        // Empty segments only remain at the ends, for a pattern starting or ending with the wildcard
+        boolean anchoredStart = !segments.get(0).isEmpty() || segments.size() == 1;
+        boolean anchoredEnd = !segments.get(segments.size() - 1).isEmpty() || segments.size() == 1;
+        if (!wildcards) {
+            if (segments.size() == 1) {
+                return new Exact(segments.get(0));
+            }
+            String first = segments.get(0);
+            String last = segments.get(segments.size() - 1);
+            if (segments.size() == 2) {
+                if (first.isEmpty() && last.isEmpty()) {
+                    return Any.INSTANCE;
+                }
+                if (last.isEmpty()) {
+                    return new Prefix(first);
+                }
+                if (first.isEmpty()) {
+                    return new Suffix(last);
+                }
+            } else if (segments.size() == 3 && first.isEmpty() && last.isEmpty()) {
+                return new Contains(segments.get(1));
+            }
+        }
+        List<String> fixed = new ArrayList<>();
+        for (String segment : segments) {
+            if (!segment.isEmpty()) {
+                fixed.add(segment);
+            }
+        }
+        return new Segments(fixed.toArray(new String[0]), anchoredStart, anchoredEnd, one);
+    }
+
+    private static final class Any extends LikeMatcher {
+        static final Any INSTANCE = new Any();
+
+        @Override
+        boolean matches(String value) {
+            return true;
+        }
+    }
+
+    private static final class Exact extends LikeMatcher {
+        private final String text;
+
+        Exact(String text) {
+            this.text = text;
+        }
+
+        @Override
+        boolean matches(String value) {
+            return value.equals(text);
+        }
+    }
+
+    private static final class Prefix extends LikeMatcher {
+        private final String prefix;
+
+        Prefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        boolean matches(String value) {
+            return value.startsWith(prefix);
+        }
+    }
+
+    private static final class Suffix extends LikeMatcher {
+        private final String suffix;
+
+        Suffix(String suffix) {
+            this.suffix = suffix;
+        }
+
+        @Override
+        boolean matches(String value) {
+            return value.endsWith(suffix);
+        }
+    }
+
+    private static final class Contains extends LikeMatcher {
+        private final String part;
+
+        Contains(String part) {
+            this.part = part;
+        }
+
+        @Override
+        boolean matches(String value) {
+            return value.contains(part);
+        }
+    }
+
+    /**
+     * The general case: the first segment matched at the start unless the pattern starts with the
+     * multi-character wildcard, the last one at the end unless it ends with it, and the ones in
+     * between at their leftmost position after the previous one.
+     */
+    private static final class Segments extends LikeMatcher {
+        private final String[] segments;
+        private final boolean anchoredStart;
+        private final boolean anchoredEnd;
+        private final char one;
+        private final boolean[] literal;
+
+        Segments(String[] segments, boolean anchoredStart, boolean anchoredEnd, char one) {
+            this.segments = segments;
+            this.anchoredStart = anchoredStart;
+            this.anchoredEnd = anchoredEnd;
+            this.one = one;
+            this.literal = new boolean[segments.length];
+            for (int i = 0; i < segments.length; i++) {
+                literal[i] = segments[i].indexOf(one) < 0;
+            }
+        }
+
+        @Override
+        boolean matches(String value) {
+            int from = 0;
+            int to = value.length();
+            int first = 0;
+            int last = segments.length - 1;
+            if (anchoredStart) {
+                from = matchForward(segments[0], value, 0, to);
+                if (from < 0) {
+                    return false;
+                }
+                first = 1;
+                if (segments.length == 1 && anchoredEnd) {
+                    return from == to;
+                }
+            }
+            if (anchoredEnd && last >= first) {
+                to = matchBackward(segments[last], value, from, to);
+                if (to < 0) {
+                    return false;
+                }
+                last--;
+            }
+            for (int i = first; i <= last; i++) {
+                from = find(i, value, from, to);
+                if (from < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The end of the leftmost occurrence of segment <tt>index</tt> within <tt>[from, to)</tt>, or -1.
+         */
+        private int find(int index, String value, int from, int to) {
+            String segment = segments[index];
+            if (literal[index]) {
+                int found = value.indexOf(segment, from);
+                return found >= 0 && found + segment.length() <= to ? found + segment.length() : -1;
+            }
+            for (int start = from; start < to; start++) {
+                int end = matchForward(segment, value, start, to);
+                if (end >= 0) {
+                    return end;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * The end of <tt>segment</tt> matched at <tt>start</tt> without going past <tt>to</tt>, or -1.
+         */
+        private int matchForward(String segment, String value, int start, int to) {
+            int i = start;
+            for (int j = 0; j < segment.length(); j++) {
+                if (i >= to) {
+                    return -1;
+                }
+                char ch = segment.charAt(j);
+                if (ch == one) {
+                    i += Character.isHighSurrogate(value.charAt(i)) && i + 1 < to && Character.isLowSurrogate(value.charAt(i + 1)) ? 2 : 1;
+                } else if (value.charAt(i++) != ch) {
+                    return -1;
+                }
+            }
+            return i;
+        }
+
+        /**
+         * The start of <tt>segment</tt> matched so as to end at <tt>end</tt>, not before <tt>from</tt>, or -1.
+         */
+        private int matchBackward(String segment, String value, int from, int end) {
+            int i = end;
+            for (int j = segment.length() - 1; j >= 0; j--) {
+                if (i <= from) {
+                    return -1;
+                }
+                char ch = segment.charAt(j);
+                if (ch == one) {
+                    i -= Character.isLowSurrogate(value.charAt(i - 1)) && i - 2 >= from && Character.isHighSurrogate(value.charAt(i - 2)) ? 2 : 1;
+                } else if (value.charAt(--i) != ch) {
+                    return -1;
+                }
+            }
+            return i;
+        }
+    }
+}
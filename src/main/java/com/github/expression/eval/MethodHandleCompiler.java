@@ -0,0 +1,452 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ConstantHolder;
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.ValueSet;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Compiles an {@link ExpressionTree} into a single {@link MethodHandle} chain, so that the JIT sees
+ * one tree of direct calls it can inline instead of the megamorphic closures of
+ * {@link ExpressionCompiler}.
+ * <p>
+ * Nodes without a handle form (CONTAINS, IN and LIKE with non literal operands) are compiled by
+ * {@link ExpressionCompiler} and called through their predicate. Each compiled expression holds
+ * its handle in a <tt>static final</tt> field of a class of its own (see {@link HandleClassLoader}),
+ * where the JIT treats it as a constant. Compiled expressions are cached per structurally identical
+ * tree, literals and their types included, and may be shared between threads.
+ */
+public class MethodHandleCompiler {
+
+    private static final MethodType PREDICATE = methodType(boolean.class, Row.class);
+    private static final MethodType VALUE = methodType(Object.class, Row.class);
+    private static final MethodType BINARY = methodType(Object.class, Object.class, Object.class);
+    private static final MethodType UNARY = methodType(Object.class, Object.class);
+    private static final MethodType ACCEPT = methodType(boolean.class, int.class);
+
+    private static final MethodHandle ROW_GET;
+    private static final MethodHandle PREDICATE_TEST;
+    private static final MethodHandle COMPARE;
+    private static final MethodHandle COMPARE_FROM;
+    private static final MethodHandle IN_SET_CONTAINS;
+    private static final MethodHandle MATCHES;
+    private static final MethodHandle MEMBER;
+    private static final MethodHandle IS_NULL;
+    private static final MethodHandle IS_TRUE;
+    private static final MethodHandle NOT;
+    private static final MethodHandle BOX;
+    private static final MethodHandle TRUE;
+    private static final MethodHandle FALSE;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            ROW_GET = lookup.findVirtual(Row.class, "get", methodType(Object.class, String.class));
+            PREDICATE_TEST = lookup.findVirtual(Predicate.class, "test", methodType(boolean.class, Object.class));
+            COMPARE = lookup.findStatic(Values.class, "compare", methodType(int.class, Object.class, Object.class));
+            COMPARE_FROM = lookup.findVirtual(Comparand.class, "compareFrom", methodType(int.class, Object.class));
+            IN_SET_CONTAINS = lookup.findVirtual(InSet.class, "contains", methodType(boolean.class, Object.class));
+            MATCHES = lookup.findVirtual(LikeMatcher.class, "test", methodType(boolean.class, Object.class));
+            MEMBER = lookup.findStatic(Values.class, "member", methodType(Object.class, Object.class, String.class));
+            IS_NULL = lookup.findStatic(MethodHandleCompiler.class, "isNull", methodType(boolean.class, Object.class));
+            IS_TRUE = lookup.findStatic(Values.class, "isTrue", methodType(boolean.class, Object.class));
+            NOT = lookup.findStatic(MethodHandleCompiler.class, "not", methodType(boolean.class, boolean.class));
+            BOX = lookup.findStatic(Boolean.class, "valueOf", methodType(Boolean.class, boolean.class))
+                    .asType(methodType(Object.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        TRUE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, Row.class);
+        FALSE = MethodHandles.dropArguments(MethodHandles.constant(boolean.class, false), 0, Row.class);
+    }
+
+    private final ExpressionCompiler fallback = new ExpressionCompiler();
+    // Keyed by the trees themselves, whose equality compares literal types and is not recursive
+    private final Cache<ExpressionTree, Predicate<Row>> predicates;
+    private final Cache<ExpressionTree, ToValueFunction> values;
+
+    public MethodHandleCompiler() {
+        this(1_000);
+    }
+
+    /**
+     * @param maximumSize the maximum number of compiled trees to keep
+     */
+    public MethodHandleCompiler(long maximumSize) {
+        this.predicates = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.values = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    public Predicate<Row> compile(ExpressionTree tree) {
+        return predicates.asMap().computeIfAbsent(tree, t -> {
+            MethodHandle handle = predicate(t).handle;
+            return HandleClassLoader.predicate(handle.type().returnType() == boolean.class
+                    ? handle
+                    : MethodHandles.filterReturnValue(handle, IS_TRUE));
+        });
+    }
+
+    public ToValueFunction compileValue(ExpressionTree tree) {
+        return values.asMap().computeIfAbsent(tree, t -> {
+            MethodHandle handle = value(t).handle;
+            return HandleClassLoader.function(handle.type().returnType() == Object.class
+                    ? handle
+                    : MethodHandles.filterReturnValue(handle, BOX));
+        });
+    }
+
+    /**
+     * Number of distinct trees compiled so far and still cached.
+     */
+    public long size() {
+        return predicates.size() + values.size();
+    }
+
+    private Node predicate(ExpressionTree tree) {
+        switch (tree.getOperator()) {
+            case ConstantHolder.OP_VALUE:
+                return predicate(tree.getLeft());
+            case ConstantHolder.OP_TRUE:
+                return Node.of(true);
+            case ConstantHolder.OP_FALSE:
+                return Node.of(false);
+            case ConstantHolder.OP_AND:
+            case ConstantHolder.OP_OR:
+                return logical(tree);
+            case ConstantHolder.OP_NOT: {
+                Node operand = predicate(tree.getLeft());
+                return operand.isConstant()
+                        ? Node.of(!operand.constant.test(null))
+                        : new Node(MethodHandles.filterReturnValue(operand.handle, NOT));
+            }
+            case ConstantHolder.OP_IS: {
+                Node operand = value(tree.getLeft());
+                return operand.isConstant()
+                        ? Node.of(operand.constant.value() == null)
+                        : new Node(MethodHandles.filterReturnValue(operand.handle, IS_NULL));
+            }
+            case ConstantHolder.OP_EQ:
+                return compare(value(tree.getLeft()), value(tree.getRight()), "eq", "eq");
+            case ConstantHolder.OP_NE:
+                return compare(value(tree.getLeft()), value(tree.getRight()), "ne", "ne");
+            case ConstantHolder.OP_LT:
+                return compare(value(tree.getLeft()), value(tree.getRight()), "lt", "gt");
+            case ConstantHolder.OP_LE:
+                return compare(value(tree.getLeft()), value(tree.getRight()), "le", "ge");
+            case ConstantHolder.OP_GT:
+                return compare(value(tree.getLeft()), value(tree.getRight()), "gt", "lt");
+            case ConstantHolder.OP_GE:
+                return compare(value(tree.getLeft()), value(tree.getRight()), "ge", "le");
+            case ConstantHolder.OP_BETWEEN: {
+                Node subject = value(tree.getLeft());
+                Node low = compare(subject, value(tree.getRight().getLeft()), "ge", "le");
+                Node high = compare(subject, value(tree.getRight().getRight()), "le", "ge");
+                return and(low, high);
+            }
+            case ConstantHolder.OP_IN:
+                return in(tree);
+            case ConstantHolder.OP_LIKE:
+                return like(tree, LikeMatcher::like);
+            case ConstantHolder.OP_LIKEFILE:
+                return like(tree, LikeMatcher::likeFile);
+            case ConstantHolder.OP_CONTAINS:
+                return interpreted(tree);
+            default: {
+                Node value = value(tree);
+                return value.isConstant()
+                        ? Node.of(value.constant.test(null))
+                        : new Node(MethodHandles.filterReturnValue(value.handle, IS_TRUE));
+            }
+        }
+    }
+
+    private Node value(ExpressionTree tree) {
+        switch (tree.getOperator()) {
+            case ConstantHolder.OP_NOP: {
+                ToValueFunction operand = ExpressionCompiler.operand(tree);
+                if (operand instanceof Constant) {
+                    return new Node((Constant) operand);
+                }
+                return new Node(MethodHandles.insertArguments(ROW_GET, 1, tree.getValue()));
+            }
+            case ConstantHolder.OP_VALUE:
+                return value(tree.getLeft());
+            case ConstantHolder.OP_ADD:
+                return binary(tree, "add");
+            case ConstantHolder.OP_SUB:
+                return binary(tree, "subtract");
+            case ConstantHolder.OP_MUL:
+                return binary(tree, "multiply");
+            case ConstantHolder.OP_DIV:
+                return binary(tree, "divide");
+            case ConstantHolder.OP_MOD:
+                return binary(tree, "modulo");
+            case ConstantHolder.OP_EXPO:
+                return binary(tree, "power");
+            case ConstantHolder.OP_CONCAT:
+                return binary(tree, "concat");
+            case ConstantHolder.OP_SUBSCR:
+                return binary(tree, "subscript");
+            case ConstantHolder.OP_NEG:
+                return unary(tree, "negate");
+            case ConstantHolder.OP_POS:
+                return unary(tree, "plus");
+            case ConstantHolder.OP_MEMBER: {
+                Node target = value(tree.getLeft());
+                if (target.isConstant()) {
+                    return new Node((Constant) fallback.compileValue(tree));
+                }
+                MethodHandle member = MethodHandles.insertArguments(MEMBER, 1, tree.getRight().getValue());
+                return new Node(MethodHandles.filterReturnValue(target.handle, member));
+            }
+            default: {
+                Node predicate = predicate(tree);
+                return predicate.isConstant()
+                        ? predicate
+                        : new Node(MethodHandles.filterReturnValue(predicate.handle, BOX));
+            }
+        }
+    }
+
+    private Node binary(ExpressionTree tree, String operator) {
+        Node left = value(tree.getLeft());
+        Node right = value(tree.getRight());
+        if (left.isConstant() && right.isConstant()) {
+            return new Node((Constant) fallback.compileValue(tree));
+        }
+        MethodHandle handle = MethodHandles.filterArguments(findValues(operator, BINARY), 0,
+                left.valueHandle(), right.valueHandle());
+        return new Node(MethodHandles.permuteArguments(handle, VALUE, 0, 0));
+    }
+
+    private Node unary(ExpressionTree tree, String operator) {
+        Node operand = value(tree.getLeft());
+        if (operand.isConstant()) {
+            return new Node((Constant) fallback.compileValue(tree));
+        }
+        return new Node(MethodHandles.filterReturnValue(operand.handle, findValues(operator, UNARY)));
+    }
+
+    /**
+     * Combines the operands of an AND or OR with {@link MethodHandles#guardWithTest}, which keeps the
+     * short-circuit and gives each operand its own call site.
+     */
+    private Node logical(ExpressionTree tree) {
+        boolean and = ConstantHolder.OP_AND.equals(tree.getOperator());
+        List<Node> operands = new ArrayList<>();
+        for (ExpressionTree operand : ExpressionCompiler.operands(tree, tree.getOperator())) {
+            Node node = predicate(operand);
+            if (!node.isConstant()) {
+                operands.add(node);
+            } else if (node.constant.test(null) != and) {
+                return Node.of(!and);
+            }
+        }
+        if (operands.isEmpty()) {
+            return Node.of(and);
+        }
+        return new Node(logical(operands, 0, operands.size(), and));
+    }
+
+    /**
+     * The operands from <tt>from</tt> to <tt>to</tt> evaluated left to right with short-circuit,
+     * as a balanced tree of guards so that a long chain does not nest one call per operand.
+     */
+    private static MethodHandle logical(List<Node> operands, int from, int to, boolean and) {
+        if (to - from == 1) {
+            return operands.get(from).handle;
+        }
+        int middle = (from + to) >>> 1;
+        MethodHandle first = logical(operands, from, middle, and);
+        MethodHandle rest = logical(operands, middle, to, and);
+        return and
+                ? MethodHandles.guardWithTest(first, rest, FALSE)
+                : MethodHandles.guardWithTest(first, TRUE, rest);
+    }
+
+    private static Node and(Node first, Node second) {
+        if (first.isConstant()) {
+            return first.constant.test(null) ? second : first;
+        }
+        if (second.isConstant()) {
+            return second.constant.test(null) ? first : second;
+        }
+        return new Node(MethodHandles.guardWithTest(first.handle, second.handle, FALSE));
+    }
+
+    /**
+     * @param accept name of the test applied to {@code compare(left, right)}
+     * @param mirrored the same test for {@code compare(right, left)}
+     */
+    private static Node compare(Node left, Node right, String accept, String mirrored) {
+        if (left.isConstant() && right.isConstant()) {
+            int c = Values.compare(left.constant.value(), right.constant.value());
+            return Node.of(c != Values.INCOMPARABLE && test(accept, c));
+        }
+        if (left.isConstant()) {
+            return compare(right, left, mirrored, accept);
+        }
+        if (right.isConstant()) {
+            Comparand comparand = Comparand.of(right.constant.value());
+            if (comparand == null) {
+                return Node.of(false);
+            }
+            MethodHandle test = MethodHandles.filterReturnValue(COMPARE_FROM.bindTo(comparand), findAccept(accept));
+            return new Node(MethodHandles.filterReturnValue(left.handle, test));
+        }
+        MethodHandle compare = MethodHandles.filterArguments(COMPARE, 0, left.handle, right.handle);
+        compare = MethodHandles.permuteArguments(compare, methodType(int.class, Row.class), 0, 0);
+        return new Node(MethodHandles.filterReturnValue(compare, findAccept(accept)));
+    }
+
+    private Node in(ExpressionTree tree) {
+        Node subject = value(tree.getLeft());
+        if (subject.isConstant()) {
+            return interpreted(tree);
+        }
+        ValueSet valueSet = tree.getRight().getValueSet();
+        if (valueSet != null) {
+            return new Node(MethodHandles.filterReturnValue(subject.handle, IN_SET_CONTAINS.bindTo(new InSet(valueSet))));
+        }
+        List<Object> values = new ArrayList<>();
+        for (ExpressionTree item : tree.getRight().getItems()) {
+            Node element = value(item);
+            if (!element.isConstant()) {
+                return interpreted(tree);
+            }
+            values.add(element.constant.value());
+        }
+        return new Node(MethodHandles.filterReturnValue(subject.handle, IN_SET_CONTAINS.bindTo(new InSet(values))));
+    }
+
+    private Node like(ExpressionTree tree, Function<String, LikeMatcher> compiler) {
+        Node subject = value(tree.getLeft());
+        Node pattern = value(tree.getRight());
+        if (subject.isConstant() || !pattern.isConstant() || pattern.constant.value() == null) {
+            return interpreted(tree);
+        }
+        LikeMatcher matcher = compiler.apply(pattern.constant.value().toString());
+        return new Node(MethodHandles.filterReturnValue(subject.handle, MATCHES.bindTo(matcher)));
+    }
+
+    private Node interpreted(ExpressionTree tree) {
+        Predicate<Row> predicate = fallback.compile(tree);
+        if (predicate instanceof Constant) {
+            return new Node((Constant) predicate);
+        }
+        return new Node(PREDICATE_TEST.bindTo(predicate).asType(PREDICATE));
+    }
+
+    private static MethodHandle findValues(String name, MethodType type) {
+        try {
+            return MethodHandles.lookup().findStatic(Values.class, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findAccept(String name) {
+        try {
+            return MethodHandles.lookup().findStatic(MethodHandleCompiler.class, name, ACCEPT);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean test(String accept, int c) {
+        switch (accept) {
+            case "eq":
+                return eq(c);
+            case "ne":
+                return ne(c);
+            case "lt":
+                return lt(c);
+            case "le":
+                return le(c);
+            case "gt":
+                return gt(c);
+            default:
+                return ge(c);
+        }
+    }
+
+    private static boolean eq(int c) {
+        return c == 0;
+    }
+
+    private static boolean ne(int c) {
+        return c != 0 && c != Values.INCOMPARABLE;
+    }
+
+    private static boolean lt(int c) {
+        return c < 0 && c != Values.INCOMPARABLE;
+    }
+
+    private static boolean le(int c) {
+        return c <= 0 && c != Values.INCOMPARABLE;
+    }
+
+    private static boolean gt(int c) {
+        return c > 0;
+    }
+
+    private static boolean ge(int c) {
+        return c >= 0;
+    }
+
+    private static boolean not(boolean value) {
+        return !value;
+    }
+
+    private static boolean isNull(Object value) {
+        return value == null;
+    }
+
+    /**
+     * A compiled sub-expression: either a constant or a handle of type (Row)boolean for
+     * predicates, (Row)Object for values.
+     */
+    private static final class Node {
+
+        final MethodHandle handle;
+        final Constant constant;
+
+        Node(MethodHandle handle) {
+            this.handle = handle;
+            this.constant = null;
+        }
+
+        Node(Constant constant) {
+            this.handle = constant.value() instanceof Boolean
+                    ? constant.test(null) ? TRUE : FALSE
+                    : MethodHandles.dropArguments(MethodHandles.constant(Object.class, constant.value()), 0,
+                            Row.class);
+            this.constant = constant;
+        }
+
+        static Node of(boolean value) {
+            return new Node(Constant.of(value));
+        }
+
+        boolean isConstant() {
+            return constant != null;
+        }
+
+        MethodHandle valueHandle() {
+            return handle.type().returnType() == boolean.class
+                    ? MethodHandles.filterReturnValue(handle, BOX)
+                    : handle;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.expression.eval;
+
+import java.util.Map;
+
+/**
+ * Source of attribute values for in-memory evaluation of an expression.
+ */
+@FunctionalInterface
+public interface Row {
+
+    /**
+     * The value of an attribute, or null if the record has none.
+     */
+    Object get(String attribute);
+
+    static Row of(Map<String, ?> values) {
+        return values::get;
+    }
+}
@@ -0,0 +1,724 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ConstantHolder;
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.LiteralType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Matches an event against many stored expressions without evaluating each of them. The equality
+ * and IN predicates of the rules are indexed in hash postings per attribute and value, their range
+ * predicates in an {@link IntervalTree} per attribute and their CONTAINS predicates in an
+ * {@link AhoCorasick} automaton per attribute; an event looks up its own values, counts the
+ * predicates it satisfies for each disjunct of a rule, and only the rules with a disjunct whose
+ * indexed predicates all hold are evaluated. The cost of a match grows with the number of postings
+ * hit rather than with the number of rules.
+ * <p>
+ * Each rule is split into the disjuncts of its top-level <tt>or</tt>, and each disjunct into the
+ * conjuncts of its <tt>and</tt>. A conjunct is indexed if it is an equality between a name and a
+ * literal, an IN list of literals, a comparison or BETWEEN of a name with numbers or ISO dates, a
+ * CONTAINS of a literal, or an <tt>or</tt> of such predicates, counted once whichever of them holds. Other conjuncts
+ * (<tt>not</tt>, LIKE, ranges of other text...) are left to the evaluation of the candidates. A rule
+ * with a disjunct without any indexed conjunct is evaluated against every event.
+ * <p>
+ * Thread-safe: rules can be added and removed while events are matched. The texts of the CONTAINS
+ * predicates added since an automaton was built are searched one by one until enough of them, or
+ * enough removed ones, have accumulated to rebuild it. The rebuild runs on the executor given to
+ * the constructor, by default in the thread changing the rules once it has released the lock, and
+ * the new automaton replaces the old one without holding up matching.
+ *
+ * @param <K> type of the rule identifiers
+ */
+public class RuleIndex<K> {
+
+    // Numbers at least this large lose precision as doubles, and double equality is what the evaluator uses
+    private static final double EXACT_LIMIT = 1L << 53;
+    // Indexed conjuncts of a disjunct counted with the bits of a long, the others are evaluated
+    private static final int MAX_CONJUNCTS = Long.SIZE;
+    // Texts searched one by one, or dropped from an automaton, before it is rebuilt
+    private static final int REBUILD_THRESHOLD = 64;
+
+    private final ExpressionCompiler compiler = new ExpressionCompiler();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<K, Rule<K>> rules = new HashMap<>();
+    private final Map<String, Map<Object, Set<Posting>>> postings = new HashMap<>();
+    private final Map<String, Ranges> ranges = new HashMap<>();
+    private final Map<String, Substrings> substrings = new HashMap<>();
+    private final Set<Rule<K>> unindexed = new LinkedHashSet<>();
+    private final Executor rebuilds;
+
+    public RuleIndex() {
+        this(Runnable::run);
+    }
+
+    /**
+     * An index rebuilding the automata of the CONTAINS predicates on <tt>rebuilds</tt>.
+     */
+    public RuleIndex(Executor rebuilds) {
+        this.rebuilds = rebuilds;
+    }
+
+    /**
+     * Registers <tt>tree</tt> under <tt>id</tt>, replacing the rule already registered under it.
+     */
+    public void add(K id, ExpressionTree tree) {
+        Predicate<Row> predicate = compiler.compile(tree);
+        Rule<K> rule = new Rule<>(id, predicate);
+        if (!(predicate instanceof Constant)) {
+            split(rule, tree);
+        } else if (predicate.test(null)) {
+            rule.unindexed = true;
+        }
+        List<Runnable> builds = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            Rule<K> previous = rules.put(id, rule);
+            if (previous != null) {
+                unregister(previous, builds);
+            }
+            if (rule.unindexed) {
+                unindexed.add(rule);
+            } else {
+                for (Clause clause : rule.clauses) {
+                    for (Posting posting : clause.postings) {
+                        register(posting, builds);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        builds.forEach(rebuilds::execute);
+    }
+
+    private void register(Posting posting, List<Runnable> builds) {
+        if (posting.key != null) {
+            add(postings.computeIfAbsent(posting.attribute, a -> new HashMap<>()), posting.key, posting);
+        } else if (posting.substring != null) {
+            Substrings index = substrings.computeIfAbsent(posting.attribute, a -> new Substrings());
+            if (!index.patterns.containsKey(posting.substring)) {
+                if (index.automaton.contains(posting.substring)) {
+                    index.dropped--;
+                } else {
+                    index.pending.add(posting.substring);
+                }
+            }
+            add(index.patterns, posting.substring, posting);
+            add(index.items, posting.substring, posting);
+            if (posting.number != null) {
+                add(index.items, posting.number, posting);
+            }
+            scheduleBuild(index, builds);
+        } else {
+            IntervalTree<Posting> intervals = ranges.computeIfAbsent(posting.attribute, a -> new Ranges())
+                    .tree(posting.dates);
+            posting.node = intervals.insert(posting.low, posting.lowInclusive,
+                    posting.high, posting.highInclusive, posting);
+        }
+    }
+
+    private static <T> void add(Map<T, Set<Posting>> postings, T key, Posting posting) {
+        postings.computeIfAbsent(key, k -> new HashSet<>()).add(posting);
+    }
+
+    /**
+     * Removes <tt>posting</tt> from the set of <tt>key</tt>, returning true if the set is now empty and removed.
+     */
+    private static <T> boolean remove(Map<T, Set<Posting>> postings, T key, Posting posting) {
+        Set<Posting> set = postings.get(key);
+        set.remove(posting);
+        if (set.isEmpty()) {
+            postings.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds to <tt>builds</tt> the rebuild of the automaton of <tt>index</tt> if enough texts have
+     * changed since it was built and no rebuild is under way. Called with the write lock held.
+     */
+    private void scheduleBuild(Substrings index, List<Runnable> builds) {
+        if (index.building || index.pending.size() < REBUILD_THRESHOLD && index.dropped < REBUILD_THRESHOLD) {
+            return;
+        }
+        index.building = true;
+        List<String> texts = new ArrayList<>(index.patterns.keySet());
+        builds.add(() -> {
+            AhoCorasick automaton = null;
+            try {
+                automaton = AhoCorasick.build(texts);
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    index.building = false;
+                    if (automaton != null) {
+                        index.automaton = automaton;
+                        index.pending.removeIf(automaton::contains);
+                        index.dropped = 0;
+                        for (String text : automaton.patterns()) {
+                            if (!index.patterns.containsKey(text)) {
+                                index.dropped++;
+                            }
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Unregisters the rule of <tt>id</tt>, returning false if there was none.
+     */
+    public boolean remove(K id) {
+        List<Runnable> builds = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            Rule<K> rule = rules.remove(id);
+            if (rule == null) {
+                return false;
+            }
+            unregister(rule, builds);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        builds.forEach(rebuilds::execute);
+        return true;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rules.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The identifiers of the rules matching <tt>event</tt>, in no particular order.
+     */
+    public List<K> match(Row event) {
+        List<K> matches = new ArrayList<>();
+        for (Rule<K> rule : candidates(event)) {
+            if (rule.predicate.test(event)) {
+                matches.add(rule.id);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * The rules to evaluate against <tt>event</tt>: those with a disjunct whose indexed conjuncts
+     * all hold, and the unindexed ones. Evaluated by the caller once the lock is released.
+     */
+    Set<Rule<K>> candidates(Row event) {
+        Set<Rule<K>> candidates = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            Map<Clause, long[]> hits = new IdentityHashMap<>();
+            for (Map.Entry<String, Map<Object, Set<Posting>>> attribute : postings.entrySet()) {
+                Object value = event.get(attribute.getKey());
+                if (value == null) {
+                    continue;
+                }
+                Map<Object, Set<Posting>> values = attribute.getValue();
+                if (value instanceof Number) {
+                    count(values.get(Values.canonicalNumber((Number) value)), hits, candidates);
+                } else {
+                    String text = value.toString();
+                    count(values.get(text), hits, candidates);
+                    Number number = Values.parseNumber(text);
+                    if (number != null) {
+                        count(values.get(Values.canonicalNumber(number)), hits, candidates);
+                    }
+                }
+            }
+            for (Map.Entry<String, Ranges> attribute : ranges.entrySet()) {
+                Object value = event.get(attribute.getKey());
+                if (value == null) {
+                    continue;
+                }
+                Ranges trees = attribute.getValue();
+                if (trees.numbers.size() > 0) {
+                    trees.numbers.stab(numberKey(value), posting -> hit(posting, hits, candidates));
+                }
+                if (trees.dates.size() > 0) {
+                    trees.dates.stab(dateKey(value), posting -> hit(posting, hits, candidates));
+                }
+            }
+            for (Map.Entry<String, Substrings> attribute : substrings.entrySet()) {
+                Object value = event.get(attribute.getKey());
+                if (value == null) {
+                    continue;
+                }
+                Substrings index = attribute.getValue();
+                if (value instanceof Collection) {
+                    // A collection contains an item equal to the literal
+                    for (Object item : (Collection<?>) value) {
+                        if (item instanceof Number) {
+                            count(index.items.get(Values.canonicalNumber((Number) item)), hits, candidates);
+                        } else if (item != null) {
+                            String text = item.toString();
+                            count(index.items.get(text), hits, candidates);
+                            Number number = Values.parseNumber(text);
+                            if (number != null) {
+                                count(index.items.get(Values.canonicalNumber(number)), hits, candidates);
+                            }
+                        }
+                    }
+                    continue;
+                }
+                String text = value.toString();
+                index.automaton.scan(text, found -> count(index.patterns.get(found), hits, candidates));
+                for (String pending : index.pending) {
+                    if (text.contains(pending)) {
+                        count(index.patterns.get(pending), hits, candidates);
+                    }
+                }
+            }
+            candidates.addAll(unindexed);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return candidates;
+    }
+
+    private void count(Set<Posting> postings, Map<Clause, long[]> hits, Set<Rule<K>> candidates) {
+        if (postings == null) {
+            return;
+        }
+        for (Posting posting : postings) {
+            hit(posting, hits, candidates);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void hit(Posting posting, Map<Clause, long[]> hits, Set<Rule<K>> candidates) {
+        long[] mask = hits.computeIfAbsent(posting.clause, c -> new long[1]);
+        mask[0] |= 1L << posting.conjunct;
+        if (Long.bitCount(mask[0]) == posting.clause.required) {
+            candidates.add((Rule<K>) posting.clause.rule);
+        }
+    }
+
+    private void unregister(Rule<K> rule, List<Runnable> builds) {
+        if (rule.unindexed) {
+            unindexed.remove(rule);
+            return;
+        }
+        for (Clause clause : rule.clauses) {
+            for (Posting posting : clause.postings) {
+                if (posting.key != null) {
+                    Map<Object, Set<Posting>> values = postings.get(posting.attribute);
+                    if (remove(values, posting.key, posting) && values.isEmpty()) {
+                        postings.remove(posting.attribute);
+                    }
+                } else if (posting.substring != null) {
+                    Substrings index = substrings.get(posting.attribute);
+                    if (remove(index.patterns, posting.substring, posting)) {
+                        if (!index.pending.remove(posting.substring)) {
+                            index.dropped++;
+                        }
+                    }
+                    remove(index.items, posting.substring, posting);
+                    if (posting.number != null) {
+                        remove(index.items, posting.number, posting);
+                    }
+                    if (index.patterns.isEmpty()) {
+                        // A rebuild under way completes on the detached holder
+                        substrings.remove(posting.attribute);
+                    } else {
+                        scheduleBuild(index, builds);
+                    }
+                } else {
+                    Ranges trees = ranges.get(posting.attribute);
+                    trees.tree(posting.dates).remove(posting.node);
+                    if (trees.numbers.size() == 0 && trees.dates.size() == 0) {
+                        ranges.remove(posting.attribute);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the clauses of <tt>rule</tt>, or marks it unindexed if one of its disjuncts has no
+     * indexed conjunct.
+     */
+    private static void split(Rule<?> rule, ExpressionTree tree) {
+        while (ConstantHolder.OP_VALUE.equals(tree.getOperator())) {
+            tree = tree.getLeft();
+        }
+        for (ExpressionTree disjunct : ExpressionCompiler.operands(tree, ConstantHolder.OP_OR)) {
+            Clause clause = new Clause(rule);
+            for (ExpressionTree conjunct : ExpressionCompiler.operands(disjunct, ConstantHolder.OP_AND)) {
+                if (clause.required == MAX_CONJUNCTS) {
+                    break;
+                }
+                List<Posting> postings = postings(clause, clause.required, conjunct);
+                if (postings != null) {
+                    clause.postings.addAll(postings);
+                    clause.required++;
+                }
+            }
+            if (clause.required == 0) {
+                rule.clauses.clear();
+                rule.unindexed = true;
+                return;
+            }
+            rule.clauses.add(clause);
+        }
+    }
+
+    /**
+     * The postings of an indexed conjunct, or null if it is not one.
+     */
+    private static List<Posting> postings(Clause clause, int index, ExpressionTree conjunct) {
+        List<Posting> postings = new ArrayList<>();
+        for (ExpressionTree predicate : ExpressionCompiler.operands(conjunct, ConstantHolder.OP_OR)) {
+            String operator = predicate.getOperator();
+            ExpressionTree left = predicate.getLeft();
+            ExpressionTree right = predicate.getRight();
+            if (ConstantHolder.OP_EQ.equals(operator) && left != null && right != null) {
+                if (isName(right) && !isName(left)) {
+                    ExpressionTree swap = left;
+                    left = right;
+                    right = swap;
+                }
+                if (!isName(left) || !addKeys(postings, clause, index, left.getValue(), right)) {
+                    return null;
+                }
+            } else if (ConstantHolder.OP_IN.equals(operator) && left != null && isName(left)) {
+                for (ExpressionTree item : right.getItems()) {
+                    if (!addKeys(postings, clause, index, left.getValue(), item)) {
+                        return null;
+                    }
+                }
+            } else if (ConstantHolder.OP_CONTAINS.equals(operator) && left != null && isName(left)) {
+                Posting posting = substring(clause, index, left.getValue(), right);
+                if (posting == null) {
+                    return null;
+                }
+                postings.add(posting);
+            } else if (ConstantHolder.OP_BETWEEN.equals(operator) && left != null && isName(left)) {
+                double low = bound(right.getLeft());
+                double high = bound(right.getRight());
+                boolean dates = isDate(right.getLeft());
+                if (Double.isNaN(low) || Double.isNaN(high) || dates != isDate(right.getRight())) {
+                    return null;
+                }
+                postings.add(new Posting(clause, index, left.getValue(), dates, low, true, high, true));
+            } else if (isComparison(operator) && left != null && right != null) {
+                if (isName(right) && !isName(left)) {
+                    ExpressionTree swap = left;
+                    left = right;
+                    right = swap;
+                    operator = mirror(operator);
+                }
+                double bound = isName(left) ? bound(right) : Double.NaN;
+                if (Double.isNaN(bound)) {
+                    return null;
+                }
+                boolean dates = isDate(right);
+                boolean inclusive = ConstantHolder.OP_LE.equals(operator) || ConstantHolder.OP_GE.equals(operator);
+                if (ConstantHolder.OP_LT.equals(operator) || ConstantHolder.OP_LE.equals(operator)) {
+                    postings.add(new Posting(clause, index, left.getValue(), dates,
+                            Double.NEGATIVE_INFINITY, false, bound, inclusive));
+                } else {
+                    postings.add(new Posting(clause, index, left.getValue(), dates,
+                            bound, inclusive, Double.POSITIVE_INFINITY, false));
+                }
+            } else {
+                return null;
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * The posting of a CONTAINS of <tt>literal</tt>, found in text by its characters and in a
+     * collection by an item equal to it, or null if it cannot be indexed.
+     */
+    private static Posting substring(Clause clause, int index, String attribute, ExpressionTree literal) {
+        if (!ConstantHolder.OP_NOP.equals(literal.getOperator())) {
+            return null;
+        }
+        Object value = ((Constant) ExpressionCompiler.operand(literal)).value();
+        Number number;
+        switch (literal.getType()) {
+            case STRING:
+            case DATE:
+                number = Values.parseNumber((String) value);
+                break;
+            case LONG:
+            case DECIMAL:
+                number = (Number) value;
+                break;
+            default:
+                return null;
+        }
+        if (number != null && !(Math.abs(number.doubleValue()) < EXACT_LIMIT)) {
+            return null;
+        }
+        return new Posting(clause, index, attribute, value.toString(),
+                number != null ? Values.canonicalNumber(number) : null);
+    }
+
+    private static boolean isComparison(String operator) {
+        return ConstantHolder.OP_LT.equals(operator) || ConstantHolder.OP_LE.equals(operator)
+                || ConstantHolder.OP_GT.equals(operator) || ConstantHolder.OP_GE.equals(operator);
+    }
+
+    /**
+     * The comparison of <tt>b op' a</tt> equivalent to <tt>a op b</tt>.
+     */
+    private static String mirror(String operator) {
+        switch (operator) {
+            case ConstantHolder.OP_LT:
+                return ConstantHolder.OP_GT;
+            case ConstantHolder.OP_LE:
+                return ConstantHolder.OP_GE;
+            case ConstantHolder.OP_GT:
+                return ConstantHolder.OP_LT;
+            default:
+                return ConstantHolder.OP_LE;
+        }
+    }
+
+    private static boolean isName(ExpressionTree tree) {
+        return tree.getType() == LiteralType.IDENTIFIER && ConstantHolder.OP_NOP.equals(tree.getOperator());
+    }
+
+    /**
+     * Adds the postings of the values a literal is equal to: its text and, if it is numeric, its
+     * number. Returns false if the literal cannot be indexed.
+     */
+    private static boolean addKeys(List<Posting> postings, Clause clause, int index, String attribute, ExpressionTree literal) {
+        if (!ConstantHolder.OP_NOP.equals(literal.getOperator())) {
+            return false;
+        }
+        Object value = ((Constant) ExpressionCompiler.operand(literal)).value();
+        Number number;
+        switch (literal.getType()) {
+            case STRING:
+            case DATE:
+                number = Values.parseNumber((String) value);
+                break;
+            case LONG:
+            case DECIMAL:
+                number = (Number) value;
+                break;
+            default:
+                return false;
+        }
+        if (number != null) {
+            double magnitude = Math.abs(number.doubleValue());
+            if (!(magnitude < EXACT_LIMIT)) {
+                return false;
+            }
+            postings.add(new Posting(clause, index, attribute, Values.canonicalNumber(number)));
+        }
+        postings.add(new Posting(clause, index, attribute, value.toString()));
+        return true;
+    }
+
+    /**
+     * The key of a range bound: a number, or an ISO date as <tt>yyyyMMdd</tt>. NaN if the literal
+     * is neither, numeric text included since it compares as text with text and as a number with
+     * numbers.
+     */
+    private static double bound(ExpressionTree literal) {
+        if (!ConstantHolder.OP_NOP.equals(literal.getOperator())) {
+            return Double.NaN;
+        }
+        switch (literal.getType()) {
+            case LONG:
+            case DECIMAL:
+                double number = ((Number) ((Constant) ExpressionCompiler.operand(literal)).value()).doubleValue();
+                return Math.abs(number) < EXACT_LIMIT ? number : Double.NaN;
+            case STRING:
+            case DATE:
+                double date = dateKey(literal.getStringValue());
+                return date == Math.rint(date) ? date : Double.NaN;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    private static boolean isDate(ExpressionTree literal) {
+        return literal.getType() == LiteralType.STRING || literal.getType() == LiteralType.DATE;
+    }
+
+    /**
+     * The key of an event value against numeric bounds, NaN if they are incomparable.
+     */
+    static double numberKey(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof CharSequence) {
+            Number number = Values.parseNumber(value.toString());
+            return number == null ? Double.NaN : number.doubleValue();
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * The key of an event value against ISO date bounds, NaN if they are incomparable. Text is
+     * compared with the bounds as text: the key of <tt>yyyy-MM-dd</tt> is the number
+     * <tt>yyyyMMdd</tt>, that of longer text starting with it half a unit more, and that of other
+     * text half a unit from the bounds sharing its longest matching prefix, on the side it sorts.
+     */
+    static double dateKey(Object value) {
+        if (value instanceof LocalDate) {
+            LocalDate date = (LocalDate) value;
+            if (date.getYear() < 0) {
+                return -1;
+            }
+            if (date.getYear() > 9999) {
+                return 1e8;
+            }
+            return date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+        }
+        if (!(value instanceof CharSequence)) {
+            return Double.NaN;
+        }
+        CharSequence text = (CharSequence) value;
+        long digits = 0;
+        long scale = 100_000_000;
+        for (int i = 0; i < 10; i++) {
+            if (i == text.length()) {
+                return digits * scale - 0.5;
+            }
+            char ch = text.charAt(i);
+            boolean dash = i == 4 || i == 7;
+            if (ch < (dash ? '-' : '0')) {
+                return digits * scale - 0.5;
+            }
+            if (ch > (dash ? '-' : '9')) {
+                return (digits + 1) * scale - 0.5;
+            }
+            if (!dash) {
+                digits = digits * 10 + ch - '0';
+                scale /= 10;
+            }
+        }
+        return text.length() > 10 ? digits + 0.5 : digits;
+    }
+
+    /**
+     * The interval trees of the range postings of an attribute.
+     */
+    private static final class Ranges {
+        final IntervalTree<Posting> numbers = new IntervalTree<>();
+        final IntervalTree<Posting> dates = new IntervalTree<>();
+
+        IntervalTree<Posting> tree(boolean dates) {
+            return dates ? this.dates : numbers;
+        }
+    }
+
+    /**
+     * The CONTAINS postings of an attribute: by text for the automaton, and by the values a
+     * collection item must equal.
+     */
+    private static final class Substrings {
+        final Map<String, Set<Posting>> patterns = new HashMap<>();
+        final Map<Object, Set<Posting>> items = new HashMap<>();
+        AhoCorasick automaton = AhoCorasick.EMPTY;
+        // Texts missing from the automaton, and the number of its texts no longer searched
+        final Set<String> pending = new LinkedHashSet<>();
+        int dropped;
+        boolean building;
+    }
+
+    static final class Rule<K> {
+        final K id;
+        final Predicate<Row> predicate;
+        final List<Clause> clauses = new ArrayList<>();
+        boolean unindexed;
+
+        Rule(K id, Predicate<Row> predicate) {
+            this.id = id;
+            this.predicate = predicate;
+        }
+    }
+
+    /**
+     * A disjunct of a rule, a candidate once postings of its <tt>required</tt> indexed conjuncts are hit.
+     */
+    private static final class Clause {
+        final Rule<?> rule;
+        final List<Posting> postings = new ArrayList<>();
+        int required;
+
+        Clause(Rule<?> rule) {
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * A value of an indexed conjunct, in the hash postings if <tt>key</tt> is set, in the substring
+     * postings if <tt>substring</tt> is, in the interval trees otherwise.
+     */
+    private static final class Posting {
+        final Clause clause;
+        final int conjunct;
+        final String attribute;
+        final Object key;
+        final String substring;
+        // The canonical number a collection item equal to the substring may be
+        final Object number;
+        final boolean dates;
+        final double low;
+        final boolean lowInclusive;
+        final double high;
+        final boolean highInclusive;
+        IntervalTree.Node<Posting> node;
+
+        Posting(Clause clause, int conjunct, String attribute, Object key) {
+            this(clause, conjunct, attribute, key, null, null, false, Double.NaN, false, Double.NaN, false);
+        }
+
+        Posting(Clause clause, int conjunct, String attribute, String substring, Object number) {
+            this(clause, conjunct, attribute, null, substring, number, false, Double.NaN, false, Double.NaN, false);
+        }
+
+        Posting(Clause clause, int conjunct, String attribute, boolean dates,
+                double low, boolean lowInclusive, double high, boolean highInclusive) {
+            this(clause, conjunct, attribute, null, null, null, dates, low, lowInclusive, high, highInclusive);
+        }
+
+        private Posting(Clause clause, int conjunct, String attribute, Object key, String substring, Object number,
+                        boolean dates, double low, boolean lowInclusive, double high, boolean highInclusive) {
+            this.clause = clause;
+            this.conjunct = conjunct;
+            this.attribute = attribute;
+            this.key = key;
+            this.substring = substring;
+            this.number = number;
+            this.dates = dates;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+        }
+    }
+}
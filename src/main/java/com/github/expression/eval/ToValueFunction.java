@@ -0,0 +1,10 @@
+package com.github.expression.eval;
+
+/**
+ * Compiled expression computing a value from a record.
+ */
+@FunctionalInterface
+public interface ToValueFunction {
+
+    Object apply(Row record);
+}
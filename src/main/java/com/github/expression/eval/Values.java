@@ -0,0 +1,245 @@
+package com.github.expression.eval;
+
+import java.lang.reflect.Array;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Value semantics shared by the compiled expressions. Null propagates through arithmetic and
+ * makes comparisons false; integral numbers use exact long arithmetic and fall back to double
+ * on overflow.
+ */
+final class Values {
+
+    /** Result of {@link #compare(Object, Object)} for values that have no order between them. */
+    static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    private Values() {
+    }
+
+    static boolean isTrue(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        return false;
+    }
+
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    static int compareNumbers(Number a, Number b) {
+        if (isIntegral(a) && isIntegral(b)) {
+            return Long.compare(a.longValue(), b.longValue());
+        }
+        return Double.compare(a.doubleValue(), b.doubleValue());
+    }
+
+    /**
+     * Compares two values of a record, or returns {@link #INCOMPARABLE}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(Object a, Object b) {
+        if (a == null || b == null) {
+            return INCOMPARABLE;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            return compareNumbers((Number) a, (Number) b);
+        }
+        if (a instanceof Number && b instanceof CharSequence) {
+            Number number = parseNumber(b.toString());
+            return number == null ? INCOMPARABLE : compareNumbers((Number) a, number);
+        }
+        if (a instanceof CharSequence && b instanceof Number) {
+            Number number = parseNumber(a.toString());
+            return number == null ? INCOMPARABLE : compareNumbers(number, (Number) b);
+        }
+        if (a instanceof CharSequence && b instanceof CharSequence) {
+            return a.toString().compareTo(b.toString());
+        }
+        if (a instanceof Comparable && a.getClass().isInstance(b)) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return INCOMPARABLE;
+    }
+
+    /**
+     * Parses an integer or decimal literal, returning null if the text is not a number.
+     */
+    static Number parseNumber(String text) {
+        int length = text.length();
+        if (length == 0) {
+            return null;
+        }
+        int i = text.charAt(0) == '-' || text.charAt(0) == '+' ? 1 : 0;
+        int digits = 0;
+        boolean decimal = false;
+        for (; i < length; i++) {
+            char ch = text.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digits++;
+            } else if (ch == '.' && !decimal) {
+                decimal = true;
+            } else {
+                return null;
+            }
+        }
+        if (digits == 0) {
+            return null;
+        }
+        if (!decimal && digits <= 18) {
+            return Long.parseLong(text);
+        }
+        return Double.parseDouble(text);
+    }
+
+    /**
+     * Canonical form used to test numbers for equality across boxed types.
+     */
+    static Object canonicalNumber(Number number) {
+        if (isIntegral(number)) {
+            return number.longValue();
+        }
+        double value = number.doubleValue();
+        long integral = (long) value;
+        return integral == value ? (Object) integral : (Object) value;
+    }
+
+    static Object add(Object a, Object b) {
+        if (!(a instanceof Number) || !(b instanceof Number)) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            long x = ((Number) a).longValue();
+            long y = ((Number) b).longValue();
+            long r = x + y;
+            if (((x ^ r) & (y ^ r)) >= 0) {
+                return r;
+            }
+        }
+        return ((Number) a).doubleValue() + ((Number) b).doubleValue();
+    }
+
+    static Object subtract(Object a, Object b) {
+        if (!(a instanceof Number) || !(b instanceof Number)) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            long x = ((Number) a).longValue();
+            long y = ((Number) b).longValue();
+            long r = x - y;
+            if (((x ^ y) & (x ^ r)) >= 0) {
+                return r;
+            }
+        }
+        return ((Number) a).doubleValue() - ((Number) b).doubleValue();
+    }
+
+    static Object multiply(Object a, Object b) {
+        if (!(a instanceof Number) || !(b instanceof Number)) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            long x = ((Number) a).longValue();
+            long y = ((Number) b).longValue();
+            long r = x * y;
+            long ax = Math.abs(x);
+            long ay = Math.abs(y);
+            if ((ax | ay) >>> 31 == 0 || y == 0 || r / y == x && !(x == Long.MIN_VALUE && y == -1)) {
+                return r;
+            }
+        }
+        return ((Number) a).doubleValue() * ((Number) b).doubleValue();
+    }
+
+    static Object divide(Object a, Object b) {
+        if (!(a instanceof Number) || !(b instanceof Number) || ((Number) b).doubleValue() == 0) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            long x = ((Number) a).longValue();
+            long y = ((Number) b).longValue();
+            if (x % y == 0 && !(x == Long.MIN_VALUE && y == -1)) {
+                return x / y;
+            }
+        }
+        return ((Number) a).doubleValue() / ((Number) b).doubleValue();
+    }
+
+    static Object modulo(Object a, Object b) {
+        if (!(a instanceof Number) || !(b instanceof Number) || ((Number) b).doubleValue() == 0) {
+            return null;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            return ((Number) a).longValue() % ((Number) b).longValue();
+        }
+        return ((Number) a).doubleValue() % ((Number) b).doubleValue();
+    }
+
+    static Object power(Object a, Object b) {
+        if (!(a instanceof Number) || !(b instanceof Number)) {
+            return null;
+        }
+        return Math.pow(((Number) a).doubleValue(), ((Number) b).doubleValue());
+    }
+
+    static Object negate(Object a) {
+        if (isIntegral(a) && ((Number) a).longValue() != Long.MIN_VALUE) {
+            return -((Number) a).longValue();
+        }
+        if (a instanceof Number) {
+            return -((Number) a).doubleValue();
+        }
+        return null;
+    }
+
+    static Object plus(Object a) {
+        return a instanceof Number ? a : null;
+    }
+
+    static Object concat(Object a, Object b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        return String.valueOf(a).concat(String.valueOf(b));
+    }
+
+    static Object member(Object target, String name) {
+        if (target instanceof Row) {
+            return ((Row) target).get(name);
+        }
+        if (target instanceof Map) {
+            return ((Map<?, ?>) target).get(name);
+        }
+        return null;
+    }
+
+    static Object subscript(Object target, Object index) {
+        if (target == null || index == null) {
+            return null;
+        }
+        if (target instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) target;
+            Object value = map.get(index);
+            return value != null || index instanceof String ? value : map.get(String.valueOf(index));
+        }
+        if (target instanceof Row) {
+            return ((Row) target).get(String.valueOf(index));
+        }
+        if (!isIntegral(index)) {
+            return null;
+        }
+        long i = ((Number) index).longValue();
+        if (target instanceof List) {
+            List<?> list = (List<?>) target;
+            return i >= 0 && i < list.size() ? list.get((int) i) : null;
+        }
+        if (target.getClass().isArray()) {
+            return i >= 0 && i < Array.getLength(target) ? Array.get(target, (int) i) : null;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.expression.exception;
+
+/**
+ * What made an expression invalid.
+ */
+public enum ParseErrorCode {
+    /** The expression has no tokens. */
+    EMPTY_EXPRESSION,
+    /** A quoted string or name has no closing quote. */
+    UNTERMINATED_STRING,
+    /** A backslash ends the expression. */
+    MISSING_ESCAPED_CHARACTER,
+    /** A token follows a complete expression. */
+    UNEXPECTED_TOKEN,
+    EXPECTED_OPERATOR,
+    EXPECTED_OPERAND,
+    EXPECTED_NAME,
+    EXPECTED_NULL,
+    EXPECTED_AND,
+    EXPECTED_OPENING_PARENTHESIS,
+    EXPECTED_CLOSING_PARENTHESIS,
+    EXPECTED_CLOSING_BRACKET,
+    /** Thrown by code outside the parser, with no more precise code. */
+    OTHER
+}
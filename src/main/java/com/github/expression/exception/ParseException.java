@@ -1,14 +1,67 @@
 package com.github.expression.exception;
 
+/**
+ * An invalid expression. Parse errors are expected input rather than bugs, so by default they do
+ * not capture a stack trace; set the system property <tt>expression.parseStackTraces</tt> to true
+ * to capture one when debugging the parser.
+ */
 public class ParseException extends RuntimeException {
-    private int errorOffset;
+
+    private static final long serialVersionUID = 1L;
+
+    private static final boolean STACK_TRACES = Boolean.getBoolean("expression.parseStackTraces");
+
+    private final int errorOffset;
+    private final ParseErrorCode code;
+    private final int tokenIndex;
+    private final int charOffset;
 
     public ParseException(String message, int errorOffset) {
-        super(message);
+        this(ParseErrorCode.OTHER, message, errorOffset, -1, -1);
+    }
+
+    /**
+     * @param tokenIndex
+     * The index of the token at which the error was found, the number of tokens at the end of the
+     * expression, or -1 if unknown.
+     * @param charOffset
+     * The offset of the first character of that token, the length of the expression at its end, or
+     * -1 if unknown.
+     */
+    public ParseException(ParseErrorCode code, String message, int errorOffset, int tokenIndex, int charOffset) {
+        super(message, null, false, STACK_TRACES);
         this.errorOffset = errorOffset;
+        this.code = code;
+        this.tokenIndex = tokenIndex;
+        this.charOffset = charOffset;
+    }
+
+    /**
+     * A new exception with the same message and position, for a caller of its own.
+     */
+    public ParseException copy() {
+        return new ParseException(code, getMessage(), errorOffset, tokenIndex, charOffset);
     }
 
+    /**
+     * The position of the error: a character offset for malformed tokens, a token index otherwise.
+     *
+     * @deprecated use {@link #getTokenIndex()} or {@link #getCharOffset()}
+     */
+    @Deprecated
     public int getErrorOffset() {
         return this.errorOffset;
     }
-}
\ No newline at end of file
+
+    public ParseErrorCode getCode() {
+        return code;
+    }
+
+    public int getTokenIndex() {
+        return tokenIndex;
+    }
+
+    public int getCharOffset() {
+        return charOffset;
+    }
+}
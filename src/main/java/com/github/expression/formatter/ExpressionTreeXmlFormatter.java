@@ -2,109 +2,255 @@ package com.github.expression.formatter;
 
 import com.github.expression.tree.ExpressionTree;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
 
 public class ExpressionTreeXmlFormatter {
-    public String format(ExpressionTree tree) {
-        StringBuilder builder = new StringBuilder();
 
-        builder.append("<query>");
-        builder.append("\n");
+    private static final int OPEN = 0;
+    private static final int CLOSE = 1;
+    private static final int ARG = 2;
 
-        writeAsXml(tree, builder, "  ");
+    private static final int INDENT = 2;
+    // Indent prefixes are slices of this string; deeper levels append it several times
+    private static final String SPACES = "                                                                ";
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private boolean compact;
+
+    /**
+     * Writes the document without indentation or line breaks when <tt>compact</tt> is set.
+     * <p>
+     * Every line of an indented document is indented by its depth, so the document of a deep tree
+     * is quadratic in its depth: a left-leaning chain of 100k <tt>or</tt> terms takes billions of
+     * characters. Such trees need compact output, or {@link ExpressionTree#optimizer()} first,
+     * which flattens the chain into one n-ary node.
+     */
+    public ExpressionTreeXmlFormatter withCompactOutput(boolean compact) {
+        this.compact = compact;
+        return this;
+    }
 
-        builder.append("</query>");
-        builder.append("\n");
+    public String format(ExpressionTree tree) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            format(tree, builder);
+        } catch (IOException e) {
+            // A StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
         return builder.toString();
     }
 
-    private void writeAsXml(ExpressionTree tree, StringBuilder builder, String indent) {
-        builder.append(indent);
-        builder.append('<');
-        builder.append(tree.getOperator());
-        builder.append('>');
-        builder.append("\n");
-        String operator = tree.getOperator();
-        ExpressionTree left = tree.getLeft();
-        ExpressionTree right = tree.getRight();
-
-        if (left != null  ||  right != null) {
-            String indent2;
-            indent2 = indent + "  ";
-
-            if (left != null) {
-                if (left.getValue() != null)
-                    writeStringAsXml(builder, indent2, left.getValue());
-                else
-                    writeAsXml(left, builder, indent2);
-            }
+    /**
+     * Writes the document to <tt>out</tt> as it goes: the memory used does not depend on the size
+     * of the document, and no garbage is created per node or per character.
+     */
+    public void format(ExpressionTree tree, Appendable out) throws IOException {
+        if (out instanceof Writer) {
+            out = new WriterAppendable((Writer) out);
+        }
+        out.append("<query>");
+        newLine(out);
+        writeAsXml(tree, out);
+        out.append("</query>");
+        newLine(out);
+    }
+
+    /**
+     * Writes the document to <tt>out</tt> in UTF-8 through a bounded buffer, flushed but not closed at the end.
+     */
+    public void format(ExpressionTree tree, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        format(tree, writer);
+        writer.flush();
+    }
 
-            if (right != null) {
-                if (right.getValue() != null)
-                    writeStringAsXml(builder, indent2, right.getValue());
-                else
-                    writeAsXml(right, builder, indent2);
+    /**
+     * Writes the elements with an explicit stack instead of recursion, so that deep trees such as
+     * long <tt>or</tt> chains are formatted in linear time whatever the thread stack size. An
+     * operator node is pushed once to open its element and once more to close it.
+     */
+    private void writeAsXml(ExpressionTree tree, Appendable out) throws IOException {
+        ExpressionTree[] nodes = new ExpressionTree[16];
+        // The indent level of each pending node, shifted left past its step
+        int[] steps = new int[16];
+        int top = 0;
+        nodes[top] = tree;
+        steps[top++] = 1 << 2 | OPEN;
+        while (top > 0) {
+            ExpressionTree node = nodes[--top];
+            nodes[top] = null;
+            int step = steps[top];
+            int level = step >>> 2;
+            switch (step & 3) {
+                case ARG:
+                    indent(out, level);
+                    writeStringAsXml(out, node.getValue());
+                    newLine(out);
+                    break;
+                case CLOSE:
+                    indent(out, level);
+                    out.append("</");
+                    out.append(node.getOperator());
+                    out.append('>');
+                    newLine(out);
+                    break;
+                default:
+                    indent(out, level);
+                    out.append('<');
+                    out.append(node.getOperator());
+                    out.append('>');
+                    newLine(out);
+                    List<ExpressionTree> items = node.getItems();
+                    int needed = top + 3 + items.size();
+                    if (needed > nodes.length) {
+                        nodes = Arrays.copyOf(nodes, Math.max(needed, nodes.length * 2));
+                        steps = Arrays.copyOf(steps, nodes.length);
+                    }
+                    nodes[top] = node;
+                    steps[top++] = level << 2 | CLOSE;
+                    // Only a value at the root gets an element of its own, which holds it as its argument
+                    if (node.getValue() != null) {
+                        top = push(nodes, steps, top, node, level + 1);
+                    }
+                    top = push(nodes, steps, top, node.getRight(), level + 1);
+                    top = push(nodes, steps, top, node.getLeft(), level + 1);
+                    for (int i = items.size() - 1; i >= 0; i--) {
+                        top = push(nodes, steps, top, items.get(i), level + 1);
+                    }
+                    break;
             }
         }
+    }
 
-        builder.append(indent);
-        builder.append("</");
-        builder.append(operator);
-        builder.append('>');
-        builder.append("\n");
+    private static int push(ExpressionTree[] nodes, int[] steps, int top, ExpressionTree node, int level) {
+        if (node == null) {
+            return top;
+        }
+        nodes[top] = node;
+        steps[top] = level << 2 | (node.getValue() != null ? ARG : OPEN);
+        return top + 1;
     }
 
-    private void writeStringAsXml(StringBuilder builder, String indent, String arg) {
+    private void indent(Appendable out, int level) throws IOException {
+        if (compact) {
+            return;
+        }
+        int width = level * INDENT;
+        while (width > SPACES.length()) {
+            out.append(SPACES);
+            width -= SPACES.length();
+        }
+        out.append(SPACES, 0, width);
+    }
+
+    private void newLine(Appendable out) throws IOException {
+        if (!compact) {
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Writes the runs of characters that need no escaping in one call each.
+     */
+    private static void writeStringAsXml(Appendable out, String arg) throws IOException {
         int	len;
         char quote = '"';
 
-        builder.append(indent);
-        builder.append("<arg>");
+        out.append("<arg>");
 
         len = arg.length();
         if (len > 0)
             quote = arg.charAt(0);
 
+        int start = 0;
         for (int i = 0;  i < len;  i++) {
             int	ch;
 
             ch = arg.charAt(i);
             switch (ch) {
                 case '<':
-                    builder.append("&lt;");
+                    out.append(arg, start, i).append("&lt;");
+                    start = i + 1;
                     break;
 
                 case '>':
-                    builder.append("&gt;");
+                    out.append(arg, start, i).append("&gt;");
+                    start = i + 1;
                     break;
 
                 case '&':
-                    builder.append("&amp;");
+                    out.append(arg, start, i).append("&amp;");
+                    start = i + 1;
                     break;
 
                 case '\'':
-                    if (ch == quote  &&  i > 0  &&  i < len-1)
-                        builder.append('\\');
-                    builder.append((char) ch);
-                    break;
-
                 case '"':
-                    if (ch == quote  &&  i > 0  &&  i < len-1)
-                        builder.append('\\');
-                    builder.append((char) ch);
+                    if (ch == quote  &&  i > 0  &&  i < len-1) {
+                        out.append(arg, start, i).append('\\');
+                        start = i;
+                    }
                     break;
 
                 default:
                     if (ch <= 0x0020  ||  ch >= 0x0080  &&  ch <= 0x00A0) {
-                        builder.append("&#");
-                        builder.append(Integer.toString(ch));
-                        builder.append(';');
-                    } else
-                        builder.append((char) ch);
+                        out.append(arg, start, i).append("&#");
+                        // At most three digits
+                        if (ch >= 100)
+                            out.append((char) ('0' + ch / 100));
+                        if (ch >= 10)
+                            out.append((char) ('0' + ch / 10 % 10));
+                        out.append((char) ('0' + ch % 10));
+                        out.append(';');
+                        start = i + 1;
+                    }
                     break;
             }
         }
+        out.append(arg, start, len);
+
+        out.append("</arg>");
+    }
+
+    /**
+     * Writes slices of strings without the copy that {@link Writer#append(CharSequence, int, int)} makes.
+     */
+    private static final class WriterAppendable implements Appendable {
+
+        private final Writer writer;
+
+        WriterAppendable(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            if (csq instanceof String) {
+                writer.write((String) csq, start, end - start);
+            } else {
+                writer.append(csq, start, end);
+            }
+            return this;
+        }
 
-        builder.append("</arg>");
-        builder.append("\n");
+        @Override
+        public Appendable append(char c) throws IOException {
+            writer.write(c);
+            return this;
+        }
     }
 }
@@ -0,0 +1,190 @@
+package com.github.expression.formatter;
+
+import com.github.expression.tree.ConstantHolder;
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.ExpressionTreeFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads back the documents written by {@link ExpressionTreeXmlFormatter}, with a streaming
+ * {@link XMLStreamReader}. Any number of <tt>query</tt> elements can be read from one document,
+ * e.g. an archive whose root element holds one <tt>query</tt> per rule, in memory bounded by the
+ * largest query. Thread-safe.
+ * <p>
+ * The XML does not record the type of a value: it is inferred from the text the way the parser
+ * types tokens, so a back-quoted name that looks like a number or a string reads back as one. An
+ * <tt>and</tt> or <tt>or</tt> element with two operands reads back as a binary node, and a
+ * <tt>nop</tt> element as the value it holds.
+ */
+public class ExpressionTreeXmlReader {
+
+    private static final String QUERY = "query";
+    private static final String ARG = "arg";
+
+    private final ExpressionTreeFactory factory;
+    private final XMLInputFactory inputFactory;
+
+    public ExpressionTreeXmlReader() {
+        this(ExpressionTreeFactory.getInstance());
+    }
+
+    /**
+     * A reader typing the values with <tt>factory</tt>, e.g. one recognizing other date formats.
+     */
+    public ExpressionTreeXmlReader(ExpressionTreeFactory factory) {
+        this.factory = factory;
+        this.inputFactory = XMLInputFactory.newInstance();
+        // Rule archives need neither, and resolving external entities would be unsafe
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * The first query of <tt>xml</tt>.
+     *
+     * @throws XMLStreamException if the document is malformed or holds no query
+     */
+    public ExpressionTree read(String xml) throws XMLStreamException {
+        return read(new StringReader(xml));
+    }
+
+    public ExpressionTree read(Reader in) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            ExpressionTree[] first = new ExpressionTree[1];
+            readQueries(reader, tree -> first[0] = tree, 1);
+            if (first[0] == null) {
+                throw new XMLStreamException("No query", reader.getLocation());
+            }
+            return first[0];
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Passes every query of the document to <tt>consumer</tt> as soon as it is read, and returns
+     * the number of queries.
+     */
+    public long readAll(InputStream in, Consumer<ExpressionTree> consumer) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            return readQueries(reader, consumer, Long.MAX_VALUE);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public long readAll(Reader in, Consumer<ExpressionTree> consumer) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            return readQueries(reader, consumer, Long.MAX_VALUE);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Builds each query with an explicit stack of open operator elements, whose operands are
+     * collected in lists reused from one query to the next.
+     */
+    private long readQueries(XMLStreamReader reader, Consumer<ExpressionTree> consumer, long limit) throws XMLStreamException {
+        List<String> operators = new ArrayList<>();
+        List<List<ExpressionTree>> operands = new ArrayList<>();
+        // Depth of open elements within the current query, 0 outside of any query
+        int depth = 0;
+        long count = 0;
+        while (count < limit && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (depth == 0) {
+                    if (name.equals(QUERY)) {
+                        depth = 1;
+                        open(operators, operands, 0, QUERY);
+                    }
+                } else if (name.equals(ARG)) {
+                    operands.get(depth - 1).add(factory.value(unescape(reader.getElementText())));
+                } else {
+                    open(operators, operands, depth++, name);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && depth > 0) {
+                List<ExpressionTree> children = operands.get(--depth);
+                if (depth == 0) {
+                    if (children.size() != 1) {
+                        throw new XMLStreamException("A query must have one operand, found " + children.size(), reader.getLocation());
+                    }
+                    consumer.accept(children.get(0));
+                    count++;
+                } else {
+                    operands.get(depth - 1).add(build(reader, operators.get(depth), children));
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void open(List<String> operators, List<List<ExpressionTree>> operands, int depth, String operator) {
+        if (operators.size() == depth) {
+            operators.add(operator);
+            operands.add(new ArrayList<>());
+        } else {
+            operators.set(depth, operator);
+            operands.get(depth).clear();
+        }
+    }
+
+    private ExpressionTree build(XMLStreamReader reader, String operator, List<ExpressionTree> children) throws XMLStreamException {
+        // The element of a value at the root, empty in the documents of older formatters
+        if (operator.equals(ConstantHolder.OP_NOP)) {
+            if (children.size() > 1) {
+                throw new XMLStreamException("A value must have at most one argument, found " + children.size(), reader.getLocation());
+            }
+            return children.isEmpty() ? factory.value("") : children.get(0);
+        }
+        try {
+            if (operator.equals(ConstantHolder.OP_LIST) || children.size() > 2) {
+                return factory.operator(operator, children);
+            }
+            return factory.operator(operator,
+                    children.size() > 0 ? children.get(0) : null,
+                    children.size() > 1 ? children.get(1) : null);
+        } catch (IllegalArgumentException e) {
+            throw new XMLStreamException(e.getMessage(), reader.getLocation());
+        }
+    }
+
+    /**
+     * Removes the backslashes the formatter puts before a quote of the same kind as the enclosing ones.
+     */
+    private static String unescape(String arg) {
+        int len = arg.length();
+        if (len < 3 || arg.indexOf('\\') < 0) {
+            return arg;
+        }
+        char quote = arg.charAt(0);
+        if (quote != '\'' && quote != '"') {
+            return arg;
+        }
+        StringBuilder builder = new StringBuilder(len);
+        builder.append(quote);
+        for (int i = 1; i < len - 1; i++) {
+            char ch = arg.charAt(i);
+            if (!(ch == '\\' && arg.charAt(i + 1) == quote && i + 1 < len - 1)) {
+                builder.append(ch);
+            }
+        }
+        builder.append(arg.charAt(len - 1));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.expression.token;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only character view over a slice of ASCII bytes. No bytes are copied until a
+ * sub-sequence is turned into a string.
+ */
+final class AsciiCharSequence implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    AsciiCharSequence(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Checks whether the <tt>length</tt> bytes starting at absolute index <tt>offset</tt> are all ASCII.
+     */
+    static boolean isAscii(ByteBuffer bytes, int offset, int length) {
+        if (bytes.hasArray()) {
+            byte[] array = bytes.array();
+            int from = bytes.arrayOffset() + offset;
+            int to = from + length;
+            for (int i = from; i < to; i++) {
+                if (array[i] < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int to = offset + length;
+        for (int i = offset; i < to; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length);
+        }
+        return (char) bytes.get(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range: [" + start + ", " + end + "), length: " + length);
+        }
+        return new AsciiCharSequence(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + offset, length, StandardCharsets.US_ASCII);
+        }
+        byte[] copy = new byte[length];
+        for (int i = 0; i < length; i++) {
+            copy[i] = bytes.get(offset + i);
+        }
+        return new String(copy, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.expression.token;
+
+import java.util.Map;
+
+/**
+ * Case-insensitive open addressing table from keyword text to keyword id. Lookups run directly
+ * over a span of the source text, without creating a lower-cased copy of the token.
+ */
+final class KeywordTable {
+
+    private final char[][] keys;
+    private final String[] values;
+    private final int mask;
+    private final int maxLength;
+
+    KeywordTable(Map<String, String> keywords) {
+        int capacity = Integer.highestOneBit(Math.max(keywords.size(), 1) * 4);
+        this.keys = new char[capacity][];
+        this.values = new String[capacity];
+        this.mask = capacity - 1;
+        int longest = 0;
+        for (Map.Entry<String, String> entry : keywords.entrySet()) {
+            char[] key = entry.getKey().toCharArray();
+            for (int i = 0; i < key.length; i++) {
+                key[i] = Character.toLowerCase(key[i]);
+            }
+            int slot = hash(key) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = entry.getValue();
+            longest = Math.max(longest, key.length);
+        }
+        this.maxLength = longest;
+    }
+
+    String lookup(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length == 0 || length > maxLength) {
+            return null;
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(text.charAt(i));
+        }
+        int slot = mix(h) & mask;
+        char[] key;
+        while ((key = keys[slot]) != null) {
+            if (matches(key, text, start, length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean matches(char[] key, CharSequence text, int start, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != Character.toLowerCase(text.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] key) {
+        int h = 0;
+        for (char ch : key) {
+            h = 31 * h + ch;
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+}
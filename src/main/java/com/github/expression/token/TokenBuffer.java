@@ -0,0 +1,215 @@
+package com.github.expression.token;
+
+import com.github.expression.exception.ParseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reusable holder of the tokens of one expression, stored as (start, end, kind) spans over the
+ * source text. Token strings are only created on demand by {@link #text(int)}.
+ * <p>
+ * A buffer opened with {@link TokenExtractor#open(CharSequence, TokenBuffer)} is filled lazily:
+ * {@link #has(int)} scans just as far as the requested token. A buffer is not thread-safe; reuse
+ * one per thread to tokenize without allocation.
+ */
+public final class TokenBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Arrays grown past this by one long expression are not kept for the next one
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+
+    private CharSequence source;
+    private KeywordTable keywordTable;
+    private int position = -1;
+
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private String[] keywords = new String[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Number of tokens scanned so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return !has(0);
+    }
+
+    /**
+     * Checks whether the expression has a token at <tt>index</tt>, scanning up to it if needed.
+     *
+     * @throws ParseException
+     * Thrown if a token up to <tt>index</tt> is malformed, such as missing a closing quote.
+     */
+    public boolean has(int index) throws ParseException {
+        while (index >= size) {
+            if (position < 0) {
+                return false;
+            }
+            position = TokenScanner.scan(source, position, this, null);
+        }
+        return true;
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    public int start(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int end(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    public int kind(int index) {
+        checkIndex(index);
+        return kinds[index] & TokenKind.KIND_MASK;
+    }
+
+    /**
+     * The keyword id of a token, or null if it is not a keyword or the buffer was filled by an
+     * extractor without a keyword table.
+     */
+    public String keyword(int index) {
+        checkIndex(index);
+        return keywords[index];
+    }
+
+    /**
+     * Whether the token text differs from its source span because of backslash escapes.
+     */
+    public boolean isEscaped(int index) {
+        checkIndex(index);
+        return (kinds[index] & TokenKind.ESCAPED) != 0;
+    }
+
+    /**
+     * The first character of the token text, or -1 if the text is empty.
+     */
+    public int firstChar(int index) {
+        checkIndex(index);
+        int kind = kinds[index];
+        if ((kind & TokenKind.ESCAPED) != 0) {
+            String text = text(index);
+            return text.isEmpty() ? -1 : text.charAt(0);
+        }
+        int start = starts[index];
+        if ((kind & TokenKind.KIND_MASK) == TokenKind.QUOTED_NAME) {
+            return start + 1 < ends[index] - 1 ? source.charAt(start + 1) : -1;
+        }
+        return source.charAt(start);
+    }
+
+    /**
+     * Materializes the text of a token, exactly as {@link TokenExtractor#getTokens(String)} returns it.
+     */
+    public String text(int index) {
+        checkIndex(index);
+        int start = starts[index];
+        int end = ends[index];
+        int kind = kinds[index];
+        if ((kind & TokenKind.ESCAPED) != 0) {
+            StringBuilder builder = new StringBuilder(end - start);
+            TokenScanner.scan(source, start, null, builder);
+            return builder.toString();
+        }
+        if ((kind & TokenKind.KIND_MASK) == TokenKind.QUOTED_NAME) {
+            return source.subSequence(start + 1, end - 1).toString();
+        }
+        return source.subSequence(start, end).toString();
+    }
+
+    /**
+     * Scans the remaining tokens and returns the text of all of them.
+     */
+    public List<String> toList() {
+        if (!has(0)) {
+            return Collections.emptyList();
+        }
+        has(Integer.MAX_VALUE);
+        List<String> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(text(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * Empties the buffer, shrinking the token arrays back to their initial size if they have grown
+     * past {@value #MAX_RETAINED_CAPACITY} tokens.
+     */
+    public void clear() {
+        source = null;
+        keywordTable = null;
+        position = -1;
+        if (starts.length > MAX_RETAINED_CAPACITY) {
+            starts = new int[INITIAL_CAPACITY];
+            ends = new int[INITIAL_CAPACITY];
+            kinds = new int[INITIAL_CAPACITY];
+            keywords = new String[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(keywords, 0, size, null);
+        }
+        size = 0;
+    }
+
+    int capacity() {
+        return starts.length;
+    }
+
+    void reset(CharSequence source, KeywordTable keywordTable) {
+        clear();
+        this.source = source;
+        this.keywordTable = keywordTable;
+        this.position = 0;
+    }
+
+    void add(int start, int end, int kind) {
+        if (size == starts.length) {
+            int capacity = size << 1;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            keywords = Arrays.copyOf(keywords, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        kinds[size] = kind;
+        size++;
+        if (keywordTable != null) {
+            keywords[size - 1] = lookupKeyword(size - 1);
+        }
+    }
+
+    private String lookupKeyword(int index) {
+        int kind = kinds[index];
+        if ((kind & TokenKind.KIND_MASK) == TokenKind.STRING) {
+            return null;
+        }
+        if ((kind & TokenKind.ESCAPED) != 0) {
+            String text = text(index);
+            return keywordTable.lookup(text, 0, text.length());
+        }
+        if ((kind & TokenKind.KIND_MASK) == TokenKind.QUOTED_NAME) {
+            return keywordTable.lookup(source, starts[index] + 1, ends[index] - 1);
+        }
+        return keywordTable.lookup(source, starts[index], ends[index]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token index: " + index + ", size: " + size);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.expression.token;
+
+/**
+ * Token kinds reported by {@link TokenBuffer#kind(int)}. Keywords are reported separately by
+ * {@link TokenBuffer#keyword(int)}, since a keyword such as {@code and} is lexically an identifier.
+ */
+public final class TokenKind {
+    /** Bare word starting with a Java identifier character that is not a number. */
+    public static final int IDENTIFIER = 1;
+    /** Single or double quoted string, the span includes the quotes. */
+    public static final int STRING = 2;
+    /** Back-quoted name, the span includes the back quotes but the token text does not. */
+    public static final int QUOTED_NAME = 3;
+    /** Delimiter punctuation: one of {@code , ( ) [ ] & / + - . * ** | ||}. */
+    public static final int PUNCT = 4;
+    /** Unsigned integer or decimal number such as {@code 12}, {@code 1.5} or {@code .5}. */
+    public static final int NUMBER = 5;
+    /** Any other bare word, such as the comparison operators {@code =}, {@code >=} or {@code <>}. */
+    public static final int OPERATOR = 6;
+
+    static final int KIND_MASK = 0xFF;
+    /** Set when the token text differs from its source span because of backslash escapes. */
+    static final int ESCAPED = 0x100;
+
+    private TokenKind() {
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.expression.token;
+
+import com.github.expression.exception.ParseErrorCode;
+import com.github.expression.exception.ParseException;
+
+/**
+ * Table driven scanner behind {@link TokenExtractor}. Characters are classified with a lookup table
+ * and all scanning state lives in primitive locals, so scanning a token allocates nothing unless its
+ * text is requested.
+ */
+final class TokenScanner {
+
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte DELIMITER = 2;
+    private static final byte DOUBLED = 3;
+    private static final byte ESCAPE = 4;
+    private static final byte DOT = 5;
+
+    private static final byte[] CHAR_CLASSES = new byte[128];
+
+    static {
+        for (char ch : new char[] {' ', '\t', '\n', '\r', '\f'}) {
+            CHAR_CLASSES[ch] = SPACE;
+        }
+        for (char ch : new char[] {'"', '\'', ',', '(', ')', '[', ']', '&', '/', '+', '-'}) {
+            CHAR_CLASSES[ch] = DELIMITER;
+        }
+        CHAR_CLASSES['*'] = DOUBLED;
+        CHAR_CLASSES['|'] = DOUBLED;
+        CHAR_CLASSES['\\'] = ESCAPE;
+        CHAR_CLASSES['.'] = DOT;
+    }
+
+    private TokenScanner() {
+    }
+
+    static void tokenize(CharSequence line, KeywordTable keywords, TokenBuffer tokens) throws ParseException {
+        open(line, keywords, tokens);
+        tokens.has(Integer.MAX_VALUE);
+    }
+
+    static void open(CharSequence line, KeywordTable keywords, TokenBuffer tokens) {
+        tokens.reset(line, keywords);
+    }
+
+    /**
+     * Scans the next token starting at <tt>position</tt>, adding its span to <tt>tokens</tt> and
+     * appending its text to <tt>text</tt> when they are not null.
+     *
+     * @return
+     * The position of the character following the token, or -1 if there are no more tokens.
+     *
+     * @throws ParseException
+     * Thrown if a token is malformed, such as missing a closing quote.
+     */
+    // An escaped character falls through to the handling of word characters
+    @SuppressWarnings("fallthrough")
+    static int scan(CharSequence line, int position, TokenBuffer tokens, StringBuilder text) throws ParseException {
+        int length = line.length();
+        int i = position;
+        while (i < length && classOf(line.charAt(i)) == SPACE) {
+            i++;
+        }
+        if (i >= length) {
+            return -1;
+        }
+
+        int start = i;
+        char quote = line.charAt(i);
+        if (quote == '"' || quote == '\'') {
+            if (text != null) {
+                text.append(quote);
+            }
+            return scanQuoted(line, start, i + 1, quote, TokenKind.STRING, tokens, text);
+        } else if (quote == '`') {
+            return scanQuoted(line, start, i + 1, quote, TokenKind.QUOTED_NAME, tokens, text);
+        }
+
+        int flags = 0;
+        int tokenLength = 0;
+        char first = 0;
+        // Legacy rule for a '.' inside a word: only digits, optionally signed, make it a decimal point
+        boolean numeric = true;
+        // Number shape used for classification: [+-]digits[.digits]
+        boolean number = true;
+        boolean decimal = false;
+        int digits = 0;
+        scan:
+        while (i < length) {
+            char ch = line.charAt(i++);
+            switch (classOf(ch)) {
+                case SPACE:
+                    i--;
+                    break scan;
+
+                case DELIMITER:
+                    if (tokenLength == 0) {
+                        if (text != null) {
+                            text.append(ch);
+                        }
+                        return emit(tokens, start, i, TokenKind.PUNCT);
+                    }
+                    i--;
+                    break scan;
+
+                case DOUBLED:
+                    if (tokenLength == 0) {
+                        if (text != null) {
+                            text.append(ch);
+                        }
+                        // Handle '**' and '||' operators
+                        if (i < length && line.charAt(i) == ch) {
+                            if (text != null) {
+                                text.append(ch);
+                            }
+                            i++;
+                        }
+                        return emit(tokens, start, i, TokenKind.PUNCT);
+                    }
+                    i--;
+                    break scan;
+
+                case DOT:
+                    if (tokenLength == 0) {
+                        if (text != null) {
+                            text.append(ch);
+                        }
+                        if (i >= length || !Character.isDigit(line.charAt(i))) {
+                            return emit(tokens, start, i, TokenKind.PUNCT);
+                        }
+                    } else if (!numeric) {
+                        // Delimiter punctuation
+                        i--;
+                        break scan;
+                    } else if (text != null) {
+                        // Numeric decimal pt
+                        text.append(ch);
+                    }
+                    if (tokenLength == 0) {
+                        first = ch;
+                    }
+                    tokenLength++;
+                    numeric = false;
+                    number &= !decimal;
+                    decimal = true;
+                    break;
+
+                case ESCAPE:
+                    if (i >= length) {
+                        throw error(ParseErrorCode.MISSING_ESCAPED_CHARACTER, "Missing escaped character", i, tokens, start);
+                    }
+                    ch = line.charAt(i++);
+                    flags = TokenKind.ESCAPED;
+                    // Fall through, the escaped character is part of the word
+
+                default:
+                    if (text != null) {
+                        text.append(ch);
+                    }
+                    boolean digit = Character.isDigit(ch);
+                    boolean sign = tokenLength == 0 && (ch == '+' || ch == '-');
+                    if (tokenLength == 0) {
+                        first = ch;
+                    }
+                    tokenLength++;
+                    numeric &= digit || sign;
+                    if (digit) {
+                        digits++;
+                    } else if (!sign) {
+                        number = false;
+                    }
+                    break;
+            }
+        }
+
+        int kind;
+        if (number && digits > 0) {
+            kind = TokenKind.NUMBER;
+        } else if (tokenLength > 0 && Character.isJavaIdentifierPart(first)) {
+            kind = TokenKind.IDENTIFIER;
+        } else {
+            kind = TokenKind.OPERATOR;
+        }
+        return emit(tokens, start, i, kind | flags);
+    }
+
+    private static int scanQuoted(CharSequence line, int start, int position, char quote, int kind,
+                                  TokenBuffer tokens, StringBuilder text) throws ParseException {
+        int length = line.length();
+        int i = position;
+        char ch = ' ';
+        while (i < length) {
+            ch = line.charAt(i++);
+            if (ch == quote) {
+                if (text != null && quote != '`') {
+                    text.append(ch);
+                }
+                return emit(tokens, start, i, kind);
+            } else if (ch == '\\') {
+                if (i >= length) {
+                    throw error(ParseErrorCode.UNTERMINATED_STRING, "Missing closing quote (" + quote + ")", i, tokens, start);
+                }
+                ch = line.charAt(i++);
+                if (ch == quote) {
+                    kind |= TokenKind.ESCAPED;
+                    if (text != null) {
+                        text.append(ch);
+                    }
+                } else {
+                    if (text != null) {
+                        text.append('\\');
+                    }
+                    i--;
+                }
+            } else if (text != null) {
+                text.append(ch);
+            }
+        }
+        // An escaped quote as the last character is accepted as the closing one
+        if (ch != quote) {
+            throw error(ParseErrorCode.UNTERMINATED_STRING, "Missing closing quote (" + quote + ")", i, tokens, start);
+        }
+        return emit(tokens, start, i, kind);
+    }
+
+    /**
+     * An error in the token starting at <tt>start</tt>, found at <tt>position</tt>.
+     */
+    private static ParseException error(ParseErrorCode code, String message, int position, TokenBuffer tokens, int start) {
+        return new ParseException(code, message, position, tokens != null ? tokens.size() : -1, start);
+    }
+
+    private static int emit(TokenBuffer tokens, int start, int end, int kind) {
+        if (tokens != null) {
+            tokens.add(start, end, kind);
+        }
+        return end;
+    }
+
+    private static byte classOf(char ch) {
+        return ch < CHAR_CLASSES.length ? CHAR_CLASSES[ch] : OTHER;
+    }
+}
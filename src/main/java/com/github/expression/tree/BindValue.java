@@ -0,0 +1,96 @@
+package com.github.expression.tree;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A typed value for one <tt>?</tt> placeholder of a {@link ParameterizedQuery}.
+ */
+public final class BindValue {
+
+    public enum Type {
+        STRING,
+        LONG,
+        DATE,
+        ARRAY
+    }
+
+    private final Type type;
+    private final Object value;
+    // SQL type name of the elements of an ARRAY
+    private final String elementType;
+
+    BindValue(Type type, Object value) {
+        this(type, value, null);
+    }
+
+    BindValue(Type type, Object value, String elementType) {
+        this.type = type;
+        this.value = value;
+        this.elementType = elementType;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The value: a {@link String}, a {@link Long}, a {@link java.sql.Date} or an array of one of
+     * these according to the type.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * The SQL type name of the elements of an ARRAY value, or null.
+     */
+    public String getElementType() {
+        return elementType;
+    }
+
+    /**
+     * Sets this value as parameter <tt>index</tt> (1-based) of <tt>statement</tt>.
+     */
+    public void bind(PreparedStatement statement, int index) throws SQLException {
+        switch (type) {
+            case LONG:
+                statement.setLong(index, (Long) value);
+                break;
+            case DATE:
+                statement.setDate(index, (Date) value);
+                break;
+            case ARRAY:
+                statement.setArray(index, statement.getConnection().createArrayOf(elementType, (Object[]) value));
+                break;
+            default:
+                statement.setString(index, (String) value);
+                break;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BindValue)) {
+            return false;
+        }
+        BindValue other = (BindValue) o;
+        return type == other.type && Objects.deepEquals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.hashCode() + Arrays.deepHashCode(new Object[]{value});
+    }
+
+    @Override
+    public String toString() {
+        return type + ":" + (value instanceof Object[] ? Arrays.toString((Object[]) value) : value);
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.expression.tree;
+
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Decides which quoted strings of an expression are dates. Implementations must be thread-safe
+ * and should not throw for text that is not a date.
+ */
+@FunctionalInterface
+public interface DateRecognizer {
+
+    long NOT_A_DATE = Long.MIN_VALUE;
+
+    /**
+     * The day of <tt>text</tt> counted from 1970-01-01, or {@link #NOT_A_DATE}.
+     */
+    long epochDay(String text);
+
+    /**
+     * Recognizes ISO dates such as <tt>2001-08-01</tt>.
+     */
+    static DateRecognizer iso() {
+        return DateRecognizers.ISO;
+    }
+
+    /**
+     * Recognizes dates matching a {@link DateTimeFormatter} pattern with year, month and day
+     * fields, such as <tt>dd.MM.yyyy</tt>.
+     */
+    static DateRecognizer ofPattern(String pattern) {
+        return DateRecognizers.ofPattern(pattern);
+    }
+
+    /**
+     * Recognizes no dates: every quoted literal is a string.
+     */
+    static DateRecognizer none() {
+        return text -> NOT_A_DATE;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.expression.tree;
+
+import java.text.ParsePosition;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * The {@link DateRecognizer} implementations. They check the text field by field instead of
+ * catching parse exceptions, which are costly when most literals are not dates.
+ */
+final class DateRecognizers {
+
+    static final DateRecognizer ISO = DateRecognizers::isoEpochDay;
+
+    private DateRecognizers() {
+    }
+
+    static DateRecognizer ofPattern(String pattern) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+        return text -> {
+            ParsePosition position = new ParsePosition(0);
+            TemporalAccessor parsed = formatter.parseUnresolved(text, position);
+            if (parsed == null || position.getErrorIndex() >= 0 || position.getIndex() != text.length()) {
+                return DateRecognizer.NOT_A_DATE;
+            }
+            long year;
+            if (parsed.isSupported(ChronoField.YEAR)) {
+                year = parsed.getLong(ChronoField.YEAR);
+            } else if (parsed.isSupported(ChronoField.YEAR_OF_ERA)) {
+                year = parsed.getLong(ChronoField.YEAR_OF_ERA);
+            } else {
+                return DateRecognizer.NOT_A_DATE;
+            }
+            if (!parsed.isSupported(ChronoField.MONTH_OF_YEAR) || !parsed.isSupported(ChronoField.DAY_OF_MONTH)) {
+                return DateRecognizer.NOT_A_DATE;
+            }
+            return epochDay(year, parsed.getLong(ChronoField.MONTH_OF_YEAR), parsed.getLong(ChronoField.DAY_OF_MONTH));
+        };
+    }
+
+    private static long isoEpochDay(String text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return DateRecognizer.NOT_A_DATE;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return DateRecognizer.NOT_A_DATE;
+        }
+        return epochDay(year, month, day);
+    }
+
+    private static long epochDay(long year, long month, long day) {
+        if (!ChronoField.YEAR.range().isValidValue(year) || month < 1 || month > 12 || day < 1
+                || day > Month.of((int) month).length(Year.isLeap(year))) {
+            return DateRecognizer.NOT_A_DATE;
+        }
+        return LocalDate.of((int) year, (int) month, (int) day).toEpochDay();
+    }
+
+    /**
+     * The decimal number in <tt>text[start..end)</tt>, or -1 if it has other characters.
+     */
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            value = value * 10 + (ch - '0');
+        }
+        return value;
+    }
+}
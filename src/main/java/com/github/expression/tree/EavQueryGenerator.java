@@ -0,0 +1,533 @@
+package com.github.expression.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates queries selecting the ids of the entries whose tags match a filter, over a table with one
+ * row per tag of an entry: <tt>(entry_id, name, str_value, num_value, date_value)</tt>.
+ * <p>
+ * Unlike {@link QueryGenerator}, which writes a condition on a single tag row, every tag condition
+ * becomes its own lookup that an index on <tt>(name, value, entry_id)</tt> answers, and the lookups
+ * are combined per entry as selected by {@link EavStrategy}. An entry satisfies <tt>not</tt> and
+ * <tt>is null</tt> conditions when it has some other tag.
+ */
+public class EavQueryGenerator {
+
+    public static final String DEFAULT_TABLE = "entry_tags";
+    public static final String DEFAULT_ID_COLUMN = "entry_id";
+    // Above this many tag conditions in a plain conjunction one grouped scan beats as many intersected lookups
+    private static final int GROUP_BY_THRESHOLD = 3;
+
+    private final String table;
+    private final String idColumn;
+    private final DateRecognizer dateRecognizer;
+    private InListMode inListMode = InListMode.INLINE;
+    private int maxInListSize = SqlWriter.DEFAULT_MAX_IN_LIST_SIZE;
+    private boolean likePrefixRanges;
+
+    public EavQueryGenerator() {
+        this(DEFAULT_TABLE, DEFAULT_ID_COLUMN);
+    }
+
+    public EavQueryGenerator(String table, String idColumn) {
+        this(table, idColumn, null);
+    }
+
+    /**
+     * A generator that also treats the string literals accepted by <tt>dateRecognizer</tt> as dates.
+     */
+    public EavQueryGenerator(String table, String idColumn, DateRecognizer dateRecognizer) {
+        this.table = table;
+        this.idColumn = idColumn;
+        this.dateRecognizer = dateRecognizer;
+    }
+
+    /**
+     * Selects how IN lists of literals are written, {@link InListMode#INLINE} by default.
+     */
+    public EavQueryGenerator withInListMode(InListMode inListMode) {
+        this.inListMode = inListMode;
+        return this;
+    }
+
+    /**
+     * The number of values of an IN group in {@link InListMode#CHUNKED} mode, 1000 by default.
+     */
+    public EavQueryGenerator withMaxInListSize(int maxInListSize) {
+        if (maxInListSize < 1) {
+            throw new IllegalArgumentException("IN list size must be positive: " + maxInListSize);
+        }
+        this.maxInListSize = maxInListSize;
+        return this;
+    }
+
+    /**
+     * Writes a LIKE pattern starting with fixed text as a range of the value column, as
+     * {@link QueryGenerator#withLikePrefixRanges(boolean)} does; off by default.
+     */
+    public EavQueryGenerator withLikePrefixRanges(boolean likePrefixRanges) {
+        this.likePrefixRanges = likePrefixRanges;
+        return this;
+    }
+
+    public String generate(ExpressionTree tree) {
+        return generate(tree, chooseStrategy(tree));
+    }
+
+    public String generate(ExpressionTree tree, EavStrategy strategy) {
+        SqlWriter output = new SqlWriter(new StringBuilder(), null, dateRecognizer, inListMode, maxInListSize, likePrefixRanges);
+        write(output, tree, strategy);
+        return output.builder.toString();
+    }
+
+    public ParameterizedQuery generateParameterized(ExpressionTree tree) {
+        return generateParameterized(tree, chooseStrategy(tree));
+    }
+
+    public ParameterizedQuery generateParameterized(ExpressionTree tree, EavStrategy strategy) {
+        SqlWriter output = new SqlWriter(new StringBuilder(), new ArrayList<>(), dateRecognizer, inListMode, maxInListSize,
+                likePrefixRanges);
+        write(output, tree, strategy);
+        return new ParameterizedQuery(output.builder.toString(), output.binds, output.tables);
+    }
+
+    /**
+     * Picks the strategy for the shape of <tt>tree</tt>: negations are cheapest as <tt>not exists</tt>
+     * probes, a conjunction of many distinct tags as one grouped scan, and anything else as set
+     * operations over the indexed lookups.
+     *
+     * @throws IllegalArgumentException if <tt>tree</tt> is not a filter on tags
+     */
+    public EavStrategy chooseStrategy(ExpressionTree tree) {
+        if (isConstant(tree)) {
+            return EavStrategy.SET_OPERATIONS;
+        }
+        Node node = normalize(tree, false);
+        if (node.hasNegation()) {
+            return EavStrategy.EXISTS;
+        }
+        if (node.isDistinctConjunction() && node.children.size() > GROUP_BY_THRESHOLD) {
+            return EavStrategy.GROUP_BY;
+        }
+        return EavStrategy.SET_OPERATIONS;
+    }
+
+    private void write(SqlWriter output, ExpressionTree tree, EavStrategy strategy) {
+        // An optimized tree that is always true matches every entry, one that is never true none
+        if (isConstant(tree)) {
+            output.append("select distinct ").append(idColumn).append(" from ").append(table);
+            if (tree.getOperator().equals(ConstantHolder.OP_FALSE)) {
+                output.append(" where 1 = 0");
+            }
+            return;
+        }
+        Node node = normalize(tree, false);
+        switch (strategy) {
+            case SET_OPERATIONS:
+                // Union, intersect and except drop duplicate ids, a lookup on its own has to do it itself
+                if (node.kind == Kind.LEAF) {
+                    writeLookup(output, "select distinct ", node);
+                } else {
+                    writeSet(output, node);
+                }
+                break;
+            case GROUP_BY:
+                writeGroupBy(output, node);
+                break;
+            default:
+                writeExists(output, node);
+                break;
+        }
+    }
+
+    private void writeSet(SqlWriter output, Node node) {
+        switch (node.kind) {
+            case LEAF:
+                writeLookup(output, "select ", node);
+                break;
+            case NOT:
+                writeAll(output);
+                output.append(" except (");
+                writeSet(output, node.children.get(0));
+                output.append(")");
+                break;
+            case AND:
+                List<Node> positive = new ArrayList<>();
+                List<Node> negative = new ArrayList<>();
+                for (Node child : node.children) {
+                    (child.kind == Kind.NOT ? negative : positive).add(child);
+                }
+                if (positive.isEmpty()) {
+                    writeAll(output);
+                } else {
+                    writeSetChildren(output, positive, " intersect ");
+                }
+                for (Node child : negative) {
+                    output.append(" except (");
+                    writeSet(output, child.children.get(0));
+                    output.append(")");
+                }
+                break;
+            default:
+                writeSetChildren(output, node.children, " union ");
+                break;
+        }
+    }
+
+    private void writeLookup(SqlWriter output, String select, Node leaf) {
+        output.append(select).append(idColumn).append(" from ").append(table).append(" where ");
+        writeCondition(output, "", leaf.leaf);
+    }
+
+    private void writeSetChildren(SqlWriter output, List<Node> children, String operator) {
+        for (int i = 0; i < children.size(); i++) {
+            if (i > 0) {
+                output.append(operator);
+            }
+            output.append("(");
+            writeSet(output, children.get(i));
+            output.append(")");
+        }
+    }
+
+    private void writeAll(SqlWriter output) {
+        output.append("(select ").append(idColumn).append(" from ").append(table).append(")");
+    }
+
+    private void writeGroupBy(SqlWriter output, Node node) {
+        output.append("select ").append(idColumn).append(" from ").append(table);
+        // Without negations only the rows of the referenced tags can make an entry match
+        if (!node.hasNegation()) {
+            List<Node> leaves = new ArrayList<>();
+            node.collectLeaves(leaves);
+            output.append(" where ");
+            for (int i = 0; i < leaves.size(); i++) {
+                if (i > 0) {
+                    output.append(" or ");
+                }
+                output.append("(");
+                writeCondition(output, "", leaves.get(i).leaf);
+                output.append(")");
+            }
+        }
+        output.append(" group by ").append(idColumn).append(" having ");
+        if (node.isDistinctConjunction()) {
+            output.append("count(distinct name) = ").append(String.valueOf(node.children.size()));
+        } else {
+            writeHaving(output, node);
+        }
+    }
+
+    private void writeHaving(SqlWriter output, Node node) {
+        switch (node.kind) {
+            case LEAF:
+                output.append("max(case when ");
+                writeCondition(output, "", node.leaf);
+                output.append(" then 1 else 0 end) = 1");
+                break;
+            case NOT:
+                output.append("not (");
+                writeHaving(output, node.children.get(0));
+                output.append(")");
+                break;
+            default:
+                writeJunction(output, node, this::writeHaving);
+                break;
+        }
+    }
+
+    private void writeExists(SqlWriter output, Node node) {
+        output.append("select distinct e.").append(idColumn).append(" from ").append(table).append(" e where ");
+        // A positive tag condition of the conjunction restricts the outer rows through the index directly
+        Node direct = null;
+        if (node.kind == Kind.LEAF) {
+            direct = node;
+        } else if (node.kind == Kind.AND) {
+            for (Node child : node.children) {
+                if (child.kind == Kind.LEAF) {
+                    direct = child;
+                    break;
+                }
+            }
+        }
+        if (direct == null) {
+            writeProbe(output, node);
+            return;
+        }
+        writeCondition(output, "e.", direct.leaf);
+        if (node != direct) {
+            for (Node child : node.children) {
+                if (child != direct) {
+                    output.append(" and ");
+                    writeProbe(output, child);
+                }
+            }
+        }
+    }
+
+    private void writeProbe(SqlWriter output, Node node) {
+        switch (node.kind) {
+            case LEAF:
+                output.append("exists (select 1 from ").append(table).append(" t where t.").append(idColumn)
+                        .append(" = e.").append(idColumn).append(" and ");
+                writeCondition(output, "t.", node.leaf);
+                output.append(")");
+                break;
+            case NOT:
+                output.append("not ");
+                writeProbe(output, node.children.get(0));
+                break;
+            default:
+                writeJunction(output, node, this::writeProbe);
+                break;
+        }
+    }
+
+    private void writeJunction(SqlWriter output, Node node, NodeWriter writer) {
+        output.append("(");
+        for (int i = 0; i < node.children.size(); i++) {
+            if (i > 0) {
+                output.append(node.kind == Kind.AND ? " and " : " or ");
+            }
+            writer.write(output, node.children.get(i));
+        }
+        output.append(")");
+    }
+
+    /**
+     * Writes the condition on a single tag row: its name and, unless only its presence is tested, its value.
+     */
+    private void writeCondition(SqlWriter output, String alias, ExpressionTree leaf) {
+        output.append(alias).append("name = ");
+        if (leaf.getOperator().equals(ConstantHolder.OP_IS)) {
+            output.appendName(leaf.getLeft().getValue());
+            return;
+        }
+        boolean mirrored = leaf.getLeft().getType() != LiteralType.IDENTIFIER;
+        ExpressionTree name = mirrored ? leaf.getRight() : leaf.getLeft();
+        ExpressionTree value = mirrored ? leaf.getLeft() : leaf.getRight();
+        output.appendName(name.getValue());
+        output.append(" and ");
+        switch (leaf.getOperator()) {
+            case ConstantHolder.OP_IN:
+                output.appendIn(alias, value);
+                break;
+            case ConstantHolder.OP_BETWEEN: {
+                String column = output.defineColumn(value.getLeft());
+                output.append(alias).append(column).append(" between ");
+                output.appendValue(column, value.getLeft());
+                output.append(" and ");
+                output.appendValue(column, value.getRight());
+                break;
+            }
+            case ConstantHolder.OP_LIKE:
+                output.appendLike(alias, output.defineColumn(value), value);
+                break;
+            default: {
+                String column = output.defineColumn(value);
+                String operator = mirrored ? mirror(leaf.getOperator()) : leaf.getOperator();
+                output.append(alias).append(column).append(" ")
+                        .append(ConstantHolder.reversedOperatorsMap.get(operator)).append(" ");
+                output.appendValue(column, value);
+                break;
+            }
+        }
+    }
+
+    private static String mirror(String operator) {
+        switch (operator) {
+            case ConstantHolder.OP_LT:
+                return ConstantHolder.OP_GT;
+            case ConstantHolder.OP_LE:
+                return ConstantHolder.OP_GE;
+            case ConstantHolder.OP_GT:
+                return ConstantHolder.OP_LT;
+            case ConstantHolder.OP_GE:
+                return ConstantHolder.OP_LE;
+            default:
+                return operator;
+        }
+    }
+
+    /**
+     * Flattens nested conjunctions and disjunctions, cancels double negations and turns
+     * <tt>x is null</tt> into the negated presence of the tag <tt>x</tt>.
+     */
+    private static Node normalize(ExpressionTree tree, boolean negated) {
+        String operator = tree.getOperator();
+        switch (operator) {
+            case ConstantHolder.OP_NOT:
+                return normalize(tree.getLeft(), !negated);
+            case ConstantHolder.OP_AND:
+            case ConstantHolder.OP_OR: {
+                Node node = new Node(operator.equals(ConstantHolder.OP_AND) ? Kind.AND : Kind.OR, null);
+                flatten(tree, operator, node.children);
+                return negated ? Node.not(node) : node;
+            }
+            case ConstantHolder.OP_IS:
+                if (isName(tree.getLeft()) && tree.getRight().getType() == LiteralType.NULL) {
+                    // Absence of the tag: negate its presence
+                    Node presence = new Node(Kind.LEAF, tree);
+                    return negated ? presence : Node.not(presence);
+                }
+                break;
+            case ConstantHolder.OP_IN:
+                if (isName(tree.getLeft()) && isLiteralList(tree.getRight())) {
+                    return leaf(tree, negated);
+                }
+                break;
+            case ConstantHolder.OP_BETWEEN:
+                if (isName(tree.getLeft()) && isLiteral(tree.getRight().getLeft()) && isLiteral(tree.getRight().getRight())) {
+                    return leaf(tree, negated);
+                }
+                break;
+            case ConstantHolder.OP_EQ:
+            case ConstantHolder.OP_NE:
+            case ConstantHolder.OP_LT:
+            case ConstantHolder.OP_LE:
+            case ConstantHolder.OP_GT:
+            case ConstantHolder.OP_GE:
+            case ConstantHolder.OP_LIKE:
+                if (isName(tree.getLeft()) && isLiteral(tree.getRight())
+                        || !operator.equals(ConstantHolder.OP_LIKE) && isLiteral(tree.getLeft()) && isName(tree.getRight())) {
+                    return leaf(tree, negated);
+                }
+                break;
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Not a tag condition: " + operator);
+    }
+
+    private static Node leaf(ExpressionTree tree, boolean negated) {
+        Node leaf = new Node(Kind.LEAF, tree);
+        return negated ? Node.not(leaf) : leaf;
+    }
+
+    private static void flatten(ExpressionTree tree, String operator, List<Node> children) {
+        Deque<ExpressionTree> pending = new ArrayDeque<>();
+        pending.push(tree);
+        while (!pending.isEmpty()) {
+            ExpressionTree next = pending.pop();
+            if (next.getOperator().equals(operator)) {
+                List<ExpressionTree> items = next.getItems();
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    pending.push(items.get(i));
+                }
+                if (items.isEmpty()) {
+                    pending.push(next.getRight());
+                    pending.push(next.getLeft());
+                }
+                continue;
+            }
+            Node child = normalize(next, false);
+            if (child.kind == Kind.valueOf(operator.toUpperCase())) {
+                children.addAll(child.children);
+            } else {
+                children.add(child);
+            }
+        }
+    }
+
+    private static boolean isConstant(ExpressionTree tree) {
+        return tree.getOperator().equals(ConstantHolder.OP_TRUE) || tree.getOperator().equals(ConstantHolder.OP_FALSE);
+    }
+
+    private static boolean isName(ExpressionTree tree) {
+        return tree != null && tree.getType() == LiteralType.IDENTIFIER;
+    }
+
+    private static boolean isLiteral(ExpressionTree tree) {
+        return tree != null && tree.getType() != null
+                && tree.getType() != LiteralType.IDENTIFIER && tree.getType() != LiteralType.NULL;
+    }
+
+    private static boolean isLiteralList(ExpressionTree tree) {
+        if (!tree.getOperator().equals(ConstantHolder.OP_LIST)) {
+            return false;
+        }
+        for (ExpressionTree item : tree.getItems()) {
+            if (!isLiteral(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private enum Kind {
+        LEAF, NOT, AND, OR
+    }
+
+    private interface NodeWriter {
+        void write(SqlWriter output, Node node);
+    }
+
+    private static final class Node {
+
+        final Kind kind;
+        // The comparison, IN, BETWEEN or IS tree of a LEAF
+        final ExpressionTree leaf;
+        final List<Node> children = new ArrayList<>();
+
+        Node(Kind kind, ExpressionTree leaf) {
+            this.kind = kind;
+            this.leaf = leaf;
+        }
+
+        static Node not(Node node) {
+            if (node.kind == Kind.NOT) {
+                return node.children.get(0);
+            }
+            Node not = new Node(Kind.NOT, null);
+            not.children.add(node);
+            return not;
+        }
+
+        boolean hasNegation() {
+            if (kind == Kind.NOT) {
+                return true;
+            }
+            for (Node child : children) {
+                if (child.hasNegation()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Whether this is a conjunction of conditions on distinct tags, which an entry satisfies
+         * exactly when it has a matching row for each of them.
+         */
+        boolean isDistinctConjunction() {
+            if (kind != Kind.AND) {
+                return false;
+            }
+            Set<String> names = new HashSet<>();
+            for (Node child : children) {
+                if (child.kind != Kind.LEAF || !names.add(child.name())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String name() {
+            return (isName(leaf.getLeft()) ? leaf.getLeft() : leaf.getRight()).getValue();
+        }
+
+        void collectLeaves(List<Node> leaves) {
+            if (kind == Kind.LEAF) {
+                leaves.add(this);
+            }
+            for (Node child : children) {
+                child.collectLeaves(leaves);
+            }
+        }
+    }
+}
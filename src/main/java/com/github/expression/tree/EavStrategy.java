@@ -0,0 +1,23 @@
+package com.github.expression.tree;
+
+/**
+ * How {@link EavQueryGenerator} combines the per-tag conditions of a filter over an
+ * entity-attribute-value table holding one row per tag.
+ */
+public enum EavStrategy {
+
+    /**
+     * One indexed subquery per tag, combined with <tt>intersect</tt>, <tt>union</tt> and <tt>except</tt>.
+     */
+    SET_OPERATIONS,
+
+    /**
+     * A single scan of the rows of the referenced tags, grouped by entry and filtered with <tt>having</tt>.
+     */
+    GROUP_BY,
+
+    /**
+     * Correlated <tt>exists</tt> probes of the tag table, one per tag.
+     */
+    EXISTS
+}
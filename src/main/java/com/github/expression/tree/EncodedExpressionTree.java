@@ -0,0 +1,298 @@
+package com.github.expression.tree;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A tree written by {@link ExpressionTreeEncoder}, read in place from a buffer, which may be
+ * memory-mapped. Nodes are addressed by their offset in the buffer: walking the tree allocates
+ * nothing but the strings asked for, and {@link #decode()} materializes the whole tree without
+ * parsing any text.
+ * <p>
+ * The buffer must not be modified while it is read. Instances are safe for use by multiple threads.
+ */
+public final class EncodedExpressionTree {
+
+    public static final int NO_NODE = -1;
+
+    private final ByteBuffer buffer;
+    // Offset of the length of every entry of the string table
+    private final int[] strings;
+    private final int root;
+
+    private EncodedExpressionTree(ByteBuffer buffer, int[] strings, int root) {
+        this.buffer = buffer;
+        this.strings = strings;
+        this.root = root;
+    }
+
+    /**
+     * Reads the encoded tree starting at the position of <tt>buffer</tt>, without changing its position
+     * or copying its content.
+     *
+     * @throws IllegalArgumentException if the buffer does not start with a supported encoding
+     */
+    public static EncodedExpressionTree wrap(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        int start = view.position();
+        if (view.remaining() < ExpressionTreeEncoder.MAGIC.length + 1
+                || view.get(start) != ExpressionTreeEncoder.MAGIC[0] || view.get(start + 1) != ExpressionTreeEncoder.MAGIC[1]) {
+            throw new IllegalArgumentException("Not an encoded expression tree");
+        }
+        int version = view.get(start + 2);
+        if (version != ExpressionTreeEncoder.VERSION) {
+            throw new IllegalArgumentException("Unsupported encoding version: " + version);
+        }
+        int offset = start + 3;
+        int[] strings = new int[(int) varint(view, offset)];
+        offset = skipVarint(view, offset);
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = offset;
+            int length = (int) varint(view, offset);
+            offset = skipVarint(view, offset) + length;
+        }
+        return new EncodedExpressionTree(view, strings, offset);
+    }
+
+    public static EncodedExpressionTree wrap(byte[] bytes) {
+        return wrap(ByteBuffer.wrap(bytes));
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public boolean isValue(int node) {
+        return code(node) < ExpressionTreeEncoder.OPERATOR_CODE;
+    }
+
+    /**
+     * The operator of an operator node, {@link ConstantHolder#OP_NOP} for a value node.
+     */
+    public String getOperator(int node) {
+        int code = code(node);
+        return code < ExpressionTreeEncoder.OPERATOR_CODE
+                ? ConstantHolder.OP_NOP
+                : ExpressionTreeEncoder.OPERATORS[code - ExpressionTreeEncoder.OPERATOR_CODE];
+    }
+
+    /**
+     * The type of a value node, or null for an operator node.
+     */
+    public LiteralType getType(int node) {
+        int code = code(node);
+        return code < ExpressionTreeEncoder.OPERATOR_CODE ? LiteralType.values()[code] : null;
+    }
+
+    public int getLeft(int node) {
+        switch (arity(node)) {
+            case 1:
+                return node + 1;
+            case 2:
+                return skipVarint(buffer, node + 1);
+            default:
+                return NO_NODE;
+        }
+    }
+
+    public int getRight(int node) {
+        if (arity(node) != 2) {
+            return NO_NODE;
+        }
+        return skipVarint(buffer, node + 1) + (int) varint(buffer, node + 1);
+    }
+
+    /**
+     * The number of items of a LIST node or of an n-ary node, 0 for any other node.
+     */
+    public int getItemCount(int node) {
+        return arity(node) == ExpressionTreeEncoder.ARITY_ITEMS ? (int) varint(buffer, node + 1) : 0;
+    }
+
+    /**
+     * The item at <tt>index</tt> of a node with items, found by skipping the items before it.
+     */
+    public int getItem(int node, int index) {
+        if (index < 0 || index >= getItemCount(node)) {
+            throw new IndexOutOfBoundsException("Item " + index + " of node at " + node);
+        }
+        int offset = skipVarint(buffer, node + 1);
+        for (int i = 0; i < index; i++) {
+            offset = skipVarint(buffer, offset) + (int) varint(buffer, offset);
+        }
+        return skipVarint(buffer, offset);
+    }
+
+    /**
+     * The text of a value node as written in the expression, quotes included, or null for an operator node.
+     */
+    public String getValue(int node) {
+        return isValue(node) ? string((int) varint(buffer, node + 1)) : null;
+    }
+
+    public long getLongValue(int node) {
+        checkType(node, LiteralType.LONG);
+        return zigzag(buffer, skipVarint(buffer, node + 1));
+    }
+
+    public long getEpochDay(int node) {
+        checkType(node, LiteralType.DATE);
+        return zigzag(buffer, skipVarint(buffer, node + 1));
+    }
+
+    /**
+     * Builds the tree. Every string of the table is decoded once and shared by the nodes using it.
+     */
+    public ExpressionTree decode() {
+        String[] decoded = new String[strings.length];
+        // Nodes in pre-order; built in reverse order, each node finds its operands on top of the stack
+        int[] order = new int[16];
+        int count = 0;
+        int[] pending = new int[16];
+        int top = 0;
+        pending[top++] = root;
+        while (top > 0) {
+            int node = pending[--top];
+            if (count == order.length) {
+                order = Arrays.copyOf(order, count * 2);
+            }
+            order[count++] = node;
+            int items = getItemCount(node);
+            int needed = top + Math.max(items, 2);
+            if (needed > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(needed, pending.length * 2));
+            }
+            if (items > 0) {
+                // Pushed in reverse so that the first item is visited first
+                int offset = skipVarint(buffer, node + 1);
+                for (int i = 0; i < items; i++) {
+                    int item = skipVarint(buffer, offset);
+                    pending[top + items - 1 - i] = item;
+                    offset = item + (int) varint(buffer, offset);
+                }
+                top += items;
+            } else {
+                int right = getRight(node);
+                if (right != NO_NODE) {
+                    pending[top++] = right;
+                }
+                int left = getLeft(node);
+                if (left != NO_NODE) {
+                    pending[top++] = left;
+                }
+            }
+        }
+        ExpressionTree[] built = new ExpressionTree[16];
+        int size = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            int node = order[i];
+            ExpressionTree tree;
+            int code = code(node);
+            if (code < ExpressionTreeEncoder.OPERATOR_CODE) {
+                int index = (int) varint(buffer, node + 1);
+                if (decoded[index] == null) {
+                    decoded[index] = string(index);
+                }
+                tree = value(node, LiteralType.values()[code], decoded[index]);
+            } else {
+                String operator = ExpressionTreeEncoder.OPERATORS[code - ExpressionTreeEncoder.OPERATOR_CODE];
+                switch (arity(node)) {
+                    case 0:
+                        tree = new ExpressionTree(operator, null, null);
+                        break;
+                    case 1:
+                        tree = new ExpressionTree(operator, built[--size]);
+                        break;
+                    case 2: {
+                        ExpressionTree left = built[--size];
+                        tree = new ExpressionTree(operator, left, built[--size]);
+                        break;
+                    }
+                    default: {
+                        ExpressionTree[] items = new ExpressionTree[getItemCount(node)];
+                        for (int j = 0; j < items.length; j++) {
+                            items[j] = built[--size];
+                        }
+                        tree = new ExpressionTree(operator, items);
+                        break;
+                    }
+                }
+            }
+            if (size == built.length) {
+                built = Arrays.copyOf(built, size * 2);
+            }
+            built[size++] = tree;
+        }
+        return built[0];
+    }
+
+    private ExpressionTree value(int node, LiteralType type, String text) {
+        switch (type) {
+            case IDENTIFIER:
+                return new ExpressionTree(text);
+            case STRING:
+                return new ExpressionTree(text, type, 0, text.substring(1, text.length() - 1));
+            case DATE:
+                return new ExpressionTree(text, type, zigzag(buffer, skipVarint(buffer, node + 1)), text.substring(1, text.length() - 1));
+            case LONG:
+                return new ExpressionTree(text, type, zigzag(buffer, skipVarint(buffer, node + 1)), null);
+            case DECIMAL:
+                return new ExpressionTree(text, type, 0, new BigDecimal(text));
+            default:
+                return new ExpressionTree(text, type, 0, null);
+        }
+    }
+
+    private String string(int index) {
+        int offset = strings[index];
+        int length = (int) varint(buffer, offset);
+        int start = skipVarint(buffer, offset);
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int code(int node) {
+        return (buffer.get(node) & 0xFF) >>> 2;
+    }
+
+    private int arity(int node) {
+        return buffer.get(node) & 3;
+    }
+
+    private void checkType(int node, LiteralType expected) {
+        if (getType(node) != expected) {
+            throw new IllegalStateException("Not a " + expected + " node at " + node);
+        }
+    }
+
+    private static long varint(ByteBuffer buffer, int offset) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(offset++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int skipVarint(ByteBuffer buffer, int offset) {
+        while (buffer.get(offset++) < 0) {
+            // continuation bit set
+        }
+        return offset;
+    }
+
+    private static long zigzag(ByteBuffer buffer, int offset) {
+        long value = varint(buffer, offset);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.expression.tree;
+
+import com.github.expression.exception.ParseErrorCode;
+import com.github.expression.exception.ParseException;
+import com.github.expression.token.TokenExtractor;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Immutable, thread-safe expression parser. One instance can serve any number of threads: the
+ * parse state lives in a per-thread context whose token arrays are reused, so in steady state a
+ * parse allocates little more than the resulting tree.
+ */
+public final class ExpressionParser {
+
+    private static final ExpressionParser INSTANCE = new ExpressionParser(DateRecognizer.iso(), null);
+
+    // Expressions parsed by one task of a bulk parse, at least, and tasks per worker thread
+    private static final int MIN_CHUNK = 256;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final DateRecognizer dateRecognizer;
+    private final ExpressionTreeInterner interner;
+    private final ThreadLocal<ParseContext> contexts;
+
+    private ExpressionParser(DateRecognizer dateRecognizer, ExpressionTreeInterner interner) {
+        this.dateRecognizer = dateRecognizer;
+        this.interner = interner;
+        this.contexts = ThreadLocal.withInitial(() -> new ParseContext(dateRecognizer));
+    }
+
+    /**
+     * The shared parser, recognizing ISO dates.
+     */
+    public static ExpressionParser getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * A parser typing the quoted literals that <tt>dateRecognizer</tt> accepts as dates.
+     * Create it once and keep it, like the shared instance.
+     */
+    public static ExpressionParser withDateRecognizer(DateRecognizer dateRecognizer) {
+        return new ExpressionParser(dateRecognizer, null);
+    }
+
+    /**
+     * A parser like this one whose trees are interned by <tt>interner</tt>: equal expressions, and
+     * equal parts of different expressions, give the same node instances.
+     */
+    public ExpressionParser withInterner(ExpressionTreeInterner interner) {
+        return new ExpressionParser(dateRecognizer, interner);
+    }
+
+    public ExpressionTree parse(CharSequence expr) throws ParseException {
+        ExpressionTree tree = parseTree(expr);
+        return interner != null ? interner.intern(tree) : tree;
+    }
+
+    /**
+     * Parses <tt>expr</tt> without throwing: an invalid or null expression gives a failed result
+     * with its error code and position.
+     */
+    public ParseResult tryParse(CharSequence expr) {
+        return result(expr, true);
+    }
+
+    /**
+     * Checks <tt>expr</tt> like {@link #tryParse(CharSequence)}, for callers that only need to know
+     * whether it is valid, such as a form checking input as it is typed: the tree of a valid
+     * expression is not interned.
+     */
+    public ParseResult validate(CharSequence expr) {
+        return result(expr, false);
+    }
+
+    private ParseResult result(CharSequence expr, boolean intern) {
+        if (expr == null) {
+            return ParseResult.failure(new ParseException(ParseErrorCode.EMPTY_EXPRESSION, "Tokens not found", -1, 0, 0));
+        }
+        try {
+            ExpressionTree tree = parseTree(expr);
+            return ParseResult.of(intern && interner != null ? interner.intern(tree) : tree);
+        } catch (ParseException e) {
+            return ParseResult.failure(e);
+        }
+    }
+
+    private ExpressionTree parseTree(CharSequence expr) throws ParseException {
+        ParseContext context = contexts.get();
+        if (!context.acquire()) {
+            // Re-entrant call on the same thread, e.g. from a CharSequence implementation
+            context = new ParseContext(dateRecognizer);
+            context.acquire();
+        }
+        ExpressionTree tree;
+        try {
+            context.reset(expr);
+            tree = context.parse();
+        } finally {
+            context.release();
+        }
+        return tree;
+    }
+
+    /**
+     * Parses the remaining characters of <tt>expr</tt>, without changing its position.
+     */
+    public ExpressionTree parse(CharBuffer expr) throws ParseException {
+        return parse((CharSequence) expr.duplicate());
+    }
+
+    /**
+     * Parses the remaining UTF-8 bytes of <tt>expr</tt>, without changing its position.
+     */
+    public ExpressionTree parse(ByteBuffer expr) throws ParseException {
+        return parse(TokenExtractor.utf8Chars(expr));
+    }
+
+    public ExpressionTree parse(byte[] expr, int offset, int length) throws ParseException {
+        return parse(ByteBuffer.wrap(expr, offset, length).slice());
+    }
+
+    /**
+     * Parses every expression of <tt>exprs</tt> on the common fork-join pool.
+     *
+     * @see #parseAll(List, Executor)
+     */
+    public List<ParseResult> parseAll(List<? extends CharSequence> exprs) {
+        return parseAll(exprs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses every expression of <tt>exprs</tt> in chunks run on <tt>executor</tt>, returning their
+     * results in the same order. An invalid expression gives a failed result and does not stop the
+     * others. Each worker thread reuses its own parse context, as with {@link #parse(CharSequence)}.
+     */
+    public List<ParseResult> parseAll(List<? extends CharSequence> exprs, Executor executor) {
+        List<? extends CharSequence> list = exprs instanceof RandomAccess ? exprs : new ArrayList<>(exprs);
+        ParseResult[] results = new ParseResult[list.size()];
+        int threads = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+        int chunk = Math.max(MIN_CHUNK, (results.length + threads * CHUNKS_PER_THREAD - 1) / (threads * CHUNKS_PER_THREAD));
+        if (results.length <= chunk) {
+            parseRange(list, results, 0, results.length);
+            return Collections.unmodifiableList(Arrays.asList(results));
+        }
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < results.length; from += chunk) {
+            int start = from;
+            int end = Math.min(results.length, from + chunk);
+            tasks.add(CompletableFuture.runAsync(() -> parseRange(list, results, start, end), executor));
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // Not a parse error, which gives a failed result, but e.g. a failing CharSequence
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Parses every expression of <tt>exprs</tt> on <tt>executor</tt>, in encounter order.
+     *
+     * @see #parseAll(List, Executor)
+     */
+    public List<ParseResult> parseAll(Stream<? extends CharSequence> exprs, Executor executor) {
+        return parseAll(exprs.collect(Collectors.toList()), executor);
+    }
+
+    /**
+     * Parses every remaining expression of <tt>exprs</tt> on <tt>executor</tt>.
+     *
+     * @see #parseAll(List, Executor)
+     */
+    public List<ParseResult> parseAll(Iterator<? extends CharSequence> exprs, Executor executor) {
+        List<CharSequence> list = new ArrayList<>();
+        exprs.forEachRemaining(list::add);
+        return parseAll(list, executor);
+    }
+
+    private void parseRange(List<? extends CharSequence> exprs, ParseResult[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = tryParse(exprs.get(i));
+        }
+    }
+}
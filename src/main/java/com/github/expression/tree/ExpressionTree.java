@@ -1,34 +1,149 @@
 package com.github.expression.tree;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
 public class ExpressionTree {
 
-    private String operator = ConstantHolder.OP_NOP;
+    private final String operator;
+
+    private final ExpressionTree left;
+    private final ExpressionTree right;
+    private final String value;
+
+    private final LiteralType type;
+    // LONG value or DATE epoch day
+    private final long longValue;
+    // String of STRING, DATE and IDENTIFIER nodes, BigDecimal of DECIMAL nodes
+    private final Object literal;
+
+    // Items of a LIST node in source order or operands of an n-ary AND/OR node, and the distinct
+    // values of a LIST of literals of one type
+    private final ExpressionTree[] items;
+    private final ValueSet valueSet;
 
-    private ExpressionTree left;
-    private ExpressionTree right;
-    private String value;
+    // Computed once so that consumers never walk the tree to measure or compare it
+    private final int depth;
+    private final int size;
+    private final int hash;
 
     ExpressionTree(String operator, ExpressionTree left, ExpressionTree right) {
         this.operator = operator;
         this.left = left;
         this.right = right;
+        this.value = null;
+        this.type = null;
+        this.longValue = 0;
+        this.literal = null;
+        this.items = null;
+        this.valueSet = null;
+        this.depth = 1 + Math.max(left != null ? left.depth : 0, right != null ? right.depth : 0);
+        this.size = 1 + (left != null ? left.size : 0) + (right != null ? right.size : 0);
+        this.hash = (operator.hashCode() * 31 + (left != null ? left.hash : 0)) * 31 + (right != null ? right.hash : 0);
     }
 
     ExpressionTree(String operator, ExpressionTree left) {
+        this(operator, left, null);
+    }
+
+    /**
+     * A flat LIST node of the items of an IN list.
+     */
+    ExpressionTree(ExpressionTree[] items) {
+        this(ConstantHolder.OP_LIST, items);
+    }
+
+    /**
+     * A LIST node of items or an n-ary node of operands.
+     */
+    ExpressionTree(String operator, ExpressionTree[] items) {
         this.operator = operator;
-        this.left = left;
+        this.left = null;
+        this.right = null;
+        this.value = null;
+        this.type = null;
+        this.longValue = 0;
+        this.literal = null;
+        this.items = items;
+        this.valueSet = operator.equals(ConstantHolder.OP_LIST) ? ValueSet.of(items) : null;
+        int depth = 0;
+        int size = 1;
+        int hash = operator.hashCode();
+        for (ExpressionTree item : items) {
+            depth = Math.max(depth, item.depth);
+            size += item.size;
+            hash = hash * 31 + item.hash;
+        }
+        this.depth = depth + 1;
+        this.size = size;
+        this.hash = hash;
     }
 
+    /**
+     * A name node.
+     */
     ExpressionTree(String value) {
+        this(value, LiteralType.IDENTIFIER, 0, value);
+    }
+
+    ExpressionTree(String value, LiteralType type, long longValue, Object literal) {
+        this.operator = ConstantHolder.OP_NOP;
+        this.left = null;
+        this.right = null;
         this.value = value;
+        this.type = type;
+        this.longValue = longValue;
+        this.literal = literal;
+        this.items = null;
+        this.valueSet = null;
+        this.depth = 1;
+        this.size = 1;
+        this.hash = value.hashCode() * 31 + type.ordinal();
     }
 
-    public String getValue() {
-        return value;
+    /**
+     * The value node of a number token.
+     */
+    static ExpressionTree number(String text) {
+        int dot = text.indexOf('.');
+        if (dot < 0 && text.length() <= 18) {
+            return new ExpressionTree(text, LiteralType.LONG, Long.parseLong(text), null);
+        }
+        BigDecimal decimal = new BigDecimal(text);
+        if (dot < 0 && decimal.unscaledValue().bitLength() < 64) {
+            return new ExpressionTree(text, LiteralType.LONG, decimal.longValue(), null);
+        }
+        return new ExpressionTree(text, LiteralType.DECIMAL, 0, decimal);
     }
 
-    void setRight(ExpressionTree right) {
-        this.right = right;
+    /**
+     * The value node of a quoted string token.
+     */
+    static ExpressionTree string(String text, DateRecognizer dateRecognizer) {
+        if (text.length() < 2) {
+            return new ExpressionTree(text);
+        }
+        String string = text.substring(1, text.length() - 1);
+        long epochDay = dateRecognizer.epochDay(string);
+        if (epochDay == DateRecognizer.NOT_A_DATE) {
+            return new ExpressionTree(text, LiteralType.STRING, 0, string);
+        }
+        return new ExpressionTree(text, LiteralType.DATE, epochDay, string);
+    }
+
+    static ExpressionTree nullValue(String text) {
+        return new ExpressionTree(text, LiteralType.NULL, 0, null);
+    }
+
+    /**
+     * The source text of a value node, quotes included, or null for an operator node.
+     */
+    public String getValue() {
+        return value;
     }
 
     public String getOperator() {
@@ -43,7 +158,133 @@ public class ExpressionTree {
         return right;
     }
 
+    /**
+     * The items of a LIST node in source order, the operands of an n-ary AND or OR node built by
+     * {@link ExpressionTreeOptimizer}, or an empty list for any other node.
+     */
+    public List<ExpressionTree> getItems() {
+        return items != null ? Collections.unmodifiableList(Arrays.asList(items)) : Collections.emptyList();
+    }
+
+    /**
+     * The sorted distinct values of a LIST node whose items are all LONG, all STRING or all DATE
+     * literals, or null.
+     */
+    public ValueSet getValueSet() {
+        return valueSet;
+    }
+
+    /**
+     * Number of nodes on the longest path from this node down to a leaf, 1 for a leaf.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Number of nodes in this tree.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The type of a value node, or null for an operator node.
+     */
+    public LiteralType getType() {
+        return type;
+    }
+
+    /**
+     * The string of a STRING or DATE node without its quotes, or the name of an IDENTIFIER node.
+     */
+    public String getStringValue() {
+        return literal instanceof String ? (String) literal : null;
+    }
+
+    public long getLongValue() {
+        checkType(LiteralType.LONG);
+        return longValue;
+    }
+
+    public BigDecimal getDecimalValue() {
+        checkType(LiteralType.DECIMAL);
+        return (BigDecimal) literal;
+    }
+
+    /**
+     * The date of a DATE node as the number of days since 1970-01-01.
+     */
+    public long getEpochDay() {
+        checkType(LiteralType.DATE);
+        return longValue;
+    }
+
+    /**
+     * Structural equality: same operators, same value texts and types, same shape. Compares the
+     * cached hashes first and walks both trees with an explicit stack.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ExpressionTree) || hash != ((ExpressionTree) o).hash) {
+            return false;
+        }
+        // Pairs of nodes still to compare, nulls included
+        List<ExpressionTree> pending = new ArrayList<>();
+        pending.add(this);
+        pending.add((ExpressionTree) o);
+        while (!pending.isEmpty()) {
+            ExpressionTree b = pending.remove(pending.size() - 1);
+            ExpressionTree a = pending.remove(pending.size() - 1);
+            if (a == b) {
+                continue;
+            }
+            if (a == null || b == null || a.hash != b.hash || a.type != b.type || !a.operator.equals(b.operator)
+                    || !Objects.equals(a.value, b.value) || (a.items == null) != (b.items == null)
+                    || a.items != null && a.items.length != b.items.length) {
+                return false;
+            }
+            if (a.items != null) {
+                for (int i = 0; i < a.items.length; i++) {
+                    pending.add(a.items[i]);
+                    pending.add(b.items[i]);
+                }
+            }
+            pending.add(a.left);
+            pending.add(b.left);
+            pending.add(a.right);
+            pending.add(b.right);
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     public static ExpressionTreeBuilder builder() {
         return new ExpressionTreeBuilder();
     }
+
+    public static ExpressionParser parser() {
+        return ExpressionParser.getInstance();
+    }
+
+    public static ExpressionTreeFactory factory() {
+        return ExpressionTreeFactory.getInstance();
+    }
+
+    public static ExpressionTreeOptimizer optimizer() {
+        return new ExpressionTreeOptimizer();
+    }
+
+    private void checkType(LiteralType expected) {
+        if (type != expected) {
+            throw new IllegalStateException("Not a " + expected + " node: " + (value != null ? value : operator));
+        }
+    }
 }
@@ -0,0 +1,156 @@
+package com.github.expression.tree;
+
+import com.github.expression.exception.ParseException;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Bounded, thread-safe cache of parsed expression trees keyed by the expression text.
+ * <p>
+ * Concurrent misses on the same expression are parsed only once, the other callers wait
+ * for the result. Trees are immutable and can be shared freely between threads.
+ */
+public class ExpressionTreeCache {
+
+    private final LoadingCache<String, Object> cache;
+
+    private ExpressionTreeCache(Builder builder) {
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats();
+        if (builder.maximumWeight >= 0) {
+            cacheBuilder.maximumWeight(builder.maximumWeight)
+                    .weigher((String key, Object value) ->
+                            value instanceof ExpressionTree ? ((ExpressionTree) value).getSize() : 1);
+        } else {
+            cacheBuilder.maximumSize(builder.maximumSize);
+        }
+        if (builder.concurrencyLevel > 0) {
+            cacheBuilder.concurrencyLevel(builder.concurrencyLevel);
+        }
+        boolean cacheParseErrors = builder.cacheParseErrors;
+        this.cache = cacheBuilder.build(new CacheLoader<String, Object>() {
+            @Override
+            public Object load(String expression) {
+                try {
+                    return ExpressionTree.parser().parse(expression);
+                } catch (ParseException e) {
+                    if (cacheParseErrors) {
+                        return e;
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public ExpressionTree get(String expression) throws ParseException {
+        Object result;
+        try {
+            result = cache.getUnchecked(expression);
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw ((ParseException) e.getCause()).copy();
+            }
+            throw e;
+        }
+        if (result instanceof ParseException) {
+            throw ((ParseException) result).copy();
+        }
+        return (ExpressionTree) result;
+    }
+
+    public void invalidate(String expression) {
+        cache.invalidate(expression);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long hitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long missCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Number of times an expression was actually parsed. Concurrent misses waiting for the same
+     * expression are counted as misses but not as loads.
+     */
+    public long loadCount() {
+        return cache.stats().loadCount();
+    }
+
+    public long evictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public static class Builder {
+        private long maximumSize = 10_000;
+        private long maximumWeight = -1;
+        private int concurrencyLevel;
+        private boolean cacheParseErrors;
+
+        private Builder() {
+        }
+
+        /**
+         * Maximum number of cached expressions. Ignored when {@link #maximumWeight(long)} is set.
+         */
+        public Builder maximumSize(long maximumSize) {
+            if (maximumSize < 0) {
+                throw new IllegalArgumentException("maximumSize must not be negative: " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Maximum total number of tree nodes of the cached expressions, a cached parse error
+         * counting as one. Bounds the memory of the trees rather than of the expression texts.
+         */
+        public Builder maximumWeight(long maximumWeight) {
+            if (maximumWeight < 0) {
+                throw new IllegalArgumentException("maximumWeight must not be negative: " + maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            if (concurrencyLevel <= 0) {
+                throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+            }
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        /**
+         * Remember expressions that failed to parse, so repeated malformed input is rejected without parsing.
+         */
+        public Builder cacheParseErrors(boolean cacheParseErrors) {
+            this.cacheParseErrors = cacheParseErrors;
+            return this;
+        }
+
+        public ExpressionTreeCache build() {
+            return new ExpressionTreeCache(this);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.github.expression.tree;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes trees in a compact binary form that {@link EncodedExpressionTree} reads back without
+ * tokenizing or parsing. Thread-safe.
+ * <p>
+ * Version 1 of the encoding is:
+ * <pre>
+ * tree    := 'E' 'T' version strings node
+ * strings := varint count, (varint length, UTF-8 bytes) * count
+ * node    := tag payload
+ * tag     := code &lt;&lt; 2 | arity
+ * </pre>
+ * Codes 0 to 5 are value nodes of the {@link LiteralType} of that ordinal, whose payload is the
+ * index of their text in the string table, followed by the zigzag varint of the number of a LONG
+ * node or the epoch day of a DATE node. Codes from 8 are operators, in the order of
+ * {@link #OPERATORS}. The payload of an operator node depends on its arity: 0 nothing, 1 the
+ * left operand, 2 the varint length in bytes of the left operand, the left and the right operand,
+ * 3 the varint number of items followed by the varint length and the encoding of each item.
+ * The lengths let a reader jump to any child without decoding the ones before it.
+ */
+public final class ExpressionTreeEncoder {
+
+    static final byte[] MAGIC = {'E', 'T'};
+    static final int VERSION = 1;
+    static final int OPERATOR_CODE = 8;
+    static final int ARITY_ITEMS = 3;
+
+    // Append only: the position of an operator is its code in every encoded tree
+    static final String[] OPERATORS = {
+            ConstantHolder.OP_VALUE, ConstantHolder.OP_NOT, ConstantHolder.OP_AND, ConstantHolder.OP_OR,
+            ConstantHolder.OP_LIST, ConstantHolder.OP_IS, ConstantHolder.OP_EQ, ConstantHolder.OP_NE,
+            ConstantHolder.OP_LT, ConstantHolder.OP_LE, ConstantHolder.OP_GT, ConstantHolder.OP_GE,
+            ConstantHolder.OP_EXPO, ConstantHolder.OP_MUL, ConstantHolder.OP_DIV, ConstantHolder.OP_MOD,
+            ConstantHolder.OP_ADD, ConstantHolder.OP_SUB, ConstantHolder.OP_CONCAT, ConstantHolder.OP_POS,
+            ConstantHolder.OP_NEG, ConstantHolder.OP_MEMBER, ConstantHolder.OP_SUBSCR, ConstantHolder.OP_CONTAINS,
+            ConstantHolder.OP_LIKE, ConstantHolder.OP_LIKEFILE, ConstantHolder.OP_IN, ConstantHolder.OP_BETWEEN,
+            ConstantHolder.OP_NULL, ConstantHolder.OP_TRUE, ConstantHolder.OP_FALSE,
+    };
+
+    private static final Map<String, Integer> CODES = new HashMap<>();
+    // Stands for the length of the item below it on the write stack
+    private static final ExpressionTree ITEM_LENGTH = new ExpressionTree(ConstantHolder.OP_LIST, null, null);
+
+    static {
+        for (int i = 0; i < OPERATORS.length; i++) {
+            CODES.put(OPERATORS[i], OPERATOR_CODE + i);
+        }
+    }
+
+    public byte[] encode(ExpressionTree tree) {
+        Layout layout = new Layout(tree);
+        byte[] bytes = new byte[layout.size];
+        layout.write(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * Writes <tt>tree</tt> at the position of <tt>out</tt> and advances it.
+     *
+     * @throws BufferOverflowException if the remaining space is too small, in which case nothing is written
+     */
+    public void encode(ExpressionTree tree, ByteBuffer out) {
+        Layout layout = new Layout(tree);
+        if (out.remaining() < layout.size) {
+            throw new BufferOverflowException();
+        }
+        layout.write(out);
+    }
+
+    public void encode(ExpressionTree tree, OutputStream out) throws IOException {
+        out.write(encode(tree));
+    }
+
+    /**
+     * Number of bytes {@link #encode(ExpressionTree)} produces for <tt>tree</tt>.
+     */
+    public int encodedSize(ExpressionTree tree) {
+        return new Layout(tree).size;
+    }
+
+    static int zigzagSize(long value) {
+        return varintSize((value << 1) ^ (value >> 63));
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static void putZigzag(ByteBuffer out, long value) {
+        putVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * The string table and the encoded length of every subtree, computed children first with an
+     * explicit stack, then written in one pre-order pass.
+     */
+    private static final class Layout {
+
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final List<byte[]> stringBytes = new ArrayList<>();
+        final Map<ExpressionTree, Integer> lengths = new IdentityHashMap<>();
+        final ExpressionTree tree;
+        final int size;
+
+        Layout(ExpressionTree tree) {
+            this.tree = tree;
+            Deque<ExpressionTree> pending = new ArrayDeque<>();
+            pending.push(tree);
+            while (!pending.isEmpty()) {
+                ExpressionTree node = pending.peek();
+                if (lengths.containsKey(node)) {
+                    pending.pop();
+                    continue;
+                }
+                boolean ready = true;
+                List<ExpressionTree> items = node.getItems();
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    ready &= push(pending, items.get(i));
+                }
+                ready &= push(pending, node.getRight());
+                ready &= push(pending, node.getLeft());
+                if (ready) {
+                    pending.pop();
+                    lengths.put(node, length(node));
+                }
+            }
+            int size = MAGIC.length + 1 + varintSize(stringBytes.size());
+            for (byte[] bytes : stringBytes) {
+                size += varintSize(bytes.length) + bytes.length;
+            }
+            this.size = size + lengths.get(tree);
+        }
+
+        private boolean push(Deque<ExpressionTree> pending, ExpressionTree child) {
+            if (child == null || lengths.containsKey(child)) {
+                return true;
+            }
+            pending.push(child);
+            return false;
+        }
+
+        private int length(ExpressionTree node) {
+            if (node.getValue() != null) {
+                int length = 1 + varintSize(stringIndex(node.getValue()));
+                if (node.getType() == LiteralType.LONG) {
+                    length += zigzagSize(node.getLongValue());
+                } else if (node.getType() == LiteralType.DATE) {
+                    length += zigzagSize(node.getEpochDay());
+                }
+                return length;
+            }
+            code(node);
+            List<ExpressionTree> items = node.getItems();
+            if (!items.isEmpty()) {
+                int length = 1 + varintSize(items.size());
+                for (ExpressionTree item : items) {
+                    int itemLength = lengths.get(item);
+                    length += varintSize(itemLength) + itemLength;
+                }
+                return length;
+            }
+            if (node.getLeft() == null) {
+                if (node.getRight() != null) {
+                    throw new IllegalArgumentException("Node without left operand: " + node.getOperator());
+                }
+                return 1;
+            }
+            int left = lengths.get(node.getLeft());
+            if (node.getRight() == null) {
+                return 1 + left;
+            }
+            return 1 + varintSize(left) + left + lengths.get(node.getRight());
+        }
+
+        private int stringIndex(String string) {
+            Integer index = strings.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.put(string, index);
+                stringBytes.add(string.getBytes(StandardCharsets.UTF_8));
+            }
+            return index;
+        }
+
+        private static int code(ExpressionTree node) {
+            Integer code = CODES.get(node.getOperator());
+            if (code == null) {
+                throw new IllegalArgumentException("Operator without code: " + node.getOperator());
+            }
+            return code;
+        }
+
+        void write(ByteBuffer out) {
+            out.put(MAGIC);
+            out.put((byte) VERSION);
+            putVarint(out, stringBytes.size());
+            for (byte[] bytes : stringBytes) {
+                putVarint(out, bytes.length);
+                out.put(bytes);
+            }
+            Deque<ExpressionTree> pending = new ArrayDeque<>();
+            pending.push(tree);
+            while (!pending.isEmpty()) {
+                ExpressionTree node = pending.pop();
+                if (node == ITEM_LENGTH) {
+                    putVarint(out, lengths.get(pending.peek()));
+                    continue;
+                }
+                if (node.getValue() != null) {
+                    out.put((byte) (node.getType().ordinal() << 2));
+                    putVarint(out, strings.get(node.getValue()));
+                    if (node.getType() == LiteralType.LONG) {
+                        putZigzag(out, node.getLongValue());
+                    } else if (node.getType() == LiteralType.DATE) {
+                        putZigzag(out, node.getEpochDay());
+                    }
+                    continue;
+                }
+                int code = code(node) << 2;
+                List<ExpressionTree> items = node.getItems();
+                if (!items.isEmpty()) {
+                    out.put((byte) (code | ARITY_ITEMS));
+                    putVarint(out, items.size());
+                    for (int i = items.size() - 1; i >= 0; i--) {
+                        pending.push(items.get(i));
+                        pending.push(ITEM_LENGTH);
+                    }
+                } else if (node.getLeft() == null) {
+                    out.put((byte) code);
+                } else if (node.getRight() == null) {
+                    out.put((byte) (code | 1));
+                    pending.push(node.getLeft());
+                } else {
+                    out.put((byte) (code | 2));
+                    putVarint(out, lengths.get(node.getLeft()));
+                    pending.push(node.getRight());
+                    pending.push(node.getLeft());
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.github.expression.tree;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds trees node by node, for readers of external forms such as the XML of
+ * {@link com.github.expression.formatter.ExpressionTreeXmlFormatter}. Values are typed from
+ * their text the way the parser types tokens. Thread-safe.
+ */
+public final class ExpressionTreeFactory {
+
+    private static final ExpressionTreeFactory INSTANCE = new ExpressionTreeFactory(DateRecognizer.iso());
+    // The constant of every operator, so that nodes do not keep copies read from the input
+    private static final Map<String, String> OPERATORS = new HashMap<>();
+
+    static {
+        for (String operator : ExpressionTreeEncoder.OPERATORS) {
+            OPERATORS.put(operator, operator);
+        }
+    }
+
+    private final DateRecognizer dateRecognizer;
+
+    private ExpressionTreeFactory(DateRecognizer dateRecognizer) {
+        this.dateRecognizer = dateRecognizer;
+    }
+
+    /**
+     * The shared factory, recognizing ISO dates.
+     */
+    public static ExpressionTreeFactory getInstance() {
+        return INSTANCE;
+    }
+
+    public static ExpressionTreeFactory withDateRecognizer(DateRecognizer dateRecognizer) {
+        return new ExpressionTreeFactory(dateRecognizer);
+    }
+
+    /**
+     * A value node for the text of a token: a quoted string or date, a number, the NULL keyword or a name.
+     */
+    public ExpressionTree value(String text) {
+        if (text.isEmpty()) {
+            return new ExpressionTree(text);
+        }
+        char first = text.charAt(0);
+        if (first == '\'' || first == '"') {
+            return ExpressionTree.string(text, dateRecognizer);
+        }
+        // Like the scanner, a leading decimal point followed by a digit starts a number
+        if (isDigit(first) || first == '.' && text.length() > 1 && isDigit(text.charAt(1))) {
+            try {
+                return ExpressionTree.number(text);
+            } catch (NumberFormatException e) {
+                return new ExpressionTree(text);
+            }
+        }
+        if (text.equalsIgnoreCase(ConstantHolder.OP_NULL)) {
+            return ExpressionTree.nullValue(text);
+        }
+        return new ExpressionTree(text);
+    }
+
+    /**
+     * An operator node with up to two operands, either of which may be null.
+     *
+     * @throws IllegalArgumentException if <tt>operator</tt> is not one of the operators of {@link ConstantHolder}
+     */
+    public ExpressionTree operator(String operator, ExpressionTree left, ExpressionTree right) {
+        return new ExpressionTree(checkOperator(operator), left, right);
+    }
+
+    /**
+     * A LIST node, or an n-ary AND or OR node such as {@link ExpressionTreeOptimizer} builds.
+     *
+     * @throws IllegalArgumentException if <tt>operator</tt> is not one of these or <tt>items</tt> is empty
+     */
+    public ExpressionTree operator(String operator, List<ExpressionTree> items) {
+        if (!operator.equals(ConstantHolder.OP_LIST) && !operator.equals(ConstantHolder.OP_AND)
+                && !operator.equals(ConstantHolder.OP_OR)) {
+            throw new IllegalArgumentException("Operator without items: " + operator);
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("No items for " + operator);
+        }
+        return new ExpressionTree(checkOperator(operator), items.toArray(new ExpressionTree[0]));
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static String checkOperator(String operator) {
+        String constant = OPERATORS.get(operator);
+        if (constant == null) {
+            throw new IllegalArgumentException("Unknown operator: " + operator);
+        }
+        return constant;
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.expression.tree;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-safe symbol table and node table for trees kept in memory in large numbers. Interned
+ * trees share one instance per distinct name or literal text and one node per distinct subtree,
+ * so two interned trees are equal exactly when they are the same instance, and a subtree common
+ * to many filters is stored once.
+ * <p>
+ * Both tables hold their entries weakly: nodes and strings that no tree references any more are
+ * reclaimed by the garbage collector.
+ */
+public final class ExpressionTreeInterner {
+
+    private final Interner<String> symbols = Interners.newWeakInterner();
+    private final Interner<ExpressionTree> nodes = Interners.newWeakInterner();
+
+    /**
+     * The canonical instance of a tree equal to <tt>tree</tt>. Children are interned before their
+     * parents, with an explicit stack, so that looking a parent up only compares its children by
+     * identity.
+     */
+    public ExpressionTree intern(ExpressionTree tree) {
+        if (tree == null) {
+            return null;
+        }
+        // Canonical node of every node of the input interned so far
+        Map<ExpressionTree, ExpressionTree> interned = new IdentityHashMap<>();
+        Deque<ExpressionTree> pending = new ArrayDeque<>();
+        pending.push(tree);
+        while (!pending.isEmpty()) {
+            ExpressionTree node = pending.peek();
+            if (interned.containsKey(node)) {
+                pending.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (ExpressionTree child : node.getItems()) {
+                ready &= push(pending, interned, child);
+            }
+            ready &= push(pending, interned, node.getRight());
+            ready &= push(pending, interned, node.getLeft());
+            if (ready) {
+                pending.pop();
+                interned.put(node, nodes.intern(canonical(node, interned)));
+            }
+        }
+        return interned.get(tree);
+    }
+
+    /**
+     * The canonical instance of a name or literal text.
+     */
+    public String intern(String symbol) {
+        return symbol != null ? symbols.intern(symbol) : null;
+    }
+
+    private static boolean push(Deque<ExpressionTree> pending, Map<ExpressionTree, ExpressionTree> interned, ExpressionTree child) {
+        if (child == null || interned.containsKey(child)) {
+            return true;
+        }
+        pending.push(child);
+        return false;
+    }
+
+    /**
+     * <tt>node</tt> itself if its strings and children are canonical already, or a copy of it made of
+     * canonical parts.
+     */
+    private ExpressionTree canonical(ExpressionTree node, Map<ExpressionTree, ExpressionTree> interned) {
+        if (node.getValue() != null) {
+            return value(node);
+        }
+        List<ExpressionTree> items = node.getItems();
+        if (!items.isEmpty()) {
+            ExpressionTree[] canonicalItems = new ExpressionTree[items.size()];
+            boolean same = true;
+            for (int i = 0; i < canonicalItems.length; i++) {
+                canonicalItems[i] = interned.get(items.get(i));
+                same &= canonicalItems[i] == items.get(i);
+            }
+            return same ? node : new ExpressionTree(node.getOperator(), canonicalItems);
+        }
+        ExpressionTree left = node.getLeft() != null ? interned.get(node.getLeft()) : null;
+        ExpressionTree right = node.getRight() != null ? interned.get(node.getRight()) : null;
+        if (left == node.getLeft() && right == node.getRight()) {
+            return node;
+        }
+        return new ExpressionTree(node.getOperator(), left, right);
+    }
+
+    private ExpressionTree value(ExpressionTree node) {
+        String value = symbols.intern(node.getValue());
+        LiteralType type = node.getType();
+        switch (type) {
+            case IDENTIFIER:
+                return value == node.getValue() && value == node.getStringValue() ? node : new ExpressionTree(value);
+            case STRING:
+            case DATE: {
+                String string = symbols.intern(node.getStringValue());
+                if (value == node.getValue() && string == node.getStringValue()) {
+                    return node;
+                }
+                long epochDay = type == LiteralType.DATE ? node.getEpochDay() : 0;
+                return new ExpressionTree(value, type, epochDay, string);
+            }
+            case LONG:
+                return value == node.getValue() ? node : new ExpressionTree(value, type, node.getLongValue(), null);
+            case DECIMAL:
+                return value == node.getValue() ? node : new ExpressionTree(value, type, 0, node.getDecimalValue());
+            default:
+                return value == node.getValue() ? node : new ExpressionTree(value, type, 0, null);
+        }
+    }
+}
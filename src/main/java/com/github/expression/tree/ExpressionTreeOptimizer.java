@@ -0,0 +1,491 @@
+package com.github.expression.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a tree into an equivalent, usually smaller one:
+ * <ul>
+ * <li>chains of <tt>and</tt> and <tt>or</tt> become single n-ary nodes, see {@link ExpressionTree#getItems()};</li>
+ * <li>arithmetic and comparisons on integer literals are folded, <tt>not not p</tt> becomes <tt>p</tt>;</li>
+ * <li>duplicate operands are dropped and the bounds of an attribute compared with integers or ISO
+ * dates are merged, e.g. <tt>x &gt; 1 and x between 3 and 10 and x &lt; 5</tt> into
+ * <tt>x between 3 and 5</tt> with <tt>x &lt; 5</tt> kept strict;</li>
+ * <li>conditions that can never hold become a {@link ConstantHolder#OP_FALSE} node, and ones that
+ * always hold a {@link ConstantHolder#OP_TRUE} node, which then absorb or vanish from the
+ * enclosing <tt>and</tt>/<tt>or</tt>.</li>
+ * </ul>
+ * A filter optimized into {@link #isFalse(ExpressionTree) false} matches nothing and need not run at all.
+ * Folding only applies where the result is the same for every consumer: integer arithmetic that
+ * stays exact, comparisons of two integers. Merging bounds assumes that an attribute has a single
+ * value, as it has for the evaluators of the <tt>eval</tt> package; trees for tags with several
+ * values per entry should be generated unoptimized.
+ */
+public class ExpressionTreeOptimizer {
+
+    static final ExpressionTree TRUE = new ExpressionTree(ConstantHolder.OP_TRUE, null, null);
+    static final ExpressionTree FALSE = new ExpressionTree(ConstantHolder.OP_FALSE, null, null);
+
+    public ExpressionTree optimize(ExpressionTree tree) {
+        return rewrite(tree);
+    }
+
+    public static boolean isTrue(ExpressionTree tree) {
+        return tree.getOperator().equals(ConstantHolder.OP_TRUE);
+    }
+
+    public static boolean isFalse(ExpressionTree tree) {
+        return tree.getOperator().equals(ConstantHolder.OP_FALSE);
+    }
+
+    private ExpressionTree rewrite(ExpressionTree tree) {
+        if (tree == null || tree.getValue() != null) {
+            return tree;
+        }
+        String operator = tree.getOperator();
+        switch (operator) {
+            case ConstantHolder.OP_AND:
+            case ConstantHolder.OP_OR:
+                return junction(tree, operator);
+            case ConstantHolder.OP_NOT:
+                return not(tree);
+            case ConstantHolder.OP_VALUE: {
+                ExpressionTree operand = rewrite(tree.getLeft());
+                return operand == null || operand.getValue() != null ? rebuild(tree, operand, null) : operand;
+            }
+            case ConstantHolder.OP_ADD:
+            case ConstantHolder.OP_SUB:
+            case ConstantHolder.OP_MUL:
+            case ConstantHolder.OP_DIV:
+            case ConstantHolder.OP_MOD:
+                return arithmetic(tree, rewrite(tree.getLeft()), rewrite(tree.getRight()));
+            case ConstantHolder.OP_NEG:
+            case ConstantHolder.OP_POS: {
+                ExpressionTree operand = rewrite(tree.getLeft());
+                if (isLong(operand) && (operator.equals(ConstantHolder.OP_POS) || operand.getLongValue() != Long.MIN_VALUE)) {
+                    return operator.equals(ConstantHolder.OP_POS) ? operand : number(-operand.getLongValue());
+                }
+                return rebuild(tree, operand, null);
+            }
+            case ConstantHolder.OP_EQ:
+            case ConstantHolder.OP_NE:
+            case ConstantHolder.OP_LT:
+            case ConstantHolder.OP_LE:
+            case ConstantHolder.OP_GT:
+            case ConstantHolder.OP_GE: {
+                ExpressionTree left = rewrite(tree.getLeft());
+                ExpressionTree right = rewrite(tree.getRight());
+                if (isLong(left) && isLong(right)) {
+                    return accepts(operator, Long.compare(left.getLongValue(), right.getLongValue())) ? TRUE : FALSE;
+                }
+                return rebuild(tree, left, right);
+            }
+            case ConstantHolder.OP_IS: {
+                ExpressionTree operand = rewrite(tree.getLeft());
+                if (operand != null && operand.getType() != null && operand.getType() != LiteralType.IDENTIFIER) {
+                    return operand.getType() == LiteralType.NULL ? TRUE : FALSE;
+                }
+                return rebuild(tree, operand, tree.getRight());
+            }
+            case ConstantHolder.OP_BETWEEN: {
+                // The bounds are an AND node of two values, not a condition
+                ExpressionTree bounds = tree.getRight();
+                ExpressionTree low = rewrite(bounds.getLeft());
+                ExpressionTree high = rewrite(bounds.getRight());
+                return rebuild(tree, rewrite(tree.getLeft()), rebuild(bounds, low, high));
+            }
+            case ConstantHolder.OP_LIST:
+                return tree;
+            default:
+                return rebuild(tree, rewrite(tree.getLeft()), rewrite(tree.getRight()));
+        }
+    }
+
+    private ExpressionTree not(ExpressionTree tree) {
+        int count = 0;
+        ExpressionTree operand = tree;
+        while (operand != null && operand.getOperator().equals(ConstantHolder.OP_NOT)) {
+            count++;
+            operand = operand.getLeft();
+        }
+        ExpressionTree rewritten = rewrite(operand);
+        if (count % 2 == 0) {
+            return rewritten;
+        }
+        if (rewritten != null && isTrue(rewritten)) {
+            return FALSE;
+        }
+        if (rewritten != null && isFalse(rewritten)) {
+            return TRUE;
+        }
+        return count == 1 && rewritten == operand ? tree : new ExpressionTree(ConstantHolder.OP_NOT, rewritten);
+    }
+
+    private ExpressionTree arithmetic(ExpressionTree tree, ExpressionTree left, ExpressionTree right) {
+        if (!isLong(left) || !isLong(right)) {
+            return rebuild(tree, left, right);
+        }
+        long x = left.getLongValue();
+        long y = right.getLongValue();
+        try {
+            switch (tree.getOperator()) {
+                case ConstantHolder.OP_ADD:
+                    return number(Math.addExact(x, y));
+                case ConstantHolder.OP_SUB:
+                    return number(Math.subtractExact(x, y));
+                case ConstantHolder.OP_MUL:
+                    return number(Math.multiplyExact(x, y));
+                case ConstantHolder.OP_DIV:
+                    // Inexact quotients are decimals to the evaluators
+                    if (y != 0 && x % y == 0 && !(x == Long.MIN_VALUE && y == -1)) {
+                        return number(x / y);
+                    }
+                    break;
+                default:
+                    if (y != 0) {
+                        return number(x % y);
+                    }
+                    break;
+            }
+        } catch (ArithmeticException e) {
+            // Overflows to a decimal, left to the evaluators
+        }
+        return rebuild(tree, left, right);
+    }
+
+    /**
+     * Flattens the chain of <tt>operator</tt> nodes rooted at <tt>tree</tt>, optimizes the operands
+     * and combines them.
+     */
+    private ExpressionTree junction(ExpressionTree tree, String operator) {
+        boolean and = operator.equals(ConstantHolder.OP_AND);
+        Set<ExpressionTree> operands = new LinkedHashSet<>();
+        Deque<ExpressionTree> pending = new ArrayDeque<>();
+        pending.push(tree);
+        while (!pending.isEmpty()) {
+            ExpressionTree next = pending.pop();
+            if (next.getOperator().equals(operator)) {
+                List<ExpressionTree> items = next.getItems();
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    pending.push(items.get(i));
+                }
+                if (next.getRight() != null) {
+                    pending.push(next.getRight());
+                }
+                if (next.getLeft() != null) {
+                    pending.push(next.getLeft());
+                }
+                continue;
+            }
+            ExpressionTree operand = rewrite(next);
+            if (operand == null) {
+                continue;
+            }
+            if (isTrue(operand) || isFalse(operand)) {
+                if (isTrue(operand) != and) {
+                    // false absorbs an and, true an or
+                    return operand;
+                }
+            } else if (operand.getOperator().equals(operator)) {
+                operands.addAll(operand.getItems());
+            } else {
+                operands.add(operand);
+            }
+        }
+        if (and) {
+            for (ExpressionTree operand : operands) {
+                if (operand.getOperator().equals(ConstantHolder.OP_NOT) && operands.contains(operand.getLeft())) {
+                    return FALSE;
+                }
+            }
+        }
+        List<ExpressionTree> merged = mergeBounds(new ArrayList<>(operands), and);
+        if (merged == null) {
+            return FALSE;
+        }
+        if (merged.isEmpty()) {
+            return and ? TRUE : FALSE;
+        }
+        if (merged.size() == 1) {
+            return merged.get(0);
+        }
+        return new ExpressionTree(operator, merged.toArray(new ExpressionTree[0]));
+    }
+
+    /**
+     * Replaces the bounds on each attribute by their intersection for an <tt>and</tt>, or by the
+     * weakest lower and upper bound for an <tt>or</tt>, at the position of the first of them.
+     * Returns null if the bounds of an <tt>and</tt> exclude every value.
+     */
+    private static List<ExpressionTree> mergeBounds(List<ExpressionTree> operands, boolean and) {
+        Map<String, Range> ranges = new LinkedHashMap<>();
+        for (int i = 0; i < operands.size(); i++) {
+            Bound bound = Bound.of(operands.get(i), and);
+            if (bound != null) {
+                ranges.computeIfAbsent(bound.key, k -> new Range()).add(i, bound);
+            }
+        }
+        boolean changed = false;
+        List<List<ExpressionTree>> replaced = new ArrayList<>(operands.size());
+        for (ExpressionTree operand : operands) {
+            replaced.add(Collections.singletonList(operand));
+        }
+        for (Range range : ranges.values()) {
+            if (range.positions.size() < 2) {
+                continue;
+            }
+            List<ExpressionTree> result = and ? range.intersection() : range.union();
+            if (result == null) {
+                return null;
+            }
+            changed = true;
+            for (int position : range.positions) {
+                replaced.set(position, Collections.emptyList());
+            }
+            replaced.set(range.positions.get(0), result);
+        }
+        if (!changed) {
+            return operands;
+        }
+        List<ExpressionTree> result = new ArrayList<>();
+        for (List<ExpressionTree> operand : replaced) {
+            result.addAll(operand);
+        }
+        return result;
+    }
+
+    private static boolean isLong(ExpressionTree tree) {
+        return tree != null && tree.getType() == LiteralType.LONG;
+    }
+
+    private static ExpressionTree number(long value) {
+        return new ExpressionTree(Long.toString(value), LiteralType.LONG, value, null);
+    }
+
+    private static ExpressionTree rebuild(ExpressionTree tree, ExpressionTree left, ExpressionTree right) {
+        if (left == tree.getLeft() && right == tree.getRight()) {
+            return tree;
+        }
+        return new ExpressionTree(tree.getOperator(), left, right);
+    }
+
+    private static boolean accepts(String operator, int comparison) {
+        switch (operator) {
+            case ConstantHolder.OP_EQ:
+                return comparison == 0;
+            case ConstantHolder.OP_NE:
+                return comparison != 0;
+            case ConstantHolder.OP_LT:
+                return comparison < 0;
+            case ConstantHolder.OP_LE:
+                return comparison <= 0;
+            case ConstantHolder.OP_GT:
+                return comparison > 0;
+            default:
+                return comparison >= 0;
+        }
+    }
+
+    /**
+     * A comparison of an attribute with an integer or ISO date literal, as lower and upper bounds.
+     */
+    private static final class Bound {
+
+        // Attribute name and literal type: only bounds of one type are merged
+        final String key;
+        final ExpressionTree name;
+        ExpressionTree low;
+        boolean lowInclusive;
+        ExpressionTree high;
+        boolean highInclusive;
+
+        private Bound(ExpressionTree name, LiteralType type) {
+            this.key = type + ":" + name.getValue();
+            this.name = name;
+        }
+
+        static Bound of(ExpressionTree tree, boolean and) {
+            String operator = tree.getOperator();
+            if (operator.equals(ConstantHolder.OP_BETWEEN)) {
+                ExpressionTree bounds = tree.getRight();
+                if (!and || !isName(tree.getLeft()) || bounds == null
+                        || !isKey(bounds.getLeft()) || !isKey(bounds.getRight())
+                        || bounds.getLeft().getType() != bounds.getRight().getType()) {
+                    return null;
+                }
+                Bound bound = new Bound(tree.getLeft(), bounds.getLeft().getType());
+                bound.low = bounds.getLeft();
+                bound.lowInclusive = true;
+                bound.high = bounds.getRight();
+                bound.highInclusive = true;
+                return bound;
+            }
+            boolean mirrored;
+            if (isName(tree.getLeft()) && isKey(tree.getRight())) {
+                mirrored = false;
+            } else if (isKey(tree.getLeft()) && isName(tree.getRight())) {
+                mirrored = true;
+            } else {
+                return null;
+            }
+            ExpressionTree literal = mirrored ? tree.getLeft() : tree.getRight();
+            Bound bound = new Bound(mirrored ? tree.getRight() : tree.getLeft(), literal.getType());
+            switch (mirrored ? mirror(operator) : operator) {
+                case ConstantHolder.OP_EQ:
+                    if (!and) {
+                        return null;
+                    }
+                    bound.low = bound.high = literal;
+                    bound.lowInclusive = bound.highInclusive = true;
+                    return bound;
+                case ConstantHolder.OP_GT:
+                case ConstantHolder.OP_GE:
+                    bound.low = literal;
+                    bound.lowInclusive = operator.equals(ConstantHolder.OP_GE) || operator.equals(ConstantHolder.OP_LE);
+                    return bound;
+                case ConstantHolder.OP_LT:
+                case ConstantHolder.OP_LE:
+                    bound.high = literal;
+                    bound.highInclusive = operator.equals(ConstantHolder.OP_LE) || operator.equals(ConstantHolder.OP_GE);
+                    return bound;
+                default:
+                    return null;
+            }
+        }
+
+        private static boolean isName(ExpressionTree tree) {
+            return tree != null && tree.getType() == LiteralType.IDENTIFIER;
+        }
+
+        /**
+         * Integers, and dates whose text sorts like the dates themselves.
+         */
+        private static boolean isKey(ExpressionTree tree) {
+            if (tree == null) {
+                return false;
+            }
+            if (tree.getType() == LiteralType.LONG) {
+                return true;
+            }
+            return tree.getType() == LiteralType.DATE
+                    && DateRecognizer.iso().epochDay(tree.getStringValue()) == tree.getEpochDay();
+        }
+
+        private static String mirror(String operator) {
+            switch (operator) {
+                case ConstantHolder.OP_LT:
+                    return ConstantHolder.OP_GT;
+                case ConstantHolder.OP_LE:
+                    return ConstantHolder.OP_GE;
+                case ConstantHolder.OP_GT:
+                    return ConstantHolder.OP_LT;
+                case ConstantHolder.OP_GE:
+                    return ConstantHolder.OP_LE;
+                default:
+                    return operator;
+            }
+        }
+    }
+
+    /**
+     * The bounds found on one attribute and the positions of their operands.
+     */
+    private static final class Range {
+
+        final List<Integer> positions = new ArrayList<>();
+        final List<Bound> bounds = new ArrayList<>();
+
+        void add(int position, Bound bound) {
+            positions.add(position);
+            bounds.add(bound);
+        }
+
+        List<ExpressionTree> intersection() {
+            ExpressionTree name = bounds.get(0).name;
+            ExpressionTree low = null;
+            boolean lowInclusive = false;
+            ExpressionTree high = null;
+            boolean highInclusive = false;
+            for (Bound bound : bounds) {
+                if (bound.low != null) {
+                    int c = low == null ? 1 : Long.compare(key(bound.low), key(low));
+                    if (c > 0 || c == 0 && !bound.lowInclusive) {
+                        low = bound.low;
+                        lowInclusive = bound.lowInclusive;
+                    }
+                }
+                if (bound.high != null) {
+                    int c = high == null ? -1 : Long.compare(key(bound.high), key(high));
+                    if (c < 0 || c == 0 && !bound.highInclusive) {
+                        high = bound.high;
+                        highInclusive = bound.highInclusive;
+                    }
+                }
+            }
+            List<ExpressionTree> result = new ArrayList<>(2);
+            if (low != null && high != null) {
+                int c = Long.compare(key(low), key(high));
+                if (c > 0 || c == 0 && !(lowInclusive && highInclusive)) {
+                    return null;
+                }
+                if (c == 0) {
+                    result.add(new ExpressionTree(ConstantHolder.OP_EQ, name, low));
+                } else if (lowInclusive && highInclusive) {
+                    result.add(new ExpressionTree(ConstantHolder.OP_BETWEEN, name,
+                            new ExpressionTree(ConstantHolder.OP_AND, low, high)));
+                } else {
+                    result.add(new ExpressionTree(lowInclusive ? ConstantHolder.OP_GE : ConstantHolder.OP_GT, name, low));
+                    result.add(new ExpressionTree(highInclusive ? ConstantHolder.OP_LE : ConstantHolder.OP_LT, name, high));
+                }
+            } else if (low != null) {
+                result.add(new ExpressionTree(lowInclusive ? ConstantHolder.OP_GE : ConstantHolder.OP_GT, name, low));
+            } else {
+                result.add(new ExpressionTree(highInclusive ? ConstantHolder.OP_LE : ConstantHolder.OP_LT, name, high));
+            }
+            return result;
+        }
+
+        List<ExpressionTree> union() {
+            ExpressionTree name = bounds.get(0).name;
+            ExpressionTree low = null;
+            boolean lowInclusive = false;
+            ExpressionTree high = null;
+            boolean highInclusive = false;
+            for (Bound bound : bounds) {
+                if (bound.low != null) {
+                    int c = low == null ? -1 : Long.compare(key(bound.low), key(low));
+                    if (c < 0 || c == 0 && bound.lowInclusive) {
+                        low = bound.low;
+                        lowInclusive = bound.lowInclusive;
+                    }
+                }
+                if (bound.high != null) {
+                    int c = high == null ? 1 : Long.compare(key(bound.high), key(high));
+                    if (c > 0 || c == 0 && bound.highInclusive) {
+                        high = bound.high;
+                        highInclusive = bound.highInclusive;
+                    }
+                }
+            }
+            List<ExpressionTree> result = new ArrayList<>(2);
+            if (low != null) {
+                result.add(new ExpressionTree(lowInclusive ? ConstantHolder.OP_GE : ConstantHolder.OP_GT, name, low));
+            }
+            if (high != null) {
+                result.add(new ExpressionTree(highInclusive ? ConstantHolder.OP_LE : ConstantHolder.OP_LT, name, high));
+            }
+            return result;
+        }
+
+        private static long key(ExpressionTree literal) {
+            return literal.getType() == LiteralType.LONG ? literal.getLongValue() : literal.getEpochDay();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.expression.tree;
+
+/**
+ * How the generators write an IN list of literals.
+ */
+public enum InListMode {
+
+    /**
+     * A single <tt>in (...)</tt> with every distinct value.
+     */
+    INLINE,
+
+    /**
+     * <tt>in (...)</tt> groups of at most the maximum list size joined with <tt>or</tt>, for databases
+     * limiting the length of a list.
+     */
+    CHUNKED,
+
+    /**
+     * <tt>= any(?)</tt> with all values bound as one SQL array. Chunked when the values are inlined.
+     */
+    ARRAY,
+
+    /**
+     * <tt>in (select value from in_list_N)</tt> over a temporary table the caller loads from
+     * {@link ParameterizedQuery#getTables()} before running the query. Chunked when the values are inlined.
+     */
+    TEMP_TABLE
+}
@@ -0,0 +1,19 @@
+package com.github.expression.tree;
+
+/**
+ * Type of a value node, resolved by the parser from the token that produced it.
+ */
+public enum LiteralType {
+    /** A bare or back-quoted name, such as an attribute or a member name. */
+    IDENTIFIER,
+    /** A quoted string that is not a date; {@link ExpressionTree#getStringValue()} has no quotes. */
+    STRING,
+    /** An integer number that fits in a long, see {@link ExpressionTree#getLongValue()}. */
+    LONG,
+    /** Any other number, see {@link ExpressionTree#getDecimalValue()}. */
+    DECIMAL,
+    /** A quoted string recognized as a date, see {@link ExpressionTree#getEpochDay()}. */
+    DATE,
+    /** The NULL keyword. */
+    NULL
+}
@@ -0,0 +1,57 @@
+package com.github.expression.tree;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL text with <tt>?</tt> placeholders and the values to bind to them, in placeholder order.
+ */
+public final class ParameterizedQuery {
+
+    private final String sql;
+    private final List<BindValue> binds;
+    private final Map<String, List<BindValue>> tables;
+
+    ParameterizedQuery(String sql, List<BindValue> binds) {
+        this(sql, binds, Collections.emptyMap());
+    }
+
+    ParameterizedQuery(String sql, List<BindValue> binds, Map<String, List<BindValue>> tables) {
+        this.sql = sql;
+        this.binds = Collections.unmodifiableList(binds);
+        this.tables = Collections.unmodifiableMap(tables);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<BindValue> getBinds() {
+        return binds;
+    }
+
+    /**
+     * The rows of the temporary tables the SQL selects IN list values from, by table name, in
+     * {@link InListMode#TEMP_TABLE} mode. Each table has a single <tt>value</tt> column.
+     */
+    public Map<String, List<BindValue>> getTables() {
+        return tables;
+    }
+
+    /**
+     * Sets all bind values as the parameters of <tt>statement</tt>, prepared from {@link #getSql()}.
+     */
+    public void bind(PreparedStatement statement) throws SQLException {
+        for (int i = 0; i < binds.size(); i++) {
+            binds.get(i).bind(statement, i + 1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return sql + " " + binds;
+    }
+}
@@ -0,0 +1,597 @@
+package com.github.expression.tree;
+
+import com.github.expression.exception.ParseErrorCode;
+import com.github.expression.exception.ParseException;
+import com.github.expression.token.TokenBuffer;
+import com.github.expression.token.TokenExtractor;
+import com.github.expression.token.TokenKind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Per-call state of the recursive descent parser: the token stream of one expression and the
+ * current position in it. A context is reused for many expressions by one thread at a time.
+ */
+final class ParseContext {
+
+    private static final List<String> compareOperators = Arrays.asList(ConstantHolder.OP_EQ, ConstantHolder.OP_NE, ConstantHolder.OP_LT,
+            ConstantHolder.OP_LE, ConstantHolder.OP_GT, ConstantHolder.OP_GE,
+            ConstantHolder.OP_CONTAINS, ConstantHolder.OP_LIKE, ConstantHolder.OP_LIKEFILE);
+
+    private static final List<String> addOperators = Arrays.asList(ConstantHolder.OP_ADD, ConstantHolder.OP_SUB, ConstantHolder.OP_CONCAT);
+
+    private static final List<String> mulDivModOperators = Arrays.asList(ConstantHolder.OP_MUL, ConstantHolder.OP_DIV, ConstantHolder.OP_MOD);
+
+    // Grammar rules and the states a rule resumes in after calling another
+    private static final int OR = 0;
+    private static final int OR_NEXT = 1;
+    private static final int AND = 2;
+    private static final int AND_NEXT = 3;
+    private static final int NOT = 4;
+    private static final int COMPARE = 5;
+    private static final int COMPARE_OPERATOR = 6;
+    private static final int COMPARE_DONE = 7;
+    private static final int BETWEEN_LOW = 8;
+    private static final int BETWEEN_HIGH = 9;
+    private static final int IN_DONE = 10;
+    private static final int ADD = 11;
+    private static final int ADD_NEXT = 12;
+    private static final int MULTIPLY = 13;
+    private static final int MULTIPLY_NEXT = 14;
+    private static final int UNARY = 15;
+    private static final int UNARY_DONE = 16;
+    private static final int EXPO_OPERATOR = 17;
+    private static final int EXPO_DONE = 18;
+    private static final int OPERAND = 19;
+    private static final int OPERAND_DONE = 20;
+    private static final int NAME = 21;
+    private static final int SUBSCRIPT_DONE = 22;
+    private static final int LIST = 23;
+    private static final int LIST_NEXT = 24;
+
+    private static final int INITIAL_FRAMES = 16;
+    // Frames and operand lists grown past these by one deep or long expression are not kept
+    private static final int MAX_RETAINED_FRAMES = 256;
+    private static final int MAX_RETAINED_ITEMS = 1024;
+
+    private static final TokenExtractor tokenExtractor = new TokenExtractor(ConstantHolder.operatorsMap);
+
+    private final TokenBuffer expressionTokens = new TokenBuffer();
+    private final DateRecognizer dateRecognizer;
+    private int currentTokenIndex;
+    private boolean inUse;
+    private Frame[] frames = new Frame[INITIAL_FRAMES];
+    private int depth;
+
+    ParseContext() {
+        this(DateRecognizer.iso());
+    }
+
+    ParseContext(DateRecognizer dateRecognizer) {
+        this.dateRecognizer = dateRecognizer;
+    }
+
+    void reset(CharSequence expr) throws ParseException {
+        tokenExtractor.open(expr, expressionTokens);
+        currentTokenIndex = 0;
+        if (!expressionTokens.has(0)) {
+            throw error(ParseErrorCode.EMPTY_EXPRESSION, "Tokens not found", -1, -1);
+        }
+    }
+
+    ExpressionTree parse() throws ParseException {
+        ExpressionTree tree = run(OR);
+        validateEndOfExpression();
+        return tree.getValue() != null ? new ExpressionTree(ConstantHolder.OP_VALUE, tree) : tree;
+    }
+
+    /**
+     * Marks the context as taken by a parse call, returning false if it already is.
+     */
+    boolean acquire() {
+        if (inUse) {
+            return false;
+        }
+        inUse = true;
+        return true;
+    }
+
+    /**
+     * Drops the reference to the last expression so it can be collected, keeping the token arrays
+     * and frames unless an unusually large expression has grown them.
+     */
+    void release() {
+        expressionTokens.clear();
+        // Frames left by a failed parse may still hold subtrees
+        while (depth > 0) {
+            pop(null);
+        }
+        if (frames.length > MAX_RETAINED_FRAMES) {
+            frames = new Frame[INITIAL_FRAMES];
+        }
+        inUse = false;
+    }
+
+    int frameCapacity() {
+        return frames.length;
+    }
+
+    private boolean hasMoreTokens() throws ParseException {
+        return expressionTokens.has(currentTokenIndex);
+    }
+
+    /**
+     * Consumes the next token, returning its index, or returns -1 at the end of the expression.
+     */
+    private int nextToken() throws ParseException {
+        return hasMoreTokens() ? currentTokenIndex++ : -1;
+    }
+
+    private String keyword(int tokenIndex) {
+        return tokenIndex < 0 ? null : expressionTokens.keyword(tokenIndex);
+    }
+
+    private String text(int tokenIndex) {
+        return tokenIndex < 0 ? "<end>" : expressionTokens.text(tokenIndex);
+    }
+
+    /**
+     * The value node of a token, typed by the token kind.
+     */
+    private ExpressionTree value(int tokenIndex) {
+        String text = text(tokenIndex);
+        switch (expressionTokens.kind(tokenIndex)) {
+            case TokenKind.NUMBER:
+                try {
+                    return ExpressionTree.number(text);
+                } catch (NumberFormatException e) {
+                    return new ExpressionTree(text);
+                }
+            case TokenKind.STRING:
+                return ExpressionTree.string(text, dateRecognizer);
+            default:
+                return new ExpressionTree(text);
+        }
+    }
+
+    private boolean isNameOrString(int tokenIndex) {
+        int ch = expressionTokens.firstChar(tokenIndex);
+        return ch == '"' || ch == '\'' || ch >= 0 && Character.isJavaIdentifierPart(ch);
+    }
+
+    private void validateEndOfExpression() throws ParseException {
+        if (hasMoreTokens()) {
+            throw error(ParseErrorCode.UNEXPECTED_TOKEN, "Malformed expression at: '"
+                    + text(currentTokenIndex) + "'", currentTokenIndex, currentTokenIndex);
+        }
+    }
+
+    /**
+     * Runs the recursive descent grammar on an explicit stack of frames, one per pending rule,
+     * so that the nesting of the expression is bounded by the heap rather than the thread stack.
+     * A rule "calls" another by pushing its frame after recording where to resume, and "returns"
+     * by popping itself with the result in <tt>returned</tt>. Frames are reused across calls.
+     */
+    private ExpressionTree run(int rule) throws ParseException {
+        depth = 0;
+        ExpressionTree returned = null;
+        push(rule);
+        while (depth > 0) {
+            Frame frame = frames[depth - 1];
+            switch (frame.state) {
+                case OR:
+                case AND:
+                    frame.keyword = null;
+                    frame.result = null;
+                    call(frame, frame.state + 1, frame.state == OR ? AND : NOT);
+                    break;
+                case OR_NEXT:
+                case AND_NEXT: {
+                    frame.result = frame.keyword == null ? returned : new ExpressionTree(frame.keyword, frame.result, returned);
+                    String operator = frame.state == OR_NEXT ? ConstantHolder.OP_OR : ConstantHolder.OP_AND;
+                    String keyword = hasMoreTokens() ? nextKeyword() : null;
+                    if (Objects.equals(keyword, operator)) {
+                        frame.keyword = keyword;
+                        call(frame, frame.state, frame.state == OR_NEXT ? AND : NOT);
+                    } else {
+                        if (keyword != null) {
+                            currentTokenIndex--;
+                        }
+                        returned = pop(frame.result);
+                    }
+                    break;
+                }
+                case NOT: {
+                    if (!hasMoreTokens()) {
+                        returned = pop(null);
+                        break;
+                    }
+                    String keyword = keyword(currentTokenIndex++);
+                    if (Objects.equals(keyword, ConstantHolder.OP_NOT)) {
+                        frame.keyword = keyword;
+                        call(frame, UNARY_DONE, NOT);
+                    } else {
+                        currentTokenIndex--;
+                        frame.state = COMPARE;
+                    }
+                    break;
+                }
+                case COMPARE:
+                    call(frame, COMPARE_OPERATOR, ADD);
+                    break;
+                case COMPARE_OPERATOR:
+                    returned = compareOperator(frame, returned);
+                    break;
+                case COMPARE_DONE:
+                    returned = complement(frame, new ExpressionTree(frame.keyword, frame.result, returned));
+                    break;
+                case BETWEEN_LOW: {
+                    frame.operand = returned;
+                    int token = nextToken();
+                    if (!Objects.equals(keyword(token), ConstantHolder.OP_AND)) {
+                        throw error(ParseErrorCode.EXPECTED_AND, "Missing expected 'AND' at: '" + text(token) + "'", currentTokenIndex - 1, token);
+                    }
+                    call(frame, BETWEEN_HIGH, ADD);
+                    break;
+                }
+                case BETWEEN_HIGH: {
+                    ExpressionTree sub = new ExpressionTree(ConstantHolder.OP_AND, frame.operand, returned);
+                    returned = complement(frame, new ExpressionTree(ConstantHolder.OP_BETWEEN, frame.result, sub));
+                    break;
+                }
+                case IN_DONE: {
+                    int token = nextToken();
+                    if (!Objects.equals(keyword(token), ConstantHolder.OP_RP)) {
+                        throw error(ParseErrorCode.EXPECTED_CLOSING_PARENTHESIS, "Missing expected ')' at: '"
+                                + text(token) + "'", currentTokenIndex-1, token);
+                    }
+                    returned = complement(frame, new ExpressionTree(ConstantHolder.OP_IN, frame.result, returned));
+                    break;
+                }
+                case ADD:
+                case MULTIPLY:
+                    frame.keyword = null;
+                    frame.result = null;
+                    call(frame, frame.state + 1, frame.state == ADD ? MULTIPLY : UNARY);
+                    break;
+                case ADD_NEXT:
+                case MULTIPLY_NEXT: {
+                    frame.result = frame.keyword == null ? returned : new ExpressionTree(frame.keyword, frame.result, returned);
+                    List<String> operators = frame.state == ADD_NEXT ? addOperators : mulDivModOperators;
+                    String keyword = hasMoreTokens() ? nextKeyword() : null;
+                    if (operators.contains(keyword)) {
+                        frame.keyword = keyword;
+                        call(frame, frame.state, frame.state == ADD_NEXT ? MULTIPLY : UNARY);
+                    } else {
+                        if (keyword != null) {
+                            currentTokenIndex--;
+                        }
+                        returned = pop(frame.result);
+                    }
+                    break;
+                }
+                case UNARY: {
+                    if (!hasMoreTokens())
+                        throw error(ParseErrorCode.EXPECTED_OPERAND, "Missing operand/operator", currentTokenIndex-1, -1);
+                    String keyword = keyword(currentTokenIndex++);
+                    if (Objects.equals(keyword, ConstantHolder.OP_ADD) ||
+                            Objects.equals(keyword, ConstantHolder.OP_SUB)) {
+                        frame.keyword = Objects.equals(keyword, ConstantHolder.OP_ADD) ? ConstantHolder.OP_POS : ConstantHolder.OP_NEG;
+                        call(frame, UNARY_DONE, UNARY);
+                    } else {
+                        currentTokenIndex--;
+                        call(frame, EXPO_OPERATOR, OPERAND);
+                    }
+                    break;
+                }
+                case UNARY_DONE:
+                    returned = pop(new ExpressionTree(frame.keyword, returned));
+                    break;
+                case EXPO_OPERATOR: {
+                    if (!hasMoreTokens()) {
+                        returned = pop(returned);
+                        break;
+                    }
+                    String keyword = nextKeyword();
+                    if (Objects.equals(keyword, ConstantHolder.OP_EXPO)) {
+                        frame.keyword = keyword;
+                        frame.result = returned;
+                        call(frame, EXPO_DONE, UNARY);
+                    } else {
+                        currentTokenIndex--;
+                        returned = pop(returned);
+                    }
+                    break;
+                }
+                case EXPO_DONE:
+                    returned = pop(new ExpressionTree(frame.keyword, frame.result, returned));
+                    break;
+                case OPERAND:
+                    returned = operand(frame);
+                    break;
+                case OPERAND_DONE: {
+                    int token = nextToken();
+                    if (!Objects.equals(keyword(token), ConstantHolder.OP_RP))
+                        throw error(ParseErrorCode.EXPECTED_CLOSING_PARENTHESIS, "Missing closing ')' at: '" + text(token) + "'", currentTokenIndex-1, token);
+                    returned = pop(returned);
+                    break;
+                }
+                case NAME: {
+                    if (!hasMoreTokens()) {
+                        returned = pop(null);
+                        break;
+                    }
+                    int token = currentTokenIndex++;
+                    if (keyword(token) != null || !isNameOrString(token))
+                        throw error(ParseErrorCode.EXPECTED_NAME, "Missing name or string at: '" + text(token) + "'",
+                                currentTokenIndex-1, token);
+                    frame.result = value(token);
+                    returned = nameSuffix(frame);
+                    break;
+                }
+                case SUBSCRIPT_DONE: {
+                    frame.result = new ExpressionTree(ConstantHolder.OP_SUBSCR, frame.result, returned);
+                    int token = nextToken();
+                    if (!Objects.equals(keyword(token), ConstantHolder.OP_SUBSCR2))
+                        throw error(ParseErrorCode.EXPECTED_CLOSING_BRACKET, "Missing closing ']' at: '" + text(token) + "'", currentTokenIndex-1, token);
+                    returned = nameSuffix(frame);
+                    break;
+                }
+                case LIST:
+                    frame.items.clear();
+                    call(frame, LIST_NEXT, ADD);
+                    break;
+                default:
+                    returned = listItem(frame, returned);
+                    break;
+            }
+        }
+        return returned;
+    }
+
+    /**
+     * The keyword of the next token, which is consumed.
+     *
+     * @throws ParseException if the token is not an operator
+     */
+    private String nextKeyword() throws ParseException {
+        String keyword = keyword(currentTokenIndex++);
+        if (keyword == null) {
+            throw error(ParseErrorCode.EXPECTED_OPERATOR, "Bad operator: '" + text(currentTokenIndex-1) + "'", currentTokenIndex-1, currentTokenIndex-1);
+        }
+        return keyword;
+    }
+
+    private ExpressionTree compareOperator(Frame frame, ExpressionTree result) throws ParseException {
+        if (!hasMoreTokens()) {
+            return pop(result);
+        }
+
+        // Continue parsing
+        String keyword = nextKeyword();
+
+        if (Objects.equals(keyword, ConstantHolder.OP_IS)) {
+
+            if (!hasMoreTokens()) {
+                throw error(ParseErrorCode.EXPECTED_NULL, "Missing operand following: '" + text(currentTokenIndex-1) + "'", currentTokenIndex-1, -1);
+            }
+            keyword = keyword(currentTokenIndex++);
+
+            result = new ExpressionTree(ConstantHolder.OP_IS, result, ExpressionTree.nullValue(ConstantHolder.OP_NULL));
+
+            if (Objects.equals(keyword, ConstantHolder.OP_NOT)) {
+                if (!hasMoreTokens()) {
+                    throw error(ParseErrorCode.EXPECTED_NULL, "Missing 'NULL' following: '" + text(currentTokenIndex-1) + "'", currentTokenIndex-1, -1);
+                }
+                keyword = keyword(currentTokenIndex++);
+
+                result = new ExpressionTree(ConstantHolder.OP_NOT, result);
+            }
+
+            if (!Objects.equals(keyword, ConstantHolder.OP_NULL)) {
+                throw error(ParseErrorCode.EXPECTED_NULL, "Missing 'NULL' at: '" + text(currentTokenIndex-1) + "'", currentTokenIndex-1, currentTokenIndex-1);
+            }
+
+            return pop(result);
+        }
+
+        frame.complement = false;
+        if (Objects.equals(keyword, ConstantHolder.OP_NOT)) {
+            if (!hasMoreTokens()) {
+                throw error(ParseErrorCode.EXPECTED_OPERATOR, "Missing operator following: '" + text(currentTokenIndex-1) + "'", currentTokenIndex-1, -1);
+            }
+            frame.complement = true;
+            keyword = keyword(currentTokenIndex++);
+        }
+
+        frame.result = result;
+        // Parse a compare-op
+        if (compareOperators.contains(keyword)) {
+            frame.keyword = keyword;
+            call(frame, COMPARE_DONE, ADD);
+        } else if (Objects.equals(keyword, ConstantHolder.OP_BETWEEN)) {
+            call(frame, BETWEEN_LOW, ADD);
+        } else if (Objects.equals(keyword, ConstantHolder.OP_IN)) {
+            int token = nextToken();
+
+            if (!Objects.equals(keyword(token), ConstantHolder.OP_LP)) {
+                throw error(ParseErrorCode.EXPECTED_OPENING_PARENTHESIS, "Missing expected '(' at: '" + text(token) + "'", currentTokenIndex-1, token);
+            }
+            call(frame, IN_DONE, LIST);
+        } else {
+            currentTokenIndex--;
+            return complement(frame, result);
+        }
+        return null;
+    }
+
+    private ExpressionTree complement(Frame frame, ExpressionTree result) {
+        return pop(frame.complement ? new ExpressionTree(ConstantHolder.OP_NOT, result) : result);
+    }
+
+    private ExpressionTree operand(Frame frame) throws ParseException {
+        // Check for end of expression
+        if (!hasMoreTokens())
+            return pop(null);
+
+        int token = currentTokenIndex++;
+        String keyword = keyword(token);
+
+        if (keyword == null) {
+            if (isNameOrString(token)) {
+                currentTokenIndex--;
+                frame.state = NAME;
+                return null;
+            } else {
+                return pop(value(token));
+            }
+        } else if (Objects.equals(keyword, ConstantHolder.OP_NULL)) {
+            return pop(ExpressionTree.nullValue(text(token)));
+        }
+        else if (Objects.equals(keyword, ConstantHolder.OP_LP)) {
+            call(frame, OPERAND_DONE, OR);
+            return null;
+        } else {
+            throw error(ParseErrorCode.EXPECTED_OPERAND, "Bad operand: '" + text(token) + "'", currentTokenIndex-1, token);
+        }
+    }
+
+    /**
+     * Applies the member and subscript operators following a name, returning the result once no
+     * more follow or null after calling the rule of a subscript.
+     */
+    private ExpressionTree nameSuffix(Frame frame) throws ParseException {
+        ExpressionTree res = frame.result;
+        while (hasMoreTokens()) {
+            int token = currentTokenIndex++;
+            String keyword = keyword(token);
+
+            if (Objects.equals(keyword, ConstantHolder.OP_MEMBER) ||
+                    Objects.equals(keyword, ConstantHolder.OP_SUBSCR)) {
+                String value = res.getValue();
+                if (value != null && isQuoted(value))
+                    res = new ExpressionTree(value.substring(1, value.length()-1));
+            }
+
+
+            if (Objects.equals(keyword, ConstantHolder.OP_MEMBER)) {
+
+                token = nextToken();
+                String name = text(token);
+
+                if (token >= 0 && isQuoted(name))
+                    name = name.substring(1, name.length()-1);
+                else if (token < 0 || keyword(token) != null || !isNameOrString(token))
+                    throw error(ParseErrorCode.EXPECTED_NAME, "Missing name or string at: '" + name + "'", currentTokenIndex-1, token);
+                res  = new ExpressionTree(ConstantHolder.OP_MEMBER, res, new ExpressionTree(name));
+            }
+            else if (Objects.equals(keyword, ConstantHolder.OP_SUBSCR)) {
+                frame.result = res;
+                call(frame, SUBSCRIPT_DONE, ADD);
+                return null;
+            } else {
+                currentTokenIndex--;
+                break;
+            }
+        }
+
+        return pop(res);
+    }
+
+    /**
+     * Collects the items of an IN list in the frame and builds the flat <tt>list</tt> node
+     * once the closing parenthesis is reached.
+     */
+    private ExpressionTree listItem(Frame frame, ExpressionTree item) throws ParseException {
+        frame.items.add(item);
+
+        if (!hasMoreTokens())
+            throw error(ParseErrorCode.EXPECTED_CLOSING_PARENTHESIS, "Missing closing ')'", currentTokenIndex-1, -1);
+
+        String keyword = keyword(currentTokenIndex++);
+
+        if (Objects.equals(keyword, ConstantHolder.OP_RP)) {
+            currentTokenIndex--;
+            ExpressionTree res = new ExpressionTree(frame.items.toArray(new ExpressionTree[0]));
+            frame.items.clear();
+            return pop(res);
+        }
+        if (Objects.equals(keyword, ConstantHolder.OP_LIST)) {
+            if (!hasMoreTokens())
+                throw error(ParseErrorCode.EXPECTED_OPERAND, "Missing 'IN' list or ')' at: '" + text(currentTokenIndex-1) + "'", currentTokenIndex-1, -1);
+        }
+        else
+            currentTokenIndex--;
+        call(frame, LIST_NEXT, ADD);
+        return null;
+    }
+
+    private void push(int rule) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = frames[depth] = new Frame();
+        }
+        frame.state = rule;
+        depth++;
+    }
+
+    /**
+     * Resumes <tt>frame</tt> at <tt>state</tt> once <tt>rule</tt> returns.
+     */
+    private void call(Frame frame, int state, int rule) {
+        frame.state = state;
+        push(rule);
+    }
+
+    private ExpressionTree pop(ExpressionTree result) {
+        Frame frame = frames[--depth];
+        frame.result = null;
+        frame.operand = null;
+        if (frame.items.size() > MAX_RETAINED_ITEMS) {
+            frame.items = new ArrayList<>();
+        } else {
+            frame.items.clear();
+        }
+        return result;
+    }
+
+    /**
+     * An error at <tt>token</tt>, or at the end of the expression if it is -1. <tt>errorOffset</tt>
+     * is the token index reported before token indexes and character offsets were told apart.
+     */
+    private ParseException error(ParseErrorCode code, String message, int errorOffset, int token) {
+        int tokenIndex = token >= 0 ? token : expressionTokens.size();
+        int charOffset = token >= 0 ? expressionTokens.start(token) : expressionTokens.source().length();
+        return new ParseException(code, message, errorOffset, tokenIndex, charOffset);
+    }
+
+    private static boolean isQuoted(String token) {
+        if (token.isEmpty()) {
+            return false;
+        }
+        char ch = token.charAt(0);
+        return ch == '"'  ||  ch == '\'';
+    }
+
+    /**
+     * The state of one pending grammar rule.
+     */
+    private static final class Frame {
+
+        int state;
+        // The operator keyword being applied, or null before the first operand
+        String keyword;
+        ExpressionTree result;
+        // The low bound of a BETWEEN
+        ExpressionTree operand;
+        // Whether the comparison is negated by a NOT before its operator
+        boolean complement;
+        List<ExpressionTree> items = new ArrayList<>();
+    }
+}
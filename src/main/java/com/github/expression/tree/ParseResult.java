@@ -0,0 +1,80 @@
+package com.github.expression.tree;
+
+import com.github.expression.exception.ParseErrorCode;
+import com.github.expression.exception.ParseException;
+
+/**
+ * The outcome of parsing one expression: its tree, or the error that made it invalid with where
+ * it was found.
+ */
+public final class ParseResult {
+
+    private final ExpressionTree tree;
+    private final ParseException error;
+
+    private ParseResult(ExpressionTree tree, ParseException error) {
+        this.tree = tree;
+        this.error = error;
+    }
+
+    static ParseResult of(ExpressionTree tree) {
+        return new ParseResult(tree, null);
+    }
+
+    static ParseResult failure(ParseException error) {
+        return new ParseResult(null, error);
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * The tree, or null if the expression is invalid.
+     */
+    public ExpressionTree getTree() {
+        return tree;
+    }
+
+    /**
+     * The tree, throwing the parse error if the expression is invalid.
+     */
+    public ExpressionTree getTreeOrThrow() throws ParseException {
+        if (error != null) {
+            throw error;
+        }
+        return tree;
+    }
+
+    /**
+     * The parse error, or null if the expression is valid.
+     */
+    public ParseException getError() {
+        return error;
+    }
+
+    /**
+     * What made the expression invalid, or null if it is valid.
+     */
+    public ParseErrorCode getCode() {
+        return error != null ? error.getCode() : null;
+    }
+
+    /**
+     * The index of the token at which the error was found, or -1 if the expression is valid.
+     *
+     * @see ParseException#getTokenIndex()
+     */
+    public int getTokenIndex() {
+        return error != null ? error.getTokenIndex() : -1;
+    }
+
+    /**
+     * The offset of the character at which the error was found, or -1 if the expression is valid.
+     *
+     * @see ParseException#getCharOffset()
+     */
+    public int getCharOffset() {
+        return error != null ? error.getCharOffset() : -1;
+    }
+}
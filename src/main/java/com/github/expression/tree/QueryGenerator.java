@@ -1,134 +1,336 @@
 package com.github.expression.tree;
 
 import com.github.expression.tree.ExpressionTree;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
-import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 
 public class QueryGenerator {
 
-    public static final String DEFAULT_DATE_MASK = "yyyy-mm-dd";
-    private final SimpleDateFormat formatter;
+    public static final String DEFAULT_DATE_MASK = "yyyy-MM-dd";
+    private static final int TEMPLATE_CACHE_SIZE = 1_000;
 
+    private final DateRecognizer dateRecognizer;
+    private InListMode inListMode = InListMode.INLINE;
+    private int maxInListSize = SqlWriter.DEFAULT_MAX_IN_LIST_SIZE;
+    private boolean likePrefixRanges;
+    // Marks a missing operand in a shape
+    private static final Object NONE = new Object();
+
+    private final Cache<Shape, String> templates = CacheBuilder.newBuilder()
+            .maximumSize(TEMPLATE_CACHE_SIZE)
+            .build();
+
+    /**
+     * A generator that uses the literal types resolved by the parser.
+     */
     public QueryGenerator() {
-        this.formatter = new SimpleDateFormat(DEFAULT_DATE_MASK);
+        this.dateRecognizer = null;
     }
 
+    /**
+     * A generator that also treats the string literals matching the {@link java.time.format.DateTimeFormatter}
+     * pattern <tt>mask</tt> as dates.
+     */
     public QueryGenerator(String mask) {
-        this.formatter = new SimpleDateFormat(mask);
+        this(DateRecognizer.ofPattern(mask));
+    }
+
+    /**
+     * A generator that also treats the string literals accepted by <tt>dateRecognizer</tt> as dates.
+     */
+    public QueryGenerator(DateRecognizer dateRecognizer) {
+        this.dateRecognizer = dateRecognizer;
+    }
+
+    /**
+     * Selects how IN lists of literals are written, {@link InListMode#INLINE} by default.
+     */
+    public QueryGenerator withInListMode(InListMode inListMode) {
+        this.inListMode = inListMode;
+        templates.invalidateAll();
+        return this;
+    }
+
+    /**
+     * The number of values of an IN group in {@link InListMode#CHUNKED} mode, 1000 by default.
+     */
+    public QueryGenerator withMaxInListSize(int maxInListSize) {
+        if (maxInListSize < 1) {
+            throw new IllegalArgumentException("IN list size must be positive: " + maxInListSize);
+        }
+        this.maxInListSize = maxInListSize;
+        templates.invalidateAll();
+        return this;
+    }
+
+    /**
+     * Writes a LIKE pattern starting with fixed text, <tt>like 'abc%'</tt>, as the range
+     * <tt>str_value &gt;= 'abc' and str_value &lt; 'abd'</tt> that an index on the column answers,
+     * followed by the LIKE if the pattern has more after the prefix. The range is exact when the
+     * column sorts by code point, e.g. with the <tt>C</tt> collation; off by default.
+     */
+    public QueryGenerator withLikePrefixRanges(boolean likePrefixRanges) {
+        this.likePrefixRanges = likePrefixRanges;
+        templates.invalidateAll();
+        return this;
     }
 
     public String generate(String prefix, ExpressionTree tree) {
-        StringBuilder builder = new StringBuilder(prefix);
-        builder.append(" where ");
-        handleTreeNode(builder, tree);
-        return builder.toString();
+        SqlWriter output = writer(prefix, null);
+        handleTreeNode(output, tree);
+        return output.builder.toString();
     }
 
-    private void handleTreeNode(StringBuilder builder, ExpressionTree tree) {
-        if (tree.getOperator().equals(ConstantHolder.OP_IN)) {
-            handleIn(builder, tree);
-        } else {
-            handleLeft(builder, tree.getLeft());
-            builder.append(" ").append(getInitialOperator(tree)).append(" ");
-            handleRight(builder, tree.getRight(), tree);
+    /**
+     * Generates the query with a <tt>?</tt> placeholder for every attribute name and value instead
+     * of inlining them. Trees that differ only in names and values give the same SQL text. The text
+     * is cached by the shape of the tree, so once a shape has been seen only the bind values of
+     * another tree of that shape are collected, and its query shares the same string instance.
+     */
+    public ParameterizedQuery generateParameterized(String prefix, ExpressionTree tree) {
+        Shape shape = shape(prefix, tree);
+        String sql = templates.getIfPresent(shape);
+        SqlWriter output = new SqlWriter(sql == null ? new StringBuilder(prefix).append(" where ") : null,
+                new ArrayList<>(), dateRecognizer, inListMode, maxInListSize, likePrefixRanges);
+        handleTreeNode(output, tree);
+        if (sql == null) {
+            String template = output.builder.toString();
+            sql = templates.asMap().putIfAbsent(shape, template);
+            if (sql == null) {
+                sql = template;
+            }
         }
+        return new ParameterizedQuery(sql, output.binds, output.tables);
+    }
+
+    /**
+     * Number of distinct statement templates cached so far.
+     */
+    public long templateCount() {
+        return templates.size();
+    }
+
+    private SqlWriter writer(String prefix, List<BindValue> binds) {
+        return new SqlWriter(new StringBuilder(prefix).append(" where "), binds, dateRecognizer, inListMode, maxInListSize,
+                likePrefixRanges);
     }
 
-    private void handleLeft(StringBuilder builder, ExpressionTree tree) {
-        if (tree != null) {
-            if (tree.getOperator().equals(ConstantHolder.OP_NOP)) {
-                builder
-                        .append("name")
-                        .append(" = ")
-                        .append('\'')
-                        .append(tree.getValue())
-                        .append("'");
-            } else {
-                builder.append("(");
-                handleLeft(builder, tree.getLeft());
-                builder.append(" and ");
-                handleRight(builder, tree.getRight(), tree);
-                builder.append(")");
+    /**
+     * Everything the parameterized SQL of <tt>tree</tt> depends on besides the settings: its
+     * operators and structure, the type and value column of every literal, how a LIKE pattern is
+     * written and the type and number of distinct values of each IN list. Names and values are bound and
+     * left out.
+     */
+    private Shape shape(String prefix, ExpressionTree tree) {
+        List<Object> parts = new ArrayList<>();
+        Deque<Object> pending = new ArrayDeque<>();
+        pushShape(pending, tree);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next == NONE) {
+                parts.add(NONE);
+                continue;
             }
+            ExpressionTree node = (ExpressionTree) next;
+            parts.add(node.getOperator());
+            if (node.getValue() != null) {
+                parts.add(node.getType());
+                if (node.getType() == LiteralType.STRING) {
+                    parts.add(SqlWriter.column(node, dateRecognizer));
+                    if (likePrefixRanges) {
+                        parts.add(SqlWriter.likeForm(node.getStringValue()));
+                    }
+                }
+                continue;
+            }
+            List<ExpressionTree> items = node.getItems();
+            if (!items.isEmpty()) {
+                parts.add(items.size());
+                ValueSet set = node.getValueSet();
+                if (set != null) {
+                    parts.add(set.getType());
+                    parts.add(set.size());
+                }
+                for (int i = items.size() - 1; i >= 0; i--) {
+                    pushShape(pending, items.get(i));
+                }
+                continue;
+            }
+            pushShape(pending, node.getRight());
+            pushShape(pending, node.getLeft());
         }
+        return new Shape(prefix, parts.toArray());
+    }
+
+    // ArrayDeque takes no nulls, so a missing operand is pushed as its marker
+    private static void pushShape(Deque<Object> pending, ExpressionTree node) {
+        pending.push(node != null ? node : NONE);
     }
 
-    private void handleRight(StringBuilder builder, ExpressionTree tree, ExpressionTree parent) {
-        if (tree != null) {
-            if (tree.getOperator().equals(ConstantHolder.OP_IN)) {
-                handleIn(builder, tree);
-            } else if (tree.getOperator().equals(ConstantHolder.OP_NOP)) {
-                String columnName = defineColumn(tree.getValue());
-                builder
-                        .append(columnName).append(" ")
-                        .append(getOperatorValue(parent.getOperator())).append(" ")
-                        .append(tree.getValue()).append("");
-            } else {
-                builder.append("(");
-                handleLeft(builder, tree.getLeft());
-                builder.append(" and ");
-                handleRight(builder, tree.getRight(), tree);
-                builder.append(")");
+    /**
+     * Writes the condition of <tt>tree</tt> with an explicit stack of pending steps, so that the
+     * cost is linear in the tree size and the depth of the tree is not limited by the thread stack.
+     * A step is either text to append or a node to expand; steps are pushed in reverse order.
+     */
+    private void handleTreeNode(SqlWriter output, ExpressionTree tree) {
+        Deque<Object> steps = new ArrayDeque<>();
+        if (tree.getOperator().equals(ConstantHolder.OP_IN)) {
+            push(steps, Step.IN, tree, null);
+        } else if (!tree.getItems().isEmpty()) {
+            pushOperands(steps, tree);
+        } else if (isConstant(tree)) {
+            push(steps, Step.LEFT, tree, null);
+        } else {
+            push(steps, Step.RIGHT, tree.getRight(), tree);
+            steps.push(" " + getInitialOperator(tree) + " ");
+            push(steps, Step.LEFT, tree.getLeft(), null);
+        }
+        while (!steps.isEmpty()) {
+            Object next = steps.pop();
+            if (next instanceof String) {
+                output.append((String) next);
+                continue;
+            }
+            Step step = (Step) next;
+            ExpressionTree node = step.node;
+            String operator = node.getOperator();
+            switch (step.kind) {
+                case Step.LEFT:
+                    if (operator.equals(ConstantHolder.OP_IN)) {
+                        push(steps, Step.IN, node, null);
+                    } else if (operator.equals(ConstantHolder.OP_NOP)) {
+                        output.append("name").append(" = ");
+                        output.appendName(node.getValue());
+                    } else if (isConstant(node)) {
+                        output.append(operator.equals(ConstantHolder.OP_TRUE) ? "1 = 1" : "1 = 0");
+                    } else if (!node.getItems().isEmpty()) {
+                        steps.push(")");
+                        pushOperands(steps, node);
+                        steps.push("(");
+                    } else {
+                        pushConjunction(steps, node);
+                    }
+                    break;
+                case Step.RIGHT:
+                    if (operator.equals(ConstantHolder.OP_IN)) {
+                        push(steps, Step.IN, node, null);
+                    } else if (operator.equals(ConstantHolder.OP_NOP)
+                            && step.parent.getOperator().equals(ConstantHolder.OP_LIKE)) {
+                        output.appendLike("", output.defineColumn(node), node);
+                    } else if (operator.equals(ConstantHolder.OP_NOP)) {
+                        String columnName = output.defineColumn(node);
+                        output
+                                .append(columnName).append(" ")
+                                .append(getOperatorValue(step.parent.getOperator())).append(" ");
+                        output.appendValue(columnName, node);
+                    } else {
+                        pushConjunction(steps, node);
+                    }
+                    break;
+                default:
+                    if (operator.equals(ConstantHolder.OP_IN)) {
+                        steps.push(")");
+                        push(steps, Step.IN, node.getRight(), null);
+                        steps.push(" and ");
+                        push(steps, Step.LEFT, node.getLeft(), null);
+                        steps.push("(");
+                    } else if (operator.equals(ConstantHolder.OP_LIST)) {
+                        output.appendIn("", node);
+                    }
+                    break;
             }
         }
     }
 
-    private void handleIn(StringBuilder builder, ExpressionTree tree) {
-        if (tree != null) {
-            if (tree.getOperator().equals(ConstantHolder.OP_IN)) {
-                builder.append("(");
-                handleLeft(builder, tree.getLeft());
-                builder.append(" and ");
-                String columnName = defineColumn(tree.getRight().getLeft().getValue());
-                builder
-                        .append(columnName).append(" ")
-                        .append("in").append(" (");
-                handleIn(builder, tree.getRight());
-                builder.delete(builder.length() - 2, builder.length());
-                builder.append(")");
-                builder.append(")");
-            } else if (tree.getOperator().equals(ConstantHolder.OP_LIST)) {
-                handleIn(builder, tree.getRight());
-                handleIn(builder, tree.getLeft());
-            } else if (tree.getOperator().equals(ConstantHolder.OP_NOP)) {
-                builder.append(tree.getValue()).append(", ");
+    private static void pushConjunction(Deque<Object> steps, ExpressionTree node) {
+        steps.push(")");
+        push(steps, Step.RIGHT, node.getRight(), node);
+        steps.push(" and ");
+        push(steps, Step.LEFT, node.getLeft(), null);
+        steps.push("(");
+    }
+
+    /**
+     * The operands of an n-ary AND or OR node of {@link ExpressionTreeOptimizer}, joined by its operator.
+     */
+    private static void pushOperands(Deque<Object> steps, ExpressionTree node) {
+        String separator = " " + node.getOperator() + " ";
+        List<ExpressionTree> operands = node.getItems();
+        for (int i = operands.size() - 1; i >= 0; i--) {
+            push(steps, Step.LEFT, operands.get(i), null);
+            if (i > 0) {
+                steps.push(separator);
             }
         }
     }
 
-    private String getOperatorValue(String operator) {
-        return ConstantHolder.reversedOperatorsMap.get(operator);
+    private static boolean isConstant(ExpressionTree node) {
+        return node.getOperator().equals(ConstantHolder.OP_TRUE) || node.getOperator().equals(ConstantHolder.OP_FALSE);
     }
 
-    private String defineColumn(String value) {
-        try {
-            formatter.parse(value.replaceAll("^\'|\'$", ""));
-            return "date_value";
-        } catch (Exception e) { }
-        try {
-            Long.valueOf(value);
-            return "num_value";
-        } catch (Exception e) {}
-        return "str_value";
+    private static void push(Deque<Object> steps, int kind, ExpressionTree node, ExpressionTree parent) {
+        if (node != null) {
+            steps.push(new Step(kind, node, parent));
+        }
+    }
+
+    private String getOperatorValue(String operator) {
+        return ConstantHolder.reversedOperatorsMap.get(operator);
     }
 
     private String getInitialOperator(ExpressionTree tree) {
-        int size = count(tree);
-        return (size <= 2) ?
+        return (tree.getDepth() <= 2) ?
                 "and" : getOperatorValue(tree.getOperator());
     }
 
-    private int count(ExpressionTree node) {
-        if (node == null)
-            return 0;
-        else {
-            int lDepth = count(node.getLeft());
-            int rDepth = count(node.getRight());
+    private static final class Shape {
+
+        final String prefix;
+        final Object[] parts;
+        final int hash;
+
+        Shape(String prefix, Object[] parts) {
+            this.prefix = prefix;
+            this.parts = parts;
+            this.hash = 31 * prefix.hashCode() + Arrays.hashCode(parts);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) o;
+            return hash == other.hash && prefix.equals(other.prefix) && Arrays.equals(parts, other.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Step {
+
+        static final int LEFT = 0;
+        static final int RIGHT = 1;
+        static final int IN = 2;
+
+        final int kind;
+        final ExpressionTree node;
+        // The comparison a RIGHT value is the operand of
+        final ExpressionTree parent;
 
-            if (lDepth > rDepth)
-                return (lDepth + 1);
-            else
-                return (rDepth + 1);
+        Step(int kind, ExpressionTree node, ExpressionTree parent) {
+            this.kind = kind;
+            this.node = node;
+            this.parent = parent;
         }
     }
 }
@@ -0,0 +1,369 @@
+package com.github.expression.tree;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL text under construction and, when parameterized, the values bound to its placeholders.
+ * Shared by the query generators to pick the value column of a literal and write it.
+ */
+final class SqlWriter {
+
+    static final String DATE_COLUMN = "date_value";
+    static final String NUM_COLUMN = "num_value";
+    static final String STR_COLUMN = "str_value";
+
+    static final int DEFAULT_MAX_IN_LIST_SIZE = 1000;
+
+    final StringBuilder builder;
+    final List<BindValue> binds;
+    // Rows of the temporary tables of TEMP_TABLE lists, by table name
+    final Map<String, List<BindValue>> tables = new LinkedHashMap<>();
+    // Recognizes dates among the STRING literals, in addition to the DATE literals of the parser
+    private final DateRecognizer dateRecognizer;
+    private final InListMode inListMode;
+    private final int maxInListSize;
+    private final boolean likePrefixRanges;
+
+    /**
+     * @param builder receives the SQL text, or null to only collect the bind values of a query whose
+     * text is already known
+     * @param binds receives the bind values, or null to inline the literals
+     */
+    SqlWriter(StringBuilder builder, List<BindValue> binds, DateRecognizer dateRecognizer) {
+        this(builder, binds, dateRecognizer, InListMode.INLINE, DEFAULT_MAX_IN_LIST_SIZE, false);
+    }
+
+    SqlWriter(StringBuilder builder, List<BindValue> binds, DateRecognizer dateRecognizer,
+              InListMode inListMode, int maxInListSize, boolean likePrefixRanges) {
+        this.builder = builder;
+        this.binds = binds;
+        this.dateRecognizer = dateRecognizer;
+        // Arrays and tables are only reachable through binds
+        this.inListMode = binds == null && (inListMode == InListMode.ARRAY || inListMode == InListMode.TEMP_TABLE)
+                ? InListMode.CHUNKED
+                : inListMode;
+        this.maxInListSize = maxInListSize;
+        this.likePrefixRanges = likePrefixRanges;
+    }
+
+    SqlWriter append(String text) {
+        if (builder != null) {
+            builder.append(text);
+        }
+        return this;
+    }
+
+    SqlWriter append(char ch) {
+        if (builder != null) {
+            builder.append(ch);
+        }
+        return this;
+    }
+
+    SqlWriter append(long number) {
+        if (builder != null) {
+            builder.append(number);
+        }
+        return this;
+    }
+
+    SqlWriter append(Object value) {
+        return append(String.valueOf(value));
+    }
+
+    void appendName(String name) {
+        if (binds == null) {
+            append('\'').append(name).append("'");
+        } else {
+            append('?');
+            binds.add(new BindValue(BindValue.Type.STRING, name));
+        }
+    }
+
+    /**
+     * Writes a literal, or its placeholder and bind value. NULL is always written inline: as a bind
+     * value it would be a string, and <tt>is ?</tt> is not valid SQL.
+     */
+    void appendValue(String columnName, ExpressionTree value) {
+        if (binds == null || value.getType() == LiteralType.NULL) {
+            append(value.getValue());
+            return;
+        }
+        append('?');
+        switch (columnName) {
+            case NUM_COLUMN:
+                binds.add(new BindValue(BindValue.Type.LONG, value.getLongValue()));
+                break;
+            case DATE_COLUMN:
+                binds.add(new BindValue(BindValue.Type.DATE, Date.valueOf(LocalDate.ofEpochDay(epochDay(value)))));
+                break;
+            default:
+                String string = value.getStringValue();
+                binds.add(new BindValue(BindValue.Type.STRING, string != null ? string : value.getValue()));
+                break;
+        }
+    }
+
+    /**
+     * Writes the condition that the value column, qualified by <tt>alias</tt>, matches the LIKE
+     * <tt>pattern</tt>. With prefix ranges, a text pattern starting with fixed characters also
+     * bounds the column to the values starting with them, a range an index on the column answers;
+     * the LIKE itself is left out when the pattern is that prefix followed by <tt>%</tt>.
+     */
+    void appendLike(String alias, String column, ExpressionTree pattern) {
+        String text = pattern.getStringValue();
+        String prefix = likePrefixRanges && column.equals(STR_COLUMN) && text != null ? likePrefix(text) : "";
+        String upper = successor(prefix);
+        if (upper == null) {
+            append(alias).append(column).append(" like ");
+            appendValue(column, pattern);
+            return;
+        }
+        append(alias).append(column).append(" >= ");
+        appendString(prefix);
+        append(" and ").append(alias).append(column).append(" < ");
+        appendString(upper);
+        if (!isAny(text, prefix.length())) {
+            append(" and ").append(alias).append(column).append(" like ");
+            appendValue(column, pattern);
+        }
+    }
+
+    /**
+     * How {@link #appendLike} writes a text <tt>pattern</tt> when prefix ranges are on: 0 as the
+     * LIKE alone, 1 as a range and the LIKE, 2 as the range alone.
+     */
+    static int likeForm(String pattern) {
+        String prefix = likePrefix(pattern);
+        if (successor(prefix) == null) {
+            return 0;
+        }
+        return isAny(pattern, prefix.length()) ? 2 : 1;
+    }
+
+    private void appendString(String value) {
+        if (binds == null) {
+            append('\'').append(value.replace("'", "''")).append('\'');
+        } else {
+            append('?');
+            binds.add(new BindValue(BindValue.Type.STRING, value));
+        }
+    }
+
+    /**
+     * The characters of a LIKE pattern before its first wildcard, empty unless a wildcard follows.
+     */
+    private static String likePrefix(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if (ch == '%' || ch == '_') {
+                return pattern.substring(0, i);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * The least string greater than all those starting with <tt>prefix</tt>, or null if there is no
+     * prefix or it ends with a character whose successor would not sort the same in UTF-16 and in
+     * code point order.
+     */
+    private static String successor(String prefix) {
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        int last = prefix.length() - 1;
+        char ch = prefix.charAt(last);
+        if (ch >= Character.MIN_SURROGATE - 1) {
+            return null;
+        }
+        return prefix.substring(0, last) + (char) (ch + 1);
+    }
+
+    /**
+     * Whether the rest of a LIKE pattern from <tt>start</tt> only matches any text.
+     */
+    private static boolean isAny(String pattern, int start) {
+        for (int i = start; i < pattern.length(); i++) {
+            if (pattern.charAt(i) != '%') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the condition that the value column, qualified by <tt>alias</tt>, holds one of the items
+     * of the LIST node <tt>list</tt>. Literals of one type are written once each in ascending order
+     * according to the IN list mode; other lists item by item in source order.
+     */
+    void appendIn(String alias, ExpressionTree list) {
+        List<ExpressionTree> items = list.getItems();
+        ValueSet set = list.getValueSet();
+        if (set == null) {
+            append(alias).append(defineColumn(items.get(0))).append(" in (");
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    append(", ");
+                }
+                appendValue(defineColumn(items.get(i)), items.get(i));
+            }
+            append(')');
+            return;
+        }
+        String column = setColumn(set);
+        int size = set.size();
+        switch (inListMode) {
+            case ARRAY: {
+                Object[] values = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    values[i] = setValue(column, set, i).getValue();
+                }
+                append(alias).append(column).append(" = any(?)");
+                binds.add(new BindValue(BindValue.Type.ARRAY, copyOf(values, column), elementType(column)));
+                break;
+            }
+            case TEMP_TABLE: {
+                String table = "in_list_" + tables.size();
+                List<BindValue> rows = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    rows.add(setValue(column, set, i));
+                }
+                tables.put(table, rows);
+                append(alias).append(column).append(" in (select value from ").append(table).append(')');
+                break;
+            }
+            default: {
+                int chunk = inListMode == InListMode.CHUNKED ? maxInListSize : size;
+                if (size > chunk) {
+                    append('(');
+                }
+                for (int from = 0; from < size; from += chunk) {
+                    if (from > 0) {
+                        append(" or ");
+                    }
+                    append(alias).append(column).append(" in (");
+                    for (int i = from; i < size && i < from + chunk; i++) {
+                        if (i > from) {
+                            append(", ");
+                        }
+                        appendSetValue(column, set, i);
+                    }
+                    append(')');
+                }
+                if (size > chunk) {
+                    append(')');
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * The value column of an IN set. Strings go to the date column only if every one of them is a date.
+     */
+    private String setColumn(ValueSet set) {
+        switch (set.getType()) {
+            case LONG:
+                return NUM_COLUMN;
+            case DATE:
+                return DATE_COLUMN;
+            default:
+                if (dateRecognizer == null) {
+                    return STR_COLUMN;
+                }
+                for (int i = 0; i < set.size(); i++) {
+                    if (dateRecognizer.epochDay(set.getString(i)) == DateRecognizer.NOT_A_DATE) {
+                        return STR_COLUMN;
+                    }
+                }
+                return DATE_COLUMN;
+        }
+    }
+
+    private void appendSetValue(String column, ValueSet set, int index) {
+        if (binds != null) {
+            append('?');
+            binds.add(setValue(column, set, index));
+        } else if (set.getType() == LiteralType.LONG) {
+            append(set.getLong(index));
+        } else if (set.getType() == LiteralType.DATE) {
+            append('\'').append(LocalDate.ofEpochDay(set.getLong(index))).append('\'');
+        } else {
+            append('\'').append(set.getString(index).replace("'", "''")).append('\'');
+        }
+    }
+
+    private BindValue setValue(String column, ValueSet set, int index) {
+        switch (set.getType()) {
+            case LONG:
+                return new BindValue(BindValue.Type.LONG, set.getLong(index));
+            case DATE:
+                return new BindValue(BindValue.Type.DATE, Date.valueOf(LocalDate.ofEpochDay(set.getLong(index))));
+            default:
+                String string = set.getString(index);
+                return column.equals(DATE_COLUMN)
+                        ? new BindValue(BindValue.Type.DATE, Date.valueOf(LocalDate.ofEpochDay(dateRecognizer.epochDay(string))))
+                        : new BindValue(BindValue.Type.STRING, string);
+        }
+    }
+
+    private static Object[] copyOf(Object[] values, String column) {
+        switch (column) {
+            case NUM_COLUMN:
+                return Arrays.copyOf(values, values.length, Long[].class);
+            case DATE_COLUMN:
+                return Arrays.copyOf(values, values.length, Date[].class);
+            default:
+                return Arrays.copyOf(values, values.length, String[].class);
+        }
+    }
+
+    private static String elementType(String column) {
+        switch (column) {
+            case NUM_COLUMN:
+                return "bigint";
+            case DATE_COLUMN:
+                return "date";
+            default:
+                return "varchar";
+        }
+    }
+
+    /**
+     * The value column holding values of the type of <tt>value</tt>.
+     */
+    String defineColumn(ExpressionTree value) {
+        return column(value, dateRecognizer);
+    }
+
+    static String column(ExpressionTree value, DateRecognizer dateRecognizer) {
+        if (value.getType() == null) {
+            return STR_COLUMN;
+        }
+        switch (value.getType()) {
+            case DATE:
+                return DATE_COLUMN;
+            case LONG:
+                return NUM_COLUMN;
+            case STRING:
+                return dateRecognizer != null && dateRecognizer.epochDay(value.getStringValue()) != DateRecognizer.NOT_A_DATE
+                        ? DATE_COLUMN
+                        : STR_COLUMN;
+            default:
+                return STR_COLUMN;
+        }
+    }
+
+    private long epochDay(ExpressionTree value) {
+        return value.getType() == LiteralType.DATE
+                ? value.getEpochDay()
+                : dateRecognizer.epochDay(value.getStringValue());
+    }
+}
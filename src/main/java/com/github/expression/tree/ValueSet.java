@@ -0,0 +1,131 @@
+package com.github.expression.tree;
+
+import java.util.Arrays;
+
+/**
+ * The distinct values of an IN list whose items are all literals of one type, sorted for binary
+ * search: a primitive <tt>long[]</tt> for numbers, the strings otherwise, and both the epoch days
+ * and the strings for dates.
+ */
+public final class ValueSet {
+
+    private static final long[] NO_LONGS = new long[0];
+    private static final String[] NO_STRINGS = new String[0];
+
+    private final LiteralType type;
+    private final long[] longs;
+    private final String[] strings;
+
+    private ValueSet(LiteralType type, long[] longs, String[] strings) {
+        this.type = type;
+        this.longs = longs;
+        this.strings = strings;
+    }
+
+    /**
+     * The set of the literal <tt>items</tt>, or null unless they all are LONG, all STRING or all DATE literals.
+     */
+    static ValueSet of(ExpressionTree[] items) {
+        LiteralType type = items[0].getType();
+        if (type != LiteralType.LONG && type != LiteralType.STRING && type != LiteralType.DATE) {
+            return null;
+        }
+        for (ExpressionTree item : items) {
+            if (item.getType() != type) {
+                return null;
+            }
+        }
+        long[] longs = NO_LONGS;
+        String[] strings = NO_STRINGS;
+        if (type != LiteralType.STRING) {
+            longs = new long[items.length];
+            for (int i = 0; i < items.length; i++) {
+                longs[i] = type == LiteralType.LONG ? items[i].getLongValue() : items[i].getEpochDay();
+            }
+            longs = distinct(longs);
+        }
+        if (type != LiteralType.LONG) {
+            strings = new String[items.length];
+            for (int i = 0; i < items.length; i++) {
+                strings[i] = items[i].getStringValue();
+            }
+            strings = distinct(strings);
+        }
+        return new ValueSet(type, longs, strings);
+    }
+
+    public LiteralType getType() {
+        return type;
+    }
+
+    /**
+     * Number of distinct values: of numbers or dates, or of strings for a STRING set.
+     */
+    public int size() {
+        return type == LiteralType.STRING ? strings.length : longs.length;
+    }
+
+    /**
+     * Whether the set holds the number, or the date with that epoch day.
+     */
+    public boolean contains(long value) {
+        return Arrays.binarySearch(longs, value) >= 0;
+    }
+
+    /**
+     * Whether the set holds the string, or the date written as that string.
+     */
+    public boolean contains(String value) {
+        return Arrays.binarySearch(strings, value) >= 0;
+    }
+
+    /**
+     * The <tt>index</tt>-th smallest number or epoch day.
+     */
+    public long getLong(int index) {
+        return longs[index];
+    }
+
+    /**
+     * The <tt>index</tt>-th smallest string.
+     */
+    public String getString(int index) {
+        return strings[index];
+    }
+
+    /**
+     * A copy of the sorted numbers or epoch days.
+     */
+    public long[] toLongArray() {
+        return longs.clone();
+    }
+
+    /**
+     * A copy of the sorted strings.
+     */
+    public String[] toStringArray() {
+        return strings.clone();
+    }
+
+    private static long[] distinct(long[] values) {
+        Arrays.sort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (n == 0 || values[i] != values[n - 1]) {
+                values[n++] = values[i];
+            }
+        }
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+
+    private static String[] distinct(String[] values) {
+        Arrays.sort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (n == 0 || !values[i].equals(values[n - 1])) {
+                values[n++] = values[i];
+            }
+        }
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+}
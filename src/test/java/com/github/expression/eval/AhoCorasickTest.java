@@ -0,0 +1,74 @@
+package com.github.expression.eval;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AhoCorasickTest {
+
+    @Test
+    public void scanShouldFindEveryContainedPattern() {
+        Random random = new Random(5);
+        char[] chars = {'a', 'b', 'c', '\u00e9', '\ud83d', '\ude00'};
+        for (int i = 0; i < 2_000; i++) {
+            List<String> patterns = new ArrayList<>();
+            for (int j = random.nextInt(12); j > 0; j--) {
+                patterns.add(text(random, chars, 4));
+            }
+            AhoCorasick automaton = AhoCorasick.build(patterns);
+            String text = text(random, chars, 20);
+            List<String> expected = new ArrayList<>();
+            for (String pattern : automaton.patterns()) {
+                if (text.contains(pattern)) {
+                    expected.add(pattern);
+                }
+            }
+            assertEquals(patterns + " in " + text, sorted(expected), scan(automaton, text));
+        }
+    }
+
+    @Test
+    public void overlappingPatternsShouldBeReportedOnce() {
+        AhoCorasick automaton = AhoCorasick.build(Arrays.asList("he", "she", "his", "hers", "e", "he"));
+        assertEquals(5, automaton.size());
+        assertEquals(Arrays.asList("e", "he", "hers", "she"), scan(automaton, "ushers and shes"));
+        assertEquals(Collections.emptyList(), scan(automaton, "xyz"));
+        assertTrue(automaton.contains("hers"));
+        assertFalse(automaton.contains("her"));
+    }
+
+    @Test
+    public void emptyPatternShouldBeInEveryText() {
+        AhoCorasick automaton = AhoCorasick.build(Arrays.asList("", "ab"));
+        assertEquals(Collections.singletonList(""), scan(automaton, ""));
+        assertEquals(Arrays.asList("", "ab"), scan(automaton, "cab"));
+        assertEquals(Collections.emptyList(), scan(AhoCorasick.EMPTY, "cab"));
+    }
+
+    private static List<String> scan(AhoCorasick automaton, String text) {
+        List<String> found = new ArrayList<>();
+        automaton.scan(text, found::add);
+        return sorted(found);
+    }
+
+    private static List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+    private static String text(Random random, char[] chars, int maxLength) {
+        char[] text = new char[random.nextInt(maxLength + 1)];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = chars[random.nextInt(chars.length)];
+        }
+        return new String(text);
+    }
+}
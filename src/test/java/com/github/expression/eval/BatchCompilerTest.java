@@ -0,0 +1,126 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ExpressionTree;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BatchCompilerTest {
+
+    private static final int SIZE = 2000;
+    private static final String[] DICTIONARY = {"open", "held", "closed", "42"};
+
+    private static final String[] EXPRESSIONS = {
+            "num = 3",
+            "3 < num",
+            "num <> 2 and amount >= 10.5",
+            "num = 2.0 or amount < 3",
+            "num between 1 and 3",
+            "num not between 1 and 3",
+            "num in (1, 3, 5)",
+            "num in (1, 'x', 2.5)",
+            "amount in (1, 2, 3.5)",
+            "status = 'open' or status in ('held', 42)",
+            "status like 'c%' or name like '%7'",
+            "name likefile 'n?1*'",
+            "name >= 'n5' and not status = 'held'",
+            "num is null or status is null",
+            "not num is null and not (amount > 5 or num < 2)",
+            "num + 1 = amount",
+            "num = amount or name contains '3'",
+            "missing = 1 or missing is null",
+            "1 = 1 and num = 1",
+            "1 = 2 or num = 1",
+            "a = 1 and (b = 2 or c = 3) and d = 4",
+    };
+
+    private final BatchCompiler compiler = new BatchCompiler();
+    private final ExpressionCompiler rowCompiler = new ExpressionCompiler();
+
+    @Test
+    public void batchShouldSelectMatchingRows() {
+        ColumnBatch batch = ColumnBatch.builder(4)
+                .longs("num", new long[]{1, 2, 3, 4})
+                .strings("name", new String[]{"a", "b", null, "d"})
+                .build();
+        int[] out = new int[4];
+        int count = compiler.compile(parse("num > 1 and name is not null")).select(batch, out);
+        assertEquals(2, count);
+        assertEquals(1, out[0]);
+        assertEquals(3, out[1]);
+    }
+
+    @Test
+    public void compiledPredicateShouldBeReusedAcrossBatchSizes() {
+        BatchPredicate predicate = compiler.compile(parse("num = 1 or not num < 3 or num = 0"));
+        ColumnBatch large = ColumnBatch.builder(6)
+                .longs("num", new long[]{0, 1, 2, 3, 4, 2})
+                .build();
+        ColumnBatch small = ColumnBatch.builder(3)
+                .longs("num", new long[]{2, 5, 1})
+                .build();
+        int[] out = new int[6];
+        assertEquals(4, predicate.select(large, out));
+        assertArrayEquals(new int[]{0, 1, 3, 4}, Arrays.copyOf(out, 4));
+        assertEquals(2, predicate.select(small, out));
+        assertArrayEquals(new int[]{1, 2}, Arrays.copyOf(out, 2));
+        assertEquals(4, predicate.select(large, out));
+    }
+
+    @Test
+    public void selectionShouldMatchRowEvaluation() {
+        Random random = new Random(3);
+        long[] nums = new long[SIZE];
+        boolean[] numNulls = new boolean[SIZE];
+        double[] amounts = new double[SIZE];
+        int[] codes = new int[SIZE];
+        String[] names = new String[SIZE];
+        List<Row> records = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            nums[i] = random.nextInt(6);
+            numNulls[i] = random.nextInt(10) == 0;
+            amounts[i] = random.nextInt(40) / 2.0;
+            codes[i] = random.nextInt(DICTIONARY.length + 1) - 1;
+            names[i] = random.nextInt(10) == 0 ? null : "n" + random.nextInt(100);
+
+            Map<String, Object> values = new HashMap<>();
+            values.put("num", numNulls[i] ? null : nums[i]);
+            values.put("amount", amounts[i]);
+            values.put("status", codes[i] < 0 ? null : DICTIONARY[codes[i]]);
+            values.put("name", names[i]);
+            records.add(Row.of(values));
+        }
+        ColumnBatch batch = ColumnBatch.builder(SIZE)
+                .longs("num", nums, numNulls)
+                .doubles("amount", amounts)
+                .dictionary("status", codes, DICTIONARY)
+                .strings("name", names)
+                .build();
+
+        for (String expression : EXPRESSIONS) {
+            ExpressionTree tree = parse(expression);
+            Predicate<Row> predicate = rowCompiler.compile(tree);
+            int[] expected = IntStream.range(0, SIZE).filter(i -> predicate.test(records.get(i))).toArray();
+
+            int[] out = new int[SIZE];
+            int count = compiler.compile(tree).select(batch, out);
+            int[] actual = new int[count];
+            System.arraycopy(out, 0, actual, 0, count);
+            assertArrayEquals(expression, expected, actual);
+        }
+    }
+
+    private static ExpressionTree parse(String expression) {
+        return ExpressionTree.parser().parse(expression);
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ExpressionTree;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionCompilerTest {
+
+    private final ExpressionCompiler compiler = new ExpressionCompiler();
+
+    @Test
+    public void comparisonsShouldCoerceNumbersAndText() {
+        Row record = record("num_value", 3L, "amount", 2.5, "name", "bob", "code", "42");
+        assertTrue(matches("num_value = 3", record));
+        assertTrue(matches("3 = num_value", record));
+        assertTrue(matches("num_value > 2.5", record));
+        assertTrue(matches("2 < num_value", record));
+        assertTrue(matches("amount <= 2.5 and amount <> 3", record));
+        assertTrue(matches("name = 'bob'", record));
+        assertTrue(matches("name >= \"b\"", record));
+        assertTrue(matches("code = 42", record));
+        assertFalse(matches("name = 1", record));
+        assertFalse(matches("missing = 1", record));
+        assertFalse(matches("missing <> 1", record));
+    }
+
+    @Test
+    public void logicalOperatorsShouldShortCircuitLongChains() {
+        Row record = record("a", 1L, "b", 2L, "c", 3L);
+        assertTrue(matches("a = 1 and b = 2 and c = 3", record));
+        assertFalse(matches("a = 1 and b = 2 and c = 4", record));
+        assertTrue(matches("a = 0 or b = 0 or c = 3", record));
+        assertTrue(matches("not a = 0 and (b = 2 or c = 0)", record));
+        assertTrue(matches("not (a = 1 and b = 0)", record));
+    }
+
+    @Test
+    public void predicatesShouldMatchRecords() {
+        Row record = record("num_value", 2L, "file", "report.pdf", "text", "an error here", "date", "2001-08-02",
+                "tags", Arrays.asList("x", "y"), "empty", null);
+        assertTrue(matches("num_value in (1, 2, 3)", record));
+        assertTrue(matches("num_value not in (4, 5)", record));
+        assertTrue(matches("num_value in (1.0, 2.0)", record));
+        assertTrue(matches("num_value between 1 and 2", record));
+        assertFalse(matches("num_value not between 1 and 2", record));
+        assertTrue(matches("file like 'rep%.p_f'", record));
+        assertFalse(matches("file like 'rep.%'", record));
+        assertTrue(matches("file likefile '*.pdf'", record));
+        assertTrue(matches("text contains 'error'", record));
+        assertTrue(matches("tags contains 'y'", record));
+        assertTrue(matches("date >= '2001-08-01' and date < '2001-09-01'", record));
+        assertTrue(matches("empty is null and file is not null", record));
+    }
+
+    @Test
+    public void valuesShouldBeComputed() {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("c", 10L);
+        Row record = record("a", 7L, "b", nested, "list", Arrays.asList(5L, 6L), "s", "x");
+        assertEquals(9L, value("a + 2", record));
+        assertEquals(17L, value("a + b.c", record));
+        assertEquals(6L, value("list[1]", record));
+        assertEquals(3.5, value("a / 2", record));
+        assertEquals(1L, value("a mod 2", record));
+        assertEquals(-7L, value("-a", record));
+        assertEquals(8.0, value("2 ** 3"));
+        assertEquals("x1", value("s || 1", record));
+        assertEquals(null, value("missing + 1", record));
+        assertEquals(Long.MAX_VALUE + 1.0, value("9223372036854775807 + 1"));
+    }
+
+    @Test
+    public void constantsShouldBeFolded() {
+        assertSame(Constant.TRUE, compiler.compile(parse("1 + 1 = 2")));
+        assertSame(Constant.FALSE, compiler.compile(parse("a = 1 and 1 = 2")));
+        assertSame(Constant.TRUE, compiler.compile(parse("a = 1 or 'x' like 'x%'")));
+        assertTrue(compiler.compileValue(parse("(2 + 3) * 4")) instanceof Constant);
+    }
+
+    @Test
+    public void compiledPredicateShouldBeReusable() {
+        Predicate<Row> predicate = compiler.compile(parse("x > 10 and name like 'a%'"));
+        int matched = 0;
+        for (long i = 0; i < 100; i++) {
+            if (predicate.test(record("x", i, "name", i % 2 == 0 ? "abc" : "bcd"))) {
+                matched++;
+            }
+        }
+        assertEquals(44, matched);
+    }
+
+    @Test
+    public void sortedInListShouldMatchLikeHashedList() {
+        Object[] inputs = {2L, 2, 2.0, 2.5, "2", "02", "-0", "x", "2001-08-01", 7L, "7", "-7", null};
+        String[][] lists = {
+                {"x in (3, 2, 7, 2)", "x in (3, 2, 7, 2, 'zz')"},
+                {"x in ('2', 'x', '-7')", "x in ('2', 'x', '-7', 0.5)"},
+                {"x in ('2001-08-01', '2002-01-01')", "x in ('2001-08-01', '2002-01-01', 0.5)"},
+        };
+        for (String[] pair : lists) {
+            assertTrue(parse(pair[0]).getRight().getValueSet() != null);
+            assertSame(null, parse(pair[1]).getRight().getValueSet());
+            for (Object input : inputs) {
+                Row record = record("x", input);
+                assertEquals(pair[0] + " " + input, matches(pair[1], record), matches(pair[0], record));
+            }
+        }
+    }
+
+    @Test
+    public void inShouldMatchLikeEquality() {
+        Object[] inputs = {1L, 1, 1.0, 2.5, "1", "01", "1.0", "+1", "2.50", "x", "X", "", null};
+        String[][] lists = {{"1", "2"}, {"1.0", "2"}, {"2.5", "'x'"}, {"'1'", "'x'"}, {"'01'", "2.5"}, {"1", "'1.0'"}};
+        MethodHandleCompiler handles = new MethodHandleCompiler();
+        for (String[] items : lists) {
+            String in = "a in (" + items[0] + ", " + items[1] + ")";
+            String eq = "a = " + items[0] + " or a = " + items[1];
+            String variable = "a in (b, " + items[1] + ")";
+            for (Object input : inputs) {
+                Row record = record("a", input, "b", ExpressionCompiler.operand(parse(items[0]).getLeft()).apply(null));
+                boolean expected = matches(eq, record);
+                assertEquals(in + " " + input, expected, matches(in, record));
+                assertEquals(variable + " " + input, expected, matches(variable, record));
+                assertEquals(in + " " + input, expected, handles.compile(parse(in)).test(record));
+            }
+        }
+    }
+
+    @Test
+    public void optimizedTreesShouldMatchLikeParsedTrees() {
+        String[] expressions = {
+                "x > 1 and x between 3 and 10 and x < 5",
+                "x < 3 or x > 5 or x >= 5",
+                "x = 2 and x < 10 and not not y = 1",
+                "(x = 1 or y = 2) and 3 > 2 and not (y = 2 and not y = 2)",
+                "x + 2 * 3 = 10 or y in (1, 2) and y <> 6 / 3",
+        };
+        Object[] values = {null, 0L, 1L, 2L, 3L, 4L, 5L, 6L, 11L, 2.5, "4", "x"};
+        for (String expression : expressions) {
+            Predicate<Row> parsed = compiler.compile(parse(expression));
+            Predicate<Row> optimized = compiler.compile(ExpressionTree.optimizer().optimize(parse(expression)));
+            for (Object x : values) {
+                for (Object y : values) {
+                    Row record = record("x", x, "y", y);
+                    assertEquals(expression + " " + x + " " + y, parsed.test(record), optimized.test(record));
+                }
+            }
+        }
+    }
+
+    private boolean matches(String expression, Row record) {
+        return compiler.compile(parse(expression)).test(record);
+    }
+
+    private Object value(String expression) {
+        return value(expression, record());
+    }
+
+    private Object value(String expression, Row record) {
+        return compiler.compileValue(parse(expression)).apply(record);
+    }
+
+    private static ExpressionTree parse(String expression) {
+        return ExpressionTree.parser().parse(expression);
+    }
+
+    private static Row record(Object... keyValues) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            values.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return Row.of(values);
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.expression.eval;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalTreeTest {
+
+    @Test
+    public void stabbingShouldFindEveryContainingInterval() {
+        Random random = new Random(3);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<IntervalTree.Node<Integer>> nodes = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            nodes.add(insert(tree, random, i));
+            if (random.nextInt(3) == 0) {
+                tree.remove(nodes.remove(random.nextInt(nodes.size())));
+            }
+        }
+        assertEquals(nodes.size(), tree.size());
+        for (int i = 0; i < 1_000; i++) {
+            double point = random.nextInt(120) - 10 + (random.nextBoolean() ? 0 : 0.5);
+            List<Integer> expected = new ArrayList<>();
+            for (IntervalTree.Node<Integer> node : nodes) {
+                if (node.contains(point)) {
+                    expected.add(node.value);
+                }
+            }
+            List<Integer> found = new ArrayList<>();
+            tree.stab(point, found::add);
+            Collections.sort(expected);
+            Collections.sort(found);
+            assertEquals("at " + point, expected, found);
+        }
+    }
+
+    @Test
+    public void boundsShouldBeOpenOrClosed() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        tree.insert(1, true, 2, false, "[1, 2)");
+        tree.insert(1, false, 2, true, "(1, 2]");
+        tree.insert(Double.NEGATIVE_INFINITY, false, 1, true, "x <= 1");
+        tree.insert(2, false, Double.POSITIVE_INFINITY, false, "x > 2");
+
+        assertEquals("[[1, 2), x <= 1]", stab(tree, 1));
+        assertEquals("[(1, 2]]", stab(tree, 2));
+        assertEquals("[(1, 2], [1, 2)]", stab(tree, 1.5));
+        assertEquals("[x > 2]", stab(tree, 2.5));
+        assertEquals("[]", stab(tree, Double.NaN));
+    }
+
+    @Test
+    public void removedIntervalsShouldNotBeFound() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<IntervalTree.Node<Integer>> nodes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            nodes.add(tree.insert(i % 10, true, i % 10 + 5, true, i));
+        }
+        for (IntervalTree.Node<Integer> node : nodes) {
+            tree.remove(node);
+        }
+        assertEquals(0, tree.size());
+        List<Integer> found = new ArrayList<>();
+        tree.stab(5, found::add);
+        assertTrue(found.isEmpty());
+    }
+
+    private static IntervalTree.Node<Integer> insert(IntervalTree<Integer> tree, Random random, int value) {
+        double low = random.nextInt(100);
+        double high = low + random.nextInt(20);
+        switch (random.nextInt(4)) {
+            case 0:
+                low = Double.NEGATIVE_INFINITY;
+                break;
+            case 1:
+                high = Double.POSITIVE_INFINITY;
+                break;
+            default:
+                break;
+        }
+        return tree.insert(low, random.nextBoolean(), high, random.nextBoolean(), value);
+    }
+
+    private static String stab(IntervalTree<String> tree, double point) {
+        List<String> found = new ArrayList<>();
+        tree.stab(point, found::add);
+        Collections.sort(found);
+        return found.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.expression.eval;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LikeMatcherTest {
+
+    @Test
+    public void matchersShouldAgreeWithRegularExpressions() {
+        Random random = new Random(11);
+        char[] patternChars = {'a', 'b', '%', '_', '*', '?', '\n'};
+        char[] valueChars = {'a', 'b', '\n', '%', '*', '\ud83d'};
+        for (int i = 0; i < 20_000; i++) {
+            String pattern = text(random, patternChars, 6);
+            String value = text(random, valueChars, 8);
+            assertEquals(pattern + " like " + value, regex(pattern, '%', '_').matcher(value).matches(),
+                    LikeMatcher.like(pattern).matches(value));
+            assertEquals(pattern + " likefile " + value, regex(pattern, '*', '?').matcher(value).matches(),
+                    LikeMatcher.likeFile(pattern).matches(value));
+        }
+    }
+
+    @Test
+    public void singleCharacterWildcardShouldMatchOneCodePoint() {
+        String smiley = "\ud83d\ude00";
+        assertTrue(LikeMatcher.like("a_b").matches("a" + smiley + "b"));
+        assertTrue(LikeMatcher.like("%_b").matches(smiley + "b"));
+        assertTrue(LikeMatcher.like("a_").matches("a" + smiley));
+        assertFalse(LikeMatcher.like("a__").matches("a" + smiley));
+        assertTrue(LikeMatcher.like("%a_%").matches("xa" + smiley + "y"));
+    }
+
+    @Test
+    public void longValuesShouldNotBacktrack() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            value.append('a');
+        }
+        assertFalse(LikeMatcher.like("%a%a%a%a%a%a%a%a%b").matches(value.toString()));
+        assertFalse(LikeMatcher.like("%a_a%a_a%a_a%b").matches(value.toString()));
+        assertTrue(LikeMatcher.like("%a_a%a_a%a_a%").matches(value.toString()));
+    }
+
+    @Test
+    public void matchersShouldBeCachedPerPattern() {
+        assertSame(LikeMatcher.like("abc%"), LikeMatcher.like("abc%"));
+        assertTrue(LikeMatcher.like("abc%") != LikeMatcher.likeFile("abc%"));
+        assertFalse(LikeMatcher.like("abc%").test(null));
+        assertTrue(LikeMatcher.like("12%").test(123L));
+    }
+
+    private static String text(Random random, char[] chars, int maxLength) {
+        char[] text = new char[random.nextInt(maxLength + 1)];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = chars[random.nextInt(chars.length)];
+        }
+        return new String(text);
+    }
+
+    /**
+     * The translation to a regular expression these matchers replace.
+     */
+    private static Pattern regex(String pattern, char any, char one) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if (ch == any) {
+                regex.append(".*");
+            } else if (ch == one) {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(ch)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ExpressionTree;
+import org.junit.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MethodHandleCompilerTest {
+
+    private static final String[] EXPRESSIONS = {
+            "a = 1",
+            "1 = a",
+            "a <> 2 and b < 3.5 or c >= 'm'",
+            "not (a = 1 and b = 2) or c is null",
+            "a between 1 and 3 and b not between 2 and 4",
+            "a in (1, 2, 3) or c in ('x', 'y')",
+            "a in (1, b)",
+            "c like 'x%' or c likefile '?y*'",
+            "c contains 'z'",
+            "a + b * 2 > 5 and -a < 0",
+            "a / b = 0.5 or a mod 2 = 1",
+            "c || a = 'x1'",
+            "d.e = 1 and f[1] = 'q'",
+            "a = 1 and 1 = 2",
+            "a = 1 or 2 ** 2 = 4",
+            "a",
+            "a = b",
+            "(a = 1) = b",
+    };
+
+    private final MethodHandleCompiler compiler = new MethodHandleCompiler();
+    private final ExpressionCompiler interpreted = new ExpressionCompiler();
+
+    @Test
+    public void predicateShouldMatchRecords() {
+        Row record = record(1L, 2L, "xy");
+        assertTrue(compiler.compile(parse("a = 1 and b > 1 and c like 'x%'")).test(record));
+        assertFalse(compiler.compile(parse("a = 1 and b > 2")).test(record));
+        assertEquals(5L, compiler.compileValue(parse("a + b * 2")).apply(record));
+    }
+
+    @Test
+    public void resultsShouldMatchInterpretedEvaluator() {
+        Random random = new Random(11);
+        for (String expression : EXPRESSIONS) {
+            ExpressionTree tree = parse(expression);
+            Predicate<Row> expected = interpreted.compile(tree);
+            Predicate<Row> actual = compiler.compile(tree);
+            ToValueFunction expectedValue = interpreted.compileValue(tree);
+            ToValueFunction actualValue = compiler.compileValue(tree);
+            for (int i = 0; i < 200; i++) {
+                Row record = record(randomValue(random), randomValue(random),
+                        random.nextBoolean() ? null : "xyz".substring(random.nextInt(3)));
+                assertEquals(expression, expected.test(record), actual.test(record));
+                assertEquals(expression, expectedValue.apply(record), actualValue.apply(record));
+            }
+        }
+    }
+
+    @Test
+    public void handlesShouldBeCachedPerStructure() {
+        compiler.compile(parse("a = 1 and b = 2"));
+        compiler.compile(parse("a  =  1\tand b = 2"));
+        assertEquals(1, compiler.size());
+        compiler.compile(parse("a = 1 and b = 3"));
+        assertEquals(2, compiler.size());
+    }
+
+    @Test
+    public void handleShouldBeHeldInStaticFinalField() throws Exception {
+        Predicate<Row> predicate = compiler.compile(parse("a = 1 and b = 2"));
+        assertSame(predicate, compiler.compile(parse("a = 1 and b = 2")));
+        int modifiers = predicate.getClass().getDeclaredField("HANDLE").getModifiers();
+        assertTrue(Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers));
+        ToValueFunction function = compiler.compileValue(parse("a + 1"));
+        assertEquals(3L, ((Number) function.apply(record(2L, null, null))).longValue());
+    }
+
+    @Test
+    public void treesDifferingInLiteralTypeShouldNotShareHandles() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("x", 5L);
+        values.put("5", 7L);
+        Row record = Row.of(values);
+        assertTrue(compiler.compile(parse("x = 5")).test(record));
+        assertFalse(compiler.compile(parse("x = `5`")).test(record));
+        assertEquals(2, compiler.size());
+    }
+
+    @Test
+    public void cachedHandlesShouldBeFoundForLargeTrees() {
+        StringBuilder expression = new StringBuilder("a = 0");
+        for (int i = 1; i < 100_000; i++) {
+            expression.append(" or a = ").append(i);
+        }
+        Row record = record(99_999L, null, null);
+        assertTrue(compiler.compile(parse(expression.toString())).test(record));
+        assertTrue(compiler.compile(parse(expression.toString())).test(record));
+        assertEquals(1, compiler.size());
+    }
+
+    private static Object randomValue(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return null;
+            case 1:
+                return 0.5 * random.nextInt(8);
+            default:
+                return (long) random.nextInt(5);
+        }
+    }
+
+    private static ExpressionTree parse(String expression) {
+        return ExpressionTree.parser().parse(expression);
+    }
+
+    private static Row record(Object a, Object b, Object c) {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("e", a);
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", a);
+        values.put("b", b);
+        values.put("c", c);
+        values.put("d", nested);
+        values.put("f", Arrays.asList("p", "q"));
+        return Row.of(values);
+    }
+}
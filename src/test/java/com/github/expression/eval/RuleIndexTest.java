@@ -0,0 +1,319 @@
+package com.github.expression.eval;
+
+import com.github.expression.tree.ExpressionTree;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RuleIndexTest {
+
+    private static final String[] NAMES = {"a", "b", "c", "d"};
+    private static final String[] VALUES = {"1", "2", "2.0", "2.5", "'1'", "'2'", "'x'", "'y'", "'02'"};
+    private static final String[] BOUNDS = {"1", "2", "2.5", "-3", "'2001-08-01'", "'2001-08-15'", "'2002-01-01'"};
+    private static final String[] COMPARISONS = {"<", "<=", ">", ">="};
+    private static final String[] PARTS = {"1", "2.5", "'x'", "'2'", "'x1'", "'-08-'", "''"};
+
+    @Test
+    public void matchesShouldBeThoseOfEveryRule() {
+        Random random = new Random(7);
+        RuleIndex<Integer> index = new RuleIndex<>();
+        ExpressionCompiler compiler = new ExpressionCompiler();
+        List<Predicate<Row>> predicates = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            ExpressionTree tree = ExpressionTree.parser().parse(rule(random));
+            index.add(i, tree);
+            predicates.add(compiler.compile(tree));
+        }
+        Object[] values = {1, 2L, 2.0, 2.5, -3, "1", "2", "02", "2.0", "x", "y", null, "2001-08-01", "2001-08-15T10:00",
+                "2001-8-2", "2001-08", "2002-01-01", LocalDate.of(2001, 8, 15), LocalDate.of(2001, 8, 1), "x12.5", "yx1",
+                Arrays.asList("x", 2L), Arrays.asList("2.0", "x1"), Arrays.asList(1, 2.5)};
+        for (int e = 0; e < 500; e++) {
+            Map<String, Object> event = new HashMap<>();
+            for (String name : NAMES) {
+                event.put(name, values[random.nextInt(values.length)]);
+            }
+            Row record = Row.of(event);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < predicates.size(); i++) {
+                if (predicates.get(i).test(record)) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> matches = index.match(record);
+            Collections.sort(matches);
+            assertEquals(event.toString(), expected, matches);
+        }
+    }
+
+    @Test
+    public void onlyRulesWithIndexedPredicatesHitShouldBeEvaluated() {
+        RuleIndex<Integer> index = new RuleIndex<>();
+        for (int i = 0; i < 10_000; i++) {
+            index.add(i, ExpressionTree.parser().parse("userId = " + i + " and status in ('open', 'new') and amount > 10"));
+        }
+        index.add(-1, ExpressionTree.parser().parse("amount > 100 or region = 'eu'"));
+        index.add(-2, ExpressionTree.parser().parse("(userId = 7 or userId = 8) and not status = 'open'"));
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("userId", 7L);
+        event.put("status", "open");
+        event.put("amount", 50);
+        Row record = Row.of(event);
+
+        assertEquals(Arrays.asList(-2, 7), idsOf(index.candidates(record)));
+        assertEquals(Collections.singletonList(7), index.match(record));
+    }
+
+    @Test
+    public void rangesShouldOnlyMakeSatisfiedRulesCandidates() {
+        RuleIndex<Integer> index = new RuleIndex<>();
+        for (int i = 0; i < 1_000; i++) {
+            index.add(i, ExpressionTree.parser().parse("amount between " + i * 10 + " and " + (i * 10 + 9) + " and score < 3"));
+        }
+        index.add(-1, ExpressionTree.parser().parse("date >= '2001-08-01' and date < '2001-09-01'"));
+        index.add(-2, ExpressionTree.parser().parse("500 < amount"));
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("amount", "4321.5");
+        event.put("score", 2);
+        event.put("date", "2001-08-15");
+        Row record = Row.of(event);
+
+        assertEquals(Arrays.asList(-2, -1, 432), idsOf(index.candidates(record)));
+        assertEquals(Arrays.asList(-2, -1, 432), sorted(index.match(record)));
+        event.put("date", LocalDate.of(2001, 9, 1));
+        event.put("score", 3);
+        assertEquals(Collections.singletonList(-2), index.match(record));
+    }
+
+    @Test
+    public void dateKeysShouldSortLikeText() {
+        String[] texts = {"", "1", "2001", "2001-", "2001-0", "2001-08-01", "2001-08-01 ", "2001-08-01T1", "2001-08-1",
+                "2001-08-10", "2001-08-2", "2001-8", "2001/08/01", "2001-08-0a", "2001-08-01-", "2002-01-01", "9999-99-99",
+                "a", "-", " ", "2001-08-01\u0000", "2001-12-31", "2001,", "200x"};
+        for (String text : texts) {
+            for (String bound : texts) {
+                double key = RuleIndex.dateKey(bound);
+                if (key != Math.rint(key)) {
+                    continue;
+                }
+                assertEquals(text + " vs " + bound, Integer.signum(text.compareTo(bound)),
+                        (int) Math.signum(RuleIndex.dateKey(text) - key));
+            }
+        }
+    }
+
+    @Test
+    public void substringsShouldBeFoundInOneScan() {
+        RuleIndex<Integer> index = new RuleIndex<>();
+        for (int i = 0; i < 1_000; i++) {
+            index.add(i, ExpressionTree.parser().parse("message contains 'code-" + i + ";' and level > 2"));
+        }
+        index.add(-1, ExpressionTree.parser().parse("message contains 'timeout' or tags contains 'urgent'"));
+        index.add(-2, ExpressionTree.parser().parse("tags contains 42"));
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("message", "timeout after code-42; then code-420;");
+        event.put("level", 3);
+        event.put("tags", Arrays.asList("urgent", "42"));
+        Row record = Row.of(event);
+
+        assertEquals(Arrays.asList(-2, -1, 42, 420), idsOf(index.candidates(record)));
+        assertEquals(Arrays.asList(-2, -1, 42, 420), sorted(index.match(record)));
+        event.put("tags", "urgent, 42");
+        event.put("message", "code-4;");
+        assertEquals(Arrays.asList(-2, -1, 4), sorted(index.match(record)));
+        event.put("tags", Collections.singletonList("urgent!"));
+        assertEquals(Collections.singletonList(4), index.match(record));
+    }
+
+    @Test
+    public void substringsShouldBeRebuiltWithoutBlockingMatches() {
+        List<Runnable> rebuilds = new ArrayList<>();
+        RuleIndex<Integer> index = new RuleIndex<>(rebuilds::add);
+        Row record = Row.of(Collections.singletonMap("m", "a17b"));
+        for (int i = 0; i < 200; i++) {
+            index.add(i, ExpressionTree.parser().parse("m contains '" + i + "'"));
+        }
+        // The texts added since the first rebuild was requested are searched one by one
+        assertEquals(1, rebuilds.size());
+        assertEquals(Arrays.asList(1, 7, 17), sorted(index.match(record)));
+
+        rebuilds.remove(0).run();
+        assertEquals(Arrays.asList(1, 7, 17), sorted(index.match(record)));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(index.remove(i));
+        }
+        index.add(1, ExpressionTree.parser().parse("m contains 'b'"));
+        assertEquals(1, rebuilds.size());
+        assertEquals(Collections.singletonList(1), index.match(record));
+
+        rebuilds.remove(0).run();
+        assertEquals(Collections.singletonList(1), index.match(record));
+        assertTrue(rebuilds.isEmpty());
+    }
+
+    @Test
+    public void rulesShouldBeReplacedAndRemoved() {
+        RuleIndex<String> index = new RuleIndex<>();
+        Row record = Row.of(Collections.singletonMap("a", "1"));
+        index.add("r", ExpressionTree.parser().parse("a = 1"));
+        index.add("s", ExpressionTree.parser().parse("a is not null"));
+        assertEquals(Arrays.asList("r", "s"), sorted(index.match(record)));
+
+        index.add("r", ExpressionTree.parser().parse("a = 2"));
+        assertEquals(Collections.singletonList("s"), index.match(record));
+        assertEquals(2, index.size());
+
+        assertTrue(index.remove("s"));
+        assertFalse(index.remove("s"));
+        assertTrue(index.match(record).isEmpty());
+        index.add("t", ExpressionTree.parser().parse("a between 0 and 2"));
+        assertEquals(Collections.singletonList("t"), index.match(record));
+        assertTrue(index.remove("t"));
+        assertTrue(index.remove("r"));
+        assertEquals(0, index.size());
+        assertTrue(index.candidates(record).isEmpty());
+    }
+
+    @Test
+    public void rulesShouldBeAddedAndRemovedWhileMatching() throws Exception {
+        RuleIndex<Integer> index = new RuleIndex<>();
+        for (int i = 0; i < 1_000; i++) {
+            index.add(i, ExpressionTree.parser().parse("a = 1 and b = " + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 1_000 + offset; i < 5_000; i += 2) {
+                        index.add(i, ExpressionTree.parser().parse("a = 1 and b = " + i));
+                        index.remove(i - 1_000);
+                    }
+                }));
+            }
+            for (int t = 0; t < 2; t++) {
+                futures.add(executor.submit(() -> {
+                    Map<String, Object> event = new HashMap<>();
+                    event.put("a", 1);
+                    for (int i = 0; i < 5_000; i++) {
+                        event.put("b", i);
+                        List<Integer> matches = index.match(Row.of(event));
+                        assertTrue(matches.isEmpty() || matches.equals(Collections.singletonList(i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1_000, index.size());
+        assertEquals(Collections.singletonList(4_321), index.match(Row.of(map("a", 1, "b", 4_321))));
+        assertTrue(index.match(Row.of(map("a", 1, "b", 321))).isEmpty());
+    }
+
+    private static String rule(Random random) {
+        StringBuilder rule = new StringBuilder();
+        int disjuncts = 1 + random.nextInt(2);
+        for (int i = 0; i < disjuncts; i++) {
+            if (i > 0) {
+                rule.append(" or ");
+            }
+            rule.append('(');
+            int conjuncts = 1 + random.nextInt(3);
+            for (int j = 0; j < conjuncts; j++) {
+                if (j > 0) {
+                    rule.append(" and ");
+                }
+                predicate(rule, random);
+            }
+            rule.append(')');
+        }
+        return rule.toString();
+    }
+
+    private static void predicate(StringBuilder rule, Random random) {
+        String name = NAMES[random.nextInt(NAMES.length)];
+        switch (random.nextInt(9)) {
+            case 0:
+            case 1:
+                rule.append(name).append(" = ").append(VALUES[random.nextInt(VALUES.length)]);
+                break;
+            case 2:
+                rule.append(name).append(" in (").append(VALUES[random.nextInt(VALUES.length)])
+                        .append(", ").append(VALUES[random.nextInt(VALUES.length)]).append(')');
+                break;
+            case 3:
+                rule.append('(').append(name).append(" = ").append(VALUES[random.nextInt(VALUES.length)])
+                        .append(" or ").append(NAMES[random.nextInt(NAMES.length)]).append(" = ")
+                        .append(VALUES[random.nextInt(VALUES.length)]).append(')');
+                break;
+            case 4:
+                rule.append(VALUES[random.nextInt(VALUES.length)]).append(" = ").append(name);
+                break;
+            case 5:
+                rule.append(random.nextBoolean() ? "not " : "").append(name).append(" > 1");
+                break;
+            case 6:
+                if (random.nextBoolean()) {
+                    rule.append(name).append(' ').append(COMPARISONS[random.nextInt(COMPARISONS.length)]).append(' ')
+                            .append(BOUNDS[random.nextInt(BOUNDS.length)]);
+                } else {
+                    rule.append(BOUNDS[random.nextInt(BOUNDS.length)]).append(' ')
+                            .append(COMPARISONS[random.nextInt(COMPARISONS.length)]).append(' ').append(name);
+                }
+                break;
+            case 7:
+                rule.append(name).append(" contains ").append(PARTS[random.nextInt(PARTS.length)]);
+                break;
+            default:
+                int low = random.nextInt(BOUNDS.length);
+                int high = random.nextInt(BOUNDS.length);
+                rule.append(name).append(" between ").append(BOUNDS[Math.min(low, high)])
+                        .append(" and ").append(BOUNDS[Math.max(low, high)]);
+                break;
+        }
+    }
+
+    private static List<Integer> idsOf(Iterable<RuleIndex.Rule<Integer>> rules) {
+        List<Integer> ids = new ArrayList<>();
+        for (RuleIndex.Rule<Integer> rule : rules) {
+            ids.add(rule.id);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static <T extends Comparable<T>> List<T> sorted(List<T> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+    private static Map<String, Object> map(String k1, Object v1, String k2, Object v2) {
+        Map<String, Object> map = new HashMap<>();
+        map.put(k1, v1);
+        map.put(k2, v2);
+        return map;
+    }
+}
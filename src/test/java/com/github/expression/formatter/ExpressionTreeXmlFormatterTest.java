@@ -4,7 +4,12 @@ import com.github.expression.formatter.ExpressionTreeXmlFormatter;
 import com.github.expression.tree.ExpressionTree;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ExpressionTreeXmlFormatterTest {
 
@@ -38,4 +43,76 @@ public class ExpressionTreeXmlFormatterTest {
                 "  </and>\n" +
                 "</query>\n", xml);
     }
+
+    @Test
+    public void inListShouldBeFormattedFlat() {
+        ExpressionTree tree = ExpressionTree.parser().parse("id in (3, 1, 2)");
+        assertEquals("<query>\n" +
+                "  <in>\n" +
+                "    <arg>id</arg>\n" +
+                "    <list>\n" +
+                "      <arg>3</arg>\n" +
+                "      <arg>1</arg>\n" +
+                "      <arg>2</arg>\n" +
+                "    </list>\n" +
+                "  </in>\n" +
+                "</query>\n", new ExpressionTreeXmlFormatter().format(tree));
+    }
+
+    @Test
+    public void documentShouldBeStreamed() throws Exception {
+        ExpressionTree tree = ExpressionTree.parser().parse("name like 'a<b&c\u00a0\u00e9' and id in (1, 2)");
+        ExpressionTreeXmlFormatter formatter = new ExpressionTreeXmlFormatter();
+        String xml = formatter.format(tree);
+        assertTrue(xml.contains("<arg>'a&lt;b&amp;c&#160;\u00e9'</arg>"));
+
+        StringWriter writer = new StringWriter();
+        formatter.format(tree, writer);
+        assertEquals(xml, writer.toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.format(tree, out);
+        assertEquals(xml, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compactDocumentShouldHaveNoWhitespace() {
+        ExpressionTree tree = ExpressionTree.parser().parse("a = 1 or b = \"x y\"");
+        assertEquals("<query><or><eq><arg>a</arg><arg>1</arg></eq><eq><arg>b</arg><arg>\"x&#32;y\"</arg></eq></or></query>",
+                new ExpressionTreeXmlFormatter().withCompactOutput(true).format(tree));
+    }
+
+    @Test
+    public void deepTreeShouldBeFormatted() throws Exception {
+        StringBuilder expression = new StringBuilder("a = 0");
+        // The indentation grows with the depth, so the document is quadratic in the number of terms
+        for (int i = 1; i < 3_000; i++) {
+            expression.append(" or a = ").append(i);
+        }
+        ExpressionTree tree = ExpressionTree.parser().parse(expression);
+        StringBuilder xml = new StringBuilder();
+        StringBuilder compact = new StringBuilder();
+        Thread thread = new Thread(null, () -> {
+            xml.append(new ExpressionTreeXmlFormatter().format(tree));
+            compact.append(new ExpressionTreeXmlFormatter().withCompactOutput(true).format(tree));
+        }, "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+
+        assertTrue(xml.toString().endsWith("      <arg>2999</arg>\n    </eq>\n  </or>\n</query>\n"));
+        assertTrue(xml.toString().contains("\n" + new String(new char[3000 * 2]).replace('\0', ' ') + "<eq>"));
+        assertEquals(xml.toString().replaceAll("\\s", ""), compact.toString());
+    }
+
+    @Test
+    public void optimizedLongChainShouldBeIndentedInLinearSize() {
+        StringBuilder expression = new StringBuilder("a = 0");
+        for (int i = 1; i < 100_000; i++) {
+            expression.append(" or a = ").append(i);
+        }
+        ExpressionTree tree = ExpressionTree.optimizer().optimize(ExpressionTree.parser().parse(expression));
+        String xml = new ExpressionTreeXmlFormatter().format(tree);
+        assertTrue(xml.length() < 100_000 * 80);
+        assertTrue(xml.endsWith("      <arg>99999</arg>\n    </eq>\n  </or>\n</query>\n"));
+    }
 }
@@ -0,0 +1,107 @@
+package com.github.expression.formatter;
+
+import com.github.expression.tree.ExpressionTree;
+import com.github.expression.tree.ExpressionTreeFactory;
+import com.github.expression.tree.LiteralType;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ExpressionTreeXmlReaderTest {
+
+    private static final String[] EXPRESSIONS = {
+            "(date >= '2001-08-01' or transactionId like 'report%.pdf') and transaction.id like '55'",
+            "userId in (3, 1, 2) and name like 'a<b&c\u00a0d'",
+            "d between '2001-08-01' and '2001-09-01' or not amount >= -2.5",
+            "x is not null and s in (\"b\", 'a') and n = 99999999999999999999",
+            "a.b[1] + 2 * 3 = c || 'x y' or tags contains \"it's\"",
+            "name",
+            "x = .5 and y in (.25, 1) and z.w > 0.5",
+    };
+
+    private final ExpressionTreeXmlReader reader = new ExpressionTreeXmlReader();
+
+    @Test
+    public void formattedTreesShouldBeReadBack() throws Exception {
+        ExpressionTreeXmlFormatter formatter = new ExpressionTreeXmlFormatter();
+        ExpressionTreeXmlFormatter compact = new ExpressionTreeXmlFormatter().withCompactOutput(true);
+        for (String expression : EXPRESSIONS) {
+            ExpressionTree tree = ExpressionTree.parser().parse(expression);
+            assertEquals(expression, tree, reader.read(formatter.format(tree)));
+            assertEquals(expression, tree, reader.read(compact.format(tree)));
+        }
+        ExpressionTree optimized = ExpressionTree.optimizer().optimize(ExpressionTree.parser().parse("a = 1 or b = 2 or c = 3"));
+        assertEquals(optimized, reader.read(formatter.format(optimized)));
+    }
+
+    @Test
+    public void valueAtRootShouldBeReadBack() throws Exception {
+        for (String text : new String[]{"name", "'x y'", "12", "null"}) {
+            ExpressionTree value = ExpressionTreeFactory.getInstance().value(text);
+            assertEquals(text, value, reader.read(new ExpressionTreeXmlFormatter().format(value)));
+            assertEquals(text, value, reader.read(new ExpressionTreeXmlFormatter().withCompactOutput(true).format(value)));
+        }
+        assertEquals("", reader.read("<query><nop></nop></query>").getValue());
+    }
+
+    @Test
+    public void leadingDecimalPointShouldBeReadAsNumber() throws Exception {
+        ExpressionTree tree = ExpressionTree.parser().parse("x = .5");
+        ExpressionTree read = reader.read(new ExpressionTreeXmlFormatter().format(tree));
+        assertEquals(LiteralType.DECIMAL, read.getRight().getType());
+        assertEquals(tree, read);
+    }
+
+    @Test
+    public void archiveShouldBeReadQueryByQuery() throws Exception {
+        ExpressionTreeXmlFormatter formatter = new ExpressionTreeXmlFormatter();
+        StringBuilder archive = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rules>\n");
+        List<ExpressionTree> trees = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            ExpressionTree tree = ExpressionTree.parser().parse(EXPRESSIONS[i % EXPRESSIONS.length] + " or id = " + i);
+            trees.add(tree);
+            formatter.format(tree, archive);
+        }
+        archive.append("</rules>\n");
+        List<ExpressionTree> read = new ArrayList<>();
+        long count = reader.readAll(new ByteArrayInputStream(archive.toString().getBytes(StandardCharsets.UTF_8)), read::add);
+
+        assertEquals(1_000, count);
+        assertEquals(trees, read);
+    }
+
+    @Test
+    public void deepQueryShouldBeRead() throws Exception {
+        StringBuilder expression = new StringBuilder("a = 0");
+        for (int i = 1; i < 3_000; i++) {
+            expression.append(" or a = ").append(i);
+        }
+        ExpressionTree tree = ExpressionTree.parser().parse(expression);
+        assertEquals(tree, reader.read(new ExpressionTreeXmlFormatter().withCompactOutput(true).format(tree)));
+    }
+
+    @Test
+    public void invalidDocumentsShouldBeRejected() {
+        String[] documents = {
+                "<rules></rules>",
+                "<query><eq><arg>a</arg></eq><arg>b</arg></query>",
+                "<query><equals><arg>a</arg><arg>1</arg></equals></query>",
+                "<query><eq><arg>a</arg>",
+        };
+        for (String document : documents) {
+            try {
+                reader.read(document);
+                fail(document);
+            } catch (XMLStreamException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -1,16 +1,38 @@
 package com.github.expression.token;
 
+import com.github.expression.exception.ParseException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TokenExtractorTest {
 
+    private static final String[] SAMPLES = {
+            "transactionId = 1",
+            "(date >= '2001-08-01' or transactionId like 'report%.pdf') and transaction.id like '55'",
+            "a.b[1].c ** 2 || 'x' * -3.5 / +.5 - 1.2.3",
+            "`quoted name` = \"it\\\"s\" and 'don\\'t' <> 'a\\b'",
+            "x\\ y = \\. and 12.a | b || c & d",
+            "'abc\\'",
+            "``",
+            "a\tb\nc\rd\fe",
+            "\u00fcn\u00efc\u00f6d\u00e9 = '\u20ac'",
+    };
+
+    private static final String ALPHABET = "ab1.-+*|&,()[]'\"`\\ \t=<>%_9";
+
     private TokenExtractor tokenExtractor;
 
     @Before
@@ -27,4 +49,134 @@ public class TokenExtractorTest {
         assertTrue(tokens.contains("="));
         assertTrue(tokens.contains("1"));
     }
+
+    @Test
+    public void tokensShouldBeReportedAsSpans() {
+        TokenBuffer tokens = new TokenBuffer();
+        tokenExtractor.tokenize("a.b >= 'x' * `n`", tokens);
+        assertEquals(7, tokens.size());
+        assertEquals(TokenKind.IDENTIFIER, tokens.kind(0));
+        assertEquals(TokenKind.PUNCT, tokens.kind(1));
+        assertEquals(TokenKind.OPERATOR, tokens.kind(3));
+        assertEquals(TokenKind.STRING, tokens.kind(4));
+        assertEquals(7, tokens.start(4));
+        assertEquals(10, tokens.end(4));
+        assertEquals(TokenKind.PUNCT, tokens.kind(5));
+        assertEquals(TokenKind.QUOTED_NAME, tokens.kind(6));
+        assertEquals("n", tokens.text(6));
+    }
+
+    @Test
+    public void tokensShouldBeClassified() {
+        TokenBuffer tokens = new TokenBuffer();
+        new TokenExtractor(Collections.singletonMap("and", "AND-ID")).tokenize("12 1.5 .5 x1 1x AnD `and` 'and'", tokens);
+        assertEquals(TokenKind.NUMBER, tokens.kind(0));
+        assertEquals(TokenKind.NUMBER, tokens.kind(1));
+        assertEquals(TokenKind.NUMBER, tokens.kind(2));
+        assertEquals(TokenKind.IDENTIFIER, tokens.kind(3));
+        assertEquals(TokenKind.IDENTIFIER, tokens.kind(4));
+        assertEquals(null, tokens.keyword(4));
+        assertEquals("AND-ID", tokens.keyword(5));
+        assertEquals("AND-ID", tokens.keyword(6));
+        assertEquals(null, tokens.keyword(7));
+    }
+
+    @Test
+    public void bufferShouldShrinkAfterLongExpression() {
+        StringBuilder expression = new StringBuilder("a = 0");
+        for (int i = 1; i < 2000; i++) {
+            expression.append(" or a = ").append(i);
+        }
+        TokenBuffer tokens = new TokenBuffer();
+        tokenExtractor.tokenize(expression.toString(), tokens);
+        assertTrue(tokens.capacity() > 1024);
+        tokens.clear();
+        assertEquals(16, tokens.capacity());
+        tokenExtractor.tokenize("a = 1", tokens);
+        assertEquals(3, tokens.size());
+        assertEquals("1", tokens.text(2));
+    }
+
+    @Test
+    public void tokensShouldBeScannedLazily() {
+        TokenBuffer tokens = new TokenBuffer();
+        tokenExtractor.open("a = 'unterminated", tokens);
+        assertTrue(tokens.has(1));
+        assertEquals(2, tokens.size());
+        try {
+            tokens.has(2);
+            fail();
+        } catch (ParseException e) {
+            assertEquals("Missing closing quote (')", e.getMessage());
+        }
+    }
+
+    @Test
+    public void tokensShouldBeExtractedFromAsciiBytesInPlace() {
+        byte[] bytes = "xx userId in (1, 2) yy".getBytes(StandardCharsets.US_ASCII);
+        TokenBuffer tokens = new TokenBuffer();
+        tokenExtractor.tokenize(bytes, 3, 16, tokens);
+        assertEquals(7, tokens.size());
+        assertEquals(0, tokens.start(0));
+        assertEquals(6, tokens.end(0));
+        assertEquals("userId", tokens.text(0));
+        assertEquals(")", tokens.text(6));
+    }
+
+    @Test
+    public void tokensShouldBeExtractedFromUtf8Bytes() {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(64);
+        bytes.put("name = 'gr\u00fc\u00dfe'".getBytes(StandardCharsets.UTF_8));
+        bytes.flip();
+        TokenBuffer tokens = new TokenBuffer();
+        tokenExtractor.tokenize(bytes, tokens);
+        assertEquals(0, bytes.position());
+        assertEquals("'gr\u00fc\u00dfe'", tokens.text(2));
+    }
+
+    @Test
+    public void tokensShouldBeExtractedFromCharBuffer() {
+        CharBuffer chars = CharBuffer.wrap("ignored a = 'b'");
+        chars.position(8);
+        TokenBuffer tokens = new TokenBuffer();
+        tokenExtractor.tokenize(chars, tokens);
+        assertEquals(8, chars.position());
+        assertEquals(3, tokens.size());
+        assertEquals(0, tokens.start(0));
+        assertEquals("'b'", tokens.text(2));
+    }
+
+    @Test
+    public void tokensShouldMatchLegacyExtractor() {
+        for (String sample : SAMPLES) {
+            assertSameTokens(sample);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[random.nextInt(16)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            }
+            assertSameTokens(new String(chars));
+        }
+    }
+
+    // Compares the offsets of the legacy implementation, which mixed characters and tokens
+    @SuppressWarnings("deprecation")
+    private void assertSameTokens(String line) {
+        Object expected;
+        try {
+            expected = new LegacyTokenExtractor().getTokens(line);
+        } catch (ParseException e) {
+            expected = e.getMessage() + "@" + e.getErrorOffset();
+        }
+        Object actual;
+        try {
+            actual = tokenExtractor.getTokens(line);
+        } catch (ParseException e) {
+            actual = e.getMessage() + "@" + e.getErrorOffset();
+        }
+        assertTrue("Tokens differ for: " + line + " expected " + expected + " but was " + actual,
+                Objects.equals(expected, actual));
+    }
 }
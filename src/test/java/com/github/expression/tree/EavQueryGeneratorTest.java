@@ -0,0 +1,121 @@
+package com.github.expression.tree;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EavQueryGeneratorTest {
+
+    private final EavQueryGenerator generator = new EavQueryGenerator();
+
+    @Test
+    public void setOperationsShouldCombineTagLookups() {
+        ExpressionTree tree = parse("userId = 1 and (ref like 'a%' or state in ('open', 'held'))");
+        assertEquals("(select entry_id from entry_tags where name = 'userId' and num_value = 1)"
+                        + " intersect ((select entry_id from entry_tags where name = 'ref' and str_value like 'a%')"
+                        + " union (select entry_id from entry_tags where name = 'state' and str_value in ('held', 'open')))",
+                generator.generate(tree, EavStrategy.SET_OPERATIONS));
+    }
+
+    @Test
+    public void singleLookupShouldDropDuplicateEntries() {
+        assertEquals("select distinct entry_id from entry_tags where name = 'ref' and str_value in ('a', 'b')",
+                generator.generate(parse("ref in ('a', 'b')"), EavStrategy.SET_OPERATIONS));
+    }
+
+    @Test
+    public void likePrefixShouldBeWrittenAsRange() {
+        ExpressionTree tree = parse("userId = 1 and ref like 'a%'");
+        assertEquals("select distinct e.entry_id from entry_tags e where e.name = 'userId' and e.num_value = 1"
+                        + " and exists (select 1 from entry_tags t where t.entry_id = e.entry_id"
+                        + " and t.name = 'ref' and t.str_value >= 'a' and t.str_value < 'b')",
+                new EavQueryGenerator().withLikePrefixRanges(true).generate(tree, EavStrategy.EXISTS));
+    }
+
+    @Test
+    public void negationShouldBeSubtracted() {
+        ExpressionTree tree = parse("userId = 1 and not ref = 'x'");
+        assertEquals("(select entry_id from entry_tags where name = 'userId' and num_value = 1)"
+                        + " except (select entry_id from entry_tags where name = 'ref' and str_value = 'x')",
+                generator.generate(tree, EavStrategy.SET_OPERATIONS));
+    }
+
+    @Test
+    public void conjunctionShouldBeCountedPerEntry() {
+        ExpressionTree tree = parse("userId = 1 and ref is not null and 3 < amount");
+        assertEquals("select entry_id from entry_tags where (name = 'userId' and num_value = 1) or (name = 'ref')"
+                        + " or (name = 'amount' and num_value > 3) group by entry_id having count(distinct name) = 3",
+                generator.generate(tree, EavStrategy.GROUP_BY));
+    }
+
+    @Test
+    public void groupByShouldTestEveryCondition() {
+        ExpressionTree tree = parse("userId = 1 and not (ref = 'x' or ref = 'y')");
+        assertEquals("select entry_id from entry_tags group by entry_id having"
+                        + " (max(case when name = 'userId' and num_value = 1 then 1 else 0 end) = 1"
+                        + " and not ((max(case when name = 'ref' and str_value = 'x' then 1 else 0 end) = 1"
+                        + " or max(case when name = 'ref' and str_value = 'y' then 1 else 0 end) = 1)))",
+                generator.generate(tree, EavStrategy.GROUP_BY));
+    }
+
+    @Test
+    public void existsShouldProbeRemainingTags() {
+        ExpressionTree tree = parse("userId = 1 and date between '2001-01-01' and '2001-12-31' and ref is null");
+        assertEquals("select distinct e.entry_id from entry_tags e where e.name = 'userId' and e.num_value = 1"
+                        + " and exists (select 1 from entry_tags t where t.entry_id = e.entry_id and t.name = 'date'"
+                        + " and t.date_value between '2001-01-01' and '2001-12-31')"
+                        + " and not exists (select 1 from entry_tags t where t.entry_id = e.entry_id and t.name = 'ref')",
+                generator.generate(tree, EavStrategy.EXISTS));
+    }
+
+    @Test
+    public void strategyShouldFollowTreeShape() {
+        assertEquals(EavStrategy.SET_OPERATIONS, generator.chooseStrategy(parse("a = 1 or b = 2")));
+        assertEquals(EavStrategy.SET_OPERATIONS, generator.chooseStrategy(parse("a = 1 and b = 2")));
+        assertEquals(EavStrategy.GROUP_BY, generator.chooseStrategy(parse("a = 1 and b = 2 and c = 3 and d = 4")));
+        assertEquals(EavStrategy.SET_OPERATIONS, generator.chooseStrategy(parse("a = 1 and a = 2 and c = 3 and d = 4")));
+        assertEquals(EavStrategy.EXISTS, generator.chooseStrategy(parse("a = 1 and b is null")));
+        assertEquals(EavStrategy.SET_OPERATIONS, generator.chooseStrategy(parse("not not a = 1")));
+    }
+
+    @Test
+    public void parameterizedQueryShouldBindNamesAndValues() {
+        ParameterizedQuery query = generator.generateParameterized(parse("userId in (1, 2) and ref <> 'x'"), EavStrategy.EXISTS);
+        assertEquals("select distinct e.entry_id from entry_tags e where e.name = ? and e.num_value in (?, ?)"
+                + " and exists (select 1 from entry_tags t where t.entry_id = e.entry_id and t.name = ? and t.str_value "
+                + ConstantHolder.reversedOperatorsMap.get(ConstantHolder.OP_NE) + " ?)", query.getSql());
+        assertEquals(Arrays.asList(
+                new BindValue(BindValue.Type.STRING, "userId"),
+                new BindValue(BindValue.Type.LONG, 1L),
+                new BindValue(BindValue.Type.LONG, 2L),
+                new BindValue(BindValue.Type.STRING, "ref"),
+                new BindValue(BindValue.Type.STRING, "x")), query.getBinds());
+    }
+
+    @Test
+    public void nullShouldNeverBeBound() {
+        ParameterizedQuery query = generator.generateParameterized(parse("userId = 1 and ref is null"), EavStrategy.EXISTS);
+        assertEquals("select distinct e.entry_id from entry_tags e where e.name = ? and e.num_value = ?"
+                + " and not exists (select 1 from entry_tags t where t.entry_id = e.entry_id and t.name = ?)",
+                query.getSql());
+        assertEquals(Arrays.asList(
+                new BindValue(BindValue.Type.STRING, "userId"),
+                new BindValue(BindValue.Type.LONG, 1L),
+                new BindValue(BindValue.Type.STRING, "ref")), query.getBinds());
+        query = generator.generateParameterized(parse("ref is not null or userId = 1"), EavStrategy.GROUP_BY);
+        assertFalse(query.getBinds().contains(new BindValue(BindValue.Type.STRING, "null")));
+        assertFalse(query.getSql().contains("is ?"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void arithmeticShouldBeRejected() {
+        generator.generate(parse("a + 1 = 2"));
+    }
+
+    private static ExpressionTree parse(String expression) {
+        return ExpressionTree.parser().parse(expression);
+    }
+}
@@ -0,0 +1,281 @@
+package com.github.expression.tree;
+
+import com.github.expression.exception.ParseErrorCode;
+import com.github.expression.exception.ParseException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpressionParserTest {
+
+    @Test
+    public void parserShouldBeShared() {
+        assertSame(ExpressionTree.parser(), ExpressionParser.getInstance());
+    }
+
+    @Test
+    public void treeShouldBeParsed() {
+        ExpressionTree tree = ExpressionTree.parser().parse("userId in (1, 2) and name like 'a%'");
+        assertEquals("and", tree.getOperator());
+        assertEquals("in", tree.getLeft().getOperator());
+        assertEquals("like", tree.getRight().getOperator());
+    }
+
+    @Test
+    public void literalsShouldBeTyped() {
+        ExpressionTree tree = ExpressionTree.parser().parse(
+                "a = 12 and b = 2.5 and c = '2001-08-01' and d = 'x' and e in (99999999999999999999, null)");
+        ExpressionTree a = tree.getLeft().getLeft().getLeft().getLeft();
+        ExpressionTree b = tree.getLeft().getLeft().getLeft().getRight();
+        ExpressionTree c = tree.getLeft().getLeft().getRight();
+        ExpressionTree d = tree.getLeft().getRight();
+        ExpressionTree e = tree.getRight();
+
+        assertEquals(LiteralType.IDENTIFIER, a.getLeft().getType());
+        assertEquals("a", a.getLeft().getStringValue());
+        assertEquals(LiteralType.LONG, a.getRight().getType());
+        assertEquals(12L, a.getRight().getLongValue());
+        assertEquals(LiteralType.DECIMAL, b.getRight().getType());
+        assertEquals(new BigDecimal("2.5"), b.getRight().getDecimalValue());
+        assertEquals(LiteralType.DATE, c.getRight().getType());
+        assertEquals(LocalDate.of(2001, 8, 1).toEpochDay(), c.getRight().getEpochDay());
+        assertEquals("2001-08-01", c.getRight().getStringValue());
+        assertEquals(LiteralType.STRING, d.getRight().getType());
+        assertEquals("x", d.getRight().getStringValue());
+        assertEquals("'x'", d.getRight().getValue());
+        assertEquals(LiteralType.DECIMAL, e.getRight().getItems().get(0).getType());
+        assertEquals(LiteralType.NULL, e.getRight().getItems().get(1).getType());
+        assertNull(e.getRight().getValueSet());
+        assertEquals(null, tree.getType());
+    }
+
+    @Test
+    public void dateRecognizerShouldBePluggable() {
+        ExpressionParser parser = ExpressionParser.withDateRecognizer(DateRecognizer.ofPattern("dd.MM.yyyy"));
+        ExpressionTree tree = parser.parse("a = '01.08.2001' or b = '2001-08-01' or c = '31.02.2001'");
+        assertEquals(LiteralType.DATE, tree.getLeft().getLeft().getRight().getType());
+        assertEquals(LocalDate.of(2001, 8, 1).toEpochDay(), tree.getLeft().getLeft().getRight().getEpochDay());
+        assertEquals(LiteralType.STRING, tree.getLeft().getRight().getRight().getType());
+        assertEquals(LiteralType.STRING, tree.getRight().getRight().getType());
+        assertEquals(LiteralType.STRING, ExpressionTree.parser().parse("a = '2001-02-29'").getRight().getType());
+    }
+
+    @Test
+    public void parserShouldRecoverAfterError() {
+        try {
+            ExpressionTree.parser().parse("a = 'b");
+            fail();
+        } catch (ParseException e) {
+            assertEquals("Missing closing quote (')", e.getMessage());
+        }
+        ExpressionTree tree = ExpressionTree.parser().parse("a = 1");
+        assertEquals("eq", tree.getOperator());
+    }
+
+    @Test
+    public void parserShouldBeUsableFromManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                int n = i;
+                Callable<String> task = () -> ExpressionTree.parser().parse("id" + n + " = " + n).getLeft().getValue();
+                futures.add(executor.submit(task));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("id" + i, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bulkParseShouldKeepOrderAndReportEachError() {
+        List<String> exprs = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            exprs.add(i % 7 == 3 ? "id" + i + " = (" + i : "id" + i + " = " + i);
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<ParseResult> results = ExpressionTree.parser().parseAll(exprs, pool);
+            assertEquals(exprs.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                ParseResult result = results.get(i);
+                if (i % 7 == 3) {
+                    assertFalse(result.isValid());
+                    assertNull(result.getTree());
+                    assertEquals("Missing closing ')' at: '<end>'", result.getError().getMessage());
+                } else {
+                    assertTrue(result.isValid());
+                    assertNull(result.getError());
+                    assertEquals("id" + i, result.getTreeOrThrow().getLeft().getValue());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void bulkParseShouldAcceptListsStreamsAndIterators() {
+        List<ParseResult> fromStream = ExpressionTree.parser().parseAll(
+                IntStream.range(0, 1_000).mapToObj(i -> "a = " + i), ForkJoinPool.commonPool());
+        assertEquals(1_000, fromStream.size());
+        assertEquals("999", fromStream.get(999).getTree().getRight().getValue());
+
+        List<String> exprs = Arrays.asList("a = 1", "a = ", "b in (1, 2)");
+        List<ParseResult> fromIterator = ExpressionTree.parser().parseAll(exprs.iterator(), Runnable::run);
+        List<ParseResult> fromList = ExpressionTree.parser().parseAll(new LinkedList<>(exprs));
+        for (List<ParseResult> results : Arrays.asList(fromIterator, fromList)) {
+            assertTrue(results.get(0).isValid());
+            assertFalse(results.get(1).isValid());
+            assertEquals("in", results.get(2).getTree().getOperator());
+        }
+        try {
+            fromList.get(1).getTreeOrThrow();
+            fail();
+        } catch (ParseException e) {
+            assertSame(fromList.get(1).getError(), e);
+        }
+    }
+
+    @Test
+    public void invalidExpressionsShouldBeReportedWithoutThrowing() {
+        assertDiagnostic("a = 1)", ParseErrorCode.UNEXPECTED_TOKEN, 3, 5);
+        assertDiagnostic("a = 1 b", ParseErrorCode.EXPECTED_OPERATOR, 3, 6);
+        assertDiagnostic("a between 1 or 2", ParseErrorCode.EXPECTED_AND, 3, 12);
+        assertDiagnostic("(a = 1", ParseErrorCode.EXPECTED_CLOSING_PARENTHESIS, 4, 6);
+        assertDiagnostic("a in 1", ParseErrorCode.EXPECTED_OPENING_PARENTHESIS, 2, 5);
+        assertDiagnostic("a is not 1", ParseErrorCode.EXPECTED_NULL, 3, 9);
+        assertDiagnostic("a is", ParseErrorCode.EXPECTED_NULL, 2, 4);
+        assertDiagnostic("a = )", ParseErrorCode.EXPECTED_OPERAND, 2, 4);
+        assertDiagnostic("a.and", ParseErrorCode.EXPECTED_NAME, 2, 2);
+        assertDiagnostic("a[1 = 2", ParseErrorCode.EXPECTED_CLOSING_BRACKET, 3, 4);
+        assertDiagnostic("a = 'b", ParseErrorCode.UNTERMINATED_STRING, 2, 4);
+        assertDiagnostic("a = b\\", ParseErrorCode.MISSING_ESCAPED_CHARACTER, 2, 4);
+        assertDiagnostic("  ", ParseErrorCode.EMPTY_EXPRESSION, 0, 2);
+        assertDiagnostic(null, ParseErrorCode.EMPTY_EXPRESSION, 0, 0);
+
+        ParseResult valid = ExpressionTree.parser().validate("a = 1");
+        assertTrue(valid.isValid());
+        assertNull(valid.getCode());
+        assertEquals(-1, valid.getCharOffset());
+        assertEquals("eq", ExpressionTree.parser().tryParse("a = 1").getTree().getOperator());
+    }
+
+    @Test
+    public void parseExceptionsShouldNotCaptureStackTraces() {
+        ParseException error = ExpressionTree.parser().tryParse("a = (1").getError();
+        assertEquals(0, error.getStackTrace().length);
+        assertEquals(error.getMessage(), error.copy().getMessage());
+        assertEquals(error.getCharOffset(), error.copy().getCharOffset());
+    }
+
+    private static void assertDiagnostic(String expr, ParseErrorCode code, int tokenIndex, int charOffset) {
+        for (ParseResult result : Arrays.asList(ExpressionTree.parser().tryParse(expr), ExpressionTree.parser().validate(expr))) {
+            assertFalse(expr, result.isValid());
+            assertNull(expr, result.getTree());
+            assertEquals(expr, code, result.getCode());
+            assertEquals(expr, tokenIndex, result.getTokenIndex());
+            assertEquals(expr, charOffset, result.getCharOffset());
+        }
+    }
+
+    @Test
+    public void largeExpressionsShouldParseOnSmallStack() throws Exception {
+        StringBuilder terms = new StringBuilder("a = 0");
+        StringBuilder list = new StringBuilder("a in (0");
+        StringBuilder nested = new StringBuilder();
+        for (int i = 1; i < 100_000; i++) {
+            terms.append(" or a = ").append(i);
+            list.append(", ").append(i);
+        }
+        list.append(')');
+        for (int i = 0; i < 10_000; i++) {
+            nested.append("not (");
+        }
+        nested.append("a = 1");
+        for (int i = 0; i < 10_000; i++) {
+            nested.append(')');
+        }
+        List<ExpressionTree> trees = new ArrayList<>();
+        Thread thread = new Thread(null, () -> {
+            trees.add(ExpressionTree.parser().parse(terms));
+            trees.add(ExpressionTree.parser().parse(list));
+            trees.add(ExpressionTree.parser().parse(nested));
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertEquals(3, trees.size());
+        assertEquals(100_000, trees.get(0).getDepth() - 1);
+        assertEquals(100_000 * 4 - 1, trees.get(0).getSize());
+        assertEquals(3, trees.get(1).getDepth());
+        assertEquals(100_000, trees.get(1).getRight().getValueSet().size());
+        assertEquals(10_002, trees.get(2).getDepth());
+    }
+
+    @Test
+    public void inListShouldBeFlat() {
+        ExpressionTree tree = ExpressionTree.parser().parse("id in (30, 10, 20, 10)");
+        ExpressionTree list = tree.getRight();
+        assertEquals(ConstantHolder.OP_LIST, list.getOperator());
+        assertEquals(4, list.getItems().size());
+        assertEquals("30", list.getItems().get(0).getValue());
+
+        ValueSet set = list.getValueSet();
+        assertEquals(LiteralType.LONG, set.getType());
+        assertEquals(3, set.size());
+        assertArrayEquals(new long[]{10, 20, 30}, set.toLongArray());
+        assertTrue(set.contains(20));
+        assertFalse(set.contains(15));
+
+        set = ExpressionTree.parser().parse("s in ('b', 'a', 'b')").getRight().getValueSet();
+        assertEquals(LiteralType.STRING, set.getType());
+        assertArrayEquals(new String[]{"a", "b"}, set.toStringArray());
+        assertTrue(set.contains("a"));
+    }
+
+    @Test
+    public void contextShouldShrinkAfterDeepExpression() throws ParseException {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            expression.append('(');
+        }
+        expression.append("a = 1");
+        for (int i = 0; i < 1000; i++) {
+            expression.append(')');
+        }
+        ParseContext context = new ParseContext();
+        context.acquire();
+        context.reset(expression);
+        assertEquals("a", context.parse().getLeft().getStringValue());
+        assertTrue(context.frameCapacity() > 256);
+        context.release();
+        assertEquals(16, context.frameCapacity());
+        context.acquire();
+        context.reset("b = 2");
+        assertEquals("b", context.parse().getLeft().getStringValue());
+        context.release();
+    }
+}
@@ -1,11 +1,48 @@
 package com.github.expression.tree;
 
+import com.github.expression.exception.ParseException;
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 public class ExpressionTreeBuilderTest {
 
+    private static final String[] SAMPLES = {
+            "transactionId = 1",
+            "(date >= '2001-08-01' or transactionId like 'report%.pdf') and transaction.id like '55'",
+            "a.'b'[1 + 2].c ** -2 || 'x' * 3.5 / +.5 mod 2 - 1",
+            "x is not null and y is null or not z not in (1, 2, 3) and w not between 1 and 10",
+            "name not like 'a%' and path likefile '*.txt' and text contains 'err'",
+            "a & b | c",
+            "NOT A AND B OR c IN (1 2 3)",
+            "'quoted'.member = `back quoted`",
+            "a = ",
+            "a b",
+            "a in (1, 2",
+            "a in 1",
+            "a between 1 or 2",
+            "a is",
+            "a is not",
+            "a is 1",
+            "(a = 1",
+            "a[1",
+            "a.",
+            "a.and",
+            "= 1",
+            ")",
+    };
+
+    private static final String[] WORDS = {
+            "a", "b.c", "'s'", "\"d\"", "1", "2.5", "and", "or", "not", "is", "null", "in", "between",
+            "like", "contains", "=", "<>", ">=", "<", "(", ")", ",", "[", "]", "+", "-", "*", "**", "/",
+            "||", "&", "|", ".", "mod", "AND", "Null",
+    };
+
     @Test
     public void treeShouldBeBuilt() {
         ExpressionTree tree = ExpressionTree.builder()
@@ -13,4 +50,86 @@ public class ExpressionTreeBuilderTest {
                 .build();
         assertNotNull(tree);
     }
+
+    @Test
+    public void treeShouldBeBuiltFromBytes() {
+        byte[] bytes = "transactionRef like '%a'".getBytes(StandardCharsets.UTF_8);
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression(bytes, 0, bytes.length)
+                .build();
+        assertEquals("like", tree.getOperator());
+        assertEquals("transactionRef", tree.getLeft().getValue());
+        assertEquals("'%a'", tree.getRight().getValue());
+    }
+
+    @Test
+    public void dateRecognizerShouldKeepExpressionSetBefore() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("d = '01.08.2001'")
+                .withDateRecognizer(DateRecognizer.ofPattern("dd.MM.yyyy"))
+                .build();
+        assertEquals(LiteralType.DATE, tree.getRight().getType());
+    }
+
+    @Test
+    public void treeShouldMatchLegacyBuilder() {
+        for (String sample : SAMPLES) {
+            assertSameTree(sample);
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder expression = new StringBuilder();
+            int length = 1 + random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                expression.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            assertSameTree(expression.toString());
+        }
+    }
+
+    // Compares the offsets of the legacy implementation, which mixed characters and tokens
+    @SuppressWarnings("deprecation")
+    private static void assertSameTree(String expression) {
+        String expected;
+        try {
+            expected = describe(new LegacyExpressionTreeBuilder().withExpression(expression).build());
+        } catch (ParseException e) {
+            // The legacy builder printed the operand tree instead of the offending token here
+            expected = e.getMessage().contains("ExpressionTree@")
+                    ? "@" + e.getErrorOffset()
+                    : e.getMessage() + "@" + e.getErrorOffset();
+        }
+        String actual;
+        try {
+            actual = describe(ExpressionTree.builder().withExpression(expression).build());
+        } catch (ParseException e) {
+            actual = expected.startsWith("@")
+                    ? "@" + e.getErrorOffset()
+                    : e.getMessage() + "@" + e.getErrorOffset();
+        }
+        assertEquals(expression, expected, actual);
+    }
+
+    private static String describe(ExpressionTree tree) {
+        if (tree == null) {
+            return "_";
+        }
+        if (tree.getValue() != null) {
+            return tree.getValue();
+        }
+        if (!tree.getItems().isEmpty()) {
+            // The legacy builder nested the items of a list to the right
+            StringBuilder chain = new StringBuilder();
+            List<ExpressionTree> items = tree.getItems();
+            for (int i = 0; i < items.size(); i++) {
+                chain.append("(list ").append(describe(items.get(i))).append(' ');
+            }
+            chain.setLength(chain.length() - 1);
+            for (int i = 0; i < items.size(); i++) {
+                chain.append(i == 0 ? " _)" : ")");
+            }
+            return chain.toString();
+        }
+        return "(" + tree.getOperator() + " " + describe(tree.getLeft()) + " " + describe(tree.getRight()) + ")";
+    }
 }
@@ -0,0 +1,109 @@
+package com.github.expression.tree;
+
+import com.github.expression.exception.ParseException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ExpressionTreeCacheTest {
+
+    @Test
+    public void treeShouldBeParsedOnceAndShared() {
+        ExpressionTreeCache cache = ExpressionTreeCache.builder().build();
+        ExpressionTree first = cache.get("transactionId = 1");
+        ExpressionTree second = cache.get("transactionId = 1");
+        assertSame(first, second);
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void entriesShouldBeEvictedAboveMaximumSize() {
+        ExpressionTreeCache cache = ExpressionTreeCache.builder()
+                .maximumSize(2)
+                .concurrencyLevel(1)
+                .build();
+        cache.get("a = 1");
+        cache.get("a = 2");
+        cache.get("a = 3");
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void entriesShouldBeWeighedByTreeSize() {
+        ExpressionTreeCache cache = ExpressionTreeCache.builder()
+                .maximumWeight(20)
+                .concurrencyLevel(1)
+                .build();
+        StringBuilder text = new StringBuilder("a = '");
+        for (int i = 0; i < 1_000; i++) {
+            text.append('x');
+        }
+        cache.get(text.append('\'').toString());
+        assertEquals(1, cache.size());
+        cache.get("a in (1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20)");
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void parseErrorsShouldBeCachedWhenEnabled() {
+        ExpressionTreeCache cache = ExpressionTreeCache.builder()
+                .cacheParseErrors(true)
+                .build();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("a = 'b");
+                fail();
+            } catch (ParseException e) {
+                assertEquals("Missing closing quote (')", e.getMessage());
+            }
+        }
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void parseErrorsShouldNotBeCachedByDefault() {
+        ExpressionTreeCache cache = ExpressionTreeCache.builder().build();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("a = 'b");
+                fail();
+            } catch (ParseException e) {
+                assertEquals("Missing closing quote (')", e.getMessage());
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.missCount());
+    }
+
+    @Test
+    public void concurrentMissesShouldShareOneTree() throws Exception {
+        ExpressionTreeCache cache = ExpressionTreeCache.builder().build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ExpressionTree>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                Callable<ExpressionTree> task = () -> cache.get("date >= '2001-08-01' and userId in (1, 2, 3)");
+                futures.add(executor.submit(task));
+            }
+            ExpressionTree expected = futures.get(0).get();
+            for (Future<ExpressionTree> future : futures) {
+                assertSame(expected, future.get());
+            }
+            assertEquals(1, cache.loadCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
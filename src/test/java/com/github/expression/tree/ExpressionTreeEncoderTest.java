@@ -0,0 +1,134 @@
+package com.github.expression.tree;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExpressionTreeEncoderTest {
+
+    private final ExpressionTreeEncoder encoder = new ExpressionTreeEncoder();
+
+    @Test
+    public void treesShouldSurviveRoundTrip() {
+        String[] expressions = {
+                "a = 1",
+                "userId in (3, 1, 2) and name like 'a%'",
+                "d between '2001-08-01' and '2001-09-01' or not amount >= -2.5",
+                "x is not null and s in ('b', 'a') and n = 99999999999999999999",
+                "tags contains '\u00e9\u20ac' and file likefile '*.pdf' or a.b[1] + 2 * 3 = c || 'x'",
+                "name",
+        };
+        for (String expression : expressions) {
+            ExpressionTree tree = ExpressionTree.parser().parse(expression);
+            byte[] bytes = encoder.encode(tree);
+            assertEquals(bytes.length, encoder.encodedSize(tree));
+            ExpressionTree decoded = EncodedExpressionTree.wrap(bytes).decode();
+            assertEquals(expression, tree, decoded);
+        }
+        ExpressionTree optimized = ExpressionTree.optimizer().optimize(ExpressionTree.parser().parse("a = 1 or b = 2 or c = 3"));
+        assertEquals(optimized, EncodedExpressionTree.wrap(encoder.encode(optimized)).decode());
+        assertEquals(ExpressionTreeOptimizer.FALSE, EncodedExpressionTree.wrap(encoder.encode(ExpressionTreeOptimizer.FALSE)).decode());
+    }
+
+    @Test
+    public void decodedTreeShouldKeepLiteralValues() {
+        ExpressionTree tree = EncodedExpressionTree.wrap(encoder.encode(ExpressionTree.parser().parse(
+                "a = 9223372036854775807 and d = '2001-08-01' and s in ('b', 'a')"))).decode();
+        assertEquals(Long.MAX_VALUE, tree.getLeft().getLeft().getRight().getLongValue());
+        assertEquals(11535, tree.getLeft().getRight().getRight().getEpochDay());
+        assertEquals("2001-08-01", tree.getLeft().getRight().getRight().getStringValue());
+        assertArrayEquals(new String[]{"a", "b"}, tree.getRight().getRight().getValueSet().toStringArray());
+    }
+
+    @Test
+    public void encodedTreeShouldBeWalkedInPlace() {
+        ExpressionTree tree = ExpressionTree.parser().parse("userId in (10, 20, 30) and amount > 10");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+        buffer.position(7);
+        encoder.encode(tree, buffer);
+        buffer.position(7);
+
+        EncodedExpressionTree encoded = EncodedExpressionTree.wrap(buffer);
+        assertEquals(7, buffer.position());
+        int root = encoded.getRoot();
+        assertEquals(ConstantHolder.OP_AND, encoded.getOperator(root));
+        assertNull(encoded.getType(root));
+        int in = encoded.getLeft(root);
+        assertEquals(ConstantHolder.OP_IN, encoded.getOperator(in));
+        assertEquals("userId", encoded.getValue(encoded.getLeft(in)));
+        int list = encoded.getRight(in);
+        assertEquals(3, encoded.getItemCount(list));
+        assertEquals(30L, encoded.getLongValue(encoded.getItem(list, 2)));
+        int gt = encoded.getRight(root);
+        assertEquals(ConstantHolder.OP_GT, encoded.getOperator(gt));
+        assertEquals(LiteralType.IDENTIFIER, encoded.getType(encoded.getLeft(gt)));
+        assertEquals(EncodedExpressionTree.NO_NODE, encoded.getRight(encoded.getLeft(gt)));
+        assertEquals(tree, encoded.decode());
+    }
+
+    @Test
+    public void stringsShouldBeStoredOnce() {
+        ExpressionTree tree = ExpressionTree.parser().parse(
+                "transactionId = 'abcdef' or transactionId = 'abcdef' or transactionId = 'abcdef'");
+        assertTrue(encoder.encodedSize(tree) < 50);
+        ExpressionTree decoded = EncodedExpressionTree.wrap(encoder.encode(tree)).decode();
+        assertSame(decoded.getLeft().getLeft().getLeft().getValue(), decoded.getRight().getLeft().getValue());
+    }
+
+    @Test
+    public void encodingShouldBeWrittenToStreamOrBuffer() throws Exception {
+        ExpressionTree tree = ExpressionTree.parser().parse("a = 1 and b = 'x'");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(tree, out);
+        assertArrayEquals(encoder.encode(tree), out.toByteArray());
+
+        ByteBuffer small = ByteBuffer.allocate(5);
+        try {
+            encoder.encode(tree, small);
+            fail();
+        } catch (BufferOverflowException e) {
+            assertEquals(0, small.position());
+        }
+    }
+
+    @Test
+    public void foreignBytesShouldBeRejected() {
+        try {
+            EncodedExpressionTree.wrap("a = 1".getBytes());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not an encoded expression tree", e.getMessage());
+        }
+        try {
+            EncodedExpressionTree.wrap(new byte[]{'E', 'T', 9, 0});
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unsupported encoding version: 9", e.getMessage());
+        }
+    }
+
+    @Test
+    public void deepTreeShouldBeEncodedOnSmallStack() throws Exception {
+        StringBuilder expression = new StringBuilder("a = 0");
+        for (int i = 1; i < 100_000; i++) {
+            expression.append(" or a = ").append(i);
+        }
+        ExpressionTree tree = ExpressionTree.parser().parse(expression);
+        ExpressionTree[] decoded = new ExpressionTree[1];
+        Thread thread = new Thread(null, () -> decoded[0] = EncodedExpressionTree.wrap(encoder.encode(tree)).decode(),
+                "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertEquals(tree, decoded[0]);
+    }
+}
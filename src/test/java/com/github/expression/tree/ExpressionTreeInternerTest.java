@@ -0,0 +1,74 @@
+package com.github.expression.tree;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ExpressionTreeInternerTest {
+
+    private final ExpressionTreeInterner interner = new ExpressionTreeInterner();
+    private final ExpressionParser parser = ExpressionTree.parser().withInterner(interner);
+
+    @Test
+    public void equalTreesShouldBeOneInstance() {
+        ExpressionTree first = parser.parse("transactionId = 5 and name like 'a%'");
+        ExpressionTree second = parser.parse("transactionId  =  5 AND name LIKE 'a%'");
+        assertSame(first, second);
+        assertNotSame(first, parser.parse("transactionId = 6 and name like 'a%'"));
+        assertEquals(first, ExpressionTree.parser().parse("transactionId = 5 and name like 'a%'"));
+    }
+
+    @Test
+    public void subtreesAndSymbolsShouldBeShared() {
+        ExpressionTree first = parser.parse("userId in (1, 2, 3) and amount > 10");
+        ExpressionTree second = parser.parse("amount > 10 or userId in (1, 2, 3)");
+        assertSame(first.getLeft(), second.getRight());
+        assertSame(first.getRight(), second.getLeft());
+
+        ExpressionTree third = parser.parse("userId = 'x' and 'x' = userId");
+        assertSame(third.getLeft().getLeft(), third.getRight().getRight());
+        assertSame(third.getLeft().getRight(), third.getRight().getLeft());
+        assertSame(first.getLeft().getLeft().getValue(), third.getLeft().getLeft().getValue());
+        assertSame(interner.intern(new String("userId")), third.getLeft().getLeft().getValue());
+    }
+
+    @Test
+    public void internedTreeShouldKeepItsContent() {
+        ExpressionTree tree = ExpressionTree.parser().parse("d = '2001-08-01' and a = 1.5 and s in ('b', 'a') and n is null");
+        ExpressionTree interned = interner.intern(tree);
+        assertEquals(tree, interned);
+        assertEquals(tree.hashCode(), interned.hashCode());
+        assertEquals(tree.getSize(), interned.getSize());
+        assertEquals(tree.getLeft().getLeft().getLeft().getRight().getEpochDay(),
+                interned.getLeft().getLeft().getLeft().getRight().getEpochDay());
+        assertEquals(2, interned.getLeft().getRight().getRight().getValueSet().size());
+        assertSame(interned, interner.intern(interned));
+    }
+
+    @Test
+    public void optimizedTreesShouldBeInterned() {
+        ExpressionTree first = interner.intern(ExpressionTree.optimizer().optimize(parser.parse("a = 1 or b = 2 or c = 3")));
+        ExpressionTree second = interner.intern(ExpressionTree.optimizer().optimize(parser.parse("a = 1 or (b = 2 or c = 3)")));
+        assertSame(first, second);
+    }
+
+    @Test
+    public void deepTreeShouldBeInternedOnSmallStack() throws Exception {
+        StringBuilder expression = new StringBuilder("a = 0");
+        for (int i = 1; i < 100_000; i++) {
+            expression.append(" or a = ").append(i % 10);
+        }
+        ExpressionTree[] trees = new ExpressionTree[2];
+        Thread thread = new Thread(null, () -> {
+            trees[0] = parser.parse(expression);
+            trees[1] = parser.parse(expression);
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertSame(trees[0], trees[1]);
+        assertSame(trees[0].getRight(), trees[0].getLeft().getLeft().getLeft().getLeft().getLeft().getLeft().getLeft().getLeft().getLeft().getLeft().getRight());
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.expression.tree;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionTreeOptimizerTest {
+
+    private final ExpressionTreeOptimizer optimizer = ExpressionTree.optimizer();
+
+    @Test
+    public void chainsShouldBecomeNary() {
+        ExpressionTree tree = optimize("a = 1 and (b = 2 and c = 3) and d = 4 or e = 5 or (f = 6 or g = 7)");
+        assertEquals(ConstantHolder.OP_OR, tree.getOperator());
+        assertEquals(4, tree.getItems().size());
+        ExpressionTree and = tree.getItems().get(0);
+        assertEquals(ConstantHolder.OP_AND, and.getOperator());
+        assertEquals(4, and.getItems().size());
+        assertEquals("d", and.getItems().get(3).getLeft().getValue());
+        assertEquals("g", tree.getItems().get(3).getLeft().getValue());
+    }
+
+    @Test
+    public void duplicatesAndDoubleNegationsShouldBeDropped() {
+        assertEquals(parse("a = 1"), optimize("a = 1 and a = 1"));
+        assertEquals(parse("a like 'x%'"), optimize("not not a like 'x%'"));
+        assertEquals(parse("not a like 'x%'"), optimize("not not not a like 'x%'"));
+        assertEquals(2, optimize("a like 'x' or b like 'y' or a like 'x'").getItems().size());
+    }
+
+    @Test
+    public void constantsShouldBeFolded() {
+        assertEquals(parse("a = 7"), optimize("a = 1 + 2 * 3"));
+        assertEquals(parse("a = 3"), optimize("a = 6 / 2"));
+        assertEquals(ConstantHolder.OP_DIV, optimize("a = 7 / 2").getRight().getOperator());
+        assertEquals(ConstantHolder.OP_ADD, optimize("a = 9223372036854775807 + 1").getRight().getOperator());
+        assertEquals(parse("a = 1"), optimize("a = 1 and 2 > 1"));
+        assertEquals(parse("a = 1"), optimize("a = 1 or 2 < 1"));
+        assertTrue(ExpressionTreeOptimizer.isFalse(optimize("a = 1 and 2 < 1")));
+        assertTrue(ExpressionTreeOptimizer.isTrue(optimize("a = 1 or not 2 < 1")));
+        assertTrue(ExpressionTreeOptimizer.isFalse(optimize("a like 'x' and not a like 'x'")));
+        assertTrue(ExpressionTreeOptimizer.isTrue(optimize("null is null")));
+    }
+
+    @Test
+    public void boundsShouldBeMerged() {
+        assertEquals(parse("x between 3 and 5"), optimize("x > 1 and x between 3 and 10 and x <= 5"));
+        assertEquals(flat("and", "x >= 3 and x < 5"), optimize("x > 1 and x between 3 and 10 and x < 5"));
+        assertEquals(parse("x = 5"), optimize("x >= 5 and 5 >= x"));
+        assertEquals(parse("x > 4"), optimize("x > 1 and 4 < x"));
+        assertEquals(parse("x = 2"), optimize("x = 2 and x < 10"));
+        assertTrue(ExpressionTreeOptimizer.isFalse(optimize("x > 5 and x < 5")));
+        assertTrue(ExpressionTreeOptimizer.isFalse(optimize("x = 2 and x = 3")));
+        assertEquals(parse("x < 10"), optimize("x < 3 or x < 10"));
+        assertEquals(flat("or", "x >= 5 or x < 3"), optimize("x < 3 or x > 5 or x >= 5"));
+        assertEquals(parse("d >= '2001-09-01'"), optimize("d >= '2001-08-01' and d >= '2001-09-01'"));
+        // Strings and bounds of other types are left alone
+        assertEquals(flat("and", "s > 'a' and s > 'b'"), optimize("s > 'a' and s > 'b'"));
+        assertEquals(flat("and", "x > 1 and x > 1.5"), optimize("x > 1 and x > 1.5"));
+    }
+
+    @Test
+    public void optimizedTreesShouldBeWrittenAsSql() {
+        QueryGenerator generator = new QueryGenerator();
+        assertEquals("select * from t where (name = 'a' and num_value = 1) or (name = 'b' and num_value = 2) or (name = 'c' and num_value = 3)",
+                generator.generate("select * from t", optimize("a = 1 or b = 2 or c = 3")));
+        assertEquals("select * from t where 1 = 0", generator.generate("select * from t", optimize("a = 1 and 1 = 2")));
+        assertEquals("select distinct entry_id from entry_tags where 1 = 0",
+                new EavQueryGenerator().generate(optimize("a = 1 and a = 2")));
+    }
+
+    @Test
+    public void optimizerShouldHandleLongChains() {
+        StringBuilder expression = new StringBuilder("a = 0");
+        for (int i = 1; i < 50_000; i++) {
+            expression.append(" or a").append(i % 100).append(" = ").append(i);
+        }
+        ExpressionTree tree = optimize(expression.toString());
+        assertEquals(50_000, tree.getItems().size());
+        assertEquals(3, tree.getDepth());
+        assertEquals(tree, optimize(expression.toString()));
+        assertNotEquals(tree, optimize(expression.append(" or b = 1").toString()));
+    }
+
+    @Test
+    public void unchangedTreesShouldBeKept() {
+        ExpressionTree tree = parse("a like 'x%'");
+        assertSame(tree, optimizer.optimize(tree));
+    }
+
+    private ExpressionTree optimize(String expression) {
+        return optimizer.optimize(parse(expression));
+    }
+
+    private static ExpressionTree flat(String operator, String expression) {
+        ExpressionTree tree = parse(expression);
+        return new ExpressionTree(operator, new ExpressionTree[]{tree.getLeft(), tree.getRight()});
+    }
+
+    private static ExpressionTree parse(String expression) {
+        return ExpressionTree.parser().parse(expression);
+    }
+}
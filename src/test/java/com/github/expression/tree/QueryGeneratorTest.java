@@ -5,7 +5,12 @@ import com.github.expression.tree.QueryGenerator;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.sql.Date;
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class QueryGeneratorTest {
 
@@ -32,7 +37,7 @@ public class QueryGeneratorTest {
                 .withExpression("transactionId in (1, 2, 3)")
                 .build();
         String sql = generator.generate(PREFIX, tree);
-        assertEquals("select * from entry_tags where (name = 'transactionId' and num_value in (3, 2, 1))", sql);
+        assertEquals("select * from entry_tags where (name = 'transactionId' and num_value in (1, 2, 3))", sql);
     }
 
     @Test
@@ -44,13 +49,35 @@ public class QueryGeneratorTest {
         assertEquals("select * from entry_tags where name = 'transactionRef' and str_value like '%a'", sql);
     }
 
+    @Test
+    public void likePrefixShouldBeWrittenAsRange() {
+        QueryGenerator ranges = new QueryGenerator().withLikePrefixRanges(true);
+        assertEquals("select * from entry_tags where name = 'ref' and str_value >= 'ab''c' and str_value < 'ab''d'",
+                ranges.generate(PREFIX, ExpressionTree.parser().parse("ref like \"ab'c%\"")));
+        assertEquals("select * from entry_tags where (name = 'ref' and str_value >= 'abc' and str_value < 'abd'"
+                        + " and str_value like 'abc%.pdf') and (name = 'n' and str_value like '%a')",
+                ranges.generate(PREFIX, ExpressionTree.parser().parse("ref like 'abc%.pdf' and n like '%a'")));
+        assertEquals("select * from entry_tags where name = 'ref' and str_value >= 'ab' and str_value < 'ac'"
+                        + " and str_value like 'ab_'",
+                ranges.generate(PREFIX, ExpressionTree.parser().parse("ref like 'ab_'")));
+        assertEquals("select * from entry_tags where name = 'ref' and str_value like 'abc'",
+                ranges.generate(PREFIX, ExpressionTree.parser().parse("ref like 'abc'")));
+
+        ParameterizedQuery query = ranges.generateParameterized(PREFIX, ExpressionTree.parser().parse("ref like 'abc%'"));
+        assertEquals("select * from entry_tags where name = ? and str_value >= ? and str_value < ?", query.getSql());
+        assertEquals(Arrays.asList(
+                new BindValue(BindValue.Type.STRING, "ref"),
+                new BindValue(BindValue.Type.STRING, "abc"),
+                new BindValue(BindValue.Type.STRING, "abd")), query.getBinds());
+    }
+
     @Test
     public void likeAndInQueryShouldBeGenerated() {
         ExpressionTree tree = ExpressionTree.builder()
                 .withExpression("transactionRef like '%a' and transactionId in (1, 2, 3)")
                 .build();
         String sql = generator.generate(PREFIX, tree);
-        assertEquals("select * from entry_tags where (name = 'transactionRef' and str_value like '%a') and (name = 'transactionId' and num_value in (3, 2, 1))", sql);
+        assertEquals("select * from entry_tags where (name = 'transactionRef' and str_value like '%a') and (name = 'transactionId' and num_value in (1, 2, 3))", sql);
     }
 
 
@@ -70,7 +97,7 @@ public class QueryGeneratorTest {
                 .withExpression("date >= '2001-08-01' and transactionRef = '123-sdf' and userId in (1, 2, 3)")
                 .build();
         String sql = generator.generate(PREFIX, tree);
-        assertEquals("select * from entry_tags where ((name = 'date' and date_value >= '2001-08-01') and (name = 'transactionRef' and str_value = '123-sdf')) and (name = 'userId' and num_value in (3, 2, 1))", sql);
+        assertEquals("select * from entry_tags where ((name = 'date' and date_value >= '2001-08-01') and (name = 'transactionRef' and str_value = '123-sdf')) and (name = 'userId' and num_value in (1, 2, 3))", sql);
     }
 
     @Test
@@ -81,4 +108,192 @@ public class QueryGeneratorTest {
         String sql = generator.generate(PREFIX, tree);
         assertEquals("select * from entry_tags where (((name = 'date' and date_value >= '2001-08-01') and (name = 'transactionRef' and str_value = '123-sdf')) and (name = 'userId' and num_value = 1)) and (name = 'column' and str_value like 'sdf')", sql);
     }
+
+    @Test
+    public void parameterizedQueryShouldBeGenerated() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("(date >= '2001-08-01' and transactionRef = '123-sdf') or userId in (1, 2)")
+                .build();
+        ParameterizedQuery query = generator.generateParameterized(PREFIX, tree);
+        assertEquals("select * from entry_tags where ((name = ? and date_value >= ?) and (name = ? and str_value = ?)) or (name = ? and num_value in (?, ?))", query.getSql());
+        assertEquals(Arrays.asList(
+                new BindValue(BindValue.Type.STRING, "date"),
+                new BindValue(BindValue.Type.DATE, Date.valueOf("2001-08-01")),
+                new BindValue(BindValue.Type.STRING, "transactionRef"),
+                new BindValue(BindValue.Type.STRING, "123-sdf"),
+                new BindValue(BindValue.Type.STRING, "userId"),
+                new BindValue(BindValue.Type.LONG, 1L),
+                new BindValue(BindValue.Type.LONG, 2L)), query.getBinds());
+    }
+
+    @Test
+    public void nullShouldNeverBeBound() {
+        ParameterizedQuery query = generator.generateParameterized(PREFIX, ExpressionTree.parser().parse("a is null or b = null"));
+        assertEquals("select * from entry_tags where (name = ? and str_value is null) or (name = ? and str_value = null)",
+                query.getSql());
+        assertEquals(Arrays.asList(
+                new BindValue(BindValue.Type.STRING, "a"),
+                new BindValue(BindValue.Type.STRING, "b")), query.getBinds());
+        assertEquals("select * from entry_tags where name = 'a' and str_value is null",
+                generator.generate(PREFIX, ExpressionTree.parser().parse("a is null")));
+    }
+
+    @Test
+    public void parameterizedQueriesShouldShareTemplate() {
+        ParameterizedQuery first = generator.generateParameterized(PREFIX, ExpressionTree.builder()
+                .withExpression("transactionRef like '%a' and transactionId = 1")
+                .build());
+        ParameterizedQuery second = generator.generateParameterized(PREFIX, ExpressionTree.builder()
+                .withExpression("reference like 'b%' and userId = 42")
+                .build());
+        assertSame(first.getSql(), second.getSql());
+        assertEquals(1, generator.templateCount());
+        assertEquals(new BindValue(BindValue.Type.STRING, "b%"), second.getBinds().get(1));
+    }
+
+    @Test
+    public void cachedTemplateShouldStillCollectBinds() {
+        generator.generateParameterized(PREFIX, ExpressionTree.builder()
+                .withExpression("a = 1 and (b = 'x' or c in (1, 2))")
+                .build());
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("d = 7 and (e = 'y' or f in (3, 4))")
+                .build();
+        ParameterizedQuery cached = generator.generateParameterized(PREFIX, tree);
+        ParameterizedQuery fresh = new QueryGenerator().generateParameterized(PREFIX, tree);
+        assertEquals(1, generator.templateCount());
+        assertEquals(fresh.getSql(), cached.getSql());
+        assertEquals(fresh.getBinds(), cached.getBinds());
+    }
+
+    @Test
+    public void treesOfDifferentShapeShouldNotShareTemplate() {
+        QueryGenerator dates = new QueryGenerator("dd.MM.yyyy").withLikePrefixRanges(true);
+        String[] expressions = {
+                "a >= '01.08.2001'", "a >= 'abc'", "a >= 1",
+                "a in (1, 2)", "a in (1, 2, 3)", "a in ('1', '2')",
+                "a like 'ab%'", "a like 'ab%c'", "a like '%ab'"
+        };
+        for (String expression : expressions) {
+            ExpressionTree tree = ExpressionTree.builder().withExpression(expression).build();
+            assertEquals(expression, new QueryGenerator("dd.MM.yyyy").withLikePrefixRanges(true)
+                    .generateParameterized(PREFIX, tree).getSql(), dates.generateParameterized(PREFIX, tree).getSql());
+        }
+        assertEquals(expressions.length, dates.templateCount());
+    }
+
+    @Test
+    public void parameterizedQueryShouldHandleMissingOperands() {
+        String[] expressions = {"not a = 1", "a = 1 and not b = 2", "not a in (1, 2)", "-a = 1", "a"};
+        for (String expression : expressions) {
+            ExpressionTree tree = ExpressionTree.builder().withExpression(expression).build();
+            ParameterizedQuery first = generator.generateParameterized(PREFIX, tree);
+            ParameterizedQuery cached = generator.generateParameterized(PREFIX, tree);
+            assertEquals(expression, first.getSql(), cached.getSql());
+            assertEquals(expression, first.getBinds(), cached.getBinds());
+        }
+    }
+
+    @Test
+    public void parameterizedQueryShouldHandleFoldedConstants() {
+        ExpressionTreeOptimizer optimizer = new ExpressionTreeOptimizer();
+        ExpressionTree never = optimizer.optimize(ExpressionTree.builder().withExpression("1 = 2").build());
+        assertEquals(generator.generate(PREFIX, never), generator.generateParameterized(PREFIX, never).getSql());
+        ExpressionTree always = optimizer.optimize(ExpressionTree.builder().withExpression("1 = 1").build());
+        assertEquals(generator.generate(PREFIX, always), generator.generateParameterized(PREFIX, always).getSql());
+        assertEquals(2, generator.templateCount());
+    }
+
+    @Test
+    public void mixedInListShouldStayOnStringColumn() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("d in ('01.08.2001', 'abc')")
+                .build();
+        QueryGenerator dates = new QueryGenerator("dd.MM.yyyy");
+        assertEquals("select * from entry_tags where (name = 'd' and str_value in ('01.08.2001', 'abc'))",
+                dates.generate(PREFIX, tree));
+        ParameterizedQuery query = dates.generateParameterized(PREFIX, tree);
+        assertEquals("select * from entry_tags where (name = ? and str_value in (?, ?))", query.getSql());
+        assertEquals(new BindValue(BindValue.Type.STRING, "01.08.2001"), query.getBinds().get(1));
+        query = dates.withInListMode(InListMode.ARRAY).generateParameterized(PREFIX, tree);
+        assertEquals("select * from entry_tags where (name = ? and str_value = any(?))", query.getSql());
+        assertEquals(new BindValue(BindValue.Type.ARRAY, new String[]{"01.08.2001", "abc"}, "varchar"), query.getBinds().get(1));
+    }
+
+    @Test
+    public void dateMaskShouldBeApplied() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("date >= '01.08.2001'")
+                .build();
+        assertEquals("select * from entry_tags where name = 'date' and str_value >= '01.08.2001'", generator.generate(PREFIX, tree));
+        ParameterizedQuery query = new QueryGenerator("dd.MM.yyyy").generateParameterized(PREFIX, tree);
+        assertEquals("select * from entry_tags where name = ? and date_value >= ?", query.getSql());
+        assertEquals(new BindValue(BindValue.Type.DATE, Date.valueOf("2001-08-01")), query.getBinds().get(1));
+    }
+
+    @Test
+    public void largeQueryShouldBeGeneratedOnSmallStack() throws Exception {
+        StringBuilder expression = new StringBuilder("userId = 0");
+        for (int i = 1; i < 100_000; i++) {
+            expression.append(" or userId = ").append(i);
+        }
+        ExpressionTree tree = ExpressionTree.parser().parse(expression);
+        StringBuilder sql = new StringBuilder();
+        Thread thread = new Thread(null, () -> sql.append(generator.generate(PREFIX, tree)), "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertTrue(sql.toString().startsWith(PREFIX + " where (((((((("));
+        assertTrue(sql.toString().endsWith(") or (name = 'userId' and num_value = 99999)"));
+    }
+
+    @Test
+    public void inListShouldBeSortedAndDistinct() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("ref in ('b', \"a's\", 'b')")
+                .build();
+        assertEquals("select * from entry_tags where (name = 'ref' and str_value in ('a''s', 'b'))", generator.generate(PREFIX, tree));
+    }
+
+    @Test
+    public void inListShouldBeChunked() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("userId in (5, 4, 3, 2, 1)")
+                .build();
+        generator.withInListMode(InListMode.CHUNKED).withMaxInListSize(2);
+        assertEquals("select * from entry_tags where (name = 'userId' and (num_value in (1, 2) or num_value in (3, 4) or num_value in (5)))",
+                generator.generate(PREFIX, tree));
+        // Modes needing binds fall back to chunks when inlining
+        generator.withInListMode(InListMode.ARRAY);
+        assertEquals("select * from entry_tags where (name = 'userId' and (num_value in (1, 2) or num_value in (3, 4) or num_value in (5)))",
+                generator.generate(PREFIX, tree));
+    }
+
+    @Test
+    public void inListShouldBeBoundAsArray() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("userId in (3, 1, 2) and date in ('2001-08-01')")
+                .build();
+        ParameterizedQuery query = generator.withInListMode(InListMode.ARRAY).generateParameterized(PREFIX, tree);
+        assertEquals("select * from entry_tags where (name = ? and num_value = any(?)) and (name = ? and date_value = any(?))", query.getSql());
+        assertEquals(new BindValue(BindValue.Type.ARRAY, new Long[]{1L, 2L, 3L}, "bigint"), query.getBinds().get(1));
+        assertEquals("bigint", query.getBinds().get(1).getElementType());
+        assertEquals(new BindValue(BindValue.Type.ARRAY, new Date[]{Date.valueOf("2001-08-01")}, "date"), query.getBinds().get(3));
+    }
+
+    @Test
+    public void inListShouldBeReadFromTempTable() {
+        ExpressionTree tree = ExpressionTree.builder()
+                .withExpression("userId in (3, 1, 2) or ref in ('a', 'b')")
+                .build();
+        ParameterizedQuery query = generator.withInListMode(InListMode.TEMP_TABLE).generateParameterized(PREFIX, tree);
+        assertEquals("select * from entry_tags where (name = ? and num_value in (select value from in_list_0))"
+                + " or (name = ? and str_value in (select value from in_list_1))", query.getSql());
+        assertEquals(2, query.getBinds().size());
+        assertEquals(Arrays.asList(
+                new BindValue(BindValue.Type.LONG, 1L),
+                new BindValue(BindValue.Type.LONG, 2L),
+                new BindValue(BindValue.Type.LONG, 3L)), query.getTables().get("in_list_0"));
+        assertEquals(new BindValue(BindValue.Type.STRING, "b"), query.getTables().get("in_list_1").get(1));
+    }
 }